@@ -0,0 +1,173 @@
+package net.casim.task.newsletter.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop HTTP load test: {@code clients} concurrent clients each send their next request as soon as the
+ * previous one completes. The mix is 70% checkSubscription, 10% subscribe, 10% unsubscribe and 10% user lookups.
+ * <p>
+ * Boots the application in-process with the given {@code mode} ({@code platform}, {@code virtual}, {@code async}, or
+ * {@code reactive} for the WebFlux variant) and a seeded database unless {@code target} points
+ * to a running instance (whose data must match the seed ids). Arguments are {@code key=value} pairs:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=net.casim.task.newsletter.benchmark.LoadTest \
+ *     -Dbenchmark.args="mode=async clients=10000 duration=30"
+ * </pre>
+ * Client and server share the machine, so compare modes against each other rather than reading absolute numbers.
+ */
+public class LoadTest {
+    private final int clients;
+
+    private final Duration warmup;
+
+    private final Duration duration;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    private final Histogram latencies = new ConcurrentHistogram(Duration.ofMinutes(1).toNanos(), 3);
+
+    private final Map<String, Histogram> endpointLatencies = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    private final SeededApplication application = new SeededApplication();
+
+    private URI target;
+
+    private volatile boolean recording;
+
+    private volatile long deadline;
+
+    private LoadTest(Map<String, String> options) {
+        clients = Integer.parseInt(options.getOrDefault("clients", "10000"));
+        warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10")));
+        duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        application.subscriptions = Integer.parseInt(options.getOrDefault("subscriptions", "100000"));
+        application.newsletters = 100;
+        application.subscriptionsPerUser = 5;
+        application.zipfExponent = Double.parseDouble(options.getOrDefault("zipf", "0"));
+
+        if (options.containsKey("target")) {
+            target = URI.create(options.get("target"));
+        } else {
+            if ("reactive".equals(options.get("mode"))) {
+                application.start(WebApplicationType.REACTIVE,
+                        "server.port=0",
+                        "spring.profiles.active=reactive",
+                        "spring.r2dbc.url=r2dbc:h2:mem:///benchmark");
+            } else {
+                application.start(WebApplicationType.SERVLET,
+                        "server.port=0",
+                        "newsletter.web.execution-mode=" + options.getOrDefault("mode", "platform"),
+                        "server.tomcat.max-connections=" + (clients + 1000),
+                        "server.tomcat.accept-count=" + clients);
+            }
+            int port = ((WebServerApplicationContext) application.context).getWebServer().getPort();
+            target = URI.create("http://localhost:" + port);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option[1]);
+        }
+
+        LoadTest loadTest = new LoadTest(options);
+        try {
+            loadTest.run();
+            loadTest.report(options.getOrDefault("mode", "platform"));
+        } finally {
+            if (loadTest.application.context != null)
+                loadTest.application.stop();
+        }
+    }
+
+    private void run() throws InterruptedException {
+        deadline = System.nanoTime() + warmup.plus(duration).toNanos();
+        CompletableFuture<?>[] running = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++) {
+            running[i] = nextRequest();
+        }
+
+        Thread.sleep(warmup.toMillis());
+        recording = true;
+        CompletableFuture.allOf(running).join();
+    }
+
+    private CompletableFuture<Void> nextRequest() {
+        if (System.nanoTime() > deadline)
+            return CompletableFuture.completedFuture(null);
+
+        HttpRequest request = randomRequest();
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, failure) -> {
+                    if (recording && System.nanoTime() <= deadline) {
+                        long latency = Math.min(System.nanoTime() - start, latencies.getHighestTrackableValue());
+                        latencies.recordValue(latency);
+                        endpointLatencies.computeIfAbsent(endpoint(request), key -> new ConcurrentHistogram(latencies.getHighestTrackableValue(), 3))
+                                .recordValue(latency);
+                        String outcome = (failure != null) ? failure.getClass().getSimpleName() : String.valueOf(response.statusCode());
+                        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> nextRequest());
+    }
+
+    private HttpRequest randomRequest() {
+        long userId = application.randomUserId();
+        long newsletterId = application.randomNewsletterId();
+        int kind = ThreadLocalRandom.current().nextInt(10);
+        if (kind < 7)
+            return HttpRequest.newBuilder(target.resolve("/subscriptions/checkSubscription?newsletterId=" + newsletterId + "&userId=" + userId))
+                    .GET().build();
+        if (kind == 7 || kind == 8)
+            return HttpRequest.newBuilder(target.resolve(kind == 7 ? "/subscriptions/subscribe" : "/subscriptions/unsubscribe"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"userId\": " + userId + ", \"newsletterId\": " + newsletterId + "}"))
+                    .build();
+        return HttpRequest.newBuilder(target.resolve("/subscriptions/user/" + userId)).GET().build();
+    }
+
+    private static String endpoint(HttpRequest request) {
+        return request.method() + " " + request.uri().getPath().replaceAll("/[0-9]+$", "/{id}");
+    }
+
+    private void report(String mode) {
+        long requests = latencies.getTotalCount();
+        System.out.printf("mode=%s clients=%d duration=%ds%n", mode, clients, duration.getSeconds());
+        System.out.printf("requests=%d throughput=%.1f req/s%n", requests, requests / (double) duration.getSeconds());
+        System.out.printf("latency ms: p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+                millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+                millis(latencies.getMaxValue()));
+        endpointLatencies.forEach((endpoint, histogram) -> System.out.printf("  %s: %d requests, p50=%.1f p99=%.1f ms%n",
+                endpoint, histogram.getTotalCount(), millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99))));
+        outcomes.forEach((outcome, count) -> System.out.printf("  status %s: %d%n", outcome, count.sum()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,49 @@
+package net.casim.task.newsletter.benchmark;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.Subscription;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Newsletter#toDTO()} over an already loaded subscriber collection, one in ten of them unsubscribed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NewsletterToDtoBenchmark {
+
+    @Param({"10000"})
+    public int subscriptions;
+
+    private Newsletter newsletter;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        newsletter = new Newsletter(1L, "Benchmark", "Content", "2020-01-01", null);
+        List<Subscription> subscribedUsers = new ArrayList<>(subscriptions);
+        for (int i = 0; i < subscriptions; i++) {
+            subscribedUsers.add(Subscription.builder()
+                    .id((long) i)
+                    .subscribed(i % 10 != 0)
+                    .newsletter(newsletter)
+                    .user(User.builder().userId((long) i).username("bench" + i).build())
+                    .createdAt(SeededApplication.FIRST_SUBSCRIPTION.plusSeconds(i))
+                    .build());
+        }
+        newsletter.setSubscribedUsers(subscribedUsers);
+    }
+
+    @Benchmark
+    public NewsletterDTO toDTO() {
+        return newsletter.toDTO();
+    }
+}
@@ -0,0 +1,80 @@
+package net.casim.task.newsletter.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CPU cost and size savings of gzipping a {@code GET /subscriptions/newsletters} body, compared with serializing it.
+ * {@code gzip} uses the default deflate level, like Tomcat's {@code server.compression}; the {@code uncompressedBytes}
+ * and {@code compressedBytes} counters give the compression ratio.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ResponseCompressionBenchmark {
+
+    @Param({"100"})
+    public int newsletters;
+
+    @Param({"10", "1000"})
+    public int subscribersPerNewsletter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<NewsletterDTO> body;
+
+    private byte[] json;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Sizes {
+        public long uncompressedBytes;
+        public long compressedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            uncompressedBytes = 0;
+            compressedBytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void seed() throws JsonProcessingException {
+        body = new ArrayList<>(newsletters);
+        for (int n = 0; n < newsletters; n++) {
+            List<String> usernames = new ArrayList<>(subscribersPerNewsletter);
+            for (int u = 0; u < subscribersPerNewsletter; u++)
+                usernames.add("User" + (n * subscribersPerNewsletter + u));
+            body.add(new NewsletterDTO((long) n, "Newsletter " + n, "Content of Newsletter " + n, "2020-01-01", usernames));
+        }
+        json = objectMapper.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public int gzip(Sizes sizes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(json);
+        }
+        sizes.uncompressedBytes += json.length;
+        sizes.compressedBytes += compressed.size();
+        return compressed.size();
+    }
+}
@@ -0,0 +1,102 @@
+package net.casim.task.newsletter.benchmark;
+
+import net.casim.task.newsletter.NewsletterApplication;
+import net.casim.task.newsletter.seed.SeedResult;
+import net.casim.task.newsletter.seed.SeedSpec;
+import net.casim.task.newsletter.seed.SyntheticDataGenerator;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The application on its own in-memory database, seeded by the {@link SyntheticDataGenerator} with {@code subscriptions}
+ * active subscriptions created over {@code subscriptions} seconds: every user is subscribed to {@code subscriptionsPerUser}
+ * of the {@code newsletters} newsletters. They are picked uniformly by default; {@code -p zipfExponent=1} gives the
+ * skewed popularity of a real catalog, where the first newsletters collect most of the subscribers.
+ * <p>
+ * Pick the data set size with {@code -p subscriptions=10000,1000000,10000000}; the largest sets need a bigger heap,
+ * e.g. {@code -jvmArgsAppend -Xmx8g}.
+ */
+@State(Scope.Benchmark)
+public class SeededApplication {
+    static final LocalDateTime FIRST_SUBSCRIPTION = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    @Param({"10000"})
+    public int subscriptions;
+
+    @Param({"100"})
+    public int newsletters;
+
+    @Param({"5"})
+    public int subscriptionsPerUser;
+
+    @Param({"0"})
+    public double zipfExponent;
+
+    ConfigurableApplicationContext context;
+
+    SubscriptionService subscriptionService;
+
+    long[] userIds;
+
+    long[] newsletterIds;
+
+    @Setup(Level.Trial)
+    public void start() {
+        start(WebApplicationType.NONE);
+    }
+
+    void start(WebApplicationType webApplicationType, String... properties) {
+        context = new SpringApplicationBuilder(NewsletterApplication.class)
+                .web(webApplicationType)
+                .properties("spring.datasource.url=jdbc:h2:mem:benchmark",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+        subscriptionService = context.getBean(SubscriptionService.class);
+
+        seed(context.getBean(SyntheticDataGenerator.class));
+        context.getBean(SubscriptionIndex.class).warmUp();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    long randomUserId() {
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+
+    long randomNewsletterId() {
+        return newsletterIds[ThreadLocalRandom.current().nextInt(newsletterIds.length)];
+    }
+
+    /**
+     * Creation date splitting the subscriptions of every newsletter roughly in half.
+     */
+    String medianSubscriptionDate() {
+        return FIRST_SUBSCRIPTION.plusSeconds(subscriptions / 2).toString();
+    }
+
+    private void seed(SyntheticDataGenerator generator) {
+        SeedResult seeded = generator.generate(SeedSpec.builder()
+                .users((subscriptions + subscriptionsPerUser - 1) / subscriptionsPerUser)
+                .newsletters(newsletters)
+                .subscriptions(subscriptions)
+                .zipfExponent(zipfExponent)
+                .from(FIRST_SUBSCRIPTION)
+                .spread(Duration.ofSeconds(subscriptions))
+                .build());
+        userIds = seeded.getUserIds();
+        newsletterIds = seeded.getNewsletterIds();
+    }
+}
@@ -0,0 +1,67 @@
+package net.casim.task.newsletter.benchmark;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.ResponseFields;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.dto.UserDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SubscriptionServiceBenchmark {
+
+    /**
+     * A random seeded pair, unsubscribed before every call so {@code subscribe} always changes state.
+     */
+    @State(Scope.Thread)
+    public static class UnsubscribedPair {
+        SubscribeRequest request;
+
+        @Setup(Level.Invocation)
+        public void pick(SeededApplication application) throws NotFoundException {
+            request = new SubscribeRequest(application.randomUserId(), application.randomNewsletterId());
+            application.subscriptionService.unsubscribe(request);
+        }
+    }
+
+    /**
+     * A random seeded pair, subscribed before every call so {@code unsubscribe} always changes state.
+     */
+    @State(Scope.Thread)
+    public static class SubscribedPair {
+        SubscribeRequest request;
+
+        @Setup(Level.Invocation)
+        public void pick(SeededApplication application) throws NotFoundException {
+            request = new SubscribeRequest(application.randomUserId(), application.randomNewsletterId());
+            application.subscriptionService.subscribe(request);
+        }
+    }
+
+    @Benchmark
+    public boolean subscribe(SeededApplication application, UnsubscribedPair pair) throws NotFoundException {
+        return application.subscriptionService.subscribe(pair.request);
+    }
+
+    @Benchmark
+    public boolean unsubscribe(SeededApplication application, SubscribedPair pair) throws NotFoundException {
+        return application.subscriptionService.unsubscribe(pair.request);
+    }
+
+    @Benchmark
+    public boolean checkSubscription(SeededApplication application) {
+        return application.subscriptionService.checkSubscription(application.randomNewsletterId(), application.randomUserId());
+    }
+
+    @Benchmark
+    public List<UserDTO> getSubscribersBeforeDate(SeededApplication application) {
+        return application.subscriptionService.getSubscribersBeforeDate(application.randomNewsletterId(),
+                application.medianSubscriptionDate(), ResponseFields.ALL);
+    }
+}
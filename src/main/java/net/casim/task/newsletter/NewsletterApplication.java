@@ -3,11 +3,15 @@ package net.casim.task.newsletter;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 import org.springdoc.core.GroupedOpenApi;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
-@SpringBootApplication
+// the reactive profile builds its own R2DBC pool, see ReactiveConfig
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 @OpenAPIDefinition
+@EnableScheduling
 public class NewsletterApplication {
 
     public static void main(String[] args) {
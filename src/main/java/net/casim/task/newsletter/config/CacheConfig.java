@@ -0,0 +1,41 @@
+package net.casim.task.newsletter.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Caffeine caches in front of the newsletter and user repositories.
+ * <p>
+ * The metadata caches use {@code spring.cache.caffeine.spec}. Subscriber lists vary a lot in size, so
+ * their cache is bounded by the total number of cached usernames instead of by entry count.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String NEWSLETTERS = "newsletters";
+    public static final String NEWSLETTER_LIST = "newsletterList";
+    public static final String USERS = "users";
+    public static final String NEWSLETTER_SUBSCRIBERS = "newsletterSubscribers";
+    public static final String SUBSCRIPTION_REVISIONS = "subscriptionRevisions";
+
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> subscriberCacheCustomizer(
+            @Value("${newsletter.cache.subscribers.max-usernames:1000000}") long maxUsernames,
+            @Value("${newsletter.cache.subscribers.ttl:10m}") Duration ttl) {
+        return cacheManager -> cacheManager.registerCustomCache(NEWSLETTER_SUBSCRIBERS, Caffeine.newBuilder()
+                .maximumWeight(maxUsernames)
+                .<Object, Object>weigher((newsletterId, usernames) ->
+                        (usernames instanceof Collection) ? ((Collection<?>) usernames).size() + 1 : 1)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build());
+    }
+}
@@ -0,0 +1,25 @@
+package net.casim.task.newsletter.config;
+
+import org.apache.coyote.http11.AbstractHttp11Protocol;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Response compression is configured with the {@code server.compression.*} properties. Tomcat by default leaves
+ * responses with a strong ETag uncompressed, which would exclude exactly the large newsletter lists; those tags
+ * identify the selected content rather than its encoding, and Tomcat adds {@code Vary: Accept-Encoding}, so
+ * compressing them as well is safe for conditional GETs.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "server.compression.enabled", havingValue = "true")
+public class CompressionConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<AbstractHttp11Protocol<?>> strongETagCompressionCustomizer() {
+        return protocolHandler -> protocolHandler.setNoCompressionStrongETag(false);
+    }
+}
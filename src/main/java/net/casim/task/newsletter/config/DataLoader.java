@@ -1,47 +1,78 @@
 package net.casim.task.newsletter.config;
 
-import net.casim.task.newsletter.model.Newsletter;
-import net.casim.task.newsletter.model.User;
-import net.casim.task.newsletter.repository.NewsletterRepository;
-import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.seed.SeedSpec;
+import net.casim.task.newsletter.seed.SyntheticDataGenerator;
+import net.casim.task.newsletter.shard.ShardRebalancer;
+import net.casim.task.newsletter.snapshot.IndexSnapshots;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDate;
+import java.time.Duration;
+import java.time.LocalDateTime;
 
+/**
+ * Seeds an empty database on startup with the {@code newsletter.seed.*} data set. The defaults are the five users
+ * and five newsletters to try the API with; load tests scale them up, e.g.
+ * {@code --newsletter.seed.users=2000000 --newsletter.seed.newsletters=5000 --newsletter.seed.subscriptions=20000000}.
+ * Runs before {@code ApplicationReadyEvent}, so the subscription index warms up from the seeded rows. An index
+ * snapshot left from another database is discarded when seeding. With sharding, the seed data is written to the
+ * default shard and then moved to the other shards.
+ */
 @Component
 public class DataLoader implements CommandLineRunner {
+    private static final Logger log = LoggerFactory.getLogger(DataLoader.class);
 
-    private final NewsletterRepository newsletterRepository;
-    private final UserRepository userRepository;
+    private final SyntheticDataGenerator generator;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<IndexSnapshots> indexSnapshots;
+    private final ObjectProvider<ShardRebalancer> shardRebalancer;
+    private final SeedSpec spec;
 
-    public DataLoader(NewsletterRepository newsletterRepository, UserRepository userRepository) {
-        this.newsletterRepository = newsletterRepository;
-        this.userRepository = userRepository;
+    public DataLoader(SyntheticDataGenerator generator,
+                      JdbcTemplate jdbcTemplate,
+                      ObjectProvider<IndexSnapshots> indexSnapshots,
+                      ObjectProvider<ShardRebalancer> shardRebalancer,
+                      @Value("${newsletter.seed.users:5}") int users,
+                      @Value("${newsletter.seed.newsletters:5}") int newsletters,
+                      @Value("${newsletter.seed.subscriptions:0}") long subscriptions,
+                      @Value("${newsletter.seed.zipf-exponent:1.0}") double zipfExponent,
+                      @Value("${newsletter.seed.spread:P365D}") Duration spread,
+                      @Value("${newsletter.seed.inactive-ratio:0}") double inactiveRatio,
+                      @Value("${newsletter.seed.random-seed:42}") long randomSeed,
+                      @Value("${newsletter.seed.threads:0}") int threads,
+                      @Value("${newsletter.seed.batch-size:10000}") int batchSize) {
+        this.generator = generator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.indexSnapshots = indexSnapshots;
+        this.shardRebalancer = shardRebalancer;
+        this.spec = SeedSpec.builder()
+                .users(users)
+                .newsletters(newsletters)
+                .subscriptions(subscriptions)
+                .zipfExponent(zipfExponent)
+                .from(LocalDateTime.now().minus(spread))
+                .spread(spread)
+                .inactiveRatio(inactiveRatio)
+                .randomSeed(randomSeed)
+                .threads(threads > 0 ? threads : Runtime.getRuntime().availableProcessors())
+                .batchSize(batchSize)
+                .build();
     }
 
     @Override
-    public void run(String... args) throws Exception {
-        for (int i = 0; i < 5; i++) {
-            Newsletter newsletter = createRandomNewsletter(i);
-            newsletterRepository.save(newsletter);
-
-            User user = createRandomUser(i);
-            userRepository.save(user);
-
+    public void run(String... args) {
+        Integer existingUsers = jdbcTemplate.queryForObject("select count(*) from (select 1 from users limit 1) existing", Integer.class);
+        if (existingUsers != null && existingUsers > 0) {
+            log.info("Skipping the seed data, the database already has users");
+            return;
         }
-    }
-
-    private Newsletter createRandomNewsletter(int i) {
-        Newsletter newsletter = new Newsletter();
-        newsletter.setTitle("Newsletter " + i);
-        newsletter.setContent("Content of Newsletter " + i);
-        newsletter.setPublicationDate(String.valueOf(LocalDate.now()));
-        return newsletter;
-    }
-
-    private User createRandomUser(int i) {
-        return User.builder().username("User" + i).build();
+        indexSnapshots.ifAvailable(IndexSnapshots::discard);
+        generator.generate(spec);
+        shardRebalancer.ifAvailable(ShardRebalancer::rebalance);
     }
 }
-
@@ -0,0 +1,38 @@
+package net.casim.task.newsletter.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.env.Environment;
+
+/**
+ * Connection pools for the extra databases of sharding and read replicas.
+ */
+final class DataSourcePools {
+
+    private DataSourcePools() {
+    }
+
+    /**
+     * A pool for the database configured under {@code prefix}: its {@code url}, and its {@code username} and
+     * {@code password}, which default to the {@code spring.datasource} ones.
+     */
+    static HikariDataSource pool(String name, String prefix, DataSourceProperties properties, Environment environment) {
+        return pool(name, DataSourceBuilder.create()
+                .url(environment.getRequiredProperty(prefix + "url"))
+                .username(environment.getProperty(prefix + "username", properties.determineUsername()))
+                .password(environment.getProperty(prefix + "password", properties.determinePassword())), environment);
+    }
+
+    /**
+     * Every pool gets the {@code spring.datasource.hikari} settings.
+     */
+    static HikariDataSource pool(String name, DataSourceBuilder<?> builder, Environment environment) {
+        HikariDataSource dataSource = builder.type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        dataSource.setPoolName(name);
+        return dataSource;
+    }
+}
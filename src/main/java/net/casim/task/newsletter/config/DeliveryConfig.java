@@ -0,0 +1,53 @@
+package net.casim.task.newsletter.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.delivery.DeliveryCheckpoints;
+import net.casim.task.newsletter.delivery.DeliveryPipeline;
+import net.casim.task.newsletter.delivery.LogFileNewsletterSender;
+import net.casim.task.newsletter.delivery.NewsletterSender;
+import net.casim.task.newsletter.repository.DeliveredBatchRepository;
+import net.casim.task.newsletter.repository.NewsletterDeliveryRepository;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Newsletter delivery: batches of {@code newsletter.delivery.batch-size} recipients are sent by
+ * {@code newsletter.delivery.workers} threads, each batch tried up to {@code newsletter.delivery.max-attempts} times.
+ * Without a {@link NewsletterSender} bean of its own, the application writes the recipients to files under
+ * {@code newsletter.delivery.directory}.
+ */
+@Configuration
+public class DeliveryConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(NewsletterSender.class)
+    public LogFileNewsletterSender logFileNewsletterSender(@Value("${newsletter.delivery.directory:data/deliveries}") Path directory) {
+        return new LogFileNewsletterSender(directory);
+    }
+
+    @Bean
+    public DeliveryCheckpoints deliveryCheckpoints(NewsletterDeliveryRepository deliveryRepository, DeliveredBatchRepository batchRepository) {
+        return new DeliveryCheckpoints(deliveryRepository, batchRepository);
+    }
+
+    @Bean
+    public DeliveryPipeline deliveryPipeline(DeliveryCheckpoints checkpoints, NewsletterDeliveryRepository deliveryRepository,
+                                             DeliveredBatchRepository batchRepository, NewsletterRepository newsletterRepository,
+                                             SubscriptionRepository subscriptionRepository, Shards shards, NewsletterSender sender,
+                                             MeterRegistry meterRegistry,
+                                             @Value("${newsletter.delivery.batch-size:1000}") int batchSize,
+                                             @Value("${newsletter.delivery.workers:8}") int workers,
+                                             @Value("${newsletter.delivery.max-attempts:3}") int maxAttempts,
+                                             @Value("${newsletter.delivery.retry-delay:1s}") Duration retryDelay) {
+        return new DeliveryPipeline(checkpoints, deliveryRepository, batchRepository, newsletterRepository, subscriptionRepository,
+                shards, sender, batchSize, workers, maxAttempts, retryDelay, meterRegistry);
+    }
+}
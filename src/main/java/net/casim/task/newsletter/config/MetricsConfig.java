@@ -0,0 +1,52 @@
+package net.casim.task.newsletter.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.metrics.RepositoryMetricsAspect;
+import net.casim.task.newsletter.metrics.SqlStatementCountFilter;
+import net.casim.task.newsletter.metrics.StatementCountingDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+
+/**
+ * Service timers ({@code @Timed}), repository timers and per-request SQL statement counts.
+ * Hibernate, HikariCP and HTTP metrics come from the actuator auto-configuration.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public RepositoryMetricsAspect repositoryMetricsAspect(MeterRegistry meterRegistry) {
+        return new RepositoryMetricsAspect(meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public FilterRegistrationBean<SqlStatementCountFilter> sqlStatementCountFilter(MeterRegistry meterRegistry) {
+        FilterRegistrationBean<SqlStatementCountFilter> registration = new FilterRegistrationBean<>(new SqlStatementCountFilter(meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return (bean instanceof DataSource && !(bean instanceof StatementCountingDataSource))
+                        ? new StatementCountingDataSource((DataSource) bean) : bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package net.casim.task.newsletter.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.outbox.LogFileSubscriptionChangeSink;
+import net.casim.task.newsletter.outbox.OutboxRelay;
+import net.casim.task.newsletter.outbox.SubscriptionChangeFeed;
+import net.casim.task.newsletter.outbox.SubscriptionChangeSink;
+import net.casim.task.newsletter.outbox.SubscriptionOutbox;
+import net.casim.task.newsletter.repository.SubscriptionChangeRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * The subscription change stream: changes are written to the outbox with the subscription, and published every
+ * {@code newsletter.outbox.relay-interval} in batches of up to {@code newsletter.outbox.batch-size}. Published
+ * changes are kept for {@code newsletter.outbox.retention} for consumers of {@code /subscriptions/changes}.
+ * Without a {@link SubscriptionChangeSink} bean of its own, the changes are only served from the outbox; with
+ * {@code newsletter.outbox.log-file.enabled} they are also appended to a rotated file under
+ * {@code newsletter.outbox.directory}.
+ */
+@Configuration
+public class OutboxConfig {
+    private static final Logger log = LoggerFactory.getLogger(OutboxConfig.class);
+
+    @Bean
+    @ConditionalOnMissingBean(SubscriptionChangeSink.class)
+    @ConditionalOnProperty(name = "newsletter.outbox.log-file.enabled", havingValue = "true")
+    public LogFileSubscriptionChangeSink logFileSubscriptionChangeSink(
+            @Value("${newsletter.outbox.directory:data/outbox}") Path directory,
+            @Value("${newsletter.outbox.log-file.max-size:64MB}") DataSize maxSize,
+            @Value("${newsletter.outbox.log-file.max-files:4}") int maxFiles) {
+        return new LogFileSubscriptionChangeSink(directory, maxSize.toBytes(), maxFiles);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(SubscriptionChangeSink.class)
+    public SubscriptionChangeSink feedOnlySubscriptionChangeSink() {
+        log.info("No SubscriptionChangeSink configured, subscription changes are only served from /subscriptions/changes");
+        return changes -> {
+        };
+    }
+
+    @Bean
+    public SubscriptionOutbox subscriptionOutbox(SubscriptionChangeRepository changeRepository) {
+        return new SubscriptionOutbox(changeRepository);
+    }
+
+    @Bean
+    public SubscriptionChangeFeed subscriptionChangeFeed(SubscriptionChangeRepository changeRepository, Shards shards) {
+        return new SubscriptionChangeFeed(changeRepository, shards);
+    }
+
+    @Bean
+    public OutboxRelay outboxRelay(SubscriptionChangeRepository changeRepository, SubscriptionChangeSink sink, SubscriptionChangeFeed feed,
+                                   Shards shards, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                   @Value("${newsletter.outbox.batch-size:500}") int batchSize,
+                                   @Value("${newsletter.outbox.retention:7d}") Duration retention) {
+        return new OutboxRelay(changeRepository, sink, feed, shards, transactionManager, batchSize, retention, meterRegistry);
+    }
+}
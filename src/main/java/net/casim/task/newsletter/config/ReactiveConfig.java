@@ -0,0 +1,58 @@
+package net.casim.task.newsletter.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.boot.autoconfigure.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.boot.autoconfigure.r2dbc.EmbeddedDatabaseConnection;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * R2DBC access for the {@code reactive} profile, which serves the API from WebFlux instead of Spring MVC.
+ * <p>
+ * The pool is built from {@code spring.r2dbc.*} but kept out of the context: Boot backs the JDBC DataSource off
+ * as soon as a {@link ConnectionFactory} bean exists, and JPA still owns the schema, the sample data and the
+ * membership index warm-up. Both must therefore point to the same database.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile(ReactiveConfig.PROFILE)
+@EnableConfigurationProperties(R2dbcProperties.class)
+public class ReactiveConfig {
+    public static final String PROFILE = "reactive";
+
+    private final ConnectionPool connectionPool;
+
+    public ReactiveConfig(R2dbcProperties properties) {
+        ConnectionFactory connectionFactory = ConnectionFactoryBuilder
+                .of(properties, () -> EmbeddedDatabaseConnection.NONE)
+                .build();
+
+        R2dbcProperties.Pool pool = properties.getPool();
+        ConnectionPoolConfiguration.Builder configuration = ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(pool.getInitialSize())
+                .maxSize(pool.getMaxSize())
+                .maxIdleTime(pool.getMaxIdleTime());
+        if (StringUtils.hasText(pool.getValidationQuery()))
+            configuration.validationQuery(pool.getValidationQuery());
+
+        this.connectionPool = new ConnectionPool(configuration.build());
+    }
+
+    @Bean
+    public DatabaseClient reactiveDatabaseClient() {
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @PreDestroy
+    public void closeConnectionPool() {
+        connectionPool.dispose();
+    }
+}
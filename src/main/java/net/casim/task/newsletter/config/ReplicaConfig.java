@@ -0,0 +1,69 @@
+package net.casim.task.newsletter.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.replica.ReplicaPool;
+import net.casim.task.newsletter.replica.ReplicaRoutingDataSource;
+import net.casim.task.newsletter.web.ReadYourWritesFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read replicas, enabled with {@code newsletter.replicas.enabled}.
+ * <p>
+ * {@code newsletter.replicas.names} names the replicas; each one is the database at
+ * {@code newsletter.replicas.datasources.<name>.url}, with the {@code spring.datasource} credentials unless it sets
+ * its own. Read-only transactions are balanced over the replicas that passed their last health check, run every
+ * {@code newsletter.replicas.health-check-interval} with a {@code newsletter.replicas.health-check-timeout}. A client
+ * reads from the primary for {@code newsletter.replicas.read-your-writes-window} after each write it sends;
+ * {@code PT0S} turns that off. Replicas cannot be combined with sharding.
+ */
+@Configuration
+@ConditionalOnProperty(name = "newsletter.replicas.enabled", havingValue = "true")
+public class ReplicaConfig {
+
+    @Bean
+    public ReplicaPool replicaPool(DataSourceProperties properties, Environment environment, MeterRegistry meterRegistry,
+                                   @Value("${newsletter.replicas.names}") List<String> names,
+                                   @Value("${newsletter.replicas.health-check-timeout:PT1S}") Duration timeout) {
+        if (environment.getProperty("newsletter.sharding.enabled", Boolean.class, false))
+            throw new IllegalStateException("Read replicas are not supported together with sharding");
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String name : names)
+            replicas.put(name, DataSourcePools.pool("replica-" + name, "newsletter.replicas.datasources." + name + ".", properties, environment));
+        return new ReplicaPool(replicas, (int) Math.max(1, timeout.toSeconds()), meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties, Environment environment,
+                                                             ReplicaPool replicaPool, MeterRegistry meterRegistry) {
+        return new ReplicaRoutingDataSource(DataSourcePools.pool("primary", properties.initializeDataSourceBuilder(), environment),
+                replicaPool, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            @Value("${newsletter.replicas.read-your-writes-window:PT5S}") Duration window) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(new ReadYourWritesFilter(window));
+        // right after the connection pool back-pressure
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        registration.setEnabled(!window.isZero());
+        return registration;
+    }
+}
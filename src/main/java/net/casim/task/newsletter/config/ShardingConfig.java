@@ -0,0 +1,89 @@
+package net.casim.task.newsletter.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import net.casim.task.newsletter.shard.CatalogReplicator;
+import net.casim.task.newsletter.shard.ShardRebalancer;
+import net.casim.task.newsletter.shard.ShardRing;
+import net.casim.task.newsletter.shard.ShardSchema;
+import net.casim.task.newsletter.shard.ShardedDataSource;
+import net.casim.task.newsletter.shard.Shards;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sharding of subscriptions by newsletter, enabled with {@code newsletter.sharding.enabled}.
+ * <p>
+ * {@code newsletter.sharding.shards} names the shards, the default one first. The default shard is the
+ * {@code spring.datasource} database and keeps every table that is not sharded; each other shard is the database
+ * at {@code newsletter.sharding.datasources.<name>.url}, with the {@code spring.datasource} credentials unless it
+ * sets its own, and is migrated from {@code newsletter.sharding.migrations} on startup. Newsletters are placed on
+ * a consistent-hash ring with {@code newsletter.sharding.virtual-nodes} points per shard; after adding a shard,
+ * start once with {@code newsletter.sharding.rebalance} to move the subscriptions that now belong to it.
+ * The reactive profile does not support sharding.
+ */
+@Configuration
+public class ShardingConfig {
+    private static final String ENABLED = "newsletter.sharding.enabled";
+
+    @Bean
+    @ConditionalOnProperty(name = ENABLED, havingValue = "false", matchIfMissing = true)
+    public Shards singleShard() {
+        return Shards.single();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public Shards shards(@Value("${newsletter.sharding.shards}") List<String> names,
+                         @Value("${newsletter.sharding.virtual-nodes:128}") int virtualNodes,
+                         PlatformTransactionManager transactionManager) {
+        return Shards.sharded(new ShardRing(names, virtualNodes), transactionManager);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public ShardedDataSource shardedDataSource(DataSourceProperties properties, Environment environment,
+                                               @Value("${newsletter.sharding.shards}") List<String> names,
+                                               @Value("${newsletter.sharding.migrations:classpath:db/migration/postgresql}") String[] migrations) {
+        if (environment.acceptsProfiles(Profiles.of(ReactiveConfig.PROFILE)))
+            throw new IllegalStateException("Sharding is not supported with the " + ReactiveConfig.PROFILE + " profile");
+
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        dataSources.put(names.get(0), DataSourcePools.pool("shard-" + names.get(0), properties.initializeDataSourceBuilder(), environment));
+        for (int index = 1; index < names.size(); index++) {
+            HikariDataSource shard = DataSourcePools.pool("shard-" + names.get(index),
+                    "newsletter.sharding.datasources." + names.get(index) + ".", properties, environment);
+            ShardSchema.prepare(shard, index, migrations);
+            dataSources.put(names.get(index), shard);
+        }
+        return new ShardedDataSource(dataSources);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public CatalogReplicator catalogReplicator(Shards shards, NamedParameterJdbcTemplate jdbcTemplate,
+                                               PlatformTransactionManager transactionManager) {
+        return new CatalogReplicator(shards, jdbcTemplate, transactionManager);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public ShardRebalancer shardRebalancer(Shards shards, CatalogReplicator catalogReplicator, NamedParameterJdbcTemplate jdbcTemplate,
+                                           PlatformTransactionManager transactionManager,
+                                           @Value("${newsletter.sharding.rebalance:false}") boolean rebalanceOnStartup) {
+        return new ShardRebalancer(shards, catalogReplicator, jdbcTemplate, transactionManager, rebalanceOnStartup);
+    }
+}
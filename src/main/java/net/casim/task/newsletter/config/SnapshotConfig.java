@@ -0,0 +1,35 @@
+package net.casim.task.newsletter.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import net.casim.task.newsletter.shard.Shards;
+import net.casim.task.newsletter.snapshot.IndexSnapshotFile;
+import net.casim.task.newsletter.snapshot.IndexSnapshots;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Snapshots of the subscription index, enabled with {@code newsletter.snapshot.enabled}. The snapshot is kept in
+ * {@code newsletter.snapshot.directory} and rewritten every {@code newsletter.snapshot.interval}; on startup the
+ * rows changed since it are replayed, starting {@code newsletter.snapshot.replay-overlap} before it was taken.
+ */
+@Configuration
+@ConditionalOnProperty(name = "newsletter.snapshot.enabled", havingValue = "true")
+public class SnapshotConfig {
+
+    @Bean
+    public IndexSnapshots indexSnapshots(SubscriptionIndex subscriptionIndex, SubscriptionRepository subscriptionRepository,
+                                         Shards shards, JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                                         @Value("${newsletter.snapshot.directory:data/snapshots}") Path directory,
+                                         @Value("${newsletter.snapshot.replay-overlap:1m}") Duration replayOverlap) {
+        return new IndexSnapshots(new IndexSnapshotFile(directory.resolve("subscription-index.snapshot")), subscriptionIndex,
+                subscriptionRepository, shards, jdbcTemplate, replayOverlap, meterRegistry);
+    }
+}
@@ -0,0 +1,158 @@
+package net.casim.task.newsletter.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import net.casim.task.newsletter.NewsletterApplication;
+import net.casim.task.newsletter.replica.ReadYourWrites;
+import net.casim.task.newsletter.replica.ReplicaRoutingDataSource;
+import net.casim.task.newsletter.shard.ShardedDataSource;
+import net.casim.task.newsletter.web.ConnectionPoolBackPressureFilter;
+import net.casim.task.newsletter.web.OffloadingHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.boot.jdbc.DataSourceUnwrapper;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Where blocking controller calls run, selected with {@code newsletter.web.execution-mode}:
+ * <ul>
+ *     <li>{@code platform} (default): on Tomcat's worker pool.</li>
+ *     <li>{@code virtual}: Tomcat hands every request to a new virtual thread. Needs JDK 21 or later at runtime.</li>
+ *     <li>{@code async}: Tomcat threads only accept and dispatch; handlers run on a bounded executor sized by
+ *     {@code newsletter.web.async.threads} and {@code newsletter.web.async.queue-capacity}, and requests over
+ *     that capacity get {@code 503}.</li>
+ * </ul>
+ * In every mode, requests are shed with {@code 503} while a Hikari pool has more than
+ * {@code newsletter.web.max-pending-connections} threads waiting for a connection; with sharding or read replicas
+ * each shard's and replica's pool counts.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class WebExecutionConfig {
+    private static final Logger log = LoggerFactory.getLogger(WebExecutionConfig.class);
+
+    private static final String EXECUTION_MODE = "newsletter.web.execution-mode";
+
+    private static final int HIKARI_DEFAULT_POOL_SIZE = 10;
+
+    @Bean
+    @ConditionalOnProperty(name = EXECUTION_MODE, havingValue = "virtual")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        Executor executor = newVirtualThreadPerTaskExecutor();
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = EXECUTION_MODE, havingValue = "async")
+    public ThreadPoolTaskExecutor blockingCallExecutor(@Value("${newsletter.web.async.threads:0}") int threads,
+                                                       @Value("${newsletter.web.async.queue-capacity:1000}") int queueCapacity,
+                                                       DataSource dataSource) {
+        int poolThreads = (threads > 0) ? threads : connectionPoolSize(dataSource);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("blocking-call-");
+        executor.setCorePoolSize(poolThreads);
+        executor.setMaxPoolSize(poolThreads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setTaskDecorator(ReadYourWrites::propagate);
+        return executor;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = EXECUTION_MODE, havingValue = "async")
+    public WebMvcRegistrations offloadingWebMvcRegistrations(ThreadPoolTaskExecutor blockingCallExecutor) {
+        int maxInFlight = blockingCallExecutor.getMaxPoolSize() + blockingCallExecutor.getThreadPoolExecutor().getQueue().remainingCapacity();
+        return new WebMvcRegistrations() {
+            @Override
+            public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+                return new OffloadingHandlerAdapter(NewsletterApplication.class.getPackage().getName(), blockingCallExecutor, maxInFlight);
+            }
+        };
+    }
+
+    /**
+     * With sharding or read replicas, a request is shed once any of the pools has too many threads waiting.
+     */
+    @Bean
+    public FilterRegistrationBean<ConnectionPoolBackPressureFilter> connectionPoolBackPressureFilter(
+            DataSource dataSource, @Value("${newsletter.web.max-pending-connections:0}") int maxPendingConnections) {
+        List<HikariDataSource> pools = hikariPools(dataSource);
+        int limit = (maxPendingConnections > 0) ? maxPendingConnections : 2 * connectionPoolSize(dataSource);
+        if (pools.isEmpty())
+            log.warn("No Hikari pool behind the {} DataSource, requests are not shed when connections run out",
+                    dataSource.getClass().getName());
+
+        FilterRegistrationBean<ConnectionPoolBackPressureFilter> registration = new FilterRegistrationBean<>(
+                new ConnectionPoolBackPressureFilter(() -> threadsAwaitingConnection(pools), limit));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        registration.setEnabled(!pools.isEmpty());
+        return registration;
+    }
+
+    private static int threadsAwaitingConnection(List<HikariDataSource> pools) {
+        int awaiting = 0;
+        for (HikariDataSource hikari : pools) {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            if (pool != null)
+                awaiting = Math.max(awaiting, pool.getThreadsAwaitingConnection());
+        }
+        return awaiting;
+    }
+
+    /**
+     * The size of the largest pool. Hikari only applies its default size when the pool starts, so an unset size
+     * reads as -1 before that.
+     */
+    private static int connectionPoolSize(DataSource dataSource) {
+        int size = 0;
+        for (HikariDataSource hikari : hikariPools(dataSource))
+            size = Math.max(size, (hikari.getMaximumPoolSize() > 0) ? hikari.getMaximumPoolSize() : HIKARI_DEFAULT_POOL_SIZE);
+        return (size > 0) ? size : HIKARI_DEFAULT_POOL_SIZE;
+    }
+
+    /**
+     * The Hikari pools connections are taken from, looking through the shard and replica routing.
+     */
+    private static List<HikariDataSource> hikariPools(DataSource dataSource) {
+        List<HikariDataSource> pools = new ArrayList<>();
+        ShardedDataSource sharded = DataSourceUnwrapper.unwrap(dataSource, ShardedDataSource.class);
+        ReplicaRoutingDataSource routing = DataSourceUnwrapper.unwrap(dataSource, ReplicaRoutingDataSource.class);
+        if (sharded != null) {
+            sharded.getShards().forEach(shard -> pools.addAll(hikariPools(shard)));
+        } else if (routing != null) {
+            routing.getTargets().forEach(target -> pools.addAll(hikariPools(target)));
+        } else {
+            HikariDataSource hikari = DataSourceUnwrapper.unwrap(dataSource, HikariDataSource.class);
+            if (hikari != null)
+                pools.add(hikari);
+        }
+        return pools;
+    }
+
+    /**
+     * Looked up reflectively so the build keeps targeting Java 11.
+     */
+    private static Executor newVirtualThreadPerTaskExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(EXECUTION_MODE + "=virtual needs a JDK with virtual threads (21 or later), running on "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.casim.task.newsletter.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import net.casim.task.newsletter.shard.Shards;
+import net.casim.task.newsletter.writebehind.Durability;
+import net.casim.task.newsletter.writebehind.SubscriptionLog;
+import net.casim.task.newsletter.writebehind.SubscriptionWriteBehind;
+import net.casim.task.newsletter.writebehind.WriteBehindBatchWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Write-behind mode of subscribe/unsubscribe calls, enabled with {@code newsletter.write-behind.enabled}.
+ * <p>
+ * Changes are acknowledged once they are durable in a local log under {@code newsletter.write-behind.directory}
+ * and drained to the database in batches of {@code newsletter.write-behind.batch-size}. With durability
+ * {@code request} every change forces the log to disk on its own; with {@code group} the changes arriving within
+ * {@code newsletter.write-behind.group-commit-interval} share one force.
+ */
+@Configuration
+@ConditionalOnProperty(name = "newsletter.write-behind.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class WriteBehindConfig {
+
+    @Bean
+    public SubscriptionLog subscriptionLog(
+            @Value("${newsletter.write-behind.directory:data/write-behind}") Path directory,
+            @Value("${newsletter.write-behind.durability:group}") Durability durability,
+            @Value("${newsletter.write-behind.group-commit-interval:2ms}") Duration groupCommitInterval,
+            @Value("${newsletter.write-behind.segment-size:64MB}") DataSize segmentSize) {
+        return new SubscriptionLog(directory, durability, groupCommitInterval, segmentSize.toBytes());
+    }
+
+    @Bean
+    public WriteBehindBatchWriter writeBehindBatchWriter(SubscriptionRepository subscriptionRepository,
+                                                         ApplicationEventPublisher eventPublisher, Shards shards,
+                                                         PlatformTransactionManager transactionManager) {
+        return new WriteBehindBatchWriter(subscriptionRepository, eventPublisher, shards, transactionManager);
+    }
+
+    @Bean
+    public SubscriptionWriteBehind subscriptionWriteBehind(SubscriptionLog subscriptionLog, WriteBehindBatchWriter batchWriter,
+                                                           SubscriptionIndex subscriptionIndex, MeterRegistry meterRegistry,
+                                                           @Value("${newsletter.write-behind.batch-size:1000}") int batchSize) {
+        return new SubscriptionWriteBehind(subscriptionLog, batchWriter, subscriptionIndex, batchSize, meterRegistry);
+    }
+}
@@ -0,0 +1,62 @@
+package net.casim.task.newsletter.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import javassist.NotFoundException;
+import net.casim.task.newsletter.config.ReactiveConfig;
+import net.casim.task.newsletter.delivery.DeliveryPipeline;
+import net.casim.task.newsletter.model.dto.DeliveryDTO;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@Profile("!" + ReactiveConfig.PROFILE)
+@RequestMapping("/deliveries")
+public class DeliveryController {
+
+    private final DeliveryPipeline deliveryPipeline;
+
+    public DeliveryController(DeliveryPipeline deliveryPipeline) {
+        this.deliveryPipeline = deliveryPipeline;
+    }
+
+    @PostMapping("/newsletter/{newsletterId}")
+    @Operation(summary = "Deliver a Newsletter", description = "Start sending a newsletter to everyone subscribed to it now; " +
+            "the delivery runs in the background and is polled with its deliveryId.")
+    @ApiResponse(responseCode = "202", description = "Delivery started")
+    @ApiResponse(responseCode = "404", description = "Newsletter not found")
+    public ResponseEntity<DeliveryDTO> deliver(@PathVariable Long newsletterId) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(deliveryPipeline.deliver(newsletterId));
+        } catch (NotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    @GetMapping("/{deliveryId}")
+    @Operation(summary = "Get Delivery Progress", description = "Get the status, checkpoint and sending rate of a delivery.")
+    @ApiResponse(responseCode = "200", description = "Returns the delivery")
+    @ApiResponse(responseCode = "404", description = "Delivery not found")
+    public ResponseEntity<DeliveryDTO> getDelivery(@PathVariable Long deliveryId) {
+        try {
+            return ResponseEntity.ok(deliveryPipeline.getDelivery(deliveryId));
+        } catch (NotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    @PostMapping("/{deliveryId}/resume")
+    @Operation(summary = "Resume a Delivery", description = "Restart a failed delivery from its checkpoint, " +
+            "without sending to the recipients of batches that were already sent.")
+    @ApiResponse(responseCode = "202", description = "Delivery resumed, or already running or completed")
+    @ApiResponse(responseCode = "404", description = "Delivery not found")
+    public ResponseEntity<DeliveryDTO> resume(@PathVariable Long deliveryId) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(deliveryPipeline.resume(deliveryId));
+        } catch (NotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package net.casim.task.newsletter.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import net.casim.task.newsletter.config.ReactiveConfig;
+import net.casim.task.newsletter.model.dto.SearchHitDTO;
+import net.casim.task.newsletter.search.SearchIndex;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The {@link SearchController} API served from WebFlux in the {@code reactive} profile. Searches only touch the
+ * in-memory index, so they are answered on the event loop.
+ */
+@RestController
+@Profile(ReactiveConfig.PROFILE)
+@RequestMapping("/search")
+public class ReactiveSearchController {
+    private final SearchIndex searchIndex;
+
+    public ReactiveSearchController(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    @GetMapping("/newsletters")
+    @Operation(summary = "Search Newsletters", description = "Find newsletters whose title or content contains every word of q. " +
+            "With prefix=true (the default) the last word may be incomplete, for typeahead.")
+    @ApiResponse(responseCode = "200", description = "Returns the id and title of up to limit matches")
+    @ApiResponse(responseCode = "400", description = "limit is not between 1 and 100")
+    @ApiResponse(responseCode = "503", description = "The search index is still being built")
+    public Mono<ResponseEntity<List<SearchHitDTO>>> searchNewsletters(@RequestParam String q,
+                                                                      @RequestParam(defaultValue = "true") boolean prefix,
+                                                                      @RequestParam(defaultValue = SearchController.DEFAULT_LIMIT) int limit) {
+        return search(() -> searchIndex.searchNewsletters(q, prefix, limit));
+    }
+
+    @GetMapping("/users")
+    @Operation(summary = "Search Users", description = "Find users whose username contains every word of q. " +
+            "With prefix=true (the default) the last word may be incomplete, for typeahead.")
+    @ApiResponse(responseCode = "200", description = "Returns the id and username of up to limit matches")
+    @ApiResponse(responseCode = "400", description = "limit is not between 1 and 100")
+    @ApiResponse(responseCode = "503", description = "The search index is still being built")
+    public Mono<ResponseEntity<List<SearchHitDTO>>> searchUsers(@RequestParam String q,
+                                                                @RequestParam(defaultValue = "true") boolean prefix,
+                                                                @RequestParam(defaultValue = SearchController.DEFAULT_LIMIT) int limit) {
+        return search(() -> searchIndex.searchUsers(q, prefix, limit));
+    }
+
+    private Mono<ResponseEntity<List<SearchHitDTO>>> search(Supplier<List<SearchHitDTO>> search) {
+        if (!searchIndex.isReady())
+            return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        return Mono.fromSupplier(search)
+                .map(ResponseEntity::ok)
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+}
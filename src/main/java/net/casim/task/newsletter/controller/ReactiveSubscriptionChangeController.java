@@ -0,0 +1,42 @@
+package net.casim.task.newsletter.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import net.casim.task.newsletter.config.ReactiveConfig;
+import net.casim.task.newsletter.model.dto.SubscriptionChangePageDTO;
+import net.casim.task.newsletter.outbox.SubscriptionChangeFeed;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * The {@link SubscriptionChangeController} API served from WebFlux in the {@code reactive} profile. The outbox is
+ * read over JPA, so the first read happens on the bounded elastic scheduler; the wait itself holds no thread.
+ */
+@RestController
+@Profile(ReactiveConfig.PROFILE)
+@RequestMapping("/subscriptions/changes")
+public class ReactiveSubscriptionChangeController {
+    private final SubscriptionChangeFeed changeFeed;
+
+    public ReactiveSubscriptionChangeController(SubscriptionChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    @GetMapping
+    @Operation(summary = "Poll Subscription Changes", description = SubscriptionChangeController.DESCRIPTION)
+    @ApiResponse(responseCode = "200", description = "Returns up to limit changes and the position to resume after; no changes if the wait timed out")
+    @ApiResponse(responseCode = "400", description = "limit is not between 1 and 1000, or wait is not between 0 and 30")
+    public Mono<ResponseEntity<SubscriptionChangePageDTO>> getChanges(@RequestParam(defaultValue = "0") long after,
+                                                                      @RequestParam(defaultValue = "100") int limit,
+                                                                      @RequestParam(defaultValue = "0") int wait) {
+        return Mono.defer(() -> Mono.fromFuture(changeFeed.poll(after, limit, Duration.ofSeconds(wait))))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(ResponseEntity::ok)
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+}
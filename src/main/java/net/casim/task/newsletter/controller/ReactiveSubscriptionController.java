@@ -0,0 +1,254 @@
+package net.casim.task.newsletter.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import javassist.NotFoundException;
+import net.casim.task.newsletter.config.ReactiveConfig;
+import net.casim.task.newsletter.model.*;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.model.dto.NewsletterStatsDTO;
+import net.casim.task.newsletter.model.dto.SubscriberPageDTO;
+import net.casim.task.newsletter.model.dto.UserDTO;
+import net.casim.task.newsletter.service.ReactiveSubscriptionService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link SubscriptionController} API served from WebFlux in the {@code reactive} profile. Subscriber lists
+ * are streamed as they are read; ask for {@code application/stream+json} to receive one JSON object per line
+ * instead of a single array.
+ */
+@RestController
+@Profile(ReactiveConfig.PROFILE)
+@RequestMapping("/subscriptions")
+public class ReactiveSubscriptionController {
+    private final ReactiveSubscriptionService subscriptionService;
+
+    public ReactiveSubscriptionController(ReactiveSubscriptionService subscriptionService) {
+        this.subscriptionService = subscriptionService;
+    }
+
+    @PostMapping("/subscribe")
+    @Operation(summary = "Subscribe to a Newsletter", description = "Subscribe to a newsletter with the given userId and newsletterId.")
+    @ApiResponse(responseCode = "201", description = "Subscription successful")
+    @ApiResponse(responseCode = "400", description = "User is already subscribed or Subscription failed")
+    @ApiResponse(responseCode = "404", description = "User or Newsletter not found")
+    public Mono<ResponseEntity<SubscriptionResponse>> subscribe(@RequestBody SubscribeRequest subscribeRequest) {
+        return subscriptionService.subscribe(subscribeRequest)
+                .map(changed -> changed
+                        ? ResponseEntity.status(HttpStatus.CREATED).body(new SubscriptionResponse("Subscription successful"))
+                        : ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new SubscriptionResponse("User is already subscribed")))
+                .onErrorResume(NotFoundException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new SubscriptionResponse("Subscription failed: " + e.getMessage()))));
+    }
+
+    @PostMapping("/unsubscribe")
+    @Operation(summary = "Unsubscribe from a Newsletter", description = "Unsubscribe from a newsletter with the given userId and newsletterId.")
+    @ApiResponse(responseCode = "200", description = "Unsubscription successful")
+    @ApiResponse(responseCode = "400", description = "User is not subscribed or Unsubscription failed")
+    @ApiResponse(responseCode = "404", description = "User or Newsletter not found")
+    public Mono<ResponseEntity<SubscriptionResponse>> unsubscribe(@RequestBody SubscribeRequest subscribeRequest) {
+        return subscriptionService.unsubscribe(subscribeRequest)
+                .map(changed -> changed
+                        ? ResponseEntity.status(HttpStatus.OK).body(new SubscriptionResponse("Unsubscription successful"))
+                        : ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new SubscriptionResponse("User is not subscribed")))
+                .onErrorResume(NotFoundException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(new SubscriptionResponse("Unsubscription failed: " + e.getMessage()))));
+    }
+
+    @PostMapping("/bulk/subscribe")
+    @Operation(summary = "Bulk Subscribe", description = "Subscribe many (userId, newsletterId) pairs in one call.")
+    @ApiResponse(responseCode = "200", description = "Returns the outcome of every pair, in request order")
+    public Flux<BulkSubscriptionResult> subscribeAll(@RequestBody List<SubscribeRequest> subscribeRequests) {
+        return subscriptionService.subscribeAll(subscribeRequests);
+    }
+
+    @PostMapping("/bulk/unsubscribe")
+    @Operation(summary = "Bulk Unsubscribe", description = "Unsubscribe many (userId, newsletterId) pairs in one call.")
+    @ApiResponse(responseCode = "200", description = "Returns the outcome of every pair, in request order")
+    public Flux<BulkSubscriptionResult> unsubscribeAll(@RequestBody List<SubscribeRequest> subscribeRequests) {
+        return subscriptionService.unsubscribeAll(subscribeRequests);
+    }
+
+    @GetMapping("/checkSubscription")
+    @Operation(summary = "Check Subscription", description = "Check if a user is subscribed to a newsletter.")
+    @ApiResponse(responseCode = "200", description = "Returns true if subscribed, false otherwise")
+    public Mono<Boolean> checkSubscription(@RequestParam Long newsletterId, @RequestParam Long userId) {
+        return subscriptionService.checkSubscription(newsletterId, userId);
+    }
+
+    @GetMapping("/user/{userId}/checkSubscriptions")
+    @Operation(summary = "Check Subscriptions of a User", description = "Check in one call whether a user is subscribed to each of " +
+            "up to 1000 newsletters, e.g. newsletterIds=1,2,3.")
+    @ApiResponse(responseCode = "200", description = "Returns true or false per newsletterId, in request order")
+    @ApiResponse(responseCode = "400", description = "More than 1000 newsletterIds")
+    public Mono<ResponseEntity<Map<Long, Boolean>>> checkSubscriptions(@PathVariable Long userId, @RequestParam List<Long> newsletterIds) {
+        return subscriptionService.checkSubscriptions(userId, newsletterIds)
+                .map(ResponseEntity::ok)
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @GetMapping("/newsletter/{newsletterId}/checkSubscribers")
+    @Operation(summary = "Check Subscribers of a Newsletter", description = "Check in one call whether each of up to 1000 users " +
+            "is subscribed to a newsletter, e.g. userIds=1,2,3.")
+    @ApiResponse(responseCode = "200", description = "Returns true or false per userId, in request order")
+    @ApiResponse(responseCode = "400", description = "More than 1000 userIds")
+    public Mono<ResponseEntity<Map<Long, Boolean>>> checkSubscribers(@PathVariable Long newsletterId, @RequestParam List<Long> userIds) {
+        return subscriptionService.checkSubscribers(newsletterId, userIds)
+                .map(ResponseEntity::ok)
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @GetMapping("/subscribersBeforeDate")
+    @Operation(summary = "Get Subscribers Before Date", description = "Get subscribers for a newsletter before a specific date. " +
+            "Pass size (1 to 1000), then the X-Next-Cursor response header as cursor, to page through them; 'fields' selects the optional parts of each subscriber.")
+    @ApiResponse(responseCode = "200", description = "Returns a list of subscribers")
+    public Flux<UserDTO> getSubscribersBeforeDate(
+            @RequestParam Long newsletterId, @RequestParam String date,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields,
+            ServerHttpResponse response) {
+        ResponseFields responseFields = ResponseFields.parse(fields);
+        if (cursor == null && size == null)
+            return subscriptionService.getSubscribersBeforeDate(newsletterId, date, responseFields);
+
+        return subscriptionService.getSubscribersPage(newsletterId, null, date, cursor, SubscriptionController.pageSize(size), responseFields)
+                .flatMapMany(page -> withNextCursor(response, page.getSubscribers(), page.getNextCursor()));
+    }
+
+    @GetMapping("/subscribersAfterDate")
+    @Operation(summary = "Get Subscribers After Date", description = "Get subscribers for a newsletter after a specific date. " +
+            "Pass size (1 to 1000), then the X-Next-Cursor response header as cursor, to page through them; 'fields' selects the optional parts of each subscriber.")
+    @ApiResponse(responseCode = "200", description = "Returns a list of subscribers")
+    public Flux<UserDTO> getSubscribersAfterDate(
+            @RequestParam Long newsletterId, @RequestParam String date,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields,
+            ServerHttpResponse response) {
+        ResponseFields responseFields = ResponseFields.parse(fields);
+        if (cursor == null && size == null)
+            return subscriptionService.getSubscribersAfterDate(newsletterId, date, responseFields);
+
+        return subscriptionService.getSubscribersPage(newsletterId, date, null, cursor, SubscriptionController.pageSize(size), responseFields)
+                .flatMapMany(page -> withNextCursor(response, page.getSubscribers(), page.getNextCursor()));
+    }
+
+    @GetMapping("/subscribers")
+    @Operation(summary = "Get Subscribers Page", description = "Get a page of subscribers for a newsletter, optionally bounded by creation date. " +
+            "Pass size (1 to 1000, default 100), then the returned nextCursor to fetch the following page.")
+    @ApiResponse(responseCode = "200", description = "Returns a page of subscribers and the cursor of the next page")
+    public Mono<SubscriberPageDTO> getSubscribersPage(
+            @RequestParam Long newsletterId,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields) {
+        return subscriptionService.getSubscribersPage(newsletterId, after, before, cursor, SubscriptionController.pageSize(size),
+                ResponseFields.parse(fields));
+    }
+
+    @GetMapping("/newsletters")
+    @Operation(summary = "Get All Newsletters", description = "Get a list of all newsletters. " +
+            "Pass size (1 to 1000), then the X-Next-Cursor response header as cursor, to page through them; " +
+            "'fields' selects the optional parts, e.g. fields=title leaves out content and subscribedUsernames. " +
+            "The full list carries an ETag; send it back in If-None-Match to get 304 while nothing changed.")
+    @ApiResponse(responseCode = "200", description = "Returns a list of newsletters")
+    @ApiResponse(responseCode = "304", description = "The list did not change since the given ETag")
+    public Mono<ResponseEntity<Flux<NewsletterDTO>>> getAllNewsletters(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields) {
+        ResponseFields responseFields = ResponseFields.parse(fields);
+        if (cursor == null && size == null) {
+            // the body is only subscribed to once the ETag did not match If-None-Match
+            return subscriptionService.getAllNewslettersETag(responseFields)
+                    .map(eTag -> ResponseEntity.ok().eTag(eTag).body(subscriptionService.getAllNewsletters(responseFields)));
+        }
+
+        return subscriptionService.getNewslettersPage(cursor, SubscriptionController.pageSize(size), responseFields)
+                .map(page -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (page.getNextCursor() != null)
+                        response.header(SubscriptionController.NEXT_CURSOR_HEADER, page.getNextCursor());
+                    return response.body(Flux.fromIterable(page.getNewsletters()));
+                });
+    }
+
+    @GetMapping("/newsletter/{newsletterId}")
+    @Operation(summary = "Get Newsletter with Subscribers", description = "Get a specific newsletter with its subscribers. " +
+            "The response carries an ETag; send it back in If-None-Match to get 304 while nothing changed.")
+    @ApiResponse(responseCode = "200", description = "Returns the newsletter with subscribers")
+    @ApiResponse(responseCode = "304", description = "The newsletter did not change since the given ETag")
+    @ApiResponse(responseCode = "404", description = "Newsletter not found")
+    public Mono<ResponseEntity<NewsletterDTO>> getNewsletterWithSubscribers(@PathVariable Long newsletterId, ServerWebExchange exchange) {
+        // a newsletter that is gone or lost its subscribers is 404, whatever the client's tag
+        return subscriptionService.getNewsletterWithSubscribers(newsletterId)
+                .flatMap(newsletter -> subscriptionService.getNewsletterETag(newsletterId)
+                        .map(eTag -> exchange.checkNotModified(eTag)
+                                ? ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).<NewsletterDTO>build()
+                                : ResponseEntity.ok().eTag(eTag).body(newsletter)))
+                .onErrorResume(NotFoundException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build()));
+    }
+
+    @GetMapping("/newsletter/{newsletterId}/subscribers/export")
+    @Operation(summary = "Export Newsletter Subscribers", description = "Stream every active subscriber of a newsletter as NDJSON or CSV. " +
+            "Pass a date-time or the cursor of the last received row as 'since' to resume.")
+    @ApiResponse(responseCode = "200", description = "Streams one row per subscriber")
+    public ResponseEntity<Flux<String>> exportSubscribers(
+            @PathVariable Long newsletterId,
+            @RequestParam(required = false) String since,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        Flux<String> rows = subscriptionService.exportSubscribers(newsletterId, since, exportFormat)
+                .map(row -> row + '\n');
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .body(rows);
+    }
+
+    @GetMapping("/newsletter/{newsletterId}/stats")
+    @Operation(summary = "Get Newsletter Statistics", description = "Get the active subscriber count of a newsletter and its subscribes, " +
+            "unsubscribes and churn rate for each of the last 'days' days (at most 366), most recent first.")
+    @ApiResponse(responseCode = "200", description = "Returns the newsletter statistics")
+    @ApiResponse(responseCode = "404", description = "Newsletter not found")
+    public Mono<ResponseEntity<NewsletterStatsDTO>> getNewsletterStats(@PathVariable Long newsletterId,
+                                                                       @RequestParam(defaultValue = "30") int days) {
+        return subscriptionService.getNewsletterStats(newsletterId, days)
+                .map(ResponseEntity::ok)
+                .onErrorResume(NotFoundException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build()));
+    }
+
+    @GetMapping("/user/{userId}")
+    @Operation(summary = "Get User Details", description = "Get details of a specific user; 'fields' selects the optional parts, " +
+            "e.g. fields=subscribedNewsletters includes the subscribed newsletters without their content and subscribers.")
+    @ApiResponse(responseCode = "200", description = "Returns user details")
+    @ApiResponse(responseCode = "404", description = "User not found")
+    public Mono<ResponseEntity<UserDTO>> getUser(@PathVariable Long userId, @RequestParam(required = false) String fields) {
+        return subscriptionService.getUser(userId, ResponseFields.parse(fields))
+                .map(ResponseEntity::ok)
+                .onErrorResume(NotFoundException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build()));
+    }
+
+    /**
+     * The header is set before the first element is written, so a page keeps the plain array body of the unpaged call.
+     */
+    private static <T> Flux<T> withNextCursor(ServerHttpResponse response, List<T> items, String nextCursor) {
+        if (nextCursor != null)
+            response.getHeaders().set(SubscriptionController.NEXT_CURSOR_HEADER, nextCursor);
+        return Flux.fromIterable(items);
+    }
+}
@@ -0,0 +1,62 @@
+package net.casim.task.newsletter.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import net.casim.task.newsletter.config.ReactiveConfig;
+import net.casim.task.newsletter.model.dto.SearchHitDTO;
+import net.casim.task.newsletter.search.SearchIndex;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@Profile("!" + ReactiveConfig.PROFILE)
+@RequestMapping("/search")
+public class SearchController {
+    static final String DEFAULT_LIMIT = "20";
+
+    private final SearchIndex searchIndex;
+
+    public SearchController(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    @GetMapping("/newsletters")
+    @Operation(summary = "Search Newsletters", description = "Find newsletters whose title or content contains every word of q. " +
+            "With prefix=true (the default) the last word may be incomplete, for typeahead.")
+    @ApiResponse(responseCode = "200", description = "Returns the id and title of up to limit matches")
+    @ApiResponse(responseCode = "400", description = "limit is not between 1 and 100")
+    @ApiResponse(responseCode = "503", description = "The search index is still being built")
+    public ResponseEntity<List<SearchHitDTO>> searchNewsletters(@RequestParam String q,
+                                                                @RequestParam(defaultValue = "true") boolean prefix,
+                                                                @RequestParam(defaultValue = DEFAULT_LIMIT) int limit) {
+        if (!searchIndex.isReady())
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        try {
+            return ResponseEntity.ok(searchIndex.searchNewsletters(q, prefix, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/users")
+    @Operation(summary = "Search Users", description = "Find users whose username contains every word of q. " +
+            "With prefix=true (the default) the last word may be incomplete, for typeahead.")
+    @ApiResponse(responseCode = "200", description = "Returns the id and username of up to limit matches")
+    @ApiResponse(responseCode = "400", description = "limit is not between 1 and 100")
+    @ApiResponse(responseCode = "503", description = "The search index is still being built")
+    public ResponseEntity<List<SearchHitDTO>> searchUsers(@RequestParam String q,
+                                                          @RequestParam(defaultValue = "true") boolean prefix,
+                                                          @RequestParam(defaultValue = DEFAULT_LIMIT) int limit) {
+        if (!searchIndex.isReady())
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        try {
+            return ResponseEntity.ok(searchIndex.searchUsers(q, prefix, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
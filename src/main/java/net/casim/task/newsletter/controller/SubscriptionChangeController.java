@@ -0,0 +1,42 @@
+package net.casim.task.newsletter.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import net.casim.task.newsletter.config.ReactiveConfig;
+import net.casim.task.newsletter.model.dto.SubscriptionChangePageDTO;
+import net.casim.task.newsletter.outbox.SubscriptionChangeFeed;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@Profile("!" + ReactiveConfig.PROFILE)
+@RequestMapping("/subscriptions/changes")
+public class SubscriptionChangeController {
+    static final String DESCRIPTION = "Read subscription changes in stream order, starting after position after " +
+            "(0 for the beginning of the retained stream). When there is none yet, the request waits up to wait seconds " +
+            "for one; resume with the returned nextAfter.";
+
+    private final SubscriptionChangeFeed changeFeed;
+
+    public SubscriptionChangeController(SubscriptionChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    @GetMapping
+    @Operation(summary = "Poll Subscription Changes", description = DESCRIPTION)
+    @ApiResponse(responseCode = "200", description = "Returns up to limit changes and the position to resume after; no changes if the wait timed out")
+    @ApiResponse(responseCode = "400", description = "limit is not between 1 and 1000, or wait is not between 0 and 30")
+    public CompletableFuture<ResponseEntity<SubscriptionChangePageDTO>> getChanges(@RequestParam(defaultValue = "0") long after,
+                                                                                   @RequestParam(defaultValue = "100") int limit,
+                                                                                   @RequestParam(defaultValue = "0") int wait) {
+        try {
+            return changeFeed.poll(after, limit, Duration.ofSeconds(wait)).thenApply(ResponseEntity::ok);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+    }
+}
@@ -3,22 +3,44 @@ package net.casim.task.newsletter.controller;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import javassist.NotFoundException;
+import net.casim.task.newsletter.config.ReactiveConfig;
 import net.casim.task.newsletter.model.*;
 import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.model.dto.NewsletterPageDTO;
+import net.casim.task.newsletter.model.dto.NewsletterStatsDTO;
+import net.casim.task.newsletter.model.dto.SubscriberPageDTO;
 import net.casim.task.newsletter.model.dto.UserDTO;
 import net.casim.task.newsletter.service.SubscriptionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @RestController
+@Profile("!" + ReactiveConfig.PROFILE)
 @RequestMapping("/subscriptions")
 public class SubscriptionController {
+    /**
+     * Carries the cursor of the next page on list endpoints that return a plain JSON array; absent on the last page.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Larger page sizes are capped to this.
+     */
+    static final int MAX_PAGE_SIZE = 1000;
+
     private final SubscriptionService subscriptionService;
 
     @Autowired
@@ -33,12 +55,11 @@ public class SubscriptionController {
     @ApiResponse(responseCode = "404", description = "User or Newsletter not found")
     public ResponseEntity<SubscriptionResponse> subscribe(@RequestBody SubscribeRequest subscribeRequest) {
         try {
-            if (subscriptionService.checkSubscription(subscribeRequest.getNewsletterId(), subscribeRequest.getUserId())) {
+            if (!subscriptionService.subscribe(subscribeRequest)) {
                 SubscriptionResponse response = new SubscriptionResponse("User is already subscribed");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
             }
 
-            subscriptionService.subscribe(subscribeRequest);
             SubscriptionResponse response = new SubscriptionResponse("Subscription successful");
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
         } catch (NotFoundException e) {
@@ -55,12 +76,11 @@ public class SubscriptionController {
     @ApiResponse(responseCode = "404", description = "User or Newsletter not found")
     public ResponseEntity<SubscriptionResponse> unsubscribe(@RequestBody SubscribeRequest subscribeRequest) {
         try {
-            if (!subscriptionService.checkSubscription(subscribeRequest.getNewsletterId(), subscribeRequest.getUserId())) {
+            if (!subscriptionService.unsubscribe(subscribeRequest)) {
                 SubscriptionResponse response = new SubscriptionResponse("User is not subscribed");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
             }
 
-            subscriptionService.unsubscribe(subscribeRequest);
             SubscriptionResponse response = new SubscriptionResponse("Unsubscription successful");
             return ResponseEntity.status(HttpStatus.OK).body(response);
         } catch (NotFoundException e) {
@@ -69,6 +89,22 @@ public class SubscriptionController {
         }
     }
 
+    @PostMapping("/bulk/subscribe")
+    @Operation(summary = "Bulk Subscribe", description = "Subscribe many (userId, newsletterId) pairs in one call.")
+    @ApiResponse(responseCode = "200", description = "Returns the outcome of every pair, in request order")
+    public ResponseEntity<List<BulkSubscriptionResult>> subscribeAll(@RequestBody List<SubscribeRequest> subscribeRequests) {
+        List<BulkSubscriptionResult> results = subscriptionService.subscribeAll(subscribeRequests);
+        return ResponseEntity.ok(results);
+    }
+
+    @PostMapping("/bulk/unsubscribe")
+    @Operation(summary = "Bulk Unsubscribe", description = "Unsubscribe many (userId, newsletterId) pairs in one call.")
+    @ApiResponse(responseCode = "200", description = "Returns the outcome of every pair, in request order")
+    public ResponseEntity<List<BulkSubscriptionResult>> unsubscribeAll(@RequestBody List<SubscribeRequest> subscribeRequests) {
+        List<BulkSubscriptionResult> results = subscriptionService.unsubscribeAll(subscribeRequests);
+        return ResponseEntity.ok(results);
+    }
+
     @GetMapping("/checkSubscription")
     @Operation(summary = "Check Subscription", description = "Check if a user is subscribed to a newsletter.")
     @ApiResponse(responseCode = "200", description = "Returns true if subscribed, false otherwise")
@@ -77,69 +113,190 @@ public class SubscriptionController {
         return ResponseEntity.ok(isSubscribed);
     }
 
+    @GetMapping("/user/{userId}/checkSubscriptions")
+    @Operation(summary = "Check Subscriptions of a User", description = "Check in one call whether a user is subscribed to each of " +
+            "up to 1000 newsletters, e.g. newsletterIds=1,2,3.")
+    @ApiResponse(responseCode = "200", description = "Returns true or false per newsletterId, in request order")
+    @ApiResponse(responseCode = "400", description = "More than 1000 newsletterIds")
+    public ResponseEntity<Map<Long, Boolean>> checkSubscriptions(@PathVariable Long userId, @RequestParam List<Long> newsletterIds) {
+        try {
+            return ResponseEntity.ok(subscriptionService.checkSubscriptions(userId, newsletterIds));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/newsletter/{newsletterId}/checkSubscribers")
+    @Operation(summary = "Check Subscribers of a Newsletter", description = "Check in one call whether each of up to 1000 users " +
+            "is subscribed to a newsletter, e.g. userIds=1,2,3.")
+    @ApiResponse(responseCode = "200", description = "Returns true or false per userId, in request order")
+    @ApiResponse(responseCode = "400", description = "More than 1000 userIds")
+    public ResponseEntity<Map<Long, Boolean>> checkSubscribers(@PathVariable Long newsletterId, @RequestParam List<Long> userIds) {
+        try {
+            return ResponseEntity.ok(subscriptionService.checkSubscribers(newsletterId, userIds));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/subscribersBeforeDate")
-    @Operation(summary = "Get Subscribers Before Date", description = "Get subscribers for a newsletter before a specific date.")
+    @Operation(summary = "Get Subscribers Before Date", description = "Get subscribers for a newsletter before a specific date. " +
+            "Pass size (1 to 1000), then the X-Next-Cursor response header as cursor, to page through them; 'fields' selects the optional parts of each subscriber.")
     @ApiResponse(responseCode = "200", description = "Returns a list of subscribers")
     public ResponseEntity<List<UserDTO>> getSubscribersBeforeDate(
-            @RequestParam Long newsletterId, @RequestParam String date) {
-        List<UserDTO> subscribers = subscriptionService.getSubscribersBeforeDate(newsletterId, date);
+            @RequestParam Long newsletterId, @RequestParam String date,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields) {
+        ResponseFields responseFields = ResponseFields.parse(fields);
+        if (cursor == null && size == null)
+            return ResponseEntity.ok(subscriptionService.getSubscribersBeforeDate(newsletterId, date, responseFields));
 
-        return ResponseEntity.ok(subscribers);
+        SubscriberPageDTO page = subscriptionService.getSubscribersPage(newsletterId, null, date, cursor, pageSize(size), responseFields);
+        return withNextCursor(page.getSubscribers(), page.getNextCursor());
     }
 
 
     @GetMapping("/subscribersAfterDate")
-    @Operation(summary = "Get Subscribers After Date", description = "Get subscribers for a newsletter after a specific date.")
+    @Operation(summary = "Get Subscribers After Date", description = "Get subscribers for a newsletter after a specific date. " +
+            "Pass size (1 to 1000), then the X-Next-Cursor response header as cursor, to page through them; 'fields' selects the optional parts of each subscriber.")
     @ApiResponse(responseCode = "200", description = "Returns a list of subscribers")
     public ResponseEntity<List<UserDTO>> getSubscribersAfterDate(
-            @RequestParam Long newsletterId, @RequestParam String date) {
-        List<UserDTO> subscribers = subscriptionService.getSubscribersAfterDate(newsletterId, date);
+            @RequestParam Long newsletterId, @RequestParam String date,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields) {
+        ResponseFields responseFields = ResponseFields.parse(fields);
+        if (cursor == null && size == null)
+            return ResponseEntity.ok(subscriptionService.getSubscribersAfterDate(newsletterId, date, responseFields));
 
-        return ResponseEntity.ok(subscribers);
+        SubscriberPageDTO page = subscriptionService.getSubscribersPage(newsletterId, date, null, cursor, pageSize(size), responseFields);
+        return withNextCursor(page.getSubscribers(), page.getNextCursor());
+    }
+
+    @GetMapping("/subscribers")
+    @Operation(summary = "Get Subscribers Page", description = "Get a page of subscribers for a newsletter, optionally bounded by creation date. " +
+            "Pass size (1 to 1000, default 100), then the returned nextCursor to fetch the following page.")
+    @ApiResponse(responseCode = "200", description = "Returns a page of subscribers and the cursor of the next page")
+    public ResponseEntity<SubscriberPageDTO> getSubscribersPage(
+            @RequestParam Long newsletterId,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields) {
+        SubscriberPageDTO page = subscriptionService.getSubscribersPage(newsletterId, after, before, cursor, pageSize(size), ResponseFields.parse(fields));
+
+        return ResponseEntity.ok(page);
     }
 
     @GetMapping("/newsletters")
-    @Operation(summary = "Get All Newsletters", description = "Get a list of all newsletters.")
+    @Operation(summary = "Get All Newsletters", description = "Get a list of all newsletters. " +
+            "Pass size (1 to 1000), then the X-Next-Cursor response header as cursor, to page through them; " +
+            "'fields' selects the optional parts, e.g. fields=title leaves out content and subscribedUsernames. " +
+            "The full list carries an ETag; send it back in If-None-Match to get 304 while nothing changed.")
     @ApiResponse(responseCode = "200", description = "Returns a list of newsletters")
-    public ResponseEntity<List<NewsletterDTO>> getAllNewsletters() {
-        List<Newsletter> newsletters = subscriptionService.getAllNewsletters();
-        List<NewsletterDTO> newsletterDTOs = newsletters.stream()
-                .map(Newsletter::toDTO)
-                .collect(Collectors.toList());
+    @ApiResponse(responseCode = "304", description = "The list did not change since the given ETag")
+    public ResponseEntity<List<NewsletterDTO>> getAllNewsletters(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields,
+            WebRequest webRequest) {
+        ResponseFields responseFields = ResponseFields.parse(fields);
+        if (cursor == null && size == null) {
+            String eTag = subscriptionService.getAllNewslettersETag(responseFields);
+            // checkNotModified has already set 304 and the ETag; a null entity leaves the response as it is
+            if (webRequest.checkNotModified(eTag))
+                return null;
 
-        return ResponseEntity.ok(newsletterDTOs);
+            return ResponseEntity.ok().eTag(eTag).body(subscriptionService.getAllNewsletters(responseFields));
+        }
+
+        NewsletterPageDTO page = subscriptionService.getNewslettersPage(cursor, pageSize(size), responseFields);
+        return withNextCursor(page.getNewsletters(), page.getNextCursor());
     }
 
     @GetMapping("/newsletter/{newsletterId}")
-    @Operation(summary = "Get Newsletter with Subscribers", description = "Get a specific newsletter with its subscribers.")
+    @Operation(summary = "Get Newsletter with Subscribers", description = "Get a specific newsletter with its subscribers. " +
+            "The response carries an ETag; send it back in If-None-Match to get 304 while nothing changed.")
     @ApiResponse(responseCode = "200", description = "Returns the newsletter with subscribers")
+    @ApiResponse(responseCode = "304", description = "The newsletter did not change since the given ETag")
+    @ApiResponse(responseCode = "404", description = "Newsletter not found")
+    public ResponseEntity<NewsletterDTO> getNewsletterWithSubscribers(@PathVariable Long newsletterId, WebRequest webRequest) {
+        try {
+            // a newsletter that is gone or lost its subscribers is 404, whatever the client's tag
+            NewsletterDTO newsletterDTO = subscriptionService.getNewsletterWithSubscribers(newsletterId);
+            String eTag = subscriptionService.getNewsletterETag(newsletterId);
+            if (webRequest.checkNotModified(eTag))
+                return null;
+
+            return ResponseEntity.ok().eTag(eTag).body(newsletterDTO);
+        } catch (NotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    @GetMapping("/newsletter/{newsletterId}/subscribers/export")
+    @Operation(summary = "Export Newsletter Subscribers", description = "Stream every active subscriber of a newsletter as NDJSON or CSV. " +
+            "Pass a date-time or the cursor of the last received row as 'since' to resume.")
+    @ApiResponse(responseCode = "200", description = "Streams one row per subscriber")
+    public ResponseEntity<StreamingResponseBody> exportSubscribers(
+            @PathVariable Long newsletterId,
+            @RequestParam(required = false) String since,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        StreamingResponseBody body = outputStream -> subscriptionService.exportSubscribers(newsletterId, since, exportFormat, outputStream);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .body(body);
+    }
+
+    @GetMapping("/newsletter/{newsletterId}/stats")
+    @Operation(summary = "Get Newsletter Statistics", description = "Get the active subscriber count of a newsletter and its subscribes, " +
+            "unsubscribes and churn rate for each of the last 'days' days (at most 366), most recent first.")
+    @ApiResponse(responseCode = "200", description = "Returns the newsletter statistics")
     @ApiResponse(responseCode = "404", description = "Newsletter not found")
-    public ResponseEntity<NewsletterDTO> getNewsletterWithSubscribers(@PathVariable Long newsletterId) {
+    public ResponseEntity<NewsletterStatsDTO> getNewsletterStats(@PathVariable Long newsletterId,
+                                                                 @RequestParam(defaultValue = "30") int days) {
         try {
-            Newsletter newsletter = subscriptionService.getNewsletterWithSubscribers(newsletterId);
-            NewsletterDTO newsletterDTO = newsletter.toDTO();
-            return ResponseEntity.ok(newsletterDTO);
+            return ResponseEntity.ok(subscriptionService.getNewsletterStats(newsletterId, days));
         } catch (NotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
 
     @GetMapping("/user/{userId}")
-    @Operation(summary = "Get User Details", description = "Get details of a specific user.")
+    @Operation(summary = "Get User Details", description = "Get details of a specific user; 'fields' selects the optional parts, " +
+            "e.g. fields=subscribedNewsletters includes the subscribed newsletters without their content and subscribers.")
     @ApiResponse(responseCode = "200", description = "Returns user details")
     @ApiResponse(responseCode = "404", description = "User not found")
-    public ResponseEntity<UserDTO> getUser(@PathVariable Long userId) {
+    public ResponseEntity<UserDTO> getUser(@PathVariable Long userId, @RequestParam(required = false) String fields) {
         try {
-            User user = subscriptionService.getUser(userId);
-            List<NewsletterDTO> newsletterDTOs = user.getSubscriptions().stream()
-                    .filter(Subscription::isSubscribed)
-                    .map(subscription -> subscription.getNewsletter().toDTO())
-                    .collect(Collectors.toList());
-
-            UserDTO userDTO = new UserDTO(user.getUserId(), user.getUsername(), newsletterDTOs);
+            UserDTO userDTO = subscriptionService.getUser(userId, ResponseFields.parse(fields));
             return ResponseEntity.ok(userDTO);
         } catch (NotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
+
+    /**
+     * @return {@code size}, capped to {@value #MAX_PAGE_SIZE}, or {@value #DEFAULT_PAGE_SIZE} if it is not given
+     * @throws ResponseStatusException with 400 if {@code size} is less than 1
+     */
+    static int pageSize(Integer size) {
+        if (size == null)
+            return DEFAULT_PAGE_SIZE;
+        if (size < 1)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be at least 1");
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    static <T> ResponseEntity<List<T>> withNextCursor(List<T> items, String nextCursor) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (nextCursor != null)
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+
+        return response.body(items);
+    }
 }
@@ -0,0 +1,74 @@
+package net.casim.task.newsletter.delivery;
+
+import net.casim.task.newsletter.model.DeliveredBatch;
+import net.casim.task.newsletter.model.DeliveryStatus;
+import net.casim.task.newsletter.model.NewsletterDelivery;
+import net.casim.task.newsletter.model.SubscriptionCursor;
+import net.casim.task.newsletter.repository.DeliveredBatchRepository;
+import net.casim.task.newsletter.repository.NewsletterDeliveryRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Persists the progress of deliveries, each change in a transaction of its own.
+ */
+public class DeliveryCheckpoints {
+    private static final int MAX_FAILURE_LENGTH = 255;
+
+    private final NewsletterDeliveryRepository deliveryRepository;
+    private final DeliveredBatchRepository batchRepository;
+
+    public DeliveryCheckpoints(NewsletterDeliveryRepository deliveryRepository, DeliveredBatchRepository batchRepository) {
+        this.deliveryRepository = deliveryRepository;
+        this.batchRepository = batchRepository;
+    }
+
+    @Transactional
+    public NewsletterDelivery create(Long newsletterId) {
+        return deliveryRepository.save(new NewsletterDelivery(newsletterId, LocalDateTime.now()));
+    }
+
+    /**
+     * Moves the cursor to the last recipient of a batch that directly follows it, together with the batches sent
+     * ahead that it now reaches.
+     */
+    @Transactional
+    public void advance(Long deliveryId, SubscriptionCursor cursor, long recipients, Collection<Long> reachedBatchIds) {
+        deliveryRepository.advance(deliveryId, cursor.getCreatedAt(), cursor.getId(), recipients, LocalDateTime.now());
+        if (!reachedBatchIds.isEmpty())
+            batchRepository.deleteByBatchIds(reachedBatchIds);
+    }
+
+    /**
+     * Records a batch sent while an earlier one is still in flight.
+     *
+     * @return the id to pass to {@link #advance} once the cursor reaches it
+     */
+    @Transactional
+    public Long recordAhead(Long deliveryId, SubscriptionCursor first, SubscriptionCursor last, int recipients) {
+        return batchRepository.save(new DeliveredBatch(deliveryId, first, last, recipients)).getBatchId();
+    }
+
+    /**
+     * Marks the delivery completed, counting the batches that were sent ahead of the cursor by an interrupted run.
+     */
+    @Transactional
+    public void complete(Long deliveryId) {
+        long ahead = batchRepository.sumRecipients(deliveryId);
+        batchRepository.deleteByDelivery(deliveryId);
+        deliveryRepository.finish(deliveryId, DeliveryStatus.COMPLETED, ahead, null, LocalDateTime.now());
+    }
+
+    @Transactional
+    public void fail(Long deliveryId, String failure) {
+        String message = (failure != null && failure.length() > MAX_FAILURE_LENGTH) ? failure.substring(0, MAX_FAILURE_LENGTH) : failure;
+        deliveryRepository.finish(deliveryId, DeliveryStatus.FAILED, 0, message, LocalDateTime.now());
+    }
+
+    @Transactional
+    public void restart(Long deliveryId) {
+        deliveryRepository.finish(deliveryId, DeliveryStatus.RUNNING, 0, null, LocalDateTime.now());
+    }
+}
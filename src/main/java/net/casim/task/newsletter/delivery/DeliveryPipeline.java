@@ -0,0 +1,390 @@
+package net.casim.task.newsletter.delivery;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.DeliveredBatch;
+import net.casim.task.newsletter.model.DeliveryStatus;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.NewsletterDelivery;
+import net.casim.task.newsletter.model.SubscriptionCursor;
+import net.casim.task.newsletter.model.dto.DeliveryDTO;
+import net.casim.task.newsletter.model.projection.SubscriberView;
+import net.casim.task.newsletter.repository.DeliveredBatchRepository;
+import net.casim.task.newsletter.repository.NewsletterDeliveryRepository;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Sends newsletters to their active subscribers.
+ * <p>
+ * Each delivery has a reader that keyset-pages through the newsletter's active subscriptions in batches of
+ * {@code batchSize} and hands every batch to a pool of {@code workers} threads shared by all deliveries, which pass it
+ * to the {@link NewsletterSender}. A batch that fails is retried up to {@code maxAttempts} times; after that the
+ * delivery stops as {@link DeliveryStatus#FAILED} until it is resumed.
+ * <p>
+ * The checkpoint moves over sent batches in reading order. A batch sent while an earlier one is still in flight is
+ * recorded as a {@link DeliveredBatch} until the checkpoint reaches it, and skipped when the delivery is resumed, so a
+ * delivery interrupted by a crash or shutdown continues on the next start without sending a completed batch twice.
+ * Batches read but not yet checkpointed are limited to two per worker, which holds the reader back when the
+ * sender falls behind.
+ */
+public class DeliveryPipeline implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(DeliveryPipeline.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final DeliveryCheckpoints checkpoints;
+    private final NewsletterDeliveryRepository deliveryRepository;
+    private final DeliveredBatchRepository batchRepository;
+    private final NewsletterRepository newsletterRepository;
+    private final SubscriptionRepository subscriptionRepository;
+    private final Shards shards;
+    private final NewsletterSender sender;
+    private final int batchSize;
+    private final int window;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService readers;
+
+    private final ConcurrentMap<Long, DeliveryRun> runs = new ConcurrentHashMap<>();
+
+    /**
+     * Batches sent ahead of their delivery's checkpoint, over all deliveries.
+     */
+    private final AtomicInteger sentAhead = new AtomicInteger();
+
+    private final Counter recipients;
+    private final Timer sendTimer;
+
+    private volatile boolean running;
+
+    public DeliveryPipeline(DeliveryCheckpoints checkpoints, NewsletterDeliveryRepository deliveryRepository,
+                            DeliveredBatchRepository batchRepository, NewsletterRepository newsletterRepository,
+                            SubscriptionRepository subscriptionRepository, Shards shards, NewsletterSender sender,
+                            int batchSize, int workers, int maxAttempts, Duration retryDelay, MeterRegistry meterRegistry) {
+        this.checkpoints = checkpoints;
+        this.deliveryRepository = deliveryRepository;
+        this.batchRepository = batchRepository;
+        this.newsletterRepository = newsletterRepository;
+        this.subscriptionRepository = subscriptionRepository;
+        this.shards = shards;
+        this.sender = sender;
+        this.batchSize = batchSize;
+        this.window = 2 * workers;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                threadFactory("newsletter-delivery-worker"));
+        this.readers = Executors.newCachedThreadPool(threadFactory("newsletter-delivery-reader"));
+
+        recipients = Counter.builder("newsletter.delivery.recipients")
+                .description("Recipients handed to the newsletter sender")
+                .register(meterRegistry);
+        sendTimer = Timer.builder("newsletter.delivery.send")
+                .description("Time to send one batch of recipients, retries included")
+                .register(meterRegistry);
+        Gauge.builder("newsletter.delivery.queue", this.workers, executor -> executor.getQueue().size())
+                .description("Batches waiting in a delivery stage")
+                .tag("stage", "send")
+                .register(meterRegistry);
+        Gauge.builder("newsletter.delivery.queue", sentAhead, AtomicInteger::get)
+                .description("Batches waiting in a delivery stage")
+                .tag("stage", "checkpoint")
+                .register(meterRegistry);
+        Gauge.builder("newsletter.delivery.active", runs, Map::size)
+                .description("Deliveries running on this instance")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts sending the newsletter to everyone subscribed to it now.
+     */
+    public DeliveryDTO deliver(Long newsletterId) throws NotFoundException {
+        if (!newsletterRepository.existsById(newsletterId))
+            throw new NotFoundException("Newsletter not found");
+
+        NewsletterDelivery delivery = checkpoints.create(newsletterId);
+        launch(delivery);
+        return toDTO(delivery);
+    }
+
+    /**
+     * Restarts a failed delivery from its checkpoint. Completed and running deliveries are left as they are.
+     */
+    public DeliveryDTO resume(Long deliveryId) throws NotFoundException {
+        NewsletterDelivery delivery = findDelivery(deliveryId);
+        if (delivery.getStatus() == DeliveryStatus.FAILED) {
+            checkpoints.restart(deliveryId);
+            delivery = findDelivery(deliveryId);
+            launch(delivery);
+        }
+        return toDTO(delivery);
+    }
+
+    public DeliveryDTO getDelivery(Long deliveryId) throws NotFoundException {
+        return toDTO(findDelivery(deliveryId));
+    }
+
+    private NewsletterDelivery findDelivery(Long deliveryId) throws NotFoundException {
+        return deliveryRepository.findById(deliveryId)
+                .orElseThrow(() -> new NotFoundException("Delivery not found"));
+    }
+
+    private void launch(NewsletterDelivery delivery) {
+        DeliveryRun run = new DeliveryRun(delivery);
+        if (runs.putIfAbsent(delivery.getDeliveryId(), run) == null)
+            readers.execute(run);
+    }
+
+    private DeliveryDTO toDTO(NewsletterDelivery delivery) {
+        DeliveryRun run = runs.get(delivery.getDeliveryId());
+        return new DeliveryDTO(delivery.getDeliveryId(), delivery.getNewsletterId(), delivery.getStatus(), delivery.getDelivered(),
+                delivery.getCursor().encode(), (run != null) ? run.recipientsPerSecond() : 0,
+                delivery.getStartedAt(), delivery.getUpdatedAt(), delivery.getFailure());
+    }
+
+    /**
+     * Resumes the deliveries a crash or shutdown left running.
+     */
+    @Override
+    public void start() {
+        running = true;
+        List<NewsletterDelivery> interrupted = deliveryRepository.findByStatus(DeliveryStatus.RUNNING);
+        if (!interrupted.isEmpty())
+            log.info("Resuming {} interrupted newsletter deliveries", interrupted.size());
+        interrupted.forEach(this::launch);
+    }
+
+    /**
+     * Stops reading, lets the batches already read be sent and checkpointed, and leaves the deliveries running to be
+     * resumed on the next start.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        readers.shutdown();
+        try {
+            // readers wait for their batches, so the workers only stop once nothing is submitted any more
+            boolean stopped = readers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            workers.shutdown();
+            if (!stopped || !workers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                log.warn("Newsletter deliveries did not stop within {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger threads = new AtomicInteger();
+        return runnable -> new Thread(runnable, name + "-" + threads.incrementAndGet());
+    }
+
+    /**
+     * One pass of a delivery, from its checkpoint to the last subscription before its snapshot.
+     */
+    private final class DeliveryRun implements Runnable {
+        private final Long deliveryId;
+        private final Long newsletterId;
+        private final NewsletterDelivery delivery;
+
+        /**
+         * Permits for batches read but not checkpointed yet.
+         */
+        private final Semaphore window = new Semaphore(DeliveryPipeline.this.window);
+
+        private final LongAdder sent = new LongAdder();
+        private final long startedNanos = System.nanoTime();
+
+        private volatile String failure;
+
+        // guarded by this
+        private long checkpointSequence = -1;
+        private final SortedMap<Long, Batch> ahead = new TreeMap<>();
+
+        DeliveryRun(NewsletterDelivery delivery) {
+            this.delivery = delivery;
+            this.deliveryId = delivery.getDeliveryId();
+            this.newsletterId = delivery.getNewsletterId();
+        }
+
+        double recipientsPerSecond() {
+            double seconds = (System.nanoTime() - startedNanos) / 1e9;
+            return (seconds > 0) ? sent.sum() / seconds : 0;
+        }
+
+        @Override
+        public void run() {
+            Deque<Future<?>> inFlight = new ArrayDeque<>();
+            try {
+                read(inFlight);
+            } catch (Exception e) {
+                log.warn("Reading the recipients of delivery {} failed", deliveryId, e);
+                failure = String.valueOf(e);
+            }
+
+            try {
+                for (Future<?> batch : inFlight)
+                    batch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                failure = String.valueOf(e.getCause());
+            }
+
+            synchronized (this) {
+                sentAhead.addAndGet(-ahead.size());
+            }
+            // before the status changes, so a resumed delivery is not mistaken for this run
+            runs.remove(deliveryId, this);
+            try {
+                if (failure != null)
+                    checkpoints.fail(deliveryId, failure);
+                else if (running)
+                    checkpoints.complete(deliveryId);
+            } catch (Exception e) {
+                log.error("Could not finish delivery {}", deliveryId, e);
+            }
+        }
+
+        private void read(Deque<Future<?>> inFlight) throws Exception {
+            Newsletter newsletter = newsletterRepository.findById(newsletterId)
+                    .orElseThrow(() -> new NotFoundException("Newsletter not found"));
+            List<DeliveredBatch> sentBefore = batchRepository.findByDeliveryId(deliveryId);
+            SubscriptionCursor position = delivery.getCursor();
+            long sequence = 0;
+
+            while (running && failure == null) {
+                window.acquire();
+                List<SubscriberView> page;
+                try (Shards.Route route = shards.routeTo(newsletterId)) {
+                    page = subscriptionRepository.findActivePageAfter(newsletterId,
+                            position.getCreatedAt(), position.getId(), delivery.getSnapshotAt(), PageRequest.of(0, batchSize));
+                }
+                if (page.isEmpty()) {
+                    window.release();
+                    break;
+                }
+
+                SubscriptionCursor first = SubscriptionCursor.of(page.get(0));
+                position = SubscriptionCursor.of(page.get(page.size() - 1));
+                List<SubscriberView> pending = sentBefore.isEmpty() ? page : page.stream()
+                        .filter(subscriber -> sentBefore.stream().noneMatch(batch -> batch.covers(SubscriptionCursor.of(subscriber))))
+                        .collect(Collectors.toList());
+
+                Batch batch = new Batch(sequence++, first, position, pending);
+                inFlight.addLast(workers.submit(() -> send(newsletter, batch)));
+                while (!inFlight.isEmpty() && inFlight.peekFirst().isDone())
+                    inFlight.removeFirst();
+            }
+        }
+
+        private void send(Newsletter newsletter, Batch batch) {
+            try {
+                if (failure != null) {
+                    window.release();
+                    return;
+                }
+
+                if (!batch.recipients.isEmpty()) {
+                    sendTimer.recordCallable(() -> {
+                        sendWithRetries(newsletter, batch.recipients);
+                        return null;
+                    });
+                    recipients.increment(batch.recipients.size());
+                    sent.add(batch.recipients.size());
+                }
+                checkpoint(batch);
+            } catch (Exception e) {
+                log.warn("Delivery {} stopped at a batch that could not be sent", deliveryId, e);
+                failure = String.valueOf(e);
+                window.release();
+            }
+        }
+
+        private void sendWithRetries(Newsletter newsletter, List<SubscriberView> batch) throws Exception {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    sender.send(deliveryId, newsletter, batch);
+                    return;
+                } catch (Exception e) {
+                    if (attempt >= maxAttempts)
+                        throw e;
+                    log.debug("Retrying a batch of delivery {} after attempt {}", deliveryId, attempt, e);
+                    Thread.sleep(retryDelay.toMillis() * attempt);
+                }
+            }
+        }
+
+        private synchronized void checkpoint(Batch batch) {
+            if (batch.sequence != checkpointSequence + 1) {
+                batch.recordId = checkpoints.recordAhead(deliveryId, batch.first, batch.last, batch.recipients.size());
+                ahead.put(batch.sequence, batch.sent());
+                sentAhead.incrementAndGet();
+                return;
+            }
+
+            checkpointSequence = batch.sequence;
+            SubscriptionCursor cursor = batch.last;
+            long count = batch.recipients.size();
+            List<Long> reached = new ArrayList<>();
+            for (Batch next; (next = ahead.remove(checkpointSequence + 1)) != null; ) {
+                checkpointSequence = next.sequence;
+                cursor = next.last;
+                count += next.size;
+                reached.add(next.recordId);
+            }
+
+            checkpoints.advance(deliveryId, cursor, count, reached);
+            sentAhead.addAndGet(-reached.size());
+            window.release(1 + reached.size());
+        }
+    }
+
+    private static final class Batch {
+        final long sequence;
+        final SubscriptionCursor first;
+        final SubscriptionCursor last;
+        final int size;
+        List<SubscriberView> recipients;
+        Long recordId;
+
+        Batch(long sequence, SubscriptionCursor first, SubscriptionCursor last, List<SubscriberView> recipients) {
+            this.sequence = sequence;
+            this.first = first;
+            this.last = last;
+            this.size = recipients.size();
+            this.recipients = recipients;
+        }
+
+        /**
+         * Drops the recipients of a batch that only waits for the checkpoint.
+         */
+        Batch sent() {
+            recipients = Collections.emptyList();
+            return this;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package net.casim.task.newsletter.delivery;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.projection.SubscriberView;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Local stand-in for a real channel: appends one {@code newsletterId,userId,username} line per recipient to
+ * {@code delivery-<deliveryId>.log} in its directory.
+ */
+public class LogFileNewsletterSender implements NewsletterSender {
+    private final Path directory;
+
+    public LogFileNewsletterSender(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized void send(Long deliveryId, Newsletter newsletter, List<SubscriberView> recipients) throws IOException {
+        Files.createDirectories(directory);
+        try (Writer writer = Files.newBufferedWriter(file(deliveryId), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (SubscriberView recipient : recipients) {
+                writer.write(newsletter.getNewsletterId() + "," + recipient.getUserId() + "," + recipient.getUsername());
+                writer.write('\n');
+            }
+        }
+    }
+
+    public Path file(Long deliveryId) {
+        return directory.resolve("delivery-" + deliveryId + ".log");
+    }
+}
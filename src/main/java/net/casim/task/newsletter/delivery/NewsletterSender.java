@@ -0,0 +1,18 @@
+package net.casim.task.newsletter.delivery;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.projection.SubscriberView;
+
+import java.util.List;
+
+/**
+ * Hands a newsletter to the channel that actually reaches its subscribers. Called from several delivery workers at
+ * once, one batch of recipients per call.
+ * <p>
+ * A batch that throws is retried, and a batch interrupted by a crash is sent again when its delivery resumes, so a
+ * sender that can should drop recipients it has already sent to under the same delivery id.
+ */
+public interface NewsletterSender {
+
+    void send(Long deliveryId, Newsletter newsletter, List<SubscriberView> recipients) throws Exception;
+}
@@ -0,0 +1,45 @@
+package net.casim.task.newsletter.event;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.User;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA entity listener turning newsletter and user writes into application events, so derived state
+ * (caches, indexes) can follow entity changes made anywhere in the application.
+ */
+@Component
+public class CatalogEntityListener {
+    private final ApplicationEventPublisher eventPublisher;
+
+    public CatalogEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    public void onCreate(Object entity) {
+        publish(entity, UserChangedEvent.Change.CREATED);
+    }
+
+    @PostUpdate
+    public void onUpdate(Object entity) {
+        publish(entity, UserChangedEvent.Change.UPDATED);
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        publish(entity, UserChangedEvent.Change.REMOVED);
+    }
+
+    private void publish(Object entity, UserChangedEvent.Change change) {
+        if (entity instanceof Newsletter)
+            eventPublisher.publishEvent(new NewsletterChangedEvent(((Newsletter) entity).getNewsletterId()));
+        else if (entity instanceof User)
+            eventPublisher.publishEvent(new UserChangedEvent(((User) entity).getUserId(), change));
+    }
+}
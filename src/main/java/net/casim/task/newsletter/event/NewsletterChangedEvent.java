@@ -0,0 +1,13 @@
+package net.casim.task.newsletter.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Published when a newsletter row is inserted, updated or deleted through JPA.
+ */
+@Data
+@AllArgsConstructor
+public class NewsletterChangedEvent {
+    private Long newsletterId;
+}
@@ -0,0 +1,73 @@
+package net.casim.task.newsletter.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hands the changes an in-memory index follows to {@code apply}, holding them back while the index is rebuilt.
+ * <p>
+ * A rebuild marks the index ready and then applies what was held back, both under the lock that changes arriving
+ * while it is ready are applied under. A change either sees the index not ready, and is then applied by the
+ * rebuild, or applies itself; none is left behind until the next one arrives.
+ */
+public class RebuildQueue<E> {
+    private final Queue<E> pending = new ConcurrentLinkedQueue<>();
+
+    private final Consumer<List<E>> apply;
+
+    private volatile boolean ready;
+
+    /**
+     * @param apply applies a batch of changes, in the order they arrived
+     */
+    public RebuildQueue(Consumer<List<E>> apply) {
+        this.apply = apply;
+    }
+
+    /**
+     * @return false until the first rebuild finishes, and while one is running
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Runs {@code rebuild} with changes held back, then applies them on top of its result.
+     */
+    public synchronized void rebuild(Runnable rebuild) {
+        ready = false;
+        rebuild.run();
+        ready = true;
+        drain();
+    }
+
+    /**
+     * Runs {@code work} after the changes that already arrived and before any arriving meanwhile are applied.
+     */
+    public synchronized void exclusively(Runnable work) {
+        drain();
+        work.run();
+    }
+
+    public void add(E change) {
+        pending.add(change);
+        if (!ready)
+            return;
+
+        synchronized (this) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        List<E> changes = new ArrayList<>();
+        E change;
+        while ((change = pending.poll()) != null)
+            changes.add(change);
+        if (!changes.isEmpty())
+            apply.accept(changes);
+    }
+}
@@ -0,0 +1,16 @@
+package net.casim.task.newsletter.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Published by the subscription service whenever a subscribe/unsubscribe actually changes state.
+ * Listeners that keep derived state should react after the surrounding transaction commits.
+ */
+@Data
+@AllArgsConstructor
+public class SubscriptionChangedEvent {
+    private Long userId;
+    private Long newsletterId;
+    private boolean subscribed;
+}
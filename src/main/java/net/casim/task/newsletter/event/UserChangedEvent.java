@@ -0,0 +1,18 @@
+package net.casim.task.newsletter.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Published when a user row is inserted, updated or deleted through JPA.
+ */
+@Data
+@AllArgsConstructor
+public class UserChangedEvent {
+    private Long userId;
+    private Change change;
+
+    public enum Change {
+        CREATED, UPDATED, REMOVED
+    }
+}
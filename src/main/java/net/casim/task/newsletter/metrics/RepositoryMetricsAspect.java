@@ -0,0 +1,55 @@
+package net.casim.task.newsletter.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.repository.Repository;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every call on a Spring Data repository as {@code subscription.repository}, tagged with the repository
+ * interface, the method and the exception thrown, if any.
+ */
+@Aspect
+public class RepositoryMetricsAspect {
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    public RepositoryMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("subscription.repository")
+                    .description("Spring Data repository calls")
+                    .tag("repository", repositoryNames.computeIfAbsent(joinPoint.getThis().getClass(), RepositoryMetricsAspect::repositoryName))
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+
+    private static String repositoryName(Class<?> proxyClass) {
+        return Arrays.stream(proxyClass.getInterfaces())
+                .filter(Repository.class::isAssignableFrom)
+                .filter(type -> !type.getPackage().getName().startsWith("org.springframework"))
+                .findFirst()
+                .map(Class::getSimpleName)
+                .orElse(proxyClass.getSimpleName());
+    }
+}
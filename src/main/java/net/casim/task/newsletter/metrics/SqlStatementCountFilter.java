@@ -0,0 +1,45 @@
+package net.casim.task.newsletter.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records how many SQL statements each request prepared, tagged like {@code http.server.requests}, so an N+1
+ * regression shows up as a growing statement count on its endpoint.
+ * <p>
+ * Only the request thread is counted; work handed to an async executor (e.g. streamed exports) is not included.
+ */
+public class SqlStatementCountFilter extends OncePerRequestFilter {
+    private final MeterRegistry meterRegistry;
+
+    public SqlStatementCountFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        SqlStatementCounter.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            int statements = SqlStatementCounter.stop();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+            DistributionSummary.builder("http.server.requests.sql.statements")
+                    .description("SQL statements prepared while handling a request")
+                    .tag("method", request.getMethod())
+                    .tag("uri", (pattern != null) ? pattern.toString() : "UNKNOWN")
+                    .register(meterRegistry)
+                    .record(statements);
+        }
+    }
+}
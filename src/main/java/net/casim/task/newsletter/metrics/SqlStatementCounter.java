@@ -0,0 +1,30 @@
+package net.casim.task.newsletter.metrics;
+
+/**
+ * Counts the SQL statements prepared by the current thread between {@link #start()} and {@link #stop()}.
+ */
+public final class SqlStatementCounter {
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    private SqlStatementCounter() {
+    }
+
+    public static void start() {
+        COUNT.set(new int[1]);
+    }
+
+    static void increment() {
+        int[] count = COUNT.get();
+        if (count != null)
+            count[0]++;
+    }
+
+    /**
+     * @return the statements counted since {@link #start()}, or 0 if counting was not started on this thread
+     */
+    public static int stop() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        return (count != null) ? count[0] : 0;
+    }
+}
@@ -0,0 +1,14 @@
+package net.casim.task.newsletter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkSubscriptionResult {
+    private Long userId;
+    private Long newsletterId;
+    private BulkSubscriptionStatus status;
+}
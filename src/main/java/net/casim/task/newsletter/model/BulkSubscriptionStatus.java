@@ -0,0 +1,10 @@
+package net.casim.task.newsletter.model;
+
+public enum BulkSubscriptionStatus {
+    SUBSCRIBED,
+    ALREADY_SUBSCRIBED,
+    UNSUBSCRIBED,
+    NOT_SUBSCRIBED,
+    USER_NOT_FOUND,
+    NEWSLETTER_NOT_FOUND
+}
@@ -0,0 +1,51 @@
+package net.casim.task.newsletter.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A batch sent ahead of its delivery's checkpoint, while an earlier batch was still being sent. Covers the
+ * subscriptions from its first to its last recipient, both included, in the (createdAt, id) order.
+ */
+@Entity
+@Table(name = "newsletter_delivery_batch")
+@Data
+@NoArgsConstructor
+public class DeliveredBatch {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long batchId;
+
+    private Long deliveryId;
+
+    private LocalDateTime firstCreatedAt;
+
+    private Long firstId;
+
+    private LocalDateTime lastCreatedAt;
+
+    private Long lastId;
+
+    private int recipients;
+
+    public DeliveredBatch(Long deliveryId, SubscriptionCursor first, SubscriptionCursor last, int recipients) {
+        this.deliveryId = deliveryId;
+        this.firstCreatedAt = first.getCreatedAt();
+        this.firstId = first.getId();
+        this.lastCreatedAt = last.getCreatedAt();
+        this.lastId = last.getId();
+        this.recipients = recipients;
+    }
+
+    public boolean covers(SubscriptionCursor position) {
+        return compare(position, firstCreatedAt, firstId) >= 0 && compare(position, lastCreatedAt, lastId) <= 0;
+    }
+
+    private static int compare(SubscriptionCursor position, LocalDateTime createdAt, Long id) {
+        int byDate = position.getCreatedAt().compareTo(createdAt);
+        return (byDate != 0) ? byDate : Long.compare(position.getId(), id);
+    }
+}
@@ -0,0 +1,15 @@
+package net.casim.task.newsletter.model;
+
+public enum DeliveryStatus {
+    /**
+     * Being sent, or interrupted by a shutdown or crash and resumed on the next start.
+     */
+    RUNNING,
+
+    COMPLETED,
+
+    /**
+     * Stopped after a batch could not be sent; resumed on request.
+     */
+    FAILED
+}
@@ -1,18 +1,21 @@
 package net.casim.task.newsletter.model;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import net.casim.task.newsletter.event.CatalogEntityListener;
 import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@EntityListeners(CatalogEntityListener.class)
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Newsletter {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -24,9 +27,23 @@ public class Newsletter {
 
     private String publicationDate;
 
+    /**
+     * Incremented by JPA on every update; part of the entity tags of newsletter responses.
+     */
+    @Version
+    private Long version;
+
     @OneToMany(mappedBy = "newsletter")
     private List<Subscription> subscribedUsers;
 
+    public Newsletter(Long newsletterId, String title, String content, String publicationDate, List<Subscription> subscribedUsers) {
+        this.newsletterId = newsletterId;
+        this.title = title;
+        this.content = content;
+        this.publicationDate = publicationDate;
+        this.subscribedUsers = subscribedUsers;
+    }
+
     public NewsletterDTO toDTO() {
         List<String> subscribedUsernames = subscribedUsers.stream()
                 .filter(Subscription::isSubscribed)
@@ -0,0 +1,37 @@
+package net.casim.task.newsletter.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Subscribes and unsubscribes of one newsletter on one day, as flushed from the in-memory counters.
+ */
+@Entity
+@Table(name = "newsletter_daily_stats")
+@IdClass(NewsletterDailyStats.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NewsletterDailyStats {
+    @Id
+    private Long newsletterId;
+
+    @Id
+    @Column(name = "stats_day")
+    private LocalDate day;
+
+    private long subscribes;
+
+    private long unsubscribes;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long newsletterId;
+        private LocalDate day;
+    }
+}
@@ -0,0 +1,61 @@
+package net.casim.task.newsletter.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One run of sending a newsletter to its subscribers, with the checkpoint to resume it from. Every subscription
+ * up to the cursor, in the (createdAt, id) order, has been handed to the sender; batches sent beyond it are kept
+ * as {@link DeliveredBatch} rows until the cursor catches up with them.
+ */
+@Entity
+@Table(name = "newsletter_delivery")
+@Data
+@NoArgsConstructor
+public class NewsletterDelivery {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long deliveryId;
+
+    private Long newsletterId;
+
+    @Enumerated(EnumType.STRING)
+    private DeliveryStatus status;
+
+    /**
+     * Only subscriptions created before it are delivered, so subscribers joining during the run are left out.
+     */
+    private LocalDateTime snapshotAt;
+
+    private LocalDateTime cursorCreatedAt;
+
+    private Long cursorId;
+
+    /**
+     * Recipients up to the cursor.
+     */
+    private long delivered;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime updatedAt;
+
+    private String failure;
+
+    public NewsletterDelivery(Long newsletterId, LocalDateTime startedAt) {
+        this.newsletterId = newsletterId;
+        this.status = DeliveryStatus.RUNNING;
+        this.snapshotAt = startedAt;
+        this.cursorCreatedAt = SubscriptionCursor.MIN_DATE;
+        this.cursorId = 0L;
+        this.startedAt = startedAt;
+        this.updatedAt = startedAt;
+    }
+
+    public SubscriptionCursor getCursor() {
+        return new SubscriptionCursor(cursorCreatedAt, cursorId);
+    }
+}
@@ -0,0 +1,49 @@
+package net.casim.task.newsletter.model;
+
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The optional parts of newsletter and user responses, as selected with a {@code fields=} request parameter.
+ * <p>
+ * Identifiers, titles, usernames and publication dates are always included. {@code content},
+ * {@code subscribedUsernames} and {@code subscribedNewsletters} are only included when listed, or when no
+ * selection is given at all. Parts that are left out are not read from the database either.
+ */
+@Value
+public class ResponseFields {
+    public static final String CONTENT = "content";
+    public static final String SUBSCRIBED_USERNAMES = "subscribedUsernames";
+    public static final String SUBSCRIBED_NEWSLETTERS = "subscribedNewsletters";
+
+    public static final ResponseFields ALL = new ResponseFields(true, true, true);
+
+    private static final Set<String> KNOWN = Set.of("newsletterId", "title", "publicationDate", "userId", "username",
+            CONTENT, SUBSCRIBED_USERNAMES, SUBSCRIBED_NEWSLETTERS);
+
+    boolean content;
+    boolean subscribedUsernames;
+    boolean subscribedNewsletters;
+
+    /**
+     * @param fields comma-separated field names, or null to include everything
+     */
+    public static ResponseFields parse(String fields) {
+        if (fields == null)
+            return ALL;
+
+        Set<String> names = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toSet());
+        for (String name : names) {
+            if (!KNOWN.contains(name))
+                throw new IllegalArgumentException("Unknown field: " + name);
+        }
+
+        return new ResponseFields(names.contains(CONTENT), names.contains(SUBSCRIBED_USERNAMES), names.contains(SUBSCRIBED_NEWSLETTERS));
+    }
+}
@@ -6,13 +6,20 @@ import javax.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(uniqueConstraints = {
+        @UniqueConstraint(name = "uk_subscription_user_newsletter", columnNames = {"user_id", "newsletter_id"})
+}, indexes = {
+        @Index(name = "idx_subscription_newsletter_active_created", columnList = "newsletter_id, subscribed, createdAt, id"),
+        @Index(name = "idx_subscription_changed_at", columnList = "changedAt")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Subscription {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "subscription_seq")
+    @SequenceGenerator(name = "subscription_seq", sequenceName = "subscription_seq", allocationSize = 50)
     private Long id;
 
     private boolean subscribed;
@@ -27,4 +34,24 @@ public class Subscription {
 
     @Column(columnDefinition = "TIMESTAMP")
     private LocalDateTime createdAt;
+
+    /**
+     * Incremented on every change, including the native upserts and bulk deactivations, so the sum of
+     * {@code version + 1} over a newsletter's rows grows by exactly one with each subscribe or unsubscribe.
+     */
+    @Version
+    private Long version;
+
+    /**
+     * When the row was last written; set by every insert and update, so index snapshots can replay the rows
+     * changed after them.
+     */
+    @Column(columnDefinition = "TIMESTAMP")
+    private LocalDateTime changedAt;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        changedAt = LocalDateTime.now();
+    }
 }
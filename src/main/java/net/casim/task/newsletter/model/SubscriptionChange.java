@@ -0,0 +1,45 @@
+package net.casim.task.newsletter.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A subscribe or unsubscribe, written to the outbox in the transaction that made it. The relay gives it its
+ * position in the change stream when it publishes it; until then the position is null.
+ */
+@Entity
+@Table(name = "subscription_outbox", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_subscription_outbox_position", columnNames = "stream_position")
+}, indexes = {
+        @Index(name = "idx_subscription_outbox_pending", columnList = "stream_position, id")
+})
+@Data
+@NoArgsConstructor
+public class SubscriptionChange {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "subscription_outbox_seq")
+    @SequenceGenerator(name = "subscription_outbox_seq", sequenceName = "subscription_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    private Long userId;
+
+    private Long newsletterId;
+
+    private boolean subscribed;
+
+    @Column(columnDefinition = "TIMESTAMP")
+    private LocalDateTime occurredAt;
+
+    @Column(name = "stream_position")
+    private Long position;
+
+    public SubscriptionChange(Long userId, Long newsletterId, boolean subscribed, LocalDateTime occurredAt) {
+        this.userId = userId;
+        this.newsletterId = newsletterId;
+        this.subscribed = subscribed;
+        this.occurredAt = occurredAt;
+    }
+}
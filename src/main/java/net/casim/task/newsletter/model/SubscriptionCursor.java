@@ -0,0 +1,72 @@
+package net.casim.task.newsletter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import net.casim.task.newsletter.model.projection.SubscriberView;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * Keyset position in the (createdAt, id) ordering of a newsletter's subscriptions.
+ * Encoded for clients as {@code <createdAt>_<id>}, e.g. {@code 2023-01-01T10:15:30_42}.
+ */
+@Data
+@AllArgsConstructor
+public class SubscriptionCursor {
+    public static final LocalDateTime MIN_DATE = LocalDateTime.of(1970, 1, 1, 0, 0);
+    public static final LocalDateTime MAX_DATE = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private static final String SEPARATOR = "_";
+
+    private LocalDateTime createdAt;
+    private Long id;
+
+    public static SubscriptionCursor first() {
+        return new SubscriptionCursor(MIN_DATE, 0L);
+    }
+
+    /**
+     * Cursor positioned after every subscription created at or before the given date.
+     */
+    public static SubscriptionCursor after(LocalDateTime date) {
+        return new SubscriptionCursor(date, Long.MAX_VALUE);
+    }
+
+    public static SubscriptionCursor of(SubscriberView subscriber) {
+        return new SubscriptionCursor(subscriber.getCreatedAt(), subscriber.getId());
+    }
+
+    /**
+     * @throws ResponseStatusException with 400 if {@code cursor} is not a {@code <createdAt>_<id>} pair
+     */
+    public static SubscriptionCursor parse(String cursor) {
+        int separator = cursor.lastIndexOf(SEPARATOR);
+        if (separator < 0)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+
+        try {
+            return new SubscriptionCursor(LocalDateTime.parse(cursor.substring(0, separator)),
+                    Long.parseLong(cursor.substring(separator + 1)));
+        } catch (DateTimeException | NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * @throws ResponseStatusException with 400 if {@code date} is not an ISO local date-time
+     */
+    public static LocalDateTime parseDate(String date) {
+        try {
+            return LocalDateTime.parse(date);
+        } catch (DateTimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid date: " + date);
+        }
+    }
+
+    public String encode() {
+        return createdAt + SEPARATOR + id;
+    }
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import net.casim.task.newsletter.event.CatalogEntityListener;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.Objects;
@@ -13,6 +15,10 @@ import java.util.Set;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@Table(name = "users")
+@EntityListeners(CatalogEntityListener.class)
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Builder
 public class User {
 
@@ -22,6 +28,9 @@ public class User {
 
     private String username;
 
+    @Version
+    private Long version;
+
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL)
     private Set<Subscription> subscriptions;
 
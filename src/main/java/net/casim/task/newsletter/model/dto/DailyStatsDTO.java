@@ -0,0 +1,24 @@
+package net.casim.task.newsletter.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DailyStatsDTO {
+    private LocalDate day;
+    private long subscribes;
+    private long unsubscribes;
+    /**
+     * Active subscribers at the end of the day.
+     */
+    private long activeSubscribers;
+    /**
+     * Unsubscribes relative to the active subscribers at the start of the day.
+     */
+    private double churnRate;
+}
@@ -0,0 +1,32 @@
+package net.casim.task.newsletter.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.casim.task.newsletter.model.DeliveryStatus;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeliveryDTO {
+    private Long deliveryId;
+    private Long newsletterId;
+    private DeliveryStatus status;
+    /**
+     * Recipients up to the checkpoint; batches sent ahead of it are counted once it reaches them.
+     */
+    private long delivered;
+    /**
+     * Position of the checkpoint in the (createdAt, id) order of the subscriptions.
+     */
+    private String cursor;
+    /**
+     * Sending rate of the current run, 0 when the delivery is not running here.
+     */
+    private double recipientsPerSecond;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private String failure;
+}
@@ -1,5 +1,6 @@
 package net.casim.task.newsletter.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -10,7 +11,9 @@ import java.util.List;
 public class NewsletterDTO {
     private Long newsletterId;
     private String title;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private String content;
     private String publicationDate;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<String> subscribedUsernames;
 }
@@ -0,0 +1,19 @@
+package net.casim.task.newsletter.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class NewsletterStatsDTO {
+    private Long newsletterId;
+    private long activeSubscribers;
+    /**
+     * One entry per day, most recent first.
+     */
+    private List<DailyStatsDTO> days;
+}
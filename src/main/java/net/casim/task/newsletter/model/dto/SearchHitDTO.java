@@ -0,0 +1,19 @@
+package net.casim.task.newsletter.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchHitDTO {
+    /**
+     * The newsletterId or userId of the match.
+     */
+    private Long id;
+    /**
+     * Newsletter title or username, enough to render a suggestion without another request.
+     */
+    private String label;
+}
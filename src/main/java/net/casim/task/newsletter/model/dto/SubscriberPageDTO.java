@@ -0,0 +1,15 @@
+package net.casim.task.newsletter.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SubscriberPageDTO {
+    private List<UserDTO> subscribers;
+    private String nextCursor;
+}
@@ -0,0 +1,31 @@
+package net.casim.task.newsletter.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.casim.task.newsletter.model.SubscriptionChange;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SubscriptionChangeDTO {
+    /**
+     * Position in the change stream; consecutive and in publishing order.
+     */
+    private long position;
+    /**
+     * Outbox id of the change, to drop a change the relay published twice after a failure.
+     */
+    private Long changeId;
+    private Long userId;
+    private Long newsletterId;
+    private boolean subscribed;
+    private LocalDateTime occurredAt;
+
+    public static SubscriptionChangeDTO of(SubscriptionChange change) {
+        return new SubscriptionChangeDTO(change.getPosition(), change.getId(), change.getUserId(), change.getNewsletterId(),
+                change.isSubscribed(), change.getOccurredAt());
+    }
+}
@@ -0,0 +1,18 @@
+package net.casim.task.newsletter.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SubscriptionChangePageDTO {
+    private List<SubscriptionChangeDTO> changes;
+    /**
+     * Position to resume from with {@code after}: the last position on this page, or the requested one if it is empty.
+     */
+    private long nextAfter;
+}
@@ -1,5 +1,6 @@
 package net.casim.task.newsletter.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,5 +14,6 @@ import java.util.List;
 public class UserDTO {
     private Long userId;
     private String username;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<NewsletterDTO> subscribedNewsletters;
 }
@@ -0,0 +1,8 @@
+package net.casim.task.newsletter.model.projection;
+
+/**
+ * Current state of a subscription row, read when replaying the rows changed since an index snapshot.
+ */
+public interface MembershipChangeView extends MembershipView {
+    boolean isSubscribed();
+}
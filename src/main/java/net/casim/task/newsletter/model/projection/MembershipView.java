@@ -0,0 +1,10 @@
+package net.casim.task.newsletter.model.projection;
+
+/**
+ * Active (userId, newsletterId) pair, read without materialising the subscription entity.
+ */
+public interface MembershipView {
+    Long getUserId();
+
+    Long getNewsletterId();
+}
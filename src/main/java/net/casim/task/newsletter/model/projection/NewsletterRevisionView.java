@@ -0,0 +1,8 @@
+package net.casim.task.newsletter.model.projection;
+
+/**
+ * Everything a newsletter response's entity tag is derived from: the newsletter's version and its subscription revision.
+ */
+public interface NewsletterRevisionView extends SubscriptionRevisionView {
+    Long getVersion();
+}
@@ -0,0 +1,15 @@
+package net.casim.task.newsletter.model.projection;
+
+/**
+ * Newsletter columns that are part of every {@link net.casim.task.newsletter.model.dto.NewsletterDTO}, whatever
+ * fields are requested.
+ */
+public interface NewsletterSummaryView {
+    Long getNewsletterId();
+
+    String getTitle();
+
+    String getPublicationDate();
+
+    Long getVersion();
+}
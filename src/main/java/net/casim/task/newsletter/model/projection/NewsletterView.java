@@ -0,0 +1,8 @@
+package net.casim.task.newsletter.model.projection;
+
+/**
+ * Newsletter columns needed to build a {@link net.casim.task.newsletter.model.dto.NewsletterDTO}.
+ */
+public interface NewsletterView extends NewsletterSummaryView {
+    String getContent();
+}
@@ -0,0 +1,10 @@
+package net.casim.task.newsletter.model.projection;
+
+/**
+ * Username of an active subscriber of a newsletter, read without materialising the user entity.
+ */
+public interface SubscriberNameView {
+    Long getNewsletterId();
+
+    String getUsername();
+}
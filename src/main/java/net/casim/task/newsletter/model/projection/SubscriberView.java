@@ -0,0 +1,12 @@
+package net.casim.task.newsletter.model.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Active subscription of a newsletter together with its subscriber, as needed by the subscriber listings.
+ */
+public interface SubscriberView extends UserView {
+    Long getId();
+
+    LocalDateTime getCreatedAt();
+}
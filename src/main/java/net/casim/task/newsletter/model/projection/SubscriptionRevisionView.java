@@ -0,0 +1,12 @@
+package net.casim.task.newsletter.model.projection;
+
+/**
+ * Sum of {@code version + 1} plus the subscriber's user version over the subscription rows of a newsletter; it
+ * grows with every subscribe, unsubscribe and change of a subscriber, so it changes whenever the newsletter's
+ * subscriber list or one of its usernames does.
+ */
+public interface SubscriptionRevisionView {
+    Long getNewsletterId();
+
+    Long getRevision();
+}
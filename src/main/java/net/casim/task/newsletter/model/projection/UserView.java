@@ -0,0 +1,10 @@
+package net.casim.task.newsletter.model.projection;
+
+/**
+ * User columns needed to build a {@link net.casim.task.newsletter.model.dto.UserDTO}.
+ */
+public interface UserView {
+    Long getUserId();
+
+    String getUsername();
+}
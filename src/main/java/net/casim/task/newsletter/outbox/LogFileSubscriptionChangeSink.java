@@ -0,0 +1,69 @@
+package net.casim.task.newsletter.outbox;
+
+import net.casim.task.newsletter.model.dto.SubscriptionChangeDTO;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Local stand-in for a broker: appends one {@code position,changeId,userId,newsletterId,subscribed,occurredAt} line
+ * per change to {@code subscription-changes.log} in its directory.
+ * <p>
+ * Once the file reaches {@code maxSize} it is renamed to {@code subscription-changes.log.1}, shifting the older
+ * ones up; only the newest {@code maxFiles} rotated files are kept.
+ */
+public class LogFileSubscriptionChangeSink implements SubscriptionChangeSink {
+    private final Path directory;
+    private final long maxSize;
+    private final int maxFiles;
+
+    public LogFileSubscriptionChangeSink(Path directory, long maxSize, int maxFiles) {
+        if (maxSize < 1 || maxFiles < 0)
+            throw new IllegalArgumentException("Log file size must be positive and the rotated file count not negative");
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxFiles = maxFiles;
+    }
+
+    @Override
+    public synchronized void publish(List<SubscriptionChangeDTO> changes) throws IOException {
+        Files.createDirectories(directory);
+        if (Files.exists(file()) && Files.size(file()) >= maxSize)
+            rotate();
+        try (Writer writer = Files.newBufferedWriter(file(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (SubscriptionChangeDTO change : changes) {
+                writer.write(change.getPosition() + "," + change.getChangeId() + "," + change.getUserId() + "," + change.getNewsletterId()
+                        + "," + change.isSubscribed() + "," + change.getOccurredAt());
+                writer.write('\n');
+            }
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (maxFiles == 0) {
+            Files.delete(file());
+            return;
+        }
+        Files.deleteIfExists(rotated(maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            if (Files.exists(rotated(i)))
+                Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(file(), rotated(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public Path file() {
+        return directory.resolve("subscription-changes.log");
+    }
+
+    private Path rotated(int index) {
+        return directory.resolve("subscription-changes.log." + index);
+    }
+}
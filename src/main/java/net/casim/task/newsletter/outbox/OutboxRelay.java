@@ -0,0 +1,162 @@
+package net.casim.task.newsletter.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.model.SubscriptionChange;
+import net.casim.task.newsletter.model.dto.SubscriptionChangeDTO;
+import net.casim.task.newsletter.repository.SubscriptionChangeRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes the outbox to the {@link SubscriptionChangeSink}, in batches of up to {@code batchSize} changes.
+ * <p>
+ * Each batch takes the oldest unpublished changes, gives them the next consecutive positions and hands them to the
+ * sink, all in one transaction: a change committed late simply gets a later position, so consumers that resume
+ * after a position never skip one. A batch the sink rejects is rolled back and retried on the next run.
+ * Published changes older than {@code retention} are purged, except the last one, which carries the position to
+ * continue from.
+ * <p>
+ * With sharding every shard has an outbox of its own, and each batch takes the positions after the last one of
+ * all shards. Two instances relaying different shards at once could then take the same positions, so only one
+ * instance may relay.
+ * <p>
+ * The outbox is only read after this instance committed a change since the last run, or when the last run failed;
+ * once on startup, too, for changes left behind by a previous run.
+ */
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final SubscriptionChangeRepository changeRepository;
+    private final SubscriptionChangeSink sink;
+    private final SubscriptionChangeFeed feed;
+    private final Shards shards;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration retention;
+
+    private final Counter published;
+
+    private final AtomicBoolean pending = new AtomicBoolean(true);
+
+    public OutboxRelay(SubscriptionChangeRepository changeRepository, SubscriptionChangeSink sink, SubscriptionChangeFeed feed,
+                       Shards shards, PlatformTransactionManager transactionManager, int batchSize, Duration retention, MeterRegistry meterRegistry) {
+        this.changeRepository = changeRepository;
+        this.sink = sink;
+        this.feed = feed;
+        this.shards = shards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.retention = retention;
+
+        this.published = Counter.builder("newsletter.outbox.published")
+                .description("Subscription changes published from the outbox")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes batches until the outbox is drained or the sink fails.
+     */
+    @Scheduled(fixedDelayString = "${newsletter.outbox.relay-interval:PT0.1S}")
+    public void relay() {
+        if (!pending.getAndSet(false))
+            return;
+        try {
+            for (String shard : shards.getNames()) {
+                while (relayBatch(shard) == batchSize) {
+                    // a full batch, there may be more
+                }
+            }
+        } catch (RuntimeException e) {
+            pending.set(true);
+            log.warn("Could not publish subscription changes, retrying on the next run", e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChanged(SubscriptionChangedEvent event) {
+        pending.set(true);
+    }
+
+    /**
+     * Publishes one batch from the outbox of each shard.
+     *
+     * @return the number of changes published
+     */
+    public synchronized int relayBatch() {
+        int relayed = 0;
+        for (String shard : shards.getNames())
+            relayed += relayBatch(shard);
+        return relayed;
+    }
+
+    private synchronized int relayBatch(String shard) {
+        List<SubscriptionChangeDTO> batch;
+        try (Shards.Route route = shards.route(shard)) {
+            batch = transactionTemplate.execute(status -> publishPending());
+        }
+
+        if (!batch.isEmpty()) {
+            feed.published(batch);
+            published.increment(batch.size());
+        }
+        return batch.size();
+    }
+
+    private List<SubscriptionChangeDTO> publishPending() {
+        List<SubscriptionChange> pending = changeRepository.findByPositionIsNullOrderById(PageRequest.of(0, batchSize));
+        if (pending.isEmpty())
+            return Collections.emptyList();
+
+        long position = lastPosition();
+        for (SubscriptionChange change : pending)
+            change.setPosition(++position);
+        // a relay elsewhere that took the same positions fails here, before anything is published
+        changeRepository.flush();
+
+        List<SubscriptionChangeDTO> changes = pending.stream()
+                .map(SubscriptionChangeDTO::of)
+                .collect(Collectors.toList());
+        try {
+            sink.publish(changes);
+        } catch (Exception e) {
+            throw new IllegalStateException("Subscription change sink failed", e);
+        }
+        return changes;
+    }
+
+    @Scheduled(fixedDelayString = "${newsletter.outbox.purge-interval:PT1H}")
+    public void purge() {
+        int purged = 0;
+        for (String shard : shards.getNames()) {
+            try (Shards.Route route = shards.route(shard)) {
+                Integer deleted = transactionTemplate.execute(status ->
+                        changeRepository.deletePublishedBefore(lastPosition(), LocalDateTime.now().minus(retention)));
+                purged += (deleted != null) ? deleted : 0;
+            }
+        }
+        if (purged > 0)
+            log.info("Purged {} published subscription changes older than {}", purged, retention);
+    }
+
+    private long lastPosition() {
+        return shards.onEveryShard(changeRepository::findLastPosition).stream()
+                .mapToLong(Long::longValue)
+                .max()
+                .orElse(0);
+    }
+}
@@ -0,0 +1,127 @@
+package net.casim.task.newsletter.outbox;
+
+import net.casim.task.newsletter.model.dto.SubscriptionChangeDTO;
+import net.casim.task.newsletter.model.dto.SubscriptionChangePageDTO;
+import net.casim.task.newsletter.repository.SubscriptionChangeRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the published change stream from a position, for consumers that resume where they left off.
+ * <p>
+ * A long poll that finds nothing after its position waits until the {@link OutboxRelay} of this instance publishes
+ * something past it, and is answered from the published batch. Changes published by another instance are only
+ * seen once the wait times out and the consumer polls again.
+ */
+public class SubscriptionChangeFeed {
+    public static final int MAX_LIMIT = 1000;
+
+    public static final Duration MAX_WAIT = Duration.ofSeconds(30);
+
+    private final SubscriptionChangeRepository changeRepository;
+
+    private final Shards shards;
+
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong lastPublished = new AtomicLong();
+
+    public SubscriptionChangeFeed(SubscriptionChangeRepository changeRepository, Shards shards) {
+        this.changeRepository = changeRepository;
+        this.shards = shards;
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code limit} is not between 1 and {@value #MAX_LIMIT}
+     */
+    public SubscriptionChangePageDTO read(long after, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT)
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+
+        // with sharding, the first changes after the position are among the first ones of each shard
+        List<SubscriptionChangeDTO> changes = shards.onEveryShard(() -> changeRepository.findByPositionGreaterThanOrderByPosition(after, PageRequest.of(0, limit))
+                        .stream()
+                        .map(SubscriptionChangeDTO::of)
+                        .collect(Collectors.toList()))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingLong(SubscriptionChangeDTO::getPosition))
+                .limit(limit)
+                .collect(Collectors.toList());
+        return page(changes, after);
+    }
+
+    /**
+     * Like {@link #read}, but waits up to {@code wait} for a change when there is none yet; an empty page means
+     * the wait timed out.
+     *
+     * @throws IllegalArgumentException if {@code limit} is out of range or {@code wait} is negative or longer than 30 seconds
+     */
+    public CompletableFuture<SubscriptionChangePageDTO> poll(long after, int limit, Duration wait) {
+        if (wait.isNegative() || wait.compareTo(MAX_WAIT) > 0)
+            throw new IllegalArgumentException("wait must be between 0 and " + MAX_WAIT.getSeconds() + " seconds");
+
+        SubscriptionChangePageDTO page = read(after, limit);
+        if (!page.getChanges().isEmpty() || wait.isZero())
+            return CompletableFuture.completedFuture(page);
+
+        Waiter waiter = new Waiter(after, limit);
+        waiters.add(waiter);
+        // published between the read and the registration
+        if (lastPublished.get() > after) {
+            waiters.remove(waiter);
+            return CompletableFuture.completedFuture(read(after, limit));
+        }
+        return waiter.result
+                .completeOnTimeout(page, wait.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> waiters.remove(waiter));
+    }
+
+    /**
+     * Called by the relay once a batch is committed.
+     */
+    void published(List<SubscriptionChangeDTO> batch) {
+        long first = batch.get(0).getPosition();
+        lastPublished.accumulateAndGet(batch.get(batch.size() - 1).getPosition(), Math::max);
+
+        for (Waiter waiter : waiters) {
+            if (first > waiter.after + 1) {
+                // positions in between were published elsewhere
+                waiter.result.complete(read(waiter.after, waiter.limit));
+                continue;
+            }
+            List<SubscriptionChangeDTO> changes = batch.stream()
+                    .filter(change -> change.getPosition() > waiter.after)
+                    .limit(waiter.limit)
+                    .collect(Collectors.toList());
+            if (!changes.isEmpty())
+                waiter.result.complete(page(changes, waiter.after));
+        }
+    }
+
+    private static SubscriptionChangePageDTO page(List<SubscriptionChangeDTO> changes, long after) {
+        long nextAfter = changes.isEmpty() ? after : changes.get(changes.size() - 1).getPosition();
+        return new SubscriptionChangePageDTO(changes, nextAfter);
+    }
+
+    private static final class Waiter {
+        private final long after;
+        private final int limit;
+        private final CompletableFuture<SubscriptionChangePageDTO> result = new CompletableFuture<>();
+
+        private Waiter(long after, int limit) {
+            this.after = after;
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package net.casim.task.newsletter.outbox;
+
+import net.casim.task.newsletter.model.dto.SubscriptionChangeDTO;
+
+import java.util.List;
+
+/**
+ * Where the {@link OutboxRelay} publishes subscription changes, e.g. a message broker topic.
+ * <p>
+ * Called with consecutive batches in stream order, from one thread at a time, inside the transaction that
+ * assigns their positions: a batch that fails is published again, with new positions but the same
+ * {@code changeId}s, so publishing is at-least-once.
+ */
+public interface SubscriptionChangeSink {
+    void publish(List<SubscriptionChangeDTO> changes) throws Exception;
+}
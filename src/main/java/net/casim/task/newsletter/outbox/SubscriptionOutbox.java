@@ -0,0 +1,34 @@
+package net.casim.task.newsletter.outbox;
+
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.model.SubscriptionChange;
+import net.casim.task.newsletter.repository.SubscriptionChangeRepository;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+
+/**
+ * Writes every {@link SubscriptionChangedEvent} to the {@code subscription_outbox} table, in the transaction that
+ * published it, so a change and its outbox row commit or roll back together. Events published outside a
+ * transaction are not recorded here; their publisher calls {@link #record} itself.
+ */
+public class SubscriptionOutbox {
+    private final SubscriptionChangeRepository changeRepository;
+
+    public SubscriptionOutbox(SubscriptionChangeRepository changeRepository) {
+        this.changeRepository = changeRepository;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onSubscriptionChanged(SubscriptionChangedEvent event) {
+        record(event);
+    }
+
+    /**
+     * Writes the change in the current transaction, or in one of its own when there is none.
+     */
+    public void record(SubscriptionChangedEvent event) {
+        changeRepository.save(new SubscriptionChange(event.getUserId(), event.getNewsletterId(), event.isSubscribed(), LocalDateTime.now()));
+    }
+}
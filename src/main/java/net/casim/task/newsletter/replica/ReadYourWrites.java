@@ -0,0 +1,51 @@
+package net.casim.task.newsletter.replica;
+
+/**
+ * Marks the work of the current thread as needing the primary for its reads, because it follows a write the
+ * replicas may not have applied yet.
+ */
+public final class ReadYourWrites {
+    private static final ThreadLocal<Boolean> PRIMARY = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    public static boolean isPrimaryRequired() {
+        return PRIMARY.get() != null;
+    }
+
+    /**
+     * Sends the reads of the current thread to the primary until the scope is closed.
+     */
+    public static Scope requirePrimary() {
+        return new Scope();
+    }
+
+    /**
+     * Carries the current thread's requirement over to a task run on another thread.
+     */
+    public static Runnable propagate(Runnable task) {
+        if (!isPrimaryRequired())
+            return task;
+        return () -> {
+            try (Scope scope = requirePrimary()) {
+                task.run();
+            }
+        };
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final Boolean previous;
+
+        private Scope() {
+            this.previous = PRIMARY.get();
+            PRIMARY.set(Boolean.TRUE);
+        }
+
+        @Override
+        public void close() {
+            if (previous == null)
+                PRIMARY.remove();
+        }
+    }
+}
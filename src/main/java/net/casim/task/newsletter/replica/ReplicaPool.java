@@ -0,0 +1,135 @@
+package net.casim.task.newsletter.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * The read replicas, handed out round-robin among the healthy ones.
+ * <p>
+ * A replica is taken out of rotation as soon as a connection to it cannot be opened, and every
+ * {@code newsletter.replicas.health-check-interval} when a connection to it is not valid within
+ * {@code timeoutSeconds}; the same check puts it back once it answers again.
+ */
+public class ReplicaPool implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaPool.class);
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final int timeoutSeconds;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param replicas the DataSource of each replica by name
+     */
+    public ReplicaPool(Map<String, DataSource> replicas, int timeoutSeconds, MeterRegistry meterRegistry) {
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.timeoutSeconds = timeoutSeconds;
+
+        Gauge.builder("newsletter.replicas.healthy", this, pool -> pool.replicas.stream().filter(replica -> replica.healthy).count())
+                .description("Read replicas in rotation")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the next healthy replica, or {@code null} if there is none
+     */
+    public Replica next() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy)
+                return replica;
+        }
+        return null;
+    }
+
+    public List<DataSource> getDataSources() {
+        return replicas.stream().map(replica -> replica.dataSource).collect(Collectors.toList());
+    }
+
+    @Scheduled(fixedDelayString = "${newsletter.replicas.health-check-interval:PT5S}",
+            initialDelayString = "${newsletter.replicas.health-check-interval:PT5S}")
+    public synchronized void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean valid = isValid(replica);
+            if (!valid && replica.dataSource instanceof HikariDataSource) {
+                // the pooled connections may have outlived a restart of the replica: retire them all and try a new one
+                HikariPoolMXBean pool = ((HikariDataSource) replica.dataSource).getHikariPoolMXBean();
+                if (pool != null) {
+                    pool.softEvictConnections();
+                    valid = isValid(replica);
+                }
+            }
+            if (valid && !replica.healthy)
+                log.info("Read replica {} is back in rotation", replica.name);
+            else if (!valid && replica.healthy)
+                log.warn("Read replica {} failed its health check, reading from the primary instead", replica.name);
+            replica.healthy = valid;
+        }
+    }
+
+    private boolean isValid(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection()) {
+            return connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void markDown(Replica replica, SQLException cause) {
+        if (replica.healthy)
+            log.warn("Read replica {} is unreachable, reading from the primary until it passes a health check", replica.name, cause);
+        replica.healthy = false;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable)
+                ((AutoCloseable) replica.dataSource).close();
+        }
+    }
+
+    public static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        Connection getConnection() throws SQLException {
+            return dataSource.getConnection();
+        }
+
+        Connection getConnection(String username, String password) throws SQLException {
+            return dataSource.getConnection(username, password);
+        }
+    }
+}
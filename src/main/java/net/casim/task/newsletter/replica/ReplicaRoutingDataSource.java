@@ -0,0 +1,96 @@
+package net.casim.task.newsletter.replica;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends read-only transactions to a replica from the {@link ReplicaPool}, and everything else to the primary.
+ * <p>
+ * Connections are only fetched when the first statement runs, once the transaction is known to be read-only.
+ * Reads still go to the primary while {@link ReadYourWrites} requires it, when no replica is healthy, and when
+ * the chosen replica cannot be connected to.
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+    private final DataSource primary;
+    private final ReplicaPool replicas;
+
+    public ReplicaRoutingDataSource(DataSource primary, ReplicaPool replicas, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas;
+
+        Counter primaryConnections = connectionCounter(meterRegistry, "primary");
+        Counter replicaConnections = connectionCounter(meterRegistry, "replica");
+        setTargetDataSource(new AbstractDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                ReplicaPool.Replica replica = replicaFor();
+                if (replica != null) {
+                    try {
+                        Connection connection = replica.getConnection();
+                        replicaConnections.increment();
+                        return connection;
+                    } catch (SQLException e) {
+                        replicas.markDown(replica, e);
+                    }
+                }
+                primaryConnections.increment();
+                return primary.getConnection();
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                ReplicaPool.Replica replica = replicaFor();
+                if (replica != null) {
+                    try {
+                        Connection connection = replica.getConnection(username, password);
+                        replicaConnections.increment();
+                        return connection;
+                    } catch (SQLException e) {
+                        replicas.markDown(replica, e);
+                    }
+                }
+                primaryConnections.increment();
+                return primary.getConnection(username, password);
+            }
+
+            private ReplicaPool.Replica replicaFor() {
+                if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReadYourWrites.isPrimaryRequired())
+                    return null;
+                return replicas.next();
+            }
+        });
+    }
+
+    /**
+     * @return the primary's DataSource followed by the replicas'
+     */
+    public List<DataSource> getTargets() {
+        List<DataSource> targets = new ArrayList<>();
+        targets.add(primary);
+        targets.addAll(replicas.getDataSources());
+        return targets;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (primary instanceof AutoCloseable)
+            ((AutoCloseable) primary).close();
+    }
+
+    private static Counter connectionCounter(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("newsletter.replicas.connections")
+                .description("Connections handed out by the replica routing, by target")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+}
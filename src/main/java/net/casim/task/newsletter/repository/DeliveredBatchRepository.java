@@ -0,0 +1,28 @@
+package net.casim.task.newsletter.repository;
+
+import net.casim.task.newsletter.model.DeliveredBatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DeliveredBatchRepository extends JpaRepository<DeliveredBatch, Long> {
+
+    List<DeliveredBatch> findByDeliveryId(Long deliveryId);
+
+    @Query("select coalesce(sum(b.recipients), 0) from DeliveredBatch b where b.deliveryId = :deliveryId")
+    long sumRecipients(@Param("deliveryId") Long deliveryId);
+
+    @Modifying
+    @Query("delete from DeliveredBatch b where b.batchId in :batchIds")
+    int deleteByBatchIds(@Param("batchIds") Collection<Long> batchIds);
+
+    @Modifying
+    @Query("delete from DeliveredBatch b where b.deliveryId = :deliveryId")
+    int deleteByDelivery(@Param("deliveryId") Long deliveryId);
+}
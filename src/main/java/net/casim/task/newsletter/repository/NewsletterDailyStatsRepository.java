@@ -0,0 +1,31 @@
+package net.casim.task.newsletter.repository;
+
+import net.casim.task.newsletter.model.NewsletterDailyStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface NewsletterDailyStatsRepository extends JpaRepository<NewsletterDailyStats, NewsletterDailyStats.Key> {
+
+    List<NewsletterDailyStats> findByNewsletterIdAndDayGreaterThanEqual(Long newsletterId, LocalDate from);
+
+    /**
+     * Adds to the counters of an existing row in a single statement, in a transaction of its own when called
+     * outside one.
+     *
+     * @return the number of updated rows, 0 if the row does not exist yet
+     */
+    @Modifying
+    @Transactional
+    @Query("update NewsletterDailyStats s set s.subscribes = s.subscribes + :subscribes, s.unsubscribes = s.unsubscribes + :unsubscribes " +
+            "where s.newsletterId = :newsletterId and s.day = :day")
+    int addCounts(@Param("newsletterId") Long newsletterId, @Param("day") LocalDate day,
+                  @Param("subscribes") long subscribes, @Param("unsubscribes") long unsubscribes);
+}
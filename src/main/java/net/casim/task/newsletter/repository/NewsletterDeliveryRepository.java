@@ -0,0 +1,33 @@
+package net.casim.task.newsletter.repository;
+
+import net.casim.task.newsletter.model.DeliveryStatus;
+import net.casim.task.newsletter.model.NewsletterDelivery;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface NewsletterDeliveryRepository extends JpaRepository<NewsletterDelivery, Long> {
+
+    List<NewsletterDelivery> findByStatus(DeliveryStatus status);
+
+    /**
+     * Moves the checkpoint forward over recipients that have been sent.
+     */
+    @Modifying
+    @Query("update NewsletterDelivery d set d.cursorCreatedAt = :createdAt, d.cursorId = :id, " +
+            "d.delivered = d.delivered + :recipients, d.updatedAt = :now where d.deliveryId = :deliveryId")
+    int advance(@Param("deliveryId") Long deliveryId, @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id,
+                @Param("recipients") long recipients, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update NewsletterDelivery d set d.status = :status, d.delivered = d.delivered + :recipients, " +
+            "d.failure = :failure, d.updatedAt = :now where d.deliveryId = :deliveryId")
+    int finish(@Param("deliveryId") Long deliveryId, @Param("status") DeliveryStatus status, @Param("recipients") long recipients,
+               @Param("failure") String failure, @Param("now") LocalDateTime now);
+}
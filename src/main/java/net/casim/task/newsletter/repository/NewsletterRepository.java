@@ -1,10 +1,25 @@
 package net.casim.task.newsletter.repository;
 
 import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.projection.NewsletterSummaryView;
+import net.casim.task.newsletter.model.projection.NewsletterView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface NewsletterRepository extends JpaRepository<Newsletter, Long> {
 
-}
+    List<NewsletterView> findAllByOrderByNewsletterId();
 
+    List<NewsletterView> findByNewsletterIdIn(Collection<Long> newsletterIds);
+
+    /**
+     * Keyset page in newsletterId order. Only the columns of {@code type} are selected, so pass
+     * {@link NewsletterSummaryView} to leave out the content.
+     */
+    <T> List<T> findByNewsletterIdGreaterThanOrderByNewsletterId(Long newsletterId, Pageable pageable, Class<T> type);
+}
@@ -0,0 +1,339 @@
+package net.casim.task.newsletter.repository;
+
+import io.r2dbc.spi.R2dbcException;
+import io.r2dbc.spi.Row;
+import lombok.Value;
+import net.casim.task.newsletter.config.ReactiveConfig;
+import net.casim.task.newsletter.model.projection.*;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * The queries of {@link SubscriptionRepository}, {@link NewsletterRepository} and {@link UserRepository} that the
+ * reactive API needs, over R2DBC. Results are the same projections the JPA repositories return.
+ */
+@Repository
+@Profile(ReactiveConfig.PROFILE)
+public class ReactiveSubscriptionRepository {
+    /**
+     * Must match the increment of {@code subscription_seq} and the allocationSize of {@code Subscription}.
+     */
+    private static final int ID_ALLOCATION_SIZE = 50;
+
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private static final String SUBSCRIBER_COLUMNS =
+            "select s.id, s.created_at, u.user_id, u.username from subscription s join users u on u.user_id = s.user_id ";
+
+    private final DatabaseClient databaseClient;
+
+    private final String upsertSql;
+
+    private final IdBlock ids = new IdBlock();
+
+    public ReactiveSubscriptionRepository(DatabaseClient databaseClient, DataSource dataSource) throws MetaDataAccessException {
+        this.databaseClient = databaseClient;
+        this.upsertSql = SubscriptionRepositoryCustomImpl.upsertSql(dataSource);
+    }
+
+    /**
+     * @return true if the subscription was created or re-activated, false if it was already active
+     */
+    public Mono<Boolean> upsertSubscribed(Long userId, Long newsletterId, LocalDateTime createdAt) {
+        return nextId()
+                .flatMap(id -> databaseClient.execute(upsertSql)
+                        .bind("id", id)
+                        .bind("userId", userId)
+                        .bind("newsletterId", newsletterId)
+                        .bind("createdAt", createdAt)
+                        .fetch()
+                        .rowsUpdated())
+                .map(rows -> rows > 0)
+                // MERGE lost the insert race to another connection, which left the subscription active
+                .onErrorResume(ReactiveSubscriptionRepository::isDuplicateKey, e -> Mono.just(false));
+    }
+
+    /**
+     * @return the number of subscriptions that were active before the update, 0 or 1
+     */
+    public Mono<Integer> deactivate(Long userId, Long newsletterId) {
+        return databaseClient.execute("update subscription set subscribed = false, version = version + 1, changed_at = current_timestamp " +
+                        "where user_id = :userId and newsletter_id = :newsletterId and subscribed = true")
+                .bind("userId", userId)
+                .bind("newsletterId", newsletterId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Boolean> existsActive(Long userId, Long newsletterId) {
+        return databaseClient.execute("select count(*) from subscription " +
+                        "where user_id = :userId and newsletter_id = :newsletterId and subscribed = true")
+                .bind("userId", userId)
+                .bind("newsletterId", newsletterId)
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .map(count -> count > 0);
+    }
+
+    public Mono<UserView> findUser(Long userId) {
+        return databaseClient.execute("select user_id, username from users where user_id = :userId")
+                .bind("userId", userId)
+                .map(row -> (UserView) new UserRow(row.get("user_id", Long.class), row.get("username", String.class)))
+                .one();
+    }
+
+    public Flux<NewsletterView> findAllNewsletters() {
+        return databaseClient.execute("select newsletter_id, title, content, publication_date, version from newsletter order by newsletter_id")
+                .map(ReactiveSubscriptionRepository::newsletter)
+                .all();
+    }
+
+    /**
+     * Keyset page in newsletterId order; the content column is only selected when asked for.
+     */
+    public Flux<NewsletterView> findNewslettersAfter(Long newsletterId, int size, boolean withContent) {
+        String columns = withContent ? "newsletter_id, title, content, publication_date, version" : "newsletter_id, title, publication_date, version";
+        return databaseClient.execute("select " + columns + " from newsletter where newsletter_id > :newsletterId " +
+                        "order by newsletter_id limit :size")
+                .bind("newsletterId", newsletterId)
+                .bind("size", size)
+                .map(row -> (NewsletterView) new NewsletterRow(row.get("newsletter_id", Long.class), row.get("title", String.class),
+                        withContent ? row.get("content", String.class) : null, row.get("publication_date", String.class),
+                        row.get("version", Long.class)))
+                .all();
+    }
+
+    public Flux<NewsletterView> findNewsletters(Collection<Long> newsletterIds) {
+        if (newsletterIds.isEmpty())
+            return Flux.empty();
+
+        return databaseClient.execute("select newsletter_id, title, content, publication_date, version from newsletter " +
+                        "where newsletter_id in (:newsletterIds)")
+                .bind("newsletterIds", newsletterIds)
+                .map(ReactiveSubscriptionRepository::newsletter)
+                .all();
+    }
+
+    public Flux<SubscriberView> findActiveSubscribersBefore(Long newsletterId, LocalDateTime date) {
+        return databaseClient.execute(SUBSCRIBER_COLUMNS +
+                        "where s.newsletter_id = :newsletterId and s.subscribed = true and s.created_at < :date")
+                .bind("newsletterId", newsletterId)
+                .bind("date", date)
+                .map(ReactiveSubscriptionRepository::subscriber)
+                .all();
+    }
+
+    public Flux<SubscriberView> findActiveSubscribersAfter(Long newsletterId, LocalDateTime date) {
+        return databaseClient.execute(SUBSCRIBER_COLUMNS +
+                        "where s.newsletter_id = :newsletterId and s.subscribed = true and s.created_at > :date")
+                .bind("newsletterId", newsletterId)
+                .bind("date", date)
+                .map(ReactiveSubscriptionRepository::subscriber)
+                .all();
+    }
+
+    /**
+     * Keyset page in the same (createdAt, id) ordering as {@link SubscriptionRepository#findActivePageAfter}.
+     */
+    public Flux<SubscriberView> findActivePageAfter(Long newsletterId, LocalDateTime createdAt, Long id,
+                                                    LocalDateTime until, int size) {
+        return databaseClient.execute(SUBSCRIBER_COLUMNS +
+                        "where s.newsletter_id = :newsletterId and s.subscribed = true and s.created_at < :until " +
+                        "and (s.created_at > :createdAt or (s.created_at = :createdAt and s.id > :id)) " +
+                        "order by s.created_at asc, s.id asc limit :size")
+                .bind("newsletterId", newsletterId)
+                .bind("createdAt", createdAt)
+                .bind("id", id)
+                .bind("until", until)
+                .bind("size", size)
+                .map(ReactiveSubscriptionRepository::subscriber)
+                .all();
+    }
+
+    /**
+     * Same ordering as {@link #findActivePageAfter}, unbounded; rows are fetched as the subscriber requests them.
+     */
+    public Flux<SubscriberView> streamActiveSubscribersAfter(Long newsletterId, LocalDateTime createdAt, Long id) {
+        return databaseClient.execute(SUBSCRIBER_COLUMNS +
+                        "where s.newsletter_id = :newsletterId and s.subscribed = true " +
+                        "and (s.created_at > :createdAt or (s.created_at = :createdAt and s.id > :id)) " +
+                        "order by s.created_at asc, s.id asc")
+                .bind("newsletterId", newsletterId)
+                .bind("createdAt", createdAt)
+                .bind("id", id)
+                .map(ReactiveSubscriptionRepository::subscriber)
+                .all();
+    }
+
+    public Flux<Long> findActiveNewsletterIds(Long userId, Collection<Long> newsletterIds) {
+        return databaseClient.execute("select newsletter_id from subscription " +
+                        "where user_id = :userId and newsletter_id in (:newsletterIds) and subscribed = true")
+                .bind("userId", userId)
+                .bind("newsletterIds", newsletterIds)
+                .map(row -> row.get("newsletter_id", Long.class))
+                .all();
+    }
+
+    public Flux<Long> findActiveUserIds(Long newsletterId, Collection<Long> userIds) {
+        return databaseClient.execute("select user_id from subscription " +
+                        "where newsletter_id = :newsletterId and user_id in (:userIds) and subscribed = true")
+                .bind("newsletterId", newsletterId)
+                .bind("userIds", userIds)
+                .map(row -> row.get("user_id", Long.class))
+                .all();
+    }
+
+    public Flux<MembershipView> findActiveMemberships(Collection<Long> userIds) {
+        if (userIds.isEmpty())
+            return Flux.empty();
+
+        return databaseClient.execute("select user_id, newsletter_id from subscription " +
+                        "where user_id in (:userIds) and subscribed = true")
+                .bind("userIds", userIds)
+                .map(row -> (MembershipView) new MembershipRow(row.get("user_id", Long.class), row.get("newsletter_id", Long.class)))
+                .all();
+    }
+
+    public Flux<SubscriberNameView> findActiveSubscriberNames(Collection<Long> newsletterIds) {
+        if (newsletterIds.isEmpty())
+            return Flux.empty();
+
+        return databaseClient.execute("select s.newsletter_id, u.username from subscription s join users u on u.user_id = s.user_id " +
+                        "where s.newsletter_id in (:newsletterIds) and s.subscribed = true order by s.id")
+                .bind("newsletterIds", newsletterIds)
+                .map(row -> (SubscriberNameView) new SubscriberNameRow(row.get("newsletter_id", Long.class), row.get("username", String.class)))
+                .all();
+    }
+
+    /**
+     * The version of each newsletter in newsletterId order, or only of {@code newsletterId} when it is not null. The
+     * subscription revisions are only summed up when asked for and are 0 otherwise.
+     */
+    public Flux<NewsletterRevisionView> findNewsletterRevisions(Long newsletterId, boolean withRevisions) {
+        String where = (newsletterId != null) ? "where n.newsletter_id = :newsletterId " : "";
+        String sql = withRevisions
+                ? "select n.newsletter_id, n.version, coalesce(sum(s.version + 1 + coalesce(u.version, 0)), 0) as revision from newsletter n " +
+                  "left join subscription s on s.newsletter_id = n.newsletter_id left join users u on u.user_id = s.user_id " + where +
+                  "group by n.newsletter_id, n.version order by n.newsletter_id"
+                : "select n.newsletter_id, n.version, 0 as revision from newsletter n " + where + "order by n.newsletter_id";
+
+        DatabaseClient.GenericExecuteSpec query = databaseClient.execute(sql);
+        if (newsletterId != null)
+            query = query.bind("newsletterId", newsletterId);
+        // SUM over bigint comes back as a decimal type
+        return query.map(row -> (NewsletterRevisionView) new NewsletterRevisionRow(row.get("newsletter_id", Long.class),
+                        row.get("version", Long.class), ((Number) row.get("revision")).longValue()))
+                .all();
+    }
+
+    /**
+     * Takes ids in blocks from {@code subscription_seq} the way Hibernate's pooled optimizer does, so they never
+     * collide with the ids Hibernate hands out itself.
+     */
+    private Mono<Long> nextId() {
+        return Mono.defer(() -> {
+            long id = ids.next();
+            if (id > 0)
+                return Mono.just(id);
+
+            return databaseClient.execute("select nextval('subscription_seq')")
+                    .map(row -> row.get(0, Long.class))
+                    .one()
+                    .map(ids::refill);
+        });
+    }
+
+    private static boolean isDuplicateKey(Throwable e) {
+        if (e instanceof DuplicateKeyException)
+            return true;
+
+        return e instanceof DataIntegrityViolationException && e.getCause() instanceof R2dbcException
+                && UNIQUE_VIOLATION.equals(((R2dbcException) e.getCause()).getSqlState());
+    }
+
+    private static NewsletterView newsletter(Row row) {
+        return new NewsletterRow(row.get("newsletter_id", Long.class), row.get("title", String.class),
+                row.get("content", String.class), row.get("publication_date", String.class), row.get("version", Long.class));
+    }
+
+    private static SubscriberView subscriber(Row row) {
+        return new SubscriberRow(row.get("user_id", Long.class), row.get("username", String.class),
+                row.get("id", Long.class), row.get("created_at", LocalDateTime.class));
+    }
+
+    /**
+     * The unused part of the last id block taken from the sequence.
+     */
+    private static final class IdBlock {
+        private long next;
+        private long last = -1;
+
+        /**
+         * @return the next id of the block, or -1 once it is used up
+         */
+        synchronized long next() {
+            return (next <= last) ? next++ : -1;
+        }
+
+        /**
+         * Replaces the block with the one ending at {@code hi} and returns its first id.
+         */
+        synchronized long refill(long hi) {
+            next = Math.max(1, hi - ID_ALLOCATION_SIZE + 1);
+            last = hi;
+            return next++;
+        }
+    }
+
+    @Value
+    private static class UserRow implements UserView {
+        Long userId;
+        String username;
+    }
+
+    @Value
+    private static class SubscriberRow implements SubscriberView {
+        Long userId;
+        String username;
+        Long id;
+        LocalDateTime createdAt;
+    }
+
+    @Value
+    private static class NewsletterRow implements NewsletterView {
+        Long newsletterId;
+        String title;
+        String content;
+        String publicationDate;
+        Long version;
+    }
+
+    @Value
+    private static class NewsletterRevisionRow implements NewsletterRevisionView {
+        Long newsletterId;
+        Long version;
+        Long revision;
+    }
+
+    @Value
+    private static class MembershipRow implements MembershipView {
+        Long userId;
+        Long newsletterId;
+    }
+
+    @Value
+    private static class SubscriberNameRow implements SubscriberNameView {
+        Long newsletterId;
+        String username;
+    }
+}
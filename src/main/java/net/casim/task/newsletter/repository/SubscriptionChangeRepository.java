@@ -0,0 +1,39 @@
+package net.casim.task.newsletter.repository;
+
+import net.casim.task.newsletter.model.SubscriptionChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface SubscriptionChangeRepository extends JpaRepository<SubscriptionChange, Long> {
+
+    /**
+     * Changes not published yet, oldest first, locked so that a second relay waits instead of publishing them too.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<SubscriptionChange> findByPositionIsNullOrderById(Pageable pageable);
+
+    @Query("select coalesce(max(c.position), 0) from SubscriptionChange c")
+    long findLastPosition();
+
+    /**
+     * Published changes after {@code position}, in stream order.
+     */
+    List<SubscriptionChange> findByPositionGreaterThanOrderByPosition(Long position, Pageable pageable);
+
+    /**
+     * Deletes the changes published before {@code position} that occurred before {@code before}.
+     */
+    @Modifying
+    @Query("delete from SubscriptionChange c where c.position < :position and c.occurredAt < :before")
+    int deletePublishedBefore(@Param("position") long position, @Param("before") LocalDateTime before);
+}
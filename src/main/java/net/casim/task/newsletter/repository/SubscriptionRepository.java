@@ -1,18 +1,130 @@
 package net.casim.task.newsletter.repository;
 
 import net.casim.task.newsletter.model.Subscription;
+import net.casim.task.newsletter.model.projection.MembershipChangeView;
+import net.casim.task.newsletter.model.projection.MembershipView;
+import net.casim.task.newsletter.model.projection.SubscriberNameView;
+import net.casim.task.newsletter.model.projection.SubscriberView;
+import net.casim.task.newsletter.model.projection.SubscriptionRevisionView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface SubscriptionRepository extends JpaRepository<Subscription, Long> {
+public interface SubscriptionRepository extends JpaRepository<Subscription, Long>, SubscriptionRepositoryCustom {
 
     List<Subscription> findByNewsletter_NewsletterIdAndSubscribedTrue(Long newsletterId);
 
+    @Query("select s.id as id, s.createdAt as createdAt, u.userId as userId, u.username as username " +
+            "from Subscription s join s.user u " +
+            "where s.newsletter.newsletterId = :newsletterId and s.subscribed = true and s.createdAt < :date")
+    List<SubscriberView> findActiveSubscribersBefore(@Param("newsletterId") Long newsletterId, @Param("date") LocalDateTime date);
+
+    @Query("select s.id as id, s.createdAt as createdAt, u.userId as userId, u.username as username " +
+            "from Subscription s join s.user u " +
+            "where s.newsletter.newsletterId = :newsletterId and s.subscribed = true and s.createdAt > :date")
+    List<SubscriberView> findActiveSubscribersAfter(@Param("newsletterId") Long newsletterId, @Param("date") LocalDateTime date);
+
+    /**
+     * Keyset page over the active subscriptions of a newsletter, ordered by (createdAt, id) and
+     * starting strictly after the given position. Served by idx_subscription_newsletter_active_created.
+     */
+    @Query("select s.id as id, s.createdAt as createdAt, u.userId as userId, u.username as username " +
+            "from Subscription s join s.user u " +
+            "where s.newsletter.newsletterId = :newsletterId and s.subscribed = true " +
+            "and s.createdAt < :until " +
+            "and (s.createdAt > :createdAt or (s.createdAt = :createdAt and s.id > :id)) " +
+            "order by s.createdAt asc, s.id asc")
+    List<SubscriberView> findActivePageAfter(@Param("newsletterId") Long newsletterId,
+                                             @Param("createdAt") LocalDateTime createdAt,
+                                             @Param("id") Long id,
+                                             @Param("until") LocalDateTime until,
+                                             Pageable pageable);
+
+    /**
+     * Same ordering as {@link #findActivePageAfter}, streamed instead of paged for exports.
+     */
+    @Query("select s.id as id, s.createdAt as createdAt, u.userId as userId, u.username as username " +
+            "from Subscription s join s.user u " +
+            "where s.newsletter.newsletterId = :newsletterId and s.subscribed = true " +
+            "and (s.createdAt > :createdAt or (s.createdAt = :createdAt and s.id > :id)) " +
+            "order by s.createdAt asc, s.id asc")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<SubscriberView> streamActiveSubscribersAfter(@Param("newsletterId") Long newsletterId,
+                                                        @Param("createdAt") LocalDateTime createdAt,
+                                                        @Param("id") Long id);
+
+    @Query("select s.user.userId as userId, s.newsletter.newsletterId as newsletterId from Subscription s " +
+            "where s.user.userId in :userIds and s.subscribed = true")
+    List<MembershipView> findActiveMembershipsByUserIds(@Param("userIds") Collection<Long> userIds);
+
+    @Query("select s.newsletter.newsletterId from Subscription s " +
+            "where s.user.userId = :userId and s.newsletter.newsletterId in :newsletterIds and s.subscribed = true")
+    List<Long> findActiveNewsletterIds(@Param("userId") Long userId, @Param("newsletterIds") Collection<Long> newsletterIds);
+
+    @Query("select s.user.userId from Subscription s " +
+            "where s.newsletter.newsletterId = :newsletterId and s.user.userId in :userIds and s.subscribed = true")
+    List<Long> findActiveUserIds(@Param("newsletterId") Long newsletterId, @Param("userIds") Collection<Long> userIds);
+
+    @Query("select s.newsletter.newsletterId as newsletterId, s.user.username as username from Subscription s " +
+            "where s.newsletter.newsletterId in :newsletterIds and s.subscribed = true order by s.id")
+    List<SubscriberNameView> findActiveSubscriberNames(@Param("newsletterIds") Collection<Long> newsletterIds);
+
+    @Query("select s.user.userId as userId, s.newsletter.newsletterId as newsletterId from Subscription s " +
+            "where s.subscribed = true")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<MembershipView> streamActiveMemberships();
+
+    /**
+     * Rows written at or after {@code since}, active or not.
+     */
+    @Query("select s.user.userId as userId, s.newsletter.newsletterId as newsletterId, s.subscribed as subscribed " +
+            "from Subscription s where s.changedAt >= :since")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<MembershipChangeView> streamMembershipsChangedSince(@Param("since") LocalDateTime since);
+
+    /**
+     * The newsletters the user has subscription rows for, active or not.
+     */
+    @Query("select distinct s.newsletter.newsletterId from Subscription s where s.user.userId = :userId")
+    List<Long> findNewsletterIdsByUserId(@Param("userId") Long userId);
+
     boolean existsByUser_UserIdAndNewsletter_NewsletterIdAndSubscribedTrue(Long userId, Long newsletterId);
 
+    long countByNewsletter_NewsletterIdAndSubscribedTrue(Long newsletterId);
+
     Optional<Subscription> findByUser_UserIdAndNewsletter_NewsletterId(Long userId, Long newsletterId);
+
+    /**
+     * Deactivates the subscription in a single statement, in a transaction of its own when called outside one.
+     *
+     * @return the number of subscriptions that were active before the update, 0 or 1
+     */
+    @Modifying
+    @Transactional
+    @Query("update Subscription s set s.subscribed = false, s.version = s.version + 1, s.changedAt = current_timestamp " +
+            "where s.user.userId = :userId and s.newsletter.newsletterId = :newsletterId and s.subscribed = true")
+    int deactivate(@Param("userId") Long userId, @Param("newsletterId") Long newsletterId);
+
+    /**
+     * The subscription revision of each of the newsletters that has subscription rows.
+     */
+    @Query("select s.newsletter.newsletterId as newsletterId, sum(s.version + 1 + coalesce(u.version, 0)) as revision " +
+            "from Subscription s join s.user u " +
+            "where s.newsletter.newsletterId in :newsletterIds group by s.newsletter.newsletterId")
+    List<SubscriptionRevisionView> findSubscriptionRevisions(@Param("newsletterIds") Collection<Long> newsletterIds);
 }
@@ -0,0 +1,33 @@
+package net.casim.task.newsletter.repository;
+
+import net.casim.task.newsletter.model.SubscribeRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface SubscriptionRepositoryCustom {
+
+    /**
+     * Activates the subscription of the user to the newsletter in a single statement, inserting it if missing. Runs in
+     * a transaction of its own when called outside one.
+     *
+     * @return true if a subscription was inserted or re-activated, false if it was already active
+     */
+    boolean upsertSubscribed(Long userId, Long newsletterId, LocalDateTime createdAt);
+
+    /**
+     * {@link #upsertSubscribed} for each pair, sent as one JDBC batch. Needs a driver that reports the update count
+     * of every statement in a batch.
+     *
+     * @return for each pair, true if it was inserted or re-activated, false if it was already active
+     */
+    List<Boolean> upsertSubscribedAll(List<SubscribeRequest> pairs, LocalDateTime createdAt);
+
+    /**
+     * Deactivates the subscription of each pair with one JDBC batch of single-row updates, so only the requested
+     * pairs are touched.
+     *
+     * @return for each pair, true if its subscription was active before
+     */
+    List<Boolean> deactivateAll(List<SubscribeRequest> pairs);
+}
@@ -0,0 +1,171 @@
+package net.casim.task.newsletter.repository;
+
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.Subscription;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Upserts go straight through JDBC so a unique-key race surfaces as a {@link DuplicateKeyException} on the
+ * statement, without marking the surrounding JPA transaction rollback-only.
+ */
+public class SubscriptionRepositoryCustomImpl implements SubscriptionRepositoryCustom {
+
+    private static final String POSTGRES_UPSERT =
+            "insert into subscription (id, subscribed, newsletter_id, user_id, created_at, version, changed_at) " +
+            "values (:id, true, :newsletterId, :userId, :createdAt, 0, current_timestamp) " +
+            "on conflict (user_id, newsletter_id) do update " +
+            "set subscribed = true, created_at = excluded.created_at, version = subscription.version + 1, changed_at = current_timestamp " +
+            "where subscription.subscribed = false";
+
+    private static final String MERGE_UPSERT =
+            "merge into subscription s " +
+            "using (select cast(:userId as bigint) user_id, cast(:newsletterId as bigint) newsletter_id) r " +
+            "on (s.user_id = r.user_id and s.newsletter_id = r.newsletter_id) " +
+            "when matched and s.subscribed = false then update set subscribed = true, created_at = :createdAt, version = s.version + 1, " +
+            "changed_at = current_timestamp " +
+            "when not matched then insert (id, subscribed, newsletter_id, user_id, created_at, version, changed_at) " +
+            "values (:id, true, r.newsletter_id, r.user_id, :createdAt, 0, current_timestamp)";
+
+    private static final String DEACTIVATE =
+            "update subscription set subscribed = false, version = version + 1, changed_at = current_timestamp " +
+            "where user_id = :userId and newsletter_id = :newsletterId and subscribed = true";
+
+    /**
+     * SQLSTATE class of integrity constraint violations.
+     */
+    private static final String INTEGRITY_VIOLATION = "23";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final String upsertSql;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public SubscriptionRepositoryCustomImpl(NamedParameterJdbcTemplate jdbcTemplate, DataSource dataSource) throws MetaDataAccessException {
+        this.jdbcTemplate = jdbcTemplate;
+        this.upsertSql = upsertSql(dataSource);
+    }
+
+    /**
+     * The upsert statement for the database behind {@code dataSource}, with {@code :id}, {@code :userId},
+     * {@code :newsletterId} and {@code :createdAt} parameters.
+     */
+    static String upsertSql(DataSource dataSource) throws MetaDataAccessException {
+        String databaseName = JdbcUtils.extractDatabaseMetaData(dataSource, "getDatabaseProductName");
+        return "PostgreSQL".equals(databaseName) ? POSTGRES_UPSERT : MERGE_UPSERT;
+    }
+
+    @Override
+    @Transactional
+    public boolean upsertSubscribed(Long userId, Long newsletterId, LocalDateTime createdAt) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("id", nextId())
+                .addValue("userId", userId)
+                .addValue("newsletterId", newsletterId)
+                .addValue("createdAt", createdAt);
+
+        try {
+            return jdbcTemplate.update(upsertSql, parameters) > 0;
+        } catch (DuplicateKeyException e) {
+            // MERGE lost the insert race to another transaction, which left the subscription active
+            return false;
+        }
+    }
+
+    @Override
+    @Transactional
+    public List<Boolean> upsertSubscribedAll(List<SubscribeRequest> pairs, LocalDateTime createdAt) {
+        if (pairs.isEmpty())
+            return new ArrayList<>();
+
+        MapSqlParameterSource[] parameters = pairs.stream()
+                .map(pair -> new MapSqlParameterSource()
+                        .addValue("id", nextId())
+                        .addValue("userId", pair.getUserId())
+                        .addValue("newsletterId", pair.getNewsletterId())
+                        .addValue("createdAt", createdAt))
+                .toArray(MapSqlParameterSource[]::new);
+
+        ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(upsertSql);
+        String sql = NamedParameterUtils.substituteNamedParameters(parsedSql, parameters[0]);
+        int[] counts = jdbcTemplate.getJdbcOperations().execute(sql, (PreparedStatementCallback<int[]>) statement -> {
+            for (MapSqlParameterSource row : parameters) {
+                Object[] values = NamedParameterUtils.buildValueArray(parsedSql, row, null);
+                for (int i = 0; i < values.length; i++)
+                    StatementCreatorUtils.setParameterValue(statement, i + 1, SqlTypeValue.TYPE_UNKNOWN, values[i]);
+                statement.addBatch();
+            }
+
+            try {
+                return statement.executeBatch();
+            } catch (BatchUpdateException e) {
+                // MERGE lost the insert race for some pairs, which another transaction left active
+                SQLException cause = (e.getNextException() != null) ? e.getNextException() : e;
+                if (cause.getSQLState() == null || !cause.getSQLState().startsWith(INTEGRITY_VIOLATION))
+                    throw e;
+                return e.getUpdateCounts();
+            }
+        });
+
+        List<Boolean> upserted = new ArrayList<>(pairs.size());
+        for (int count : counts)
+            upserted.add(count > 0);
+        // a driver that stops at the failed statement leaves the rest of the batch undone
+        if (counts.length < pairs.size()) {
+            upserted.add(false);
+            upserted.addAll(upsertSubscribedAll(pairs.subList(counts.length + 1, pairs.size()), createdAt));
+        }
+        return upserted;
+    }
+
+    @Override
+    @Transactional
+    public List<Boolean> deactivateAll(List<SubscribeRequest> pairs) {
+        if (pairs.isEmpty())
+            return new ArrayList<>();
+
+        MapSqlParameterSource[] parameters = pairs.stream()
+                .map(pair -> new MapSqlParameterSource()
+                        .addValue("userId", pair.getUserId())
+                        .addValue("newsletterId", pair.getNewsletterId()))
+                .toArray(MapSqlParameterSource[]::new);
+
+        List<Boolean> deactivated = new ArrayList<>(pairs.size());
+        for (int count : jdbcTemplate.batchUpdate(DEACTIVATE, parameters))
+            deactivated.add(count > 0);
+        return deactivated;
+    }
+
+    /**
+     * Takes the id from Hibernate's pooled {@code subscription_seq} generator, so rows inserted here never
+     * collide with ids Hibernate hands out itself.
+     */
+    private Long nextId() {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        IdentifierGenerator generator = session.getFactory().getMetamodel()
+                .entityPersister(Subscription.class).getIdentifierGenerator();
+        return (Long) generator.generate(session, null);
+    }
+}
@@ -1,14 +1,26 @@
 package net.casim.task.newsletter.repository;
 
 import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.projection.UserView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByUserId(Long userId);
 
-}
+    Optional<UserView> findViewByUserId(Long userId);
+
+    List<UserView> findByUserIdIn(Collection<Long> userIds);
 
+    /**
+     * Keyset page in userId order.
+     */
+    List<UserView> findByUserIdGreaterThanOrderByUserId(Long userId, Pageable pageable);
+
+}
@@ -0,0 +1,202 @@
+package net.casim.task.newsletter.search;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.event.NewsletterChangedEvent;
+import net.casim.task.newsletter.event.RebuildQueue;
+import net.casim.task.newsletter.event.UserChangedEvent;
+import net.casim.task.newsletter.model.dto.SearchHitDTO;
+import net.casim.task.newsletter.model.projection.NewsletterView;
+import net.casim.task.newsletter.model.projection.UserView;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * In-process full-text and prefix search over newsletter titles and contents and over usernames.
+ * <p>
+ * Rebuilt from the repositories once the application is ready, newsletters and users side by side, each page
+ * tokenized in parallel. Afterwards it follows {@link NewsletterChangedEvent}s and {@link UserChangedEvent}s by
+ * re-reading the changed rows once their transaction commits; changes committed during a rebuild are held back by a
+ * {@link RebuildQueue} and replayed on top of it. Until the first rebuild finishes {@link #isReady()} is false.
+ * Rows written with plain JDBC, like the seed data, are only picked up by a rebuild.
+ */
+@Component
+public class SearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+    public static final int MAX_RESULTS = 100;
+
+    private final NewsletterRepository newsletterRepository;
+
+    private final UserRepository userRepository;
+
+    private final int rebuildPageSize;
+
+    private volatile TermIndex newsletters = new TermIndex();
+
+    private volatile TermIndex users = new TermIndex();
+
+    private final RebuildQueue<Object> changes = new RebuildQueue<>(this::reindex);
+
+    public SearchIndex(NewsletterRepository newsletterRepository,
+                       UserRepository userRepository,
+                       MeterRegistry meterRegistry,
+                       @Value("${newsletter.search.rebuild-page-size:10000}") int rebuildPageSize) {
+        this.newsletterRepository = newsletterRepository;
+        this.userRepository = userRepository;
+        this.rebuildPageSize = rebuildPageSize;
+
+        registerGauges(meterRegistry, "newsletter", index -> index.newsletters);
+        registerGauges(meterRegistry, "user", index -> index.users);
+    }
+
+    public boolean isReady() {
+        return changes.isReady();
+    }
+
+    /**
+     * Newsletters whose title or content contains every word of the query; with {@code prefix} the last word
+     * may be incomplete.
+     *
+     * @throws IllegalArgumentException if {@code limit} is not between 1 and {@value #MAX_RESULTS}
+     */
+    public List<SearchHitDTO> searchNewsletters(String query, boolean prefix, int limit) {
+        return search(newsletters, query, prefix, limit);
+    }
+
+    /**
+     * Users whose username contains every word of the query; with {@code prefix} the last word may be incomplete.
+     *
+     * @throws IllegalArgumentException if {@code limit} is not between 1 and {@value #MAX_RESULTS}
+     */
+    public List<SearchHitDTO> searchUsers(String query, boolean prefix, int limit) {
+        return search(users, query, prefix, limit);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long started = System.nanoTime();
+        rebuild();
+        log.info("Search index ready: {} newsletters and {} users under {} terms in {} ms",
+                newsletters.documents(), users.documents(), newsletters.terms() + users.terms(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Replaces the index content with a fresh read of all newsletters and users.
+     */
+    public void rebuild() {
+        changes.rebuild(() -> {
+            CompletableFuture<TermIndex> rebuiltNewsletters = CompletableFuture.supplyAsync(() -> load(
+                    (after, page) -> newsletterRepository.findByNewsletterIdGreaterThanOrderByNewsletterId(after, page, NewsletterView.class),
+                    NewsletterView::getNewsletterId, SearchIndex::document));
+            CompletableFuture<TermIndex> rebuiltUsers = CompletableFuture.supplyAsync(() -> load(
+                    userRepository::findByUserIdGreaterThanOrderByUserId, UserView::getUserId, SearchIndex::document));
+
+            newsletters = rebuiltNewsletters.join();
+            users = rebuiltUsers.join();
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNewsletterChanged(NewsletterChangedEvent event) {
+        changes.add(event);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        changes.add(event);
+    }
+
+    private void reindex(List<Object> changed) {
+        Set<Long> newsletterIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        for (Object change : changed) {
+            if (change instanceof NewsletterChangedEvent)
+                newsletterIds.add(((NewsletterChangedEvent) change).getNewsletterId());
+            else
+                userIds.add(((UserChangedEvent) change).getUserId());
+        }
+
+        if (!newsletterIds.isEmpty())
+            reindex(newsletters, newsletterIds, newsletterRepository.findByNewsletterIdIn(newsletterIds),
+                    NewsletterView::getNewsletterId, SearchIndex::document);
+        if (!userIds.isEmpty())
+            reindex(users, userIds, userRepository.findByUserIdIn(userIds), UserView::getUserId, SearchIndex::document);
+    }
+
+    /**
+     * Re-reads the changed rows; the ones that are gone were deleted.
+     */
+    private static <T> void reindex(TermIndex index, Set<Long> changedIds, List<T> rows, Function<T, Long> id,
+                                    Function<T, TermIndex.Document> document) {
+        Set<Long> deleted = new HashSet<>(changedIds);
+        for (T row : rows) {
+            deleted.remove(id.apply(row));
+            index.put(document.apply(row));
+        }
+        deleted.forEach(index::remove);
+    }
+
+    private <T> TermIndex load(BiFunction<Long, PageRequest, List<T>> pages, Function<T, Long> id,
+                               Function<T, TermIndex.Document> document) {
+        TermIndex index = new TermIndex();
+        long after = 0L;
+        List<T> page;
+        do {
+            page = pages.apply(after, PageRequest.of(0, rebuildPageSize));
+            page.parallelStream()
+                    .map(document)
+                    .collect(Collectors.toList())
+                    .forEach(index::put);
+            if (!page.isEmpty())
+                after = id.apply(page.get(page.size() - 1));
+        } while (page.size() == rebuildPageSize);
+        return index;
+    }
+
+    private static List<SearchHitDTO> search(TermIndex index, String query, boolean prefix, int limit) {
+        if (limit < 1 || limit > MAX_RESULTS)
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_RESULTS);
+        return index.search(TermIndex.tokenize(query), prefix, limit);
+    }
+
+    private static TermIndex.Document document(NewsletterView newsletter) {
+        return TermIndex.document(newsletter.getNewsletterId(), newsletter.getTitle(), newsletter.getTitle(), newsletter.getContent());
+    }
+
+    private static TermIndex.Document document(UserView user) {
+        return TermIndex.document(user.getUserId(), user.getUsername(), user.getUsername());
+    }
+
+    private void registerGauges(MeterRegistry meterRegistry, String type, Function<SearchIndex, TermIndex> index) {
+        ToDoubleFunction<SearchIndex> documents = search -> index.apply(search).documents();
+        ToDoubleFunction<SearchIndex> terms = search -> index.apply(search).terms();
+        Gauge.builder("search.index.documents", this, documents)
+                .description("Documents held in the search index")
+                .tag("type", type)
+                .register(meterRegistry);
+        Gauge.builder("search.index.terms", this, terms)
+                .description("Distinct words held in the search index")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+}
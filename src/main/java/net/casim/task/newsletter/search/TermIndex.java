@@ -0,0 +1,153 @@
+package net.casim.task.newsletter.search;
+
+import net.casim.task.newsletter.model.dto.SearchHitDTO;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index from lower-cased words to the ids of the documents containing them.
+ * <p>
+ * Terms are kept sorted, so the terms starting with a prefix are one contiguous range of the map and typeahead
+ * walks only that range. Writers are serialized; searches run without locking and may briefly see a document
+ * that is being updated with only part of its new terms.
+ */
+final class TermIndex {
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ConcurrentSkipListMap<String, ConcurrentSkipListSet<Long>> postings = new ConcurrentSkipListMap<>();
+
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+
+    private final AtomicLong terms = new AtomicLong();
+
+    /**
+     * @return the distinct words of the texts, lower-cased, in order of first appearance
+     */
+    static List<String> tokenize(String... texts) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String text : texts) {
+            if (text == null)
+                continue;
+            for (String word : SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+                if (!word.isEmpty())
+                    words.add(word);
+            }
+        }
+        return new ArrayList<>(words);
+    }
+
+    static Document document(Long id, String label, String... texts) {
+        return new Document(id, label, new HashSet<>(tokenize(texts)));
+    }
+
+    long documents() {
+        return documents.size();
+    }
+
+    long terms() {
+        return terms.get();
+    }
+
+    synchronized void put(Document document) {
+        Document previous = documents.put(document.id, document);
+        if (previous != null) {
+            for (String term : previous.terms) {
+                if (!document.terms.contains(term))
+                    removePosting(term, document.id);
+            }
+        }
+        for (String term : document.terms) {
+            postings.computeIfAbsent(term, key -> {
+                terms.incrementAndGet();
+                return new ConcurrentSkipListSet<>();
+            }).add(document.id);
+        }
+    }
+
+    synchronized void remove(Long id) {
+        Document previous = documents.remove(id);
+        if (previous != null)
+            previous.terms.forEach(term -> removePosting(term, id));
+    }
+
+    /**
+     * Documents containing every word. With {@code prefix} the last word only has to start a term, and matches come
+     * in the order of the terms completing it; otherwise they come in id order.
+     */
+    List<SearchHitDTO> search(List<String> words, boolean prefix, int limit) {
+        if (words.isEmpty())
+            return Collections.emptyList();
+
+        List<Set<Long>> required = new ArrayList<>();
+        for (String word : prefix ? words.subList(0, words.size() - 1) : words) {
+            Set<Long> ids = postings.get(word);
+            if (ids == null)
+                return Collections.emptyList();
+            required.add(ids);
+        }
+        // probe the rarest words first
+        required.sort(Comparator.comparingInt(Set::size));
+
+        Map<Long, SearchHitDTO> hits = new LinkedHashMap<>();
+        if (!prefix) {
+            collect(required.remove(0), required, hits, limit);
+            return new ArrayList<>(hits.values());
+        }
+
+        String last = words.get(words.size() - 1);
+        for (Map.Entry<String, ConcurrentSkipListSet<Long>> completion : postings.tailMap(last).entrySet()) {
+            if (!completion.getKey().startsWith(last) || !collect(completion.getValue(), required, hits, limit))
+                break;
+        }
+        return new ArrayList<>(hits.values());
+    }
+
+    /**
+     * @return false once {@code limit} hits are collected
+     */
+    private boolean collect(Set<Long> candidates, List<Set<Long>> required, Map<Long, SearchHitDTO> hits, int limit) {
+        for (Long id : candidates) {
+            if (hits.size() >= limit)
+                return false;
+            if (hits.containsKey(id) || !containsAll(required, id))
+                continue;
+            Document document = documents.get(id);
+            if (document != null)
+                hits.put(id, new SearchHitDTO(id, document.label));
+        }
+        return hits.size() < limit;
+    }
+
+    private static boolean containsAll(List<Set<Long>> required, Long id) {
+        for (Set<Long> ids : required) {
+            if (!ids.contains(id))
+                return false;
+        }
+        return true;
+    }
+
+    private void removePosting(String term, Long id) {
+        Set<Long> ids = postings.get(term);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            postings.remove(term);
+            terms.decrementAndGet();
+        }
+    }
+
+    static final class Document {
+        private final Long id;
+        private final String label;
+        private final Set<String> terms;
+
+        private Document(Long id, String label, Set<String> terms) {
+            this.id = id;
+            this.label = label;
+            this.terms = terms;
+        }
+    }
+}
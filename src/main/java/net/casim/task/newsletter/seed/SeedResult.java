@@ -0,0 +1,18 @@
+package net.casim.task.newsletter.seed;
+
+import lombok.Value;
+
+/**
+ * Identifiers of the rows a {@link SyntheticDataGenerator} run created. Newsletter ids are in popularity order,
+ * the most subscribed newsletter first.
+ */
+@Value
+public class SeedResult {
+    long[] userIds;
+
+    long[] newsletterIds;
+
+    long subscriptions;
+
+    long firstSubscriptionId;
+}
@@ -0,0 +1,63 @@
+package net.casim.task.newsletter.seed;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Shape of a synthetic data set. Every user gets {@code subscriptions / users} (or one more) distinct newsletters,
+ * picked with a Zipf distribution over the newsletters in the order they are created: newsletter {@code k} is chosen
+ * {@code (k + 1)^zipfExponent} times less often than the first one, and an exponent of {@code 0} spreads the
+ * subscriptions uniformly. Creation dates are uniformly spread over {@code [from, from + spread)}.
+ */
+@Value
+@Builder
+public class SeedSpec {
+    int users;
+
+    int newsletters;
+
+    long subscriptions;
+
+    @Builder.Default
+    double zipfExponent = 1.0;
+
+    @Builder.Default
+    LocalDateTime from = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    @Builder.Default
+    Duration spread = Duration.ofDays(365);
+
+    /**
+     * Share of the subscriptions that are seeded as unsubscribed.
+     */
+    @Builder.Default
+    double inactiveRatio = 0;
+
+    /**
+     * The same seed and sizes give the same data set, whatever the number of threads.
+     */
+    @Builder.Default
+    long randomSeed = 42;
+
+    @Builder.Default
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Rows per JDBC batch or {@code COPY} round trip.
+     */
+    @Builder.Default
+    int batchSize = 10_000;
+
+    void validate() {
+        if (users < 0 || newsletters < 0 || subscriptions < 0)
+            throw new IllegalArgumentException("Seed sizes must not be negative");
+        if (subscriptions > (long) users * newsletters)
+            throw new IllegalArgumentException(String.format("%d users cannot have %d distinct subscriptions to %d newsletters",
+                    users, subscriptions, newsletters));
+        if (zipfExponent < 0 || inactiveRatio < 0 || inactiveRatio > 1 || threads < 1 || batchSize < 1 || spread.isNegative())
+            throw new IllegalArgumentException("Invalid seed spec " + this);
+    }
+}
@@ -0,0 +1,204 @@
+package net.casim.task.newsletter.seed;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+
+/**
+ * Bulk loads a synthetic data set of users, newsletters and subscriptions for load tests and benchmarks.
+ * <p>
+ * Rows are written straight through JDBC in chunks of {@link SeedSpec#getBatchSize()} rows, loaded in parallel:
+ * with {@code COPY ... FROM STDIN} on PostgreSQL and with JDBC batches elsewhere. Nothing goes through JPA, so no
+ * events are published; call {@code SubscriptionIndex.warmUp()} afterwards when seeding a running application.
+ * Subscription ids are assigned here and the {@code subscription_seq} is moved past them, so the database should
+ * not take writes while a data set is loaded.
+ */
+@Component
+public class SyntheticDataGenerator {
+    private static final Logger log = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+
+    private static final String SUBSCRIPTION_COLUMNS = "id, subscribed, newsletter_id, user_id, created_at, version, changed_at";
+
+    /**
+     * Matches the pooled allocationSize of Subscription.
+     */
+    private static final int ID_BLOCK = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final DataSource dataSource;
+
+    public SyntheticDataGenerator(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+    }
+
+    public SeedResult generate(SeedSpec spec) {
+        spec.validate();
+        long started = System.nanoTime();
+        boolean copy = supportsCopy();
+        ExecutorService executor = Executors.newFixedThreadPool(spec.getThreads());
+        try {
+            long[] userIds = insertWithIdentity(executor, copy, spec, "users", "user_id", "username, version",
+                    spec.getUsers(), i -> new Object[]{"User" + i, 0L});
+            LocalDateTime from = spec.getFrom();
+            long[] newsletterIds = insertWithIdentity(executor, copy, spec, "newsletter", "newsletter_id", "title, content, publication_date, version",
+                    spec.getNewsletters(), i -> new Object[]{"Newsletter " + i, "Content of Newsletter " + i, String.valueOf(from.toLocalDate()), 0L});
+
+            long firstSubscriptionId = nextFreeSubscriptionId();
+            if (spec.getSubscriptions() > 0) {
+                insertSubscriptions(executor, copy, spec, userIds, newsletterIds, firstSubscriptionId);
+                // keep Hibernate's pooled ids clear of the seeded ones
+                jdbcTemplate.execute("alter sequence subscription_seq restart with " + (firstSubscriptionId + spec.getSubscriptions() + ID_BLOCK));
+            }
+
+            log.info("Seeded {} users, {} newsletters and {} subscriptions with {} in {} ms", userIds.length, newsletterIds.length,
+                    spec.getSubscriptions(), copy ? "COPY" : "JDBC batches", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            return new SeedResult(userIds, newsletterIds, spec.getSubscriptions(), firstSubscriptionId);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long[] insertWithIdentity(ExecutorService executor, boolean copy, SeedSpec spec, String table, String idColumn,
+                                      String columns, int count, IntFunction<Object[]> row) {
+        Long lastId = jdbcTemplate.queryForObject("select coalesce(max(" + idColumn + "), 0) from " + table, Long.class);
+        List<Callable<Void>> chunks = new ArrayList<>();
+        for (int start = 0; start < count; start += spec.getBatchSize()) {
+            int from = start;
+            int to = Math.min(count, start + spec.getBatchSize());
+            chunks.add(() -> {
+                List<Object[]> rows = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++)
+                    rows.add(row.apply(i));
+                insert(copy, table, columns, rows);
+                return null;
+            });
+        }
+        runAll(executor, chunks);
+
+        // chunks run in parallel, so the identities are read back rather than derived
+        long[] ids = jdbcTemplate.queryForList("select " + idColumn + " from " + table + " where " + idColumn + " > ? order by " + idColumn,
+                Long.class, lastId).stream().mapToLong(Long::longValue).toArray();
+        if (ids.length != count)
+            throw new IllegalStateException(String.format("Expected %d new rows in %s but found %d", count, table, ids.length));
+        return ids;
+    }
+
+    private void insertSubscriptions(ExecutorService executor, boolean copy, SeedSpec spec, long[] userIds, long[] newsletterIds,
+                                     long firstSubscriptionId) {
+        int users = userIds.length;
+        int perUser = (int) (spec.getSubscriptions() / users);
+        int remainder = (int) (spec.getSubscriptions() % users);
+        int usersPerChunk = Math.max(1, spec.getBatchSize() / (perUser + 1));
+        ZipfSampler sampler = new ZipfSampler(newsletterIds.length, spec.getZipfExponent());
+        long spreadSeconds = Math.max(1, spec.getSpread().getSeconds());
+        Timestamp seededAt = Timestamp.valueOf(LocalDateTime.now());
+
+        List<Callable<Void>> chunks = new ArrayList<>();
+        for (int start = 0; start < users; start += usersPerChunk) {
+            int from = start;
+            int to = Math.min(users, start + usersPerChunk);
+            chunks.add(() -> {
+                // seeded per chunk so the data set does not depend on which thread loads which chunk
+                SplittableRandom random = new SplittableRandom(spec.getRandomSeed() ^ (from * 0x9E3779B97F4A7C15L));
+                int[] ranks = new int[perUser + 1];
+                long id = firstSubscriptionId + (long) from * perUser + Math.min(from, remainder);
+                List<Object[]> rows = new ArrayList<>((to - from) * (perUser + 1));
+                for (int user = from; user < to; user++) {
+                    int count = user < remainder ? perUser + 1 : perUser;
+                    sampler.sampleDistinct(random, ranks, count);
+                    for (int i = 0; i < count; i++) {
+                        boolean subscribed = random.nextDouble() >= spec.getInactiveRatio();
+                        Timestamp createdAt = Timestamp.valueOf(spec.getFrom().plusSeconds(random.nextLong(spreadSeconds)));
+                        rows.add(new Object[]{id++, subscribed, newsletterIds[ranks[i]], userIds[user], createdAt, 0L, seededAt});
+                    }
+                }
+                insert(copy, "subscription", SUBSCRIPTION_COLUMNS, rows);
+                return null;
+            });
+        }
+        runAll(executor, chunks);
+    }
+
+    /**
+     * First id past both the rows already in the table and the ids Hibernate may have reserved from the sequence.
+     */
+    private long nextFreeSubscriptionId() {
+        Long reserved = jdbcTemplate.queryForObject("select nextval('subscription_seq')", Long.class);
+        Long existing = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from subscription", Long.class);
+        return Math.max(reserved, existing) + 1;
+    }
+
+    private void insert(boolean copy, String table, String columns, List<Object[]> rows) {
+        if (rows.isEmpty())
+            return;
+        if (copy) {
+            copy(table, columns, rows);
+            return;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(rows.get(0).length, "?"));
+        jdbcTemplate.batchUpdate("insert into " + table + " (" + columns + ") values (" + placeholders + ")", rows);
+    }
+
+    private void copy(String table, String columns, List<Object[]> rows) {
+        StringBuilder csv = new StringBuilder(rows.size() * 64);
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0)
+                    csv.append(',');
+                if (row[i] instanceof String)
+                    csv.append('"').append(((String) row[i]).replace("\"", "\"\"")).append('"');
+                else
+                    csv.append(row[i]);
+            }
+            csv.append('\n');
+        }
+        String sql = "copy " + table + " (" + columns + ") from stdin with (format csv)";
+        try (Connection connection = dataSource.getConnection()) {
+            connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, new StringReader(csv.toString()));
+        } catch (SQLException e) {
+            throw jdbcTemplate.getExceptionTranslator().translate("COPY", sql, e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not stream rows into " + table, e);
+        }
+    }
+
+    private boolean supportsCopy() {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.isWrapperFor(PGConnection.class);
+        } catch (SQLException e) {
+            throw jdbcTemplate.getExceptionTranslator().translate("Connection check", null, e);
+        }
+    }
+
+    private static void runAll(ExecutorService executor, List<Callable<Void>> chunks) {
+        try {
+            for (Future<Void> chunk : executor.invokeAll(chunks))
+                chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while seeding", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package net.casim.task.newsletter.seed;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks {@code 0..n-1} with probability proportional to {@code 1 / (rank + 1)^exponent}, by binary search
+ * over the cumulative distribution.
+ */
+final class ZipfSampler {
+    private final double[] cumulative;
+
+    ZipfSampler(int n, double exponent) {
+        cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++)
+            cumulative[rank] /= sum;
+    }
+
+    int sample(SplittableRandom random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (rank < 0)
+            rank = -rank - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+
+    /**
+     * Fills {@code ranks} with distinct samples. Rejection keeps the distribution for the usual few picks out of many
+     * newsletters; once it stalls on a handful of dominant ranks the remaining picks are taken uniformly.
+     */
+    void sampleDistinct(SplittableRandom random, int[] ranks, int count) {
+        int n = cumulative.length;
+        int picked = 0;
+        for (int attempts = 0; picked < count && attempts < count * 64; attempts++) {
+            int rank = sample(random);
+            if (!contains(ranks, picked, rank))
+                ranks[picked++] = rank;
+        }
+        while (picked < count) {
+            int rank = random.nextInt(n);
+            while (contains(ranks, picked, rank))
+                rank = (rank + 1) % n;
+            ranks[picked++] = rank;
+        }
+    }
+
+    private static boolean contains(int[] ranks, int length, int rank) {
+        for (int i = 0; i < length; i++)
+            if (ranks[i] == rank)
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package net.casim.task.newsletter.service;
+
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.model.BulkSubscriptionResult;
+import net.casim.task.newsletter.model.BulkSubscriptionStatus;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.projection.NewsletterView;
+import net.casim.task.newsletter.model.projection.UserView;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Applies one chunk of a bulk subscribe/unsubscribe in its own transaction.
+ * <p>
+ * Users and newsletters of the chunk are resolved with one set-based query each, and subscriptions are written
+ * with batched JDBC statements that only touch the requested pairs.
+ */
+@Component
+public class BulkSubscriptionWriter {
+    private final SubscriptionRepository subscriptionRepository;
+    private final NewsletterRepository newsletterRepository;
+    private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public BulkSubscriptionWriter(SubscriptionRepository subscriptionRepository, NewsletterRepository newsletterRepository,
+                                  UserRepository userRepository, ApplicationEventPublisher eventPublisher) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.newsletterRepository = newsletterRepository;
+        this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * New and re-activated subscriptions are written with one batched upsert, so a pair a concurrent call
+     * subscribes in the meantime is reported as already subscribed instead of failing the chunk.
+     */
+    @Transactional
+    public List<BulkSubscriptionResult> subscribe(List<SubscribeRequest> requests) {
+        Set<Long> users = userRepository.findByUserIdIn(collect(requests, SubscribeRequest::getUserId)).stream()
+                .map(UserView::getUserId)
+                .collect(Collectors.toSet());
+        Set<Long> newsletters = newsletterRepository.findByNewsletterIdIn(collect(requests, SubscribeRequest::getNewsletterId)).stream()
+                .map(NewsletterView::getNewsletterId)
+                .collect(Collectors.toSet());
+
+        BulkSubscriptionStatus[] statuses = new BulkSubscriptionStatus[requests.size()];
+        List<Integer> upserts = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            SubscribeRequest request = requests.get(i);
+            if (!users.contains(request.getUserId()))
+                statuses[i] = BulkSubscriptionStatus.USER_NOT_FOUND;
+            else if (!newsletters.contains(request.getNewsletterId()))
+                statuses[i] = BulkSubscriptionStatus.NEWSLETTER_NOT_FOUND;
+            else
+                upserts.add(i);
+        }
+
+        List<Boolean> upserted = subscriptionRepository.upsertSubscribedAll(
+                upserts.stream().map(requests::get).collect(Collectors.toList()), LocalDateTime.now());
+        for (int i = 0; i < upserts.size(); i++) {
+            SubscribeRequest request = requests.get(upserts.get(i));
+            if (upserted.get(i)) {
+                eventPublisher.publishEvent(new SubscriptionChangedEvent(request.getUserId(), request.getNewsletterId(), true));
+                statuses[upserts.get(i)] = BulkSubscriptionStatus.SUBSCRIBED;
+            } else {
+                statuses[upserts.get(i)] = BulkSubscriptionStatus.ALREADY_SUBSCRIBED;
+            }
+        }
+
+        List<BulkSubscriptionResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++)
+            results.add(new BulkSubscriptionResult(requests.get(i).getUserId(), requests.get(i).getNewsletterId(), statuses[i]));
+        return results;
+    }
+
+    /**
+     * Only the requested pairs are read and written, with one conditional update each, batched.
+     */
+    @Transactional
+    public List<BulkSubscriptionResult> unsubscribe(List<SubscribeRequest> requests) {
+        List<Boolean> deactivated = subscriptionRepository.deactivateAll(requests);
+
+        List<BulkSubscriptionResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            SubscribeRequest request = requests.get(i);
+            BulkSubscriptionStatus status = BulkSubscriptionStatus.NOT_SUBSCRIBED;
+            if (deactivated.get(i)) {
+                eventPublisher.publishEvent(new SubscriptionChangedEvent(request.getUserId(), request.getNewsletterId(), false));
+                status = BulkSubscriptionStatus.UNSUBSCRIBED;
+            }
+
+            results.add(new BulkSubscriptionResult(request.getUserId(), request.getNewsletterId(), status));
+        }
+        return results;
+    }
+
+    private static Set<Long> collect(List<SubscribeRequest> requests, Function<SubscribeRequest, Long> id) {
+        return requests.stream()
+                .map(id)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+}
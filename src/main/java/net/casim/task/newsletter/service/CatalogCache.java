@@ -0,0 +1,245 @@
+package net.casim.task.newsletter.service;
+
+import net.casim.task.newsletter.config.CacheConfig;
+import net.casim.task.newsletter.event.NewsletterChangedEvent;
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.event.UserChangedEvent;
+import net.casim.task.newsletter.model.projection.NewsletterView;
+import net.casim.task.newsletter.model.projection.UserView;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache over newsletter metadata, user profiles, newsletter subscriber lists and their revisions.
+ * <p>
+ * Entries are evicted once the transaction that changed the underlying rows commits. A value loaded while an
+ * eviction of its kind happened is not cached, so a slow load cannot put back a stale value.
+ */
+@Component
+public class CatalogCache {
+    private final NewsletterRepository newsletterRepository;
+    private final UserRepository userRepository;
+    private final SubscriptionRepository subscriptionRepository;
+    private final Shards shards;
+
+    private final Cache newsletters;
+    private final Cache newsletterList;
+    private final Cache users;
+    private final Cache subscribers;
+    private final Cache subscriptionRevisions;
+
+    private final AtomicLong catalogEvictions = new AtomicLong();
+    private final AtomicLong subscriberEvictions = new AtomicLong();
+
+    public CatalogCache(NewsletterRepository newsletterRepository, UserRepository userRepository,
+                        SubscriptionRepository subscriptionRepository, Shards shards, CacheManager cacheManager) {
+        this.newsletterRepository = newsletterRepository;
+        this.userRepository = userRepository;
+        this.subscriptionRepository = subscriptionRepository;
+        this.shards = shards;
+        this.newsletters = cacheManager.getCache(CacheConfig.NEWSLETTERS);
+        this.newsletterList = cacheManager.getCache(CacheConfig.NEWSLETTER_LIST);
+        this.users = cacheManager.getCache(CacheConfig.USERS);
+        this.subscribers = cacheManager.getCache(CacheConfig.NEWSLETTER_SUBSCRIBERS);
+        this.subscriptionRevisions = cacheManager.getCache(CacheConfig.SUBSCRIPTION_REVISIONS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<NewsletterView> getAllNewsletters() {
+        List<NewsletterView> cached = newsletterList.get(SimpleKey.EMPTY, List.class);
+        if (cached != null)
+            return cached;
+
+        long version = catalogEvictions.get();
+        List<NewsletterView> loaded = Collections.unmodifiableList(newsletterRepository.findAllByOrderByNewsletterId());
+        if (catalogEvictions.get() == version)
+            newsletterList.put(SimpleKey.EMPTY, loaded);
+        return loaded;
+    }
+
+    public Optional<NewsletterView> getNewsletter(Long newsletterId) {
+        return Optional.ofNullable(getNewsletters(List.of(newsletterId)).get(newsletterId));
+    }
+
+    public Map<Long, NewsletterView> getNewsletters(Collection<Long> newsletterIds) {
+        Map<Long, NewsletterView> found = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long newsletterId : newsletterIds) {
+            NewsletterView cached = newsletters.get(newsletterId, NewsletterView.class);
+            if (cached != null)
+                found.put(newsletterId, cached);
+            else
+                misses.add(newsletterId);
+        }
+
+        if (!misses.isEmpty()) {
+            long version = catalogEvictions.get();
+            List<NewsletterView> loaded = newsletterRepository.findByNewsletterIdIn(misses);
+            boolean cacheable = catalogEvictions.get() == version;
+            for (NewsletterView newsletter : loaded) {
+                if (cacheable)
+                    newsletters.put(newsletter.getNewsletterId(), newsletter);
+                found.put(newsletter.getNewsletterId(), newsletter);
+            }
+        }
+        return found;
+    }
+
+    public Optional<UserView> getUser(Long userId) {
+        UserView cached = users.get(userId, UserView.class);
+        if (cached != null)
+            return Optional.of(cached);
+
+        long version = catalogEvictions.get();
+        Optional<UserView> user = userRepository.findViewByUserId(userId);
+        if (catalogEvictions.get() == version)
+            user.ifPresent(view -> users.put(userId, view));
+        return user;
+    }
+
+    /**
+     * Usernames of the active subscribers of each newsletter; newsletters without subscribers map to an empty list.
+     */
+    public Map<Long, List<String>> getSubscriberNames(Collection<Long> newsletterIds) {
+        Map<Long, List<String>> found = getCachedSubscriberNames(newsletterIds);
+        List<Long> misses = new ArrayList<>();
+        for (Long newsletterId : newsletterIds) {
+            if (!found.containsKey(newsletterId))
+                misses.add(newsletterId);
+        }
+
+        if (!misses.isEmpty()) {
+            long version = subscriberListVersion();
+            Map<Long, List<String>> loaded = new HashMap<>();
+            misses.forEach(newsletterId -> loaded.put(newsletterId, new ArrayList<>()));
+            shards.onShardsOf(misses, subscriptionRepository::findActiveSubscriberNames)
+                    .forEach(subscriber -> loaded.get(subscriber.getNewsletterId()).add(subscriber.getUsername()));
+
+            found.putAll(putSubscriberNames(loaded, version));
+        }
+        return found;
+    }
+
+    /**
+     * The subscription revision of each newsletter, 0 for newsletters that never had a subscriber. It changes
+     * whenever the newsletter's subscriber list or the username of one of its subscribers does.
+     */
+    public Map<Long, Long> getSubscriptionRevisions(Collection<Long> newsletterIds) {
+        Map<Long, Long> found = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long newsletterId : newsletterIds) {
+            Long cached = subscriptionRevisions.get(newsletterId, Long.class);
+            if (cached != null)
+                found.put(newsletterId, cached);
+            else
+                misses.add(newsletterId);
+        }
+
+        if (!misses.isEmpty()) {
+            long version = subscriberListVersion();
+            Map<Long, Long> loaded = new HashMap<>();
+            misses.forEach(newsletterId -> loaded.put(newsletterId, 0L));
+            shards.onShardsOf(misses, subscriptionRepository::findSubscriptionRevisions)
+                    .forEach(revision -> loaded.put(revision.getNewsletterId(), revision.getRevision()));
+
+            if (subscriberEvictions.get() == version)
+                loaded.forEach(subscriptionRevisions::put);
+            found.putAll(loaded);
+        }
+        return found;
+    }
+
+    /**
+     * The cached subscriber lists among the given newsletters; newsletters whose list is not cached are left out.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Long, List<String>> getCachedSubscriberNames(Collection<Long> newsletterIds) {
+        Map<Long, List<String>> found = new HashMap<>();
+        for (Long newsletterId : newsletterIds) {
+            List<String> cached = subscribers.get(newsletterId, List.class);
+            if (cached != null)
+                found.put(newsletterId, cached);
+        }
+        return found;
+    }
+
+    /**
+     * To be read before loading subscriber lists elsewhere and handed to {@link #putSubscriberNames}.
+     */
+    public long subscriberListVersion() {
+        return subscriberEvictions.get();
+    }
+
+    /**
+     * Caches subscriber lists loaded since {@code version} was read, unless a list was evicted in the meantime.
+     *
+     * @return the given lists, unmodifiable
+     */
+    public Map<Long, List<String>> putSubscriberNames(Map<Long, List<String>> loaded, long version) {
+        boolean cacheable = subscriberEvictions.get() == version;
+        Map<Long, List<String>> stored = new HashMap<>();
+        loaded.forEach((newsletterId, usernames) -> {
+            List<String> immutable = Collections.unmodifiableList(usernames);
+            if (cacheable)
+                subscribers.put(newsletterId, immutable);
+            stored.put(newsletterId, immutable);
+        });
+        return stored;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChanged(SubscriptionChangedEvent event) {
+        subscriberEvictions.incrementAndGet();
+        subscribers.evict(event.getNewsletterId());
+        subscriptionRevisions.evict(event.getNewsletterId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNewsletterChanged(NewsletterChangedEvent event) {
+        catalogEvictions.incrementAndGet();
+        newsletters.evict(event.getNewsletterId());
+        newsletterList.clear();
+    }
+
+    /**
+     * The lists and revisions of the newsletters the user subscribed to carry the username. A new user has no
+     * subscriptions yet; a removed one no longer has rows to find them by, so every list is evicted then.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        catalogEvictions.incrementAndGet();
+        users.evict(event.getUserId());
+        if (event.getChange() == UserChangedEvent.Change.CREATED)
+            return;
+
+        subscriberEvictions.incrementAndGet();
+        if (event.getChange() == UserChangedEvent.Change.REMOVED) {
+            subscribers.clear();
+            subscriptionRevisions.clear();
+            return;
+        }
+
+        for (List<Long> newsletterIds : shards.onEveryShard(() -> subscriptionRepository.findNewsletterIdsByUserId(event.getUserId()))) {
+            for (Long newsletterId : newsletterIds) {
+                subscribers.evict(newsletterId);
+                subscriptionRevisions.evict(newsletterId);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package net.casim.task.newsletter.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of non-negative ints in the layout of a RoaringBitmap: values are split into chunks of 2^16 by their high
+ * bits, a chunk with at most {@value #ARRAY_MAX} members keeps their low bits in a sorted array and a fuller one in
+ * an 8 KB bitmap, and an empty chunk is dropped. A set of a few values far apart then takes a few bytes each instead
+ * of a bit for every value below the highest one, as a {@link BitSet} would.
+ * <p>
+ * Not thread-safe.
+ */
+public final class CompressedBitmap {
+    /**
+     * Members above which a sorted array would take more than a bitmap.
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    /**
+     * Approximate overhead of a chunk: map entry, boxed key and chunk object.
+     */
+    private static final long CHUNK_OVERHEAD_BYTES = 64;
+
+    private static final int CHUNK_BITS = 16;
+
+    private static final int WORDS = (1 << CHUNK_BITS) / Long.SIZE;
+
+    private final Map<Integer, Chunk> chunks = new HashMap<>();
+
+    public static CompressedBitmap of(BitSet bits) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        bits.stream().forEach(value -> bitmap.set(value, true));
+        return bitmap;
+    }
+
+    public boolean get(int value) {
+        Chunk chunk = chunks.get(value >>> CHUNK_BITS);
+        return chunk != null && chunk.get((char) value);
+    }
+
+    /**
+     * @return false if {@code value} already was or was not a member
+     */
+    public boolean set(int value, boolean member) {
+        int key = value >>> CHUNK_BITS;
+        if (member)
+            return chunks.computeIfAbsent(key, k -> new Chunk()).add((char) value);
+
+        Chunk chunk = chunks.get(key);
+        if (chunk == null || !chunk.remove((char) value))
+            return false;
+        if (chunk.size == 0)
+            chunks.remove(key);
+        return true;
+    }
+
+    public void or(CompressedBitmap other) {
+        other.chunks.forEach((key, chunk) -> chunk.forEach(low -> set(key << CHUNK_BITS | low, true)));
+    }
+
+    public long cardinality() {
+        return chunks.values().stream()
+                .mapToLong(chunk -> chunk.size)
+                .sum();
+    }
+
+    public BitSet toBitSet() {
+        BitSet bits = new BitSet();
+        chunks.forEach((key, chunk) -> chunk.forEach(low -> bits.set(key << CHUNK_BITS | low)));
+        return bits;
+    }
+
+    public long sizeInBytes() {
+        return chunks.values().stream()
+                .mapToLong(chunk -> chunk.sizeInBytes() + CHUNK_OVERHEAD_BYTES)
+                .sum();
+    }
+
+    /**
+     * Low 16 bits of the members sharing the same high bits.
+     */
+    private static final class Chunk {
+        private char[] array = new char[4];
+        private long[] words;
+        private int size;
+
+        boolean get(char low) {
+            if (words != null)
+                return (words[low >>> 6] & (1L << low)) != 0;
+            return Arrays.binarySearch(array, 0, size, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (words != null) {
+                if (get(low))
+                    return false;
+                words[low >>> 6] |= 1L << low;
+                size++;
+                return true;
+            }
+
+            int position = Arrays.binarySearch(array, 0, size, low);
+            if (position >= 0)
+                return false;
+            if (size == ARRAY_MAX) {
+                toBitmap();
+                return add(low);
+            }
+
+            position = -position - 1;
+            if (size == array.length)
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, size * 2));
+            System.arraycopy(array, position, array, position + 1, size - position);
+            array[position] = low;
+            size++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (words != null) {
+                if (!get(low))
+                    return false;
+                words[low >>> 6] &= ~(1L << low);
+                // back to an array only well below the threshold, so members coming and going around it do not
+                // convert the chunk every time
+                if (--size < ARRAY_MAX / 2)
+                    toArray();
+                return true;
+            }
+
+            int position = Arrays.binarySearch(array, 0, size, low);
+            if (position < 0)
+                return false;
+            System.arraycopy(array, position + 1, array, position, size - position - 1);
+            if (--size <= array.length / 4)
+                array = Arrays.copyOf(array, Math.max(4, array.length / 2));
+            return true;
+        }
+
+        void forEach(CharConsumer consumer) {
+            if (words == null) {
+                for (int i = 0; i < size; i++)
+                    consumer.accept(array[i]);
+                return;
+            }
+            for (int i = 0; i < WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1)
+                    consumer.accept((char) (i * Long.SIZE + Long.numberOfTrailingZeros(word)));
+            }
+        }
+
+        long sizeInBytes() {
+            return (words != null) ? (long) WORDS * Long.BYTES : (long) array.length * Character.BYTES;
+        }
+
+        private void toBitmap() {
+            long[] bitmap = new long[WORDS];
+            for (int i = 0; i < size; i++)
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            words = bitmap;
+            array = null;
+        }
+
+        private void toArray() {
+            char[] members = new char[size];
+            int i = 0;
+            for (int w = 0; w < WORDS; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1)
+                    members[i++] = (char) (w * Long.SIZE + Long.numberOfTrailingZeros(word));
+            }
+            array = members;
+            words = null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface CharConsumer {
+        void accept(char value);
+    }
+}
@@ -0,0 +1,52 @@
+package net.casim.task.newsletter.service;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Builds a strong entity tag from the identifiers and versions a response is made of, so a tag can be
+ * compared without assembling or serializing the response itself.
+ */
+public final class EntityTag {
+    private final MessageDigest digest;
+    private final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+
+    private EntityTag(String resource) {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(resource.getBytes());
+    }
+
+    /**
+     * @param resource distinguishes the representations that could otherwise be built from the same values
+     */
+    public static EntityTag of(String resource) {
+        return new EntityTag(resource);
+    }
+
+    public EntityTag add(long value) {
+        buffer.clear();
+        digest.update(buffer.putLong(value).array());
+        return this;
+    }
+
+    public EntityTag add(boolean value) {
+        digest.update((byte) (value ? 1 : 0));
+        return this;
+    }
+
+    /**
+     * @return the quoted tag, the first 128 bits of the digest in hex
+     */
+    public String build() {
+        byte[] hash = digest.digest();
+        StringBuilder tag = new StringBuilder(34).append('"');
+        for (int i = 0; i < 16; i++)
+            tag.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+        return tag.append('"').toString();
+    }
+}
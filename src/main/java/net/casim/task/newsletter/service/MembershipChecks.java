@@ -0,0 +1,58 @@
+package net.casim.task.newsletter.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared by the blocking and reactive services to answer many membership checks of one user or one newsletter
+ * together. Results are indexed by the position of the id in the deduplicated request.
+ */
+final class MembershipChecks {
+    /**
+     * Upper bound of ids per call, which also keeps the fallback query to a single IN list.
+     */
+    static final int MAX_IDS = 1000;
+
+    private MembershipChecks() {
+    }
+
+    /**
+     * @return the ids in request order without duplicates
+     * @throws IllegalArgumentException if there are more than {@value #MAX_IDS} of them, or one is negative
+     */
+    static List<Long> distinct(Collection<Long> ids) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (distinct.size() > MAX_IDS)
+            throw new IllegalArgumentException("At most " + MAX_IDS + " ids can be checked at once");
+        for (Long id : distinct) {
+            if (id == null || id < 0)
+                throw new IllegalArgumentException("Ids must not be negative");
+        }
+        return distinct;
+    }
+
+    /**
+     * @return bit {@code i} set if {@code ids.get(i)} is one of the {@code subscribed} ids
+     */
+    static BitSet positions(List<Long> ids, Collection<Long> subscribed) {
+        Set<Long> lookup = new HashSet<>(subscribed);
+        BitSet positions = new BitSet(ids.size());
+        for (int i = 0; i < ids.size(); i++)
+            positions.set(i, lookup.contains(ids.get(i)));
+        return positions;
+    }
+
+    static Map<Long, Boolean> toMap(List<Long> ids, BitSet subscribed) {
+        Map<Long, Boolean> memberships = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++)
+            memberships.put(ids.get(i), subscribed.get(i));
+        return memberships;
+    }
+}
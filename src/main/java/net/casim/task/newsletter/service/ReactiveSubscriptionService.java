@@ -0,0 +1,474 @@
+package net.casim.task.newsletter.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import javassist.NotFoundException;
+import net.casim.task.newsletter.config.ReactiveConfig;
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.model.*;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.model.dto.NewsletterPageDTO;
+import net.casim.task.newsletter.model.dto.NewsletterStatsDTO;
+import net.casim.task.newsletter.model.dto.SubscriberPageDTO;
+import net.casim.task.newsletter.model.dto.UserDTO;
+import net.casim.task.newsletter.model.projection.MembershipView;
+import net.casim.task.newsletter.model.projection.NewsletterView;
+import net.casim.task.newsletter.model.projection.UserView;
+import net.casim.task.newsletter.outbox.SubscriptionOutbox;
+import net.casim.task.newsletter.repository.ReactiveSubscriptionRepository;
+import net.casim.task.newsletter.service.interfaces.IReactiveSubscriptionService;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * {@link SubscriptionService} over R2DBC for the {@code reactive} profile. It shares the {@link SubscriptionIndex}
+ * and the subscriber lists of the {@link CatalogCache} with the blocking service, and publishes the same
+ * {@link SubscriptionChangedEvent}s to keep them in sync.
+ * <p>
+ * Unlike the blocking service its methods are not {@code @Timed}, since the aspect would only time the assembly
+ * of the returned publishers; WebFlux records {@code http.server.requests} for them instead.
+ */
+@Service
+@Profile(ReactiveConfig.PROFILE)
+public class ReactiveSubscriptionService implements IReactiveSubscriptionService {
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+
+    /**
+     * Pairs of a bulk request applied at the same time.
+     */
+    private static final int BULK_CONCURRENCY = 8;
+
+    private final ReactiveSubscriptionRepository repository;
+
+    private final SubscriptionIndex subscriptionIndex;
+
+    private final SubscriberExporter subscriberExporter;
+
+    private final CatalogCache catalogCache;
+
+    private final SubscriptionStats subscriptionStats;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final SubscriptionOutbox outbox;
+
+    private final Counter subscribeCreated;
+    private final Counter subscribeAlreadySubscribed;
+    private final Counter subscribeNotFound;
+    private final Counter unsubscribeRemoved;
+    private final Counter unsubscribeNotSubscribed;
+    private final Counter unsubscribeNotFound;
+
+    public ReactiveSubscriptionService(ReactiveSubscriptionRepository repository, SubscriptionIndex subscriptionIndex,
+                                       SubscriberExporter subscriberExporter, CatalogCache catalogCache, SubscriptionStats subscriptionStats,
+                                       SubscriptionOutbox outbox, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.subscriptionIndex = subscriptionIndex;
+        this.subscriberExporter = subscriberExporter;
+        this.catalogCache = catalogCache;
+        this.subscriptionStats = subscriptionStats;
+        this.eventPublisher = eventPublisher;
+        this.outbox = outbox;
+
+        this.subscribeCreated = outcomeCounter(meterRegistry, "subscribe", "created");
+        this.subscribeAlreadySubscribed = outcomeCounter(meterRegistry, "subscribe", "already_subscribed");
+        this.subscribeNotFound = outcomeCounter(meterRegistry, "subscribe", "not_found");
+        this.unsubscribeRemoved = outcomeCounter(meterRegistry, "unsubscribe", "removed");
+        this.unsubscribeNotSubscribed = outcomeCounter(meterRegistry, "unsubscribe", "not_subscribed");
+        this.unsubscribeNotFound = outcomeCounter(meterRegistry, "unsubscribe", "not_found");
+    }
+
+    @Override
+    public Mono<Boolean> subscribe(SubscribeRequest subscribeRequest) {
+        return applySubscribe(subscribeRequest.getUserId(), subscribeRequest.getNewsletterId())
+                .flatMap(status -> {
+                    switch (status) {
+                        case USER_NOT_FOUND:
+                            subscribeNotFound.increment();
+                            return Mono.error(new NotFoundException("User not found"));
+                        case NEWSLETTER_NOT_FOUND:
+                            subscribeNotFound.increment();
+                            return Mono.error(new NotFoundException("Newsletter not found"));
+                        case SUBSCRIBED:
+                            subscribeCreated.increment();
+                            return Mono.just(true);
+                        default:
+                            subscribeAlreadySubscribed.increment();
+                            return Mono.just(false);
+                    }
+                });
+    }
+
+    @Override
+    public Mono<Boolean> unsubscribe(SubscribeRequest subscribeRequest) {
+        Long userId = subscribeRequest.getUserId();
+        Long newsletterId = subscribeRequest.getNewsletterId();
+
+        return repository.findNewsletters(List.of(newsletterId)).hasElements()
+                .flatMap(found -> {
+                    if (!found) {
+                        unsubscribeNotFound.increment();
+                        return Mono.error(new NotFoundException("Newsletter not found"));
+                    }
+                    return applyUnsubscribe(userId, newsletterId);
+                })
+                .map(status -> {
+                    boolean changed = status == BulkSubscriptionStatus.UNSUBSCRIBED;
+                    (changed ? unsubscribeRemoved : unsubscribeNotSubscribed).increment();
+                    return changed;
+                });
+    }
+
+    /**
+     * Applies up to {@value #BULK_CONCURRENCY} pairs at a time, each in its own statement, and emits the results
+     * in request order.
+     */
+    @Override
+    public Flux<BulkSubscriptionResult> subscribeAll(List<SubscribeRequest> subscribeRequests) {
+        return Flux.fromIterable(subscribeRequests)
+                .flatMapSequential(request -> applySubscribe(request.getUserId(), request.getNewsletterId())
+                                .map(status -> new BulkSubscriptionResult(request.getUserId(), request.getNewsletterId(), status)),
+                        BULK_CONCURRENCY);
+    }
+
+    @Override
+    public Flux<BulkSubscriptionResult> unsubscribeAll(List<SubscribeRequest> subscribeRequests) {
+        return Flux.fromIterable(subscribeRequests)
+                .flatMapSequential(request -> applyUnsubscribe(request.getUserId(), request.getNewsletterId())
+                                .map(status -> new BulkSubscriptionResult(request.getUserId(), request.getNewsletterId(), status)),
+                        BULK_CONCURRENCY);
+    }
+
+    /**
+     * Answered from the in-memory {@link SubscriptionIndex}; only goes to the database while the index is warming up.
+     */
+    @Override
+    public Mono<Boolean> checkSubscription(Long newsletterId, Long userId) {
+        return Mono.defer(() -> {
+            if (subscriptionIndex.isReady())
+                return Mono.just(subscriptionIndex.contains(newsletterId, userId));
+
+            return repository.existsActive(userId, newsletterId);
+        });
+    }
+
+    /**
+     * Probes the {@link SubscriptionIndex} for every id, or runs a single IN query while it is warming up.
+     */
+    @Override
+    public Mono<Map<Long, Boolean>> checkSubscriptions(Long userId, Collection<Long> newsletterIds) {
+        return Mono.defer(() -> {
+            List<Long> ids = MembershipChecks.distinct(newsletterIds);
+            if (ids.isEmpty())
+                return Mono.just(Collections.emptyMap());
+            if (subscriptionIndex.isReady())
+                return Mono.just(MembershipChecks.toMap(ids, subscriptionIndex.subscribedNewsletters(userId, ids)));
+
+            return repository.findActiveNewsletterIds(userId, ids).collectList()
+                    .map(subscribed -> MembershipChecks.toMap(ids, MembershipChecks.positions(ids, subscribed)));
+        });
+    }
+
+    @Override
+    public Mono<Map<Long, Boolean>> checkSubscribers(Long newsletterId, Collection<Long> userIds) {
+        return Mono.defer(() -> {
+            List<Long> ids = MembershipChecks.distinct(userIds);
+            if (ids.isEmpty())
+                return Mono.just(Collections.emptyMap());
+            if (subscriptionIndex.isReady())
+                return Mono.just(MembershipChecks.toMap(ids, subscriptionIndex.subscribedUsers(newsletterId, ids)));
+
+            return repository.findActiveUserIds(newsletterId, ids).collectList()
+                    .map(subscribed -> MembershipChecks.toMap(ids, MembershipChecks.positions(ids, subscribed)));
+        });
+    }
+
+    @Override
+    public Flux<UserDTO> getSubscribersBeforeDate(Long newsletterId, String date, ResponseFields fields) {
+        return Flux.defer(() -> toUserDTOs(repository.findActiveSubscribersBefore(newsletterId, SubscriptionCursor.parseDate(date)), fields));
+    }
+
+    @Override
+    public Flux<UserDTO> getSubscribersAfterDate(Long newsletterId, String date, ResponseFields fields) {
+        return Flux.defer(() -> toUserDTOs(repository.findActiveSubscribersAfter(newsletterId, SubscriptionCursor.parseDate(date)), fields));
+    }
+
+    @Override
+    public Mono<SubscriberPageDTO> getSubscribersPage(Long newsletterId, String after, String before, String cursor, int size,
+                                                      ResponseFields fields) {
+        return Mono.defer(() -> {
+            SubscriptionCursor position;
+            if (cursor != null)
+                position = SubscriptionCursor.parse(cursor);
+            else if (after != null)
+                position = SubscriptionCursor.after(SubscriptionCursor.parseDate(after));
+            else
+                position = SubscriptionCursor.first();
+
+            LocalDateTime until = (before != null) ? SubscriptionCursor.parseDate(before) : SubscriptionCursor.MAX_DATE;
+
+            return repository.findActivePageAfter(newsletterId, position.getCreatedAt(), position.getId(), until, size)
+                    .collectList()
+                    .flatMap(page -> {
+                        String nextCursor = (page.size() == size) ? SubscriptionCursor.of(page.get(page.size() - 1)).encode() : null;
+
+                        return toUserDTOs(Flux.fromIterable(page), fields)
+                                .collectList()
+                                .map(subscribers -> new SubscriberPageDTO(subscribers, nextCursor));
+                    });
+        });
+    }
+
+    @Override
+    public Flux<String> exportSubscribers(Long newsletterId, String since, ExportFormat format) {
+        return Flux.defer(() -> {
+            SubscriptionCursor position = SubscriberExporter.parseSince(since);
+            Flux<String> rows = repository.streamActiveSubscribersAfter(newsletterId, position.getCreatedAt(), position.getId())
+                    .handle((subscriber, sink) -> {
+                        try {
+                            sink.next(subscriberExporter.toRow(format, subscriber));
+                        } catch (JsonProcessingException e) {
+                            sink.error(e);
+                        }
+                    });
+
+            return (format == ExportFormat.CSV) ? Flux.just(SubscriberExporter.CSV_HEADER).concatWith(rows) : rows;
+        });
+    }
+
+    @Override
+    public Flux<NewsletterDTO> getAllNewsletters(ResponseFields fields) {
+        return toNewsletterDTOs(repository.findAllNewsletters(), fields);
+    }
+
+    @Override
+    public Mono<NewsletterPageDTO> getNewslettersPage(String cursor, int size, ResponseFields fields) {
+        return Mono.defer(() -> {
+            long after = SubscriptionService.newsletterCursor(cursor);
+            return toNewsletterDTOs(repository.findNewslettersAfter(after, size, fields.isContent()), fields)
+                    .collectList()
+                    .map(page -> new NewsletterPageDTO(page,
+                            (page.size() == size) ? page.get(page.size() - 1).getNewsletterId().toString() : null));
+        });
+    }
+
+    @Override
+    public Mono<NewsletterDTO> getNewsletterWithSubscribers(Long newsletterId) {
+        return toNewsletterDTOs(repository.findNewsletters(List.of(newsletterId)), ResponseFields.ALL)
+                .next()
+                .filter(newsletter -> !newsletter.getSubscribedUsernames().isEmpty())
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("Newsletter not found or no subscribers")));
+    }
+
+    /**
+     * Same tags as {@link SubscriptionService#getAllNewslettersETag}; the revisions are summed up in a single query.
+     */
+    @Override
+    public Mono<String> getAllNewslettersETag(ResponseFields fields) {
+        return repository.findNewsletterRevisions(null, fields.isSubscribedUsernames())
+                .reduceWith(() -> EntityTag.of("newsletters").add(fields.isContent()).add(fields.isSubscribedUsernames()),
+                        (tag, newsletter) -> {
+                            tag.add(newsletter.getNewsletterId()).add(newsletter.getVersion());
+                            return fields.isSubscribedUsernames() ? tag.add(newsletter.getRevision()) : tag;
+                        })
+                .map(EntityTag::build);
+    }
+
+    @Override
+    public Mono<String> getNewsletterETag(Long newsletterId) {
+        return repository.findNewsletterRevisions(newsletterId, true)
+                .next()
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("Newsletter not found")))
+                .map(newsletter -> EntityTag.of("newsletter")
+                        .add(newsletterId)
+                        .add(newsletter.getVersion())
+                        .add(newsletter.getRevision())
+                        .build());
+    }
+
+    /**
+     * The counters are in memory; only the flushed daily rows are read over JDBC, off the event loop.
+     */
+    @Override
+    public Mono<NewsletterStatsDTO> getNewsletterStats(Long newsletterId, int days) {
+        return repository.findNewsletters(List.of(newsletterId))
+                .hasElements()
+                .flatMap(found -> found
+                        ? Mono.fromCallable(() -> subscriptionStats.getStats(newsletterId, days)).subscribeOn(Schedulers.boundedElastic())
+                        : Mono.error(() -> new NotFoundException("Newsletter not found")));
+    }
+
+    @Override
+    public Mono<UserDTO> getUser(Long userId, ResponseFields fields) {
+        return toUserDTOs(repository.findUser(userId).flux(), fields)
+                .next()
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("User not found")));
+    }
+
+    private Mono<BulkSubscriptionStatus> applySubscribe(Long userId, Long newsletterId) {
+        return Mono.zip(repository.findUser(userId).hasElement(), repository.findNewsletters(List.of(newsletterId)).hasElements())
+                .flatMap(found -> {
+                    if (!found.getT1())
+                        return Mono.just(BulkSubscriptionStatus.USER_NOT_FOUND);
+                    if (!found.getT2())
+                        return Mono.just(BulkSubscriptionStatus.NEWSLETTER_NOT_FOUND);
+
+                    return repository.upsertSubscribed(userId, newsletterId, LocalDateTime.now())
+                            .flatMap(changed -> {
+                                if (!changed)
+                                    return Mono.just(BulkSubscriptionStatus.ALREADY_SUBSCRIBED);
+
+                                return changed(new SubscriptionChangedEvent(userId, newsletterId, true))
+                                        .thenReturn(BulkSubscriptionStatus.SUBSCRIBED);
+                            });
+                });
+    }
+
+    private Mono<BulkSubscriptionStatus> applyUnsubscribe(Long userId, Long newsletterId) {
+        return repository.deactivate(userId, newsletterId)
+                .flatMap(rows -> {
+                    if (rows == 0)
+                        return Mono.just(BulkSubscriptionStatus.NOT_SUBSCRIBED);
+
+                    return changed(new SubscriptionChangedEvent(userId, newsletterId, false))
+                            .thenReturn(BulkSubscriptionStatus.UNSUBSCRIBED);
+                });
+    }
+
+    /**
+     * Writes the change to the {@link SubscriptionOutbox}, then publishes the event. R2DBC writes run outside any
+     * JPA transaction, so the outbox row is written right after the change rather than atomically with it.
+     */
+    private Mono<Void> changed(SubscriptionChangedEvent event) {
+        return Mono.fromRunnable(() -> outbox.record(event))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(Mono.fromRunnable(() -> eventPublisher.publishEvent(event)));
+    }
+
+    /**
+     * Builds the DTOs chunk by chunk as users arrive, with a fixed number of queries per chunk. Newsletters are
+     * built once per call and shared by every user subscribed to them.
+     */
+    private Flux<UserDTO> toUserDTOs(Flux<? extends UserView> users, ResponseFields fields) {
+        if (!fields.isSubscribedNewsletters())
+            return users.map(user -> new UserDTO(user.getUserId(), user.getUsername(), null));
+
+        return Flux.defer(() -> {
+            Map<Long, NewsletterDTO> newsletterDTOs = new HashMap<>();
+            return users.buffer(IN_CLAUSE_CHUNK_SIZE)
+                    .concatMap(chunk -> toUserDTOs(chunk, newsletterDTOs, fields));
+        });
+    }
+
+    private Flux<UserDTO> toUserDTOs(List<? extends UserView> users, Map<Long, NewsletterDTO> newsletterDTOs, ResponseFields fields) {
+        Set<Long> userIds = users.stream()
+                .map(UserView::getUserId)
+                .collect(Collectors.toSet());
+
+        return repository.findActiveMemberships(userIds)
+                .collectMultimap(MembershipView::getUserId, MembershipView::getNewsletterId)
+                .flatMapMany(newsletterIdsByUser -> {
+                    Set<Long> missing = newsletterIdsByUser.values().stream()
+                            .flatMap(Collection::stream)
+                            .filter(newsletterId -> !newsletterDTOs.containsKey(newsletterId))
+                            .collect(Collectors.toSet());
+
+                    return getNewsletterDTOs(missing, fields)
+                            .doOnNext(newsletter -> newsletterDTOs.put(newsletter.getNewsletterId(), newsletter))
+                            .thenMany(Flux.fromIterable(users))
+                            .map(user -> {
+                                List<NewsletterDTO> subscribedNewsletters = newsletterIdsByUser
+                                        .getOrDefault(user.getUserId(), Collections.emptyList()).stream()
+                                        .map(newsletterDTOs::get)
+                                        .filter(Objects::nonNull)
+                                        .collect(Collectors.toList());
+
+                                return new UserDTO(user.getUserId(), user.getUsername(), subscribedNewsletters);
+                            });
+                });
+    }
+
+    private Flux<NewsletterDTO> getNewsletterDTOs(Collection<Long> newsletterIds, ResponseFields fields) {
+        return Flux.fromIterable(partition(newsletterIds))
+                .concatMap(chunk -> toNewsletterDTOs(repository.findNewsletters(chunk), fields));
+    }
+
+    /**
+     * Subscriber lists are only loaded when {@code subscribedUsernames} is requested.
+     */
+    private Flux<NewsletterDTO> toNewsletterDTOs(Flux<NewsletterView> newsletters, ResponseFields fields) {
+        if (!fields.isSubscribedUsernames())
+            return newsletters.map(newsletter -> toNewsletterDTO(newsletter, fields, null));
+
+        return newsletters.collectList()
+                .flatMapMany(views -> {
+                    List<Long> newsletterIds = views.stream()
+                            .map(NewsletterView::getNewsletterId)
+                            .collect(Collectors.toList());
+
+                    return Flux.fromIterable(partition(newsletterIds))
+                            .concatMap(this::getSubscriberNames)
+                            .collect(HashMap<Long, List<String>>::new, Map::putAll)
+                            .flatMapIterable(usernamesByNewsletter -> views.stream()
+                                    .map(newsletter -> toNewsletterDTO(newsletter, fields,
+                                            new ArrayList<>(usernamesByNewsletter.getOrDefault(newsletter.getNewsletterId(), Collections.emptyList()))))
+                                    .collect(Collectors.toList()));
+                });
+    }
+
+    private static NewsletterDTO toNewsletterDTO(NewsletterView newsletter, ResponseFields fields, List<String> subscribedUsernames) {
+        return new NewsletterDTO(newsletter.getNewsletterId(), newsletter.getTitle(),
+                fields.isContent() ? newsletter.getContent() : null, newsletter.getPublicationDate(), subscribedUsernames);
+    }
+
+    /**
+     * Subscriber lists from the {@link CatalogCache}, loading the missing ones over R2DBC and caching them
+     * under the same eviction rules as the blocking loads.
+     */
+    private Mono<Map<Long, List<String>>> getSubscriberNames(List<Long> newsletterIds) {
+        return Mono.defer(() -> {
+            Map<Long, List<String>> found = catalogCache.getCachedSubscriberNames(newsletterIds);
+            Map<Long, List<String>> loaded = new HashMap<>();
+            for (Long newsletterId : newsletterIds) {
+                if (!found.containsKey(newsletterId))
+                    loaded.put(newsletterId, new ArrayList<>());
+            }
+            if (loaded.isEmpty())
+                return Mono.just(found);
+
+            long version = catalogCache.subscriberListVersion();
+            return repository.findActiveSubscriberNames(loaded.keySet())
+                    .doOnNext(subscriber -> loaded.get(subscriber.getNewsletterId()).add(subscriber.getUsername()))
+                    .then(Mono.fromSupplier(() -> {
+                        found.putAll(catalogCache.putSubscriberNames(loaded, version));
+                        return found;
+                    }));
+        });
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String operation, String outcome) {
+        return Counter.builder("subscription.outcome")
+                .description("Outcomes of single subscribe and unsubscribe calls")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static List<List<Long>> partition(Collection<Long> ids) {
+        List<Long> source = new ArrayList<>(ids);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < source.size(); i += IN_CLAUSE_CHUNK_SIZE) {
+            chunks.add(source.subList(i, Math.min(i + IN_CLAUSE_CHUNK_SIZE, source.size())));
+        }
+        return chunks;
+    }
+}
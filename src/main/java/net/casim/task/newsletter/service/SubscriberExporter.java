@@ -0,0 +1,112 @@
+package net.casim.task.newsletter.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.casim.task.newsletter.model.ExportFormat;
+import net.casim.task.newsletter.model.SubscriptionCursor;
+import net.casim.task.newsletter.model.projection.SubscriberView;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes the active subscribers of a newsletter to an output stream, one row per subscriber, without
+ * holding the subscriber list in memory. Every row carries the cursor to resume the export after it.
+ */
+@Component
+public class SubscriberExporter {
+    private static final int FLUSH_INTERVAL = 1000;
+
+    public static final String CSV_HEADER = "userId,username,subscribedAt,cursor";
+
+    private final SubscriptionRepository subscriptionRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final Shards shards;
+
+    public SubscriberExporter(SubscriptionRepository subscriptionRepository, EntityManager entityManager, ObjectMapper objectMapper,
+                              Shards shards) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.shards = shards;
+    }
+
+    /**
+     * @param since either a date-time, exporting subscribers who subscribed after it, or a cursor taken from a
+     *              previously exported row, resuming right after that row; {@code null} exports everything
+     */
+    @Transactional(readOnly = true)
+    public void export(Long newsletterId, String since, ExportFormat format, OutputStream outputStream) throws IOException {
+        SubscriptionCursor position = parseSince(since);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        try (Shards.Route route = shards.routeTo(newsletterId);
+             Stream<SubscriberView> subscribers = subscriptionRepository.streamActiveSubscribersAfter(
+                newsletterId, position.getCreatedAt(), position.getId())) {
+            int rows = 0;
+            for (SubscriberView subscriber : (Iterable<SubscriberView>) subscribers::iterator) {
+                writeRow(writer, format, subscriber);
+
+                if (++rows % FLUSH_INTERVAL == 0) {
+                    writer.flush();
+                    entityManager.clear();
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private void writeRow(Writer writer, ExportFormat format, SubscriberView subscriber) throws IOException {
+        writer.write(toRow(format, subscriber));
+        writer.write('\n');
+    }
+
+    /**
+     * One exported row, without the line terminator.
+     */
+    public String toRow(ExportFormat format, SubscriberView subscriber) throws JsonProcessingException {
+        String cursor = SubscriptionCursor.of(subscriber).encode();
+
+        if (format == ExportFormat.CSV) {
+            return subscriber.getUserId() + "," + csvValue(subscriber.getUsername()) + ","
+                    + subscriber.getCreatedAt() + "," + cursor;
+        }
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("userId", subscriber.getUserId());
+        row.put("username", subscriber.getUsername());
+        row.put("subscribedAt", String.valueOf(subscriber.getCreatedAt()));
+        row.put("cursor", cursor);
+        return objectMapper.writeValueAsString(row);
+    }
+
+    public static SubscriptionCursor parseSince(String since) {
+        if (since == null)
+            return SubscriptionCursor.first();
+        if (since.contains("_"))
+            return SubscriptionCursor.parse(since);
+        return SubscriptionCursor.after(SubscriptionCursor.parseDate(since));
+    }
+
+    private static String csvValue(String value) {
+        if (value == null)
+            return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n"))
+            return '"' + value.replace("\"", "\"\"") + '"';
+        return value;
+    }
+}
@@ -0,0 +1,335 @@
+package net.casim.task.newsletter.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.event.RebuildQueue;
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.model.projection.MembershipChangeView;
+import net.casim.task.newsletter.model.projection.MembershipView;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * In-process index of active subscriptions, one {@link CompressedBitmap} of users per newsletter.
+ * <p>
+ * Warmed from {@link SubscriptionRepository} once the application is ready and kept in sync with
+ * {@link SubscriptionChangedEvent}s after their transaction commits, or right away for changes made outside one. Until warm-up finishes
+ * {@link #isReady()} is false and callers must fall back to the database. Warm-up is skipped when the index was
+ * already restored from a snapshot.
+ * <p>
+ * Two changes of the same subscription committing at about the same time may have their events delivered in the
+ * opposite order, leaving the older state in the index. Every {@code newsletter.index.reconcile-interval} the rows
+ * changed since the previous pass, less {@code newsletter.index.reconcile-overlap}, are read back and applied over it.
+ * <p>
+ * User ids are bitmap positions, so only ids from 0 to {@link Integer#MAX_VALUE} can be held; others are never
+ * reported as subscribed. Should a subscription of any other user turn up, the index stops answering and
+ * {@link #isReady()} stays false.
+ */
+@Component
+public class SubscriptionIndex {
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionIndex.class);
+
+    /**
+     * Approximate per-newsletter overhead: map entry, chunk map and lock objects.
+     */
+    private static final long NEWSLETTER_OVERHEAD_BYTES = 160;
+
+    private final SubscriptionRepository subscriptionRepository;
+
+    private final Shards shards;
+
+    private final Duration reconcileOverlap;
+
+    private volatile Map<Long, Membership> memberships = new ConcurrentHashMap<>();
+
+    private final RebuildQueue<SubscriptionChangedEvent> changes = new RebuildQueue<>(events -> events.forEach(this::apply));
+
+    private volatile boolean overflowed;
+
+    /**
+     * When the content was last loaded or reconciled from the database; the next pass reads the rows changed since.
+     */
+    private volatile LocalDateTime reconciledAt = LocalDateTime.now();
+
+    public SubscriptionIndex(SubscriptionRepository subscriptionRepository, Shards shards, MeterRegistry meterRegistry,
+                             @Value("${newsletter.index.reconcile-overlap:1m}") Duration reconcileOverlap) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.shards = shards;
+        this.reconcileOverlap = reconcileOverlap;
+
+        Gauge.builder("subscription.index.memberships", this, SubscriptionIndex::size)
+                .description("Active subscriptions held in the membership index")
+                .register(meterRegistry);
+        Gauge.builder("subscription.index.newsletters", this, index -> index.memberships.size())
+                .description("Newsletters held in the membership index")
+                .register(meterRegistry);
+        Gauge.builder("subscription.index.memory", this, SubscriptionIndex::memoryFootprint)
+                .description("Approximate heap used by the membership index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return changes.isReady() && !overflowed;
+    }
+
+    public boolean contains(Long newsletterId, Long userId) {
+        Membership membership = memberships.get(newsletterId);
+        return membership != null && membership.contains(userId);
+    }
+
+    /**
+     * @return bit {@code i} set if the user is subscribed to {@code newsletterIds.get(i)}
+     */
+    public BitSet subscribedNewsletters(Long userId, List<Long> newsletterIds) {
+        BitSet subscribed = new BitSet(newsletterIds.size());
+        for (int i = 0; i < newsletterIds.size(); i++)
+            subscribed.set(i, contains(newsletterIds.get(i), userId));
+        return subscribed;
+    }
+
+    /**
+     * @return bit {@code i} set if {@code userIds.get(i)} is subscribed to the newsletter, read under a single lock
+     */
+    public BitSet subscribedUsers(Long newsletterId, List<Long> userIds) {
+        Membership membership = memberships.get(newsletterId);
+        return (membership != null) ? membership.containsAll(userIds) : new BitSet();
+    }
+
+    /**
+     * @return the number of active subscribers of the newsletter, kept up to date with every change
+     */
+    public long count(Long newsletterId) {
+        Membership membership = memberships.get(newsletterId);
+        return (membership != null) ? membership.cardinality() : 0;
+    }
+
+    public long size() {
+        return memberships.values().stream()
+                .mapToLong(Membership::cardinality)
+                .sum();
+    }
+
+    public long memoryFootprint() {
+        return memberships.values().stream()
+                .mapToLong(membership -> membership.sizeInBytes() + NEWSLETTER_OVERHEAD_BYTES)
+                .sum();
+    }
+
+    /**
+     * Hands a copy of each newsletter's members to {@code consumer}, one newsletter at a time and each read under
+     * its own lock.
+     */
+    public void forEachMembership(BiConsumer<Long, BitSet> consumer) {
+        memberships.forEach((newsletterId, membership) -> consumer.accept(newsletterId, membership.copy()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void onApplicationReady() {
+        if (!changes.isReady())
+            warmUp();
+    }
+
+    /**
+     * Replaces the index content with the active subscriptions of every shard. Changes committed while the
+     * rebuild is running are queued and replayed on top of the new content.
+     */
+    @Transactional(readOnly = true)
+    public void warmUp() {
+        reconciledAt = LocalDateTime.now();
+        changes.rebuild(() -> {
+            Map<Long, Membership> rebuilt = new ConcurrentHashMap<>();
+            shards.onEveryShard(() -> {
+                try (Stream<MembershipView> active = subscriptionRepository.streamActiveMemberships()) {
+                    return load(active);
+                }
+            }).forEach(loaded -> loaded.forEach((newsletterId, membership) -> rebuilt.merge(newsletterId, membership, Membership::union)));
+            memberships = rebuilt;
+        });
+        log.info("Subscription index ready: {} memberships over {} newsletters, ~{} bytes",
+                size(), memberships.size(), memoryFootprint());
+    }
+
+    private Map<Long, Membership> load(Stream<MembershipView> active) {
+        Map<Long, Membership> loaded = new HashMap<>();
+        active.forEach(membership -> set(loaded, membership.getNewsletterId(), membership.getUserId(), true));
+        return loaded;
+    }
+
+    /**
+     * Replaces the index content with snapshotted members, then applies the rows changed since the snapshot and
+     * the changes committed while doing so.
+     */
+    public void restore(Map<Long, BitSet> snapshot, Stream<MembershipChangeView> changed) {
+        reconciledAt = LocalDateTime.now();
+        changes.rebuild(() -> {
+            Map<Long, Membership> restored = new ConcurrentHashMap<>();
+            snapshot.forEach((newsletterId, users) -> restored.put(newsletterId, new Membership(CompressedBitmap.of(users))));
+            changed.forEach(change -> set(restored, change.getNewsletterId(), change.getUserId(), change.isSubscribed()));
+            memberships = restored;
+        });
+    }
+
+    /**
+     * Applies the current state of every row changed since the previous load or pass, less the overlap, with
+     * changes held back meanwhile; does nothing while the index is not ready.
+     */
+    @Scheduled(fixedDelayString = "${newsletter.index.reconcile-interval:PT1M}", initialDelayString = "${newsletter.index.reconcile-interval:PT1M}")
+    @Transactional(readOnly = true)
+    public void reconcile() {
+        if (!isReady())
+            return;
+
+        LocalDateTime started = LocalDateTime.now();
+        LocalDateTime since = reconciledAt.minus(reconcileOverlap);
+        changes.exclusively(() -> shards.onEveryShard(() -> {
+            try (Stream<MembershipChangeView> rows = subscriptionRepository.streamMembershipsChangedSince(since)) {
+                rows.forEach(row -> set(memberships, row.getNewsletterId(), row.getUserId(), row.isSubscribed()));
+            }
+            return null;
+        }));
+        reconciledAt = started;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChanged(SubscriptionChangedEvent event) {
+        changes.add(event);
+    }
+
+    private void apply(SubscriptionChangedEvent event) {
+        set(memberships, event.getNewsletterId(), event.getUserId(), event.isSubscribed());
+    }
+
+    private void set(Map<Long, Membership> target, Long newsletterId, Long userId, boolean subscribed) {
+        if (!Membership.holds(userId)) {
+            if (!overflowed)
+                log.error("User id {} does not fit the subscription index, answering from the database from now on", userId);
+            overflowed = true;
+            return;
+        }
+        target.computeIfAbsent(newsletterId, id -> new Membership()).set(userId, subscribed);
+    }
+
+    /**
+     * Users subscribed to one newsletter, indexed by user id.
+     */
+    private static final class Membership {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final CompressedBitmap users;
+        private long cardinality;
+
+        Membership() {
+            this(new CompressedBitmap());
+        }
+
+        Membership(CompressedBitmap users) {
+            this.users = users;
+            this.cardinality = users.cardinality();
+        }
+
+        /**
+         * For a newsletter found on two shards while it is being moved.
+         */
+        static Membership union(Membership first, Membership second) {
+            CompressedBitmap users = new CompressedBitmap();
+            first.readLocked(() -> users.or(first.users));
+            second.readLocked(() -> users.or(second.users));
+            return new Membership(users);
+        }
+
+        static boolean holds(Long userId) {
+            return userId >= 0 && userId <= Integer.MAX_VALUE;
+        }
+
+        BitSet copy() {
+            lock.readLock().lock();
+            try {
+                return users.toBitSet();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void readLocked(Runnable read) {
+            lock.readLock().lock();
+            try {
+                read.run();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        boolean contains(Long userId) {
+            lock.readLock().lock();
+            try {
+                return holds(userId) && users.get(userId.intValue());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        BitSet containsAll(List<Long> userIds) {
+            BitSet subscribed = new BitSet(userIds.size());
+            lock.readLock().lock();
+            try {
+                for (int i = 0; i < userIds.size(); i++) {
+                    Long userId = userIds.get(i);
+                    subscribed.set(i, holds(userId) && users.get(userId.intValue()));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return subscribed;
+        }
+
+        void set(Long userId, boolean subscribed) {
+            lock.writeLock().lock();
+            try {
+                if (users.set(userId.intValue(), subscribed))
+                    cardinality += subscribed ? 1 : -1;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        long cardinality() {
+            lock.readLock().lock();
+            try {
+                return cardinality;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long sizeInBytes() {
+            lock.readLock().lock();
+            try {
+                return users.sizeInBytes();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
@@ -1,182 +1,639 @@
 package net.casim.task.newsletter.service;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import javassist.NotFoundException;
-import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.model.BulkSubscriptionResult;
+import net.casim.task.newsletter.model.BulkSubscriptionStatus;
+import net.casim.task.newsletter.model.ExportFormat;
+import net.casim.task.newsletter.model.ResponseFields;
 import net.casim.task.newsletter.model.SubscribeRequest;
-import net.casim.task.newsletter.model.Subscription;
-import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.SubscriptionCursor;
 import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.model.dto.NewsletterPageDTO;
+import net.casim.task.newsletter.model.dto.NewsletterStatsDTO;
+import net.casim.task.newsletter.model.dto.SubscriberPageDTO;
 import net.casim.task.newsletter.model.dto.UserDTO;
+import net.casim.task.newsletter.model.projection.NewsletterSummaryView;
+import net.casim.task.newsletter.model.projection.NewsletterView;
+import net.casim.task.newsletter.model.projection.SubscriberView;
+import net.casim.task.newsletter.model.projection.UserView;
 import net.casim.task.newsletter.repository.NewsletterRepository;
 import net.casim.task.newsletter.repository.SubscriptionRepository;
 import net.casim.task.newsletter.repository.UserRepository;
 import net.casim.task.newsletter.service.interfaces.ISubscriptionService;
+import net.casim.task.newsletter.shard.Shards;
+import net.casim.task.newsletter.writebehind.SubscriptionWriteBehind;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
 @Service
 public class SubscriptionService implements ISubscriptionService {
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+
+    private static final int BULK_CHUNK_SIZE = 1000;
+
+    private static final String SERVICE_TIMER = "subscription.service";
+
     private final SubscriptionRepository subscriptionRepository;
     private final NewsletterRepository newsletterRepository;
 
     private final UserRepository userRepository;
 
+    private final SubscriptionIndex subscriptionIndex;
+
+    private final BulkSubscriptionWriter bulkSubscriptionWriter;
+
+    private final SubscriberExporter subscriberExporter;
+
+    private final CatalogCache catalogCache;
+
+    private final SubscriptionStats subscriptionStats;
+
+    private final SubscriptionWriteBehind writeBehind;
 
-    public SubscriptionService(SubscriptionRepository subscriptionRepository, NewsletterRepository newsletterRepository, UserRepository userRepository1) {
+    private final Shards shards;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter subscribeCreated;
+    private final Counter subscribeAlreadySubscribed;
+    private final Counter subscribeNotFound;
+    private final Counter unsubscribeRemoved;
+    private final Counter unsubscribeNotSubscribed;
+    private final Counter unsubscribeNotFound;
+
+
+    public SubscriptionService(SubscriptionRepository subscriptionRepository, NewsletterRepository newsletterRepository, UserRepository userRepository1,
+                               SubscriptionIndex subscriptionIndex, BulkSubscriptionWriter bulkSubscriptionWriter,
+                               SubscriberExporter subscriberExporter, CatalogCache catalogCache, SubscriptionStats subscriptionStats,
+                               ObjectProvider<SubscriptionWriteBehind> writeBehind, Shards shards,
+                               ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry) {
         this.subscriptionRepository = subscriptionRepository;
         this.newsletterRepository = newsletterRepository;
         this.userRepository = userRepository1;
+        this.subscriptionIndex = subscriptionIndex;
+        this.bulkSubscriptionWriter = bulkSubscriptionWriter;
+        this.subscriberExporter = subscriberExporter;
+        this.catalogCache = catalogCache;
+        this.subscriptionStats = subscriptionStats;
+        this.writeBehind = writeBehind.getIfAvailable();
+        this.shards = shards;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        this.subscribeCreated = outcomeCounter(meterRegistry, "subscribe", "created");
+        this.subscribeAlreadySubscribed = outcomeCounter(meterRegistry, "subscribe", "already_subscribed");
+        this.subscribeNotFound = outcomeCounter(meterRegistry, "subscribe", "not_found");
+        this.unsubscribeRemoved = outcomeCounter(meterRegistry, "unsubscribe", "removed");
+        this.unsubscribeNotSubscribed = outcomeCounter(meterRegistry, "unsubscribe", "not_subscribed");
+        this.unsubscribeNotFound = outcomeCounter(meterRegistry, "unsubscribe", "not_found");
     }
 
 
+    /**
+     * Activates the subscription with a single upsert statement; user and newsletter existence comes from the
+     * {@link CatalogCache}. The upsert and its {@link SubscriptionChangedEvent} share a transaction, so listeners
+     * that write in it, like the outbox, commit with the change. In write-behind mode the change is only appended
+     * to the {@link SubscriptionWriteBehind} log, see {@link #isWriteBehind()}.
+     */
     @Override
-    @Transactional
-    public void subscribe(SubscribeRequest subscribeRequest) throws NotFoundException {
+    @Timed(SERVICE_TIMER)
+    public boolean subscribe(SubscribeRequest subscribeRequest) throws NotFoundException {
         Long userId = subscribeRequest.getUserId();
         Long newsletterId = subscribeRequest.getNewsletterId();
-        User user = userRepository.findByUserId(userId)
-                .orElseThrow(() -> new NotFoundException("User not found"));
+        if (!catalogCache.getUser(userId).isPresent()) {
+            subscribeNotFound.increment();
+            throw new NotFoundException("User not found");
+        }
 
-        Newsletter newsletter = newsletterRepository.findById(newsletterId)
-                .orElseThrow(() -> new NotFoundException("Newsletter not found"));
+        if (!catalogCache.getNewsletter(newsletterId).isPresent()) {
+            subscribeNotFound.increment();
+            throw new NotFoundException("Newsletter not found");
+        }
 
-        Subscription subscription = subscriptionRepository.findByUser_UserIdAndNewsletter_NewsletterId(userId, newsletterId).orElse(null);
+        boolean changed;
+        if (isWriteBehind()) {
+            changed = writeBehind.subscribe(userId, newsletterId);
+        } else {
+            changed = inTransaction(newsletterId, status -> {
+                boolean upserted = subscriptionRepository.upsertSubscribed(userId, newsletterId, LocalDateTime.now());
+                if (upserted)
+                    eventPublisher.publishEvent(new SubscriptionChangedEvent(userId, newsletterId, true));
+                return upserted;
+            });
+        }
 
-        if (subscription == null) {
-            subscription = Subscription.builder()
-                    .subscribed(true)
-                    .user(user)
-                    .newsletter(newsletter)
-                    .createdAt(LocalDateTime.now())
-                    .build();
+        if (changed) {
+            subscribeCreated.increment();
         } else {
-            subscription.setSubscribed(true);
-            subscription.setCreatedAt(LocalDateTime.now());
+            subscribeAlreadySubscribed.increment();
         }
 
-        subscriptionRepository.save(subscription);
+        return changed;
     }
 
     @Override
-    @Transactional
-    public void unsubscribe(SubscribeRequest subscribeRequest) throws NotFoundException {
+    @Timed(SERVICE_TIMER)
+    public boolean unsubscribe(SubscribeRequest subscribeRequest) throws NotFoundException {
         Long userId = subscribeRequest.getUserId();
         Long newsletterId = subscribeRequest.getNewsletterId();
+        if (!catalogCache.getNewsletter(newsletterId).isPresent()) {
+            unsubscribeNotFound.increment();
+            throw new NotFoundException("Newsletter not found");
+        }
 
-        Subscription subscription = subscriptionRepository.findByUser_UserIdAndNewsletter_NewsletterId(userId, newsletterId)
-                .orElseThrow(() -> new NotFoundException("Subscription not found"));
+        boolean changed;
+        if (isWriteBehind()) {
+            changed = writeBehind.unsubscribe(userId, newsletterId);
+        } else {
+            changed = inTransaction(newsletterId, status -> {
+                boolean deactivated = subscriptionRepository.deactivate(userId, newsletterId) > 0;
+                if (deactivated)
+                    eventPublisher.publishEvent(new SubscriptionChangedEvent(userId, newsletterId, false));
+                return deactivated;
+            });
+        }
 
-        subscription.setSubscribed(false);
-        subscriptionRepository.save(subscription);
+        if (changed) {
+            unsubscribeRemoved.increment();
+        } else {
+            unsubscribeNotSubscribed.increment();
+        }
 
-        Newsletter newsletter = newsletterRepository.findById(newsletterId)
-                .orElseThrow(() -> new NotFoundException("Newsletter not found"));
+        return changed;
+    }
+
+
+    /**
+     * Each chunk of {@value #BULK_CHUNK_SIZE} requests is applied and committed on its own, so a failure only
+     * rolls back the chunk it happened in; with sharding, the part of a chunk on each shard commits on its own.
+     * In write-behind mode the chunk goes through the log like single calls.
+     */
+    @Override
+    @Timed(SERVICE_TIMER)
+    public List<BulkSubscriptionResult> subscribeAll(List<SubscribeRequest> subscribeRequests) {
+        List<BulkSubscriptionResult> results = new ArrayList<>(subscribeRequests.size());
+        for (List<SubscribeRequest> chunk : partition(subscribeRequests, BULK_CHUNK_SIZE)) {
+            results.addAll(isWriteBehind() ? subscribeBehind(chunk) : applyByShard(chunk, bulkSubscriptionWriter::subscribe));
+        }
+        return results;
+    }
+
+    @Override
+    @Timed(SERVICE_TIMER)
+    public List<BulkSubscriptionResult> unsubscribeAll(List<SubscribeRequest> subscribeRequests) {
+        List<BulkSubscriptionResult> results = new ArrayList<>(subscribeRequests.size());
+        for (List<SubscribeRequest> chunk : partition(subscribeRequests, BULK_CHUNK_SIZE)) {
+            results.addAll(isWriteBehind() ? unsubscribeBehind(chunk) : applyByShard(chunk, bulkSubscriptionWriter::unsubscribe));
+        }
+        return results;
+    }
+
+    /**
+     * Answered from the in-memory {@link SubscriptionIndex}, or from the write-behind overlay for changes not yet
+     * drained; only goes to the database while the index is warming up.
+     */
+    @Override
+    @Timed(SERVICE_TIMER)
+    public boolean checkSubscription(Long newsletterId, Long userId) {
+        Boolean pending = (writeBehind != null) ? writeBehind.pendingState(userId, newsletterId) : null;
+        if (pending != null)
+            return pending;
 
-        newsletterRepository.save(newsletter);
+        if (subscriptionIndex.isReady())
+            return subscriptionIndex.contains(newsletterId, userId);
 
-        convertToDTO(newsletter);
+        try (Shards.Route route = shards.routeTo(newsletterId)) {
+            return subscriptionRepository.existsByUser_UserIdAndNewsletter_NewsletterIdAndSubscribedTrue(userId, newsletterId);
+        }
+    }
+
+    /**
+     * Probes the {@link SubscriptionIndex} for every id, or runs a single IN query while it is warming up; changes
+     * not drained by the write-behind mode take precedence as in {@link #checkSubscription}.
+     */
+    @Override
+    @Timed(SERVICE_TIMER)
+    public Map<Long, Boolean> checkSubscriptions(Long userId, Collection<Long> newsletterIds) {
+        List<Long> ids = MembershipChecks.distinct(newsletterIds);
+        if (ids.isEmpty())
+            return Collections.emptyMap();
+
+        BitSet subscribed = subscriptionIndex.isReady()
+                ? subscriptionIndex.subscribedNewsletters(userId, ids)
+                : MembershipChecks.positions(ids, shards.onShardsOf(ids, chunk -> subscriptionRepository.findActiveNewsletterIds(userId, chunk)));
+        Map<Long, Boolean> memberships = MembershipChecks.toMap(ids, subscribed);
+        if (writeBehind != null)
+            memberships.replaceAll((newsletterId, active) -> withPending(userId, newsletterId, active));
+        return memberships;
+    }
+
+    /**
+     * Same as {@link #checkSubscriptions}, with the newsletter's index entry read once for all users.
+     */
+    @Override
+    @Timed(SERVICE_TIMER)
+    public Map<Long, Boolean> checkSubscribers(Long newsletterId, Collection<Long> userIds) {
+        List<Long> ids = MembershipChecks.distinct(userIds);
+        if (ids.isEmpty())
+            return Collections.emptyMap();
+
+        BitSet subscribed;
+        if (subscriptionIndex.isReady()) {
+            subscribed = subscriptionIndex.subscribedUsers(newsletterId, ids);
+        } else {
+            try (Shards.Route route = shards.routeTo(newsletterId)) {
+                subscribed = MembershipChecks.positions(ids, subscriptionRepository.findActiveUserIds(newsletterId, ids));
+            }
+        }
+        Map<Long, Boolean> memberships = MembershipChecks.toMap(ids, subscribed);
+        if (writeBehind != null)
+            memberships.replaceAll((userId, active) -> withPending(userId, newsletterId, active));
+        return memberships;
     }
 
+    private boolean withPending(Long userId, Long newsletterId, boolean active) {
+        Boolean pending = writeBehind.pendingState(userId, newsletterId);
+        return (pending != null) ? pending : active;
+    }
 
     @Override
+    @Timed(SERVICE_TIMER)
     @Transactional(readOnly = true)
-    public boolean checkSubscription(Long newsletterId, Long userId) {
-        return subscriptionRepository.existsByUser_UserIdAndNewsletter_NewsletterIdAndSubscribedTrue(userId, newsletterId);
+    public List<UserDTO> getSubscribersBeforeDate(Long newsletterId, String date, ResponseFields fields) {
+        LocalDateTime targetDate = SubscriptionCursor.parseDate(date);
+        List<SubscriberView> subscribers;
+        try (Shards.Route route = shards.routeTo(newsletterId)) {
+            subscribers = subscriptionRepository.findActiveSubscribersBefore(newsletterId, targetDate);
+        }
+
+        return getUserDTOS(subscribers, fields);
     }
 
     @Override
+    @Timed(SERVICE_TIMER)
     @Transactional(readOnly = true)
-    public List<UserDTO> getSubscribersBeforeDate(Long newsletterId, String date) {
-        LocalDateTime targetDate = LocalDateTime.parse(date);
-        List<Subscription> subscribers = subscriptionRepository.findByNewsletter_NewsletterIdAndSubscribedTrue(newsletterId).stream()
-                .filter(subscription -> subscription.getCreatedAt() != null && subscription.getCreatedAt().isBefore(targetDate))
-                .collect(Collectors.toList());
+    public List<UserDTO> getSubscribersAfterDate(Long newsletterId, String date, ResponseFields fields) {
+        LocalDateTime targetDate = SubscriptionCursor.parseDate(date);
+        List<SubscriberView> subscribers;
+        try (Shards.Route route = shards.routeTo(newsletterId)) {
+            subscribers = subscriptionRepository.findActiveSubscribersAfter(newsletterId, targetDate);
+        }
 
-        return getUserDTOS(subscribers);
+        return getUserDTOS(subscribers, fields);
     }
 
     @Override
+    @Timed(SERVICE_TIMER)
     @Transactional(readOnly = true)
-    public List<UserDTO> getSubscribersAfterDate(Long newsletterId, String date) {
-        LocalDateTime targetDate = LocalDateTime.parse(date);
-        List<Subscription> subscribers = subscriptionRepository.findByNewsletter_NewsletterIdAndSubscribedTrue(newsletterId).stream()
-                .filter(subscription -> subscription.getCreatedAt() != null && subscription.getCreatedAt().isAfter(targetDate))
-                .collect(Collectors.toList());
+    public SubscriberPageDTO getSubscribersPage(Long newsletterId, String after, String before, String cursor, int size,
+                                                ResponseFields fields) {
+        SubscriptionCursor position;
+        if (cursor != null)
+            position = SubscriptionCursor.parse(cursor);
+        else if (after != null)
+            position = SubscriptionCursor.after(SubscriptionCursor.parseDate(after));
+        else
+            position = SubscriptionCursor.first();
+
+        LocalDateTime until = (before != null) ? SubscriptionCursor.parseDate(before) : SubscriptionCursor.MAX_DATE;
+
+        List<SubscriberView> page;
+        try (Shards.Route route = shards.routeTo(newsletterId)) {
+            page = subscriptionRepository.findActivePageAfter(newsletterId,
+                    position.getCreatedAt(), position.getId(), until, PageRequest.of(0, size));
+        }
 
-        return getUserDTOS(subscribers);
+        String nextCursor = (page.size() == size) ? SubscriptionCursor.of(page.get(page.size() - 1)).encode() : null;
+
+        return new SubscriberPageDTO(getUserDTOS(page, fields), nextCursor);
     }
 
     @Override
-    public Newsletter getNewsletterWithSubscribers(Long newsletterId) throws NotFoundException {
-        List<Subscription> subscribers = subscriptionRepository.findByNewsletter_NewsletterIdAndSubscribedTrue(newsletterId);
+    @Timed(SERVICE_TIMER)
+    @Transactional(readOnly = true)
+    public NewsletterDTO getNewsletterWithSubscribers(Long newsletterId) throws NotFoundException {
+        NewsletterDTO newsletter = getNewsletterDTOs(List.of(newsletterId), ResponseFields.ALL).get(newsletterId);
 
-        if (subscribers.isEmpty()) {
+        if (newsletter == null || newsletter.getSubscribedUsernames().isEmpty()) {
             throw new NotFoundException("Newsletter not found or no subscribers");
         }
 
-        Newsletter newsletter = subscribers.get(0).getNewsletter();
-        newsletter.setSubscribedUsers(subscribers);
-
         return newsletter;
     }
 
+    /**
+     * Derived from the newsletter's version and subscription revision, both usually served from the {@link CatalogCache}.
+     */
+    @Override
+    @Timed(SERVICE_TIMER)
+    @Transactional(readOnly = true)
+    public String getNewsletterETag(Long newsletterId) throws NotFoundException {
+        NewsletterView newsletter = catalogCache.getNewsletter(newsletterId)
+                .orElseThrow(() -> new NotFoundException("Newsletter not found"));
+
+        return EntityTag.of("newsletter")
+                .add(newsletterId)
+                .add(newsletter.getVersion())
+                .add(catalogCache.getSubscriptionRevisions(List.of(newsletterId)).get(newsletterId))
+                .build();
+    }
+
+    @Override
+    @Timed(SERVICE_TIMER)
+    public void exportSubscribers(Long newsletterId, String since, ExportFormat format, OutputStream outputStream) throws IOException {
+        subscriberExporter.export(newsletterId, since, format, outputStream);
+    }
+
+    @Override
+    @Timed(SERVICE_TIMER)
+    @Transactional(readOnly = true)
+    public List<NewsletterDTO> getAllNewsletters(ResponseFields fields) {
+        return toNewsletterDTOs(catalogCache.getAllNewsletters(), fields);
+    }
+
+    @Override
+    @Timed(SERVICE_TIMER)
+    @Transactional(readOnly = true)
+    public String getAllNewslettersETag(ResponseFields fields) {
+        List<NewsletterView> newsletters = catalogCache.getAllNewsletters();
+        Map<Long, Long> revisions = fields.isSubscribedUsernames()
+                ? catalogCache.getSubscriptionRevisions(newsletters.stream().map(NewsletterView::getNewsletterId).collect(Collectors.toList()))
+                : Collections.emptyMap();
+
+        EntityTag tag = EntityTag.of("newsletters")
+                .add(fields.isContent())
+                .add(fields.isSubscribedUsernames());
+        for (NewsletterView newsletter : newsletters) {
+            tag.add(newsletter.getNewsletterId()).add(newsletter.getVersion());
+            if (fields.isSubscribedUsernames())
+                tag.add(revisions.get(newsletter.getNewsletterId()));
+        }
+        return tag.build();
+    }
+
+    /**
+     * Keyset page in newsletterId order, read from the database with only the requested columns; the cursor is
+     * the last newsletterId of the previous page.
+     */
     @Override
+    @Timed(SERVICE_TIMER)
     @Transactional(readOnly = true)
-    public List<Newsletter> getAllNewsletters() {
-        return newsletterRepository.findAll();
+    public NewsletterPageDTO getNewslettersPage(String cursor, int size, ResponseFields fields) {
+        long after = newsletterCursor(cursor);
+        Class<? extends NewsletterSummaryView> columns = fields.isContent() ? NewsletterView.class : NewsletterSummaryView.class;
+        List<? extends NewsletterSummaryView> page = newsletterRepository.findByNewsletterIdGreaterThanOrderByNewsletterId(
+                after, PageRequest.of(0, size), columns);
+
+        String nextCursor = (page.size() == size) ? page.get(page.size() - 1).getNewsletterId().toString() : null;
+
+        return new NewsletterPageDTO(toNewsletterDTOs(page, fields), nextCursor);
+    }
+
+    /**
+     * Served from the {@link SubscriptionStats} counters; never counts {@code subscription} rows once the index is ready.
+     */
+    @Override
+    @Timed(SERVICE_TIMER)
+    public NewsletterStatsDTO getNewsletterStats(Long newsletterId, int days) throws NotFoundException {
+        if (!catalogCache.getNewsletter(newsletterId).isPresent())
+            throw new NotFoundException("Newsletter not found");
+
+        return subscriptionStats.getStats(newsletterId, days);
     }
 
     @Override
-    public User getUser(Long userId) throws NotFoundException {
-        return userRepository.findById(userId)
+    @Timed(SERVICE_TIMER)
+    @Transactional(readOnly = true)
+    public UserDTO getUser(Long userId, ResponseFields fields) throws NotFoundException {
+        UserView user = catalogCache.getUser(userId)
                 .orElseThrow(() -> new NotFoundException("User not found"));
+
+        return getUserDTOS(List.of(user), fields).get(0);
+    }
+
+    /**
+     * Write-behind mode is only used once the membership index is ready; until then changes go to the database.
+     */
+    private boolean isWriteBehind() {
+        return writeBehind != null && writeBehind.isAccepting();
+    }
+
+    private boolean inTransaction(Long newsletterId, TransactionCallback<Boolean> work) {
+        try (Shards.Route route = shards.routeTo(newsletterId)) {
+            return Boolean.TRUE.equals(transactionTemplate.execute(work));
+        }
+    }
+
+    /**
+     * Bulk subscribe in write-behind mode, with users and newsletters resolved for the whole chunk at once.
+     */
+    private List<BulkSubscriptionResult> subscribeBehind(List<SubscribeRequest> chunk) {
+        Set<Long> userIds = chunk.stream().map(SubscribeRequest::getUserId).filter(Objects::nonNull).collect(Collectors.toSet());
+        Set<Long> newsletterIds = chunk.stream().map(SubscribeRequest::getNewsletterId).filter(Objects::nonNull).collect(Collectors.toSet());
+        Set<Long> users = userRepository.findByUserIdIn(userIds).stream().map(UserView::getUserId).collect(Collectors.toSet());
+        Map<Long, NewsletterView> newsletters = catalogCache.getNewsletters(newsletterIds);
+
+        BulkSubscriptionResult[] results = new BulkSubscriptionResult[chunk.size()];
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            SubscribeRequest request = chunk.get(i);
+            if (!users.contains(request.getUserId()))
+                results[i] = new BulkSubscriptionResult(request.getUserId(), request.getNewsletterId(), BulkSubscriptionStatus.USER_NOT_FOUND);
+            else if (!newsletters.containsKey(request.getNewsletterId()))
+                results[i] = new BulkSubscriptionResult(request.getUserId(), request.getNewsletterId(), BulkSubscriptionStatus.NEWSLETTER_NOT_FOUND);
+            else
+                positions.add(i);
+        }
+
+        return writeBehind(chunk, results, positions, true, BulkSubscriptionStatus.SUBSCRIBED, BulkSubscriptionStatus.ALREADY_SUBSCRIBED);
+    }
+
+    private List<BulkSubscriptionResult> unsubscribeBehind(List<SubscribeRequest> chunk) {
+        BulkSubscriptionResult[] results = new BulkSubscriptionResult[chunk.size()];
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            SubscribeRequest request = chunk.get(i);
+            if (request.getUserId() == null || request.getNewsletterId() == null)
+                results[i] = new BulkSubscriptionResult(request.getUserId(), request.getNewsletterId(), BulkSubscriptionStatus.NOT_SUBSCRIBED);
+            else
+                positions.add(i);
+        }
+
+        return writeBehind(chunk, results, positions, false, BulkSubscriptionStatus.UNSUBSCRIBED, BulkSubscriptionStatus.NOT_SUBSCRIBED);
     }
 
-    private void convertToDTO(Newsletter newsletter) {
-        if (newsletter == null)
-            throw new IllegalArgumentException("Newsletter cannot be null");
+    /**
+     * Hands the requests at {@code positions} to the write-behind log and fills in their results.
+     */
+    private List<BulkSubscriptionResult> writeBehind(List<SubscribeRequest> chunk, BulkSubscriptionResult[] results, List<Integer> positions,
+                                                     boolean subscribed, BulkSubscriptionStatus changed, BulkSubscriptionStatus unchanged) {
+        List<Boolean> written = writeBehind.changeAll(positions.stream().map(chunk::get).collect(Collectors.toList()), subscribed);
+        for (int i = 0; i < positions.size(); i++) {
+            SubscribeRequest request = chunk.get(positions.get(i));
+            results[positions.get(i)] = new BulkSubscriptionResult(request.getUserId(), request.getNewsletterId(),
+                    written.get(i) ? changed : unchanged);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Hands each shard's part of the chunk to {@code writer} and puts the results back in request order.
+     */
+    private List<BulkSubscriptionResult> applyByShard(List<SubscribeRequest> chunk,
+                                                      Function<List<SubscribeRequest>, List<BulkSubscriptionResult>> writer) {
+        if (!shards.isSharded())
+            return writer.apply(chunk);
+
+        BulkSubscriptionResult[] results = new BulkSubscriptionResult[chunk.size()];
+        List<Integer> positions = IntStream.range(0, chunk.size()).boxed().collect(Collectors.toList());
+        shards.groupByShard(positions, position -> chunk.get(position).getNewsletterId()).forEach((shard, group) -> {
+            try (Shards.Route route = shards.route(shard)) {
+                List<BulkSubscriptionResult> written = writer.apply(group.stream().map(chunk::get).collect(Collectors.toList()));
+                for (int i = 0; i < group.size(); i++)
+                    results[group.get(i)] = written.get(i);
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    private List<UserDTO> getUserDTOS(List<? extends UserView> users, ResponseFields fields) {
+        if (!fields.isSubscribedNewsletters()) {
+            return users.stream()
+                    .map(user -> new UserDTO(user.getUserId(), user.getUsername(), null))
+                    .collect(Collectors.toList());
+        }
+
+        Set<Long> userIds = users.stream()
+                .map(UserView::getUserId)
+                .collect(Collectors.toSet());
+
+        // a user's subscriptions may be on every shard
+        Map<Long, List<Long>> newsletterIdsByUser = new HashMap<>();
+        for (List<Long> chunk : partition(userIds)) {
+            shards.onEveryShard(() -> subscriptionRepository.findActiveMembershipsByUserIds(chunk))
+                    .forEach(memberships -> memberships.forEach(membership -> newsletterIdsByUser
+                            .computeIfAbsent(membership.getUserId(), id -> new ArrayList<>())
+                            .add(membership.getNewsletterId())));
+        }
+
+        Set<Long> newsletterIds = newsletterIdsByUser.values().stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toSet());
+        Map<Long, NewsletterDTO> newsletterDTOs = getNewsletterDTOs(newsletterIds, fields);
+
+        return users.stream()
+                .map(user -> {
+                    List<NewsletterDTO> subscribedNewsletters = newsletterIdsByUser
+                            .getOrDefault(user.getUserId(), Collections.emptyList()).stream()
+                            .map(newsletterDTOs::get)
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList());
 
-        List<String> subscribedUsernames = Optional.ofNullable(newsletter.getSubscribedUsers())
-                .orElse(Collections.emptyList()).stream()
-                .filter(subscription -> subscription != null && subscription.isSubscribed())
-                .map(subscription -> {
-                    User user = subscription.getUser();
-                    return (user != null) ? user.getUsername() : null;
+                    return new UserDTO(user.getUserId(), user.getUsername(), subscribedNewsletters);
                 })
-                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
+    }
+
+    /**
+     * Builds the DTOs of the given newsletters from the {@link CatalogCache}, loading only the missing entries
+     * with a fixed number of queries per chunk of ids.
+     */
+    private Map<Long, NewsletterDTO> getNewsletterDTOs(Collection<Long> newsletterIds, ResponseFields fields) {
+        List<NewsletterView> newsletters = new ArrayList<>();
+        for (List<Long> chunk : partition(newsletterIds)) {
+            newsletters.addAll(catalogCache.getNewsletters(chunk).values());
+        }
 
-        new NewsletterDTO(newsletter.getNewsletterId(), newsletter.getTitle(),
-                newsletter.getContent(), newsletter.getPublicationDate(), subscribedUsernames);
+        return toNewsletterDTOs(newsletters, fields).stream()
+                .collect(Collectors.toMap(NewsletterDTO::getNewsletterId, Function.identity()));
     }
 
-    private List<UserDTO> getUserDTOS(List<Subscription> subscribers) {
-        return subscribers.stream()
-                .map(subscription -> {
-                    User user = subscription.getUser();
-                    if (user != null) {
-                        List<NewsletterDTO> newsletterDTOs = user.getSubscriptions().stream()
-                                .filter(sub -> sub != null && sub.isSubscribed() && sub.getNewsletter() != null)
-                                .map(sub -> sub.getNewsletter().toDTO())
-                                .collect(Collectors.toList());
+    /**
+     * Subscriber lists are only loaded when {@code subscribedUsernames} is requested; content is taken from
+     * the views that carry it.
+     */
+    private List<NewsletterDTO> toNewsletterDTOs(List<? extends NewsletterSummaryView> newsletters, ResponseFields fields) {
+        Map<Long, List<String>> usernamesByNewsletter = new HashMap<>();
+        if (fields.isSubscribedUsernames()) {
+            List<Long> newsletterIds = newsletters.stream()
+                    .map(NewsletterSummaryView::getNewsletterId)
+                    .collect(Collectors.toList());
+
+            for (List<Long> chunk : partition(newsletterIds)) {
+                usernamesByNewsletter.putAll(catalogCache.getSubscriberNames(chunk));
+            }
+        }
 
-                        return new UserDTO(user.getUserId(), user.getUsername(), newsletterDTOs);
-                    } else {
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
+        return newsletters.stream()
+                .map(newsletter -> new NewsletterDTO(newsletter.getNewsletterId(), newsletter.getTitle(),
+                        (fields.isContent() && newsletter instanceof NewsletterView) ? ((NewsletterView) newsletter).getContent() : null,
+                        newsletter.getPublicationDate(),
+                        fields.isSubscribedUsernames()
+                                ? new ArrayList<>(usernamesByNewsletter.getOrDefault(newsletter.getNewsletterId(), Collections.emptyList()))
+                                : null))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * @return the newsletterId a newsletter page starts after, 0 for the first page
+     * @throws ResponseStatusException with 400 if {@code cursor} is not a non-negative newsletterId
+     */
+    static long newsletterCursor(String cursor) {
+        if (cursor == null)
+            return 0L;
+        long after;
+        try {
+            after = Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            after = -1;
+        }
+        if (after < 0)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+        return after;
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String operation, String outcome) {
+        return Counter.builder("subscription.outcome")
+                .description("Outcomes of single subscribe and unsubscribe calls")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 
+    private static List<List<Long>> partition(Collection<Long> ids) {
+        return partition(new ArrayList<>(ids), IN_CLAUSE_CHUNK_SIZE);
+    }
+
+    private static <T> List<List<T>> partition(List<T> source, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < source.size(); i += size) {
+            chunks.add(source.subList(i, Math.min(i + size, source.size())));
+        }
+        return chunks;
+    }
 }
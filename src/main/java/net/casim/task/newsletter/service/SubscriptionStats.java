@@ -0,0 +1,174 @@
+package net.casim.task.newsletter.service;
+
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.model.NewsletterDailyStats;
+import net.casim.task.newsletter.model.dto.DailyStatsDTO;
+import net.casim.task.newsletter.model.dto.NewsletterStatsDTO;
+import net.casim.task.newsletter.repository.NewsletterDailyStatsRepository;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-newsletter subscriber statistics, maintained as subscriptions change instead of counted from
+ * {@code subscription}.
+ * <p>
+ * Active subscribers come from the {@link SubscriptionIndex}. Subscribes and unsubscribes are counted in
+ * {@link LongAdder}s when their {@link SubscriptionChangedEvent} commits, under the day {@link LocalDate#now()}
+ * returns in the server's time zone at that moment rather than the day the change was requested, and added to
+ * {@code newsletter_daily_stats} every {@code newsletter.stats.flush-interval} and once more on shutdown; reads add
+ * what has not been flushed yet. Only counts that cannot be written by then, or changes committing after it, are lost.
+ * <p>
+ * A row is written and its counters marked flushed under a write lock that reads take too, so a read never counts
+ * a flushed change twice or not at all.
+ */
+@Component
+public class SubscriptionStats {
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionStats.class);
+
+    public static final int MAX_DAYS = 366;
+
+    private final SubscriptionIndex subscriptionIndex;
+
+    private final SubscriptionRepository subscriptionRepository;
+
+    private final NewsletterDailyStatsRepository dailyStatsRepository;
+
+    private final Shards shards;
+
+    private final ConcurrentMap<Long, ConcurrentMap<LocalDate, DailyCounters>> counters = new ConcurrentHashMap<>();
+
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    public SubscriptionStats(SubscriptionIndex subscriptionIndex, SubscriptionRepository subscriptionRepository,
+                             NewsletterDailyStatsRepository dailyStatsRepository, Shards shards) {
+        this.subscriptionIndex = subscriptionIndex;
+        this.subscriptionRepository = subscriptionRepository;
+        this.dailyStatsRepository = dailyStatsRepository;
+        this.shards = shards;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChanged(SubscriptionChangedEvent event) {
+        DailyCounters daily = counters
+                .computeIfAbsent(event.getNewsletterId(), id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(LocalDate.now(), day -> new DailyCounters());
+
+        if (event.isSubscribed())
+            daily.subscribes.increment();
+        else
+            daily.unsubscribes.increment();
+    }
+
+    /**
+     * Adds the counts accumulated since the last flush to {@code newsletter_daily_stats}, one row per newsletter
+     * and day. A row that fails to be written is logged and retried on the next flush, the others are written anyway.
+     */
+    @Scheduled(fixedDelayString = "${newsletter.stats.flush-interval:PT10S}")
+    public synchronized void flush() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        counters.forEach((newsletterId, days) -> days.forEach((day, daily) -> {
+            flushLock.writeLock().lock();
+            try {
+                long subscribes = daily.subscribes.sum() - daily.flushedSubscribes;
+                long unsubscribes = daily.unsubscribes.sum() - daily.flushedUnsubscribes;
+                if (subscribes != 0 || unsubscribes != 0) {
+                    if (dailyStatsRepository.addCounts(newsletterId, day, subscribes, unsubscribes) == 0)
+                        dailyStatsRepository.save(new NewsletterDailyStats(newsletterId, day, subscribes, unsubscribes));
+
+                    daily.flushedSubscribes += subscribes;
+                    daily.flushedUnsubscribes += unsubscribes;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not flush the stats of newsletter {} on {}, retrying on the next flush", newsletterId, day, e);
+                return;
+            } finally {
+                flushLock.writeLock().unlock();
+            }
+
+            // only changes committing around midnight still count towards yesterday
+            if (day.isBefore(yesterday))
+                days.remove(day, daily);
+        }));
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * @param days number of days to report, today included, at most {@value #MAX_DAYS}
+     */
+    public NewsletterStatsDTO getStats(Long newsletterId, int days) {
+        LocalDate today = LocalDate.now();
+        LocalDate from = today.minusDays(Math.max(1, Math.min(days, MAX_DAYS)) - 1);
+
+        Map<LocalDate, long[]> counts = new HashMap<>();
+        flushLock.readLock().lock();
+        try {
+            for (NewsletterDailyStats row : dailyStatsRepository.findByNewsletterIdAndDayGreaterThanEqual(newsletterId, from))
+                counts.put(row.getDay(), new long[]{row.getSubscribes(), row.getUnsubscribes()});
+
+            counters.getOrDefault(newsletterId, new ConcurrentHashMap<>()).forEach((day, daily) -> {
+                if (day.isBefore(from))
+                    return;
+
+                long[] count = counts.computeIfAbsent(day, d -> new long[2]);
+                count[0] += daily.subscribes.sum() - daily.flushedSubscribes;
+                count[1] += daily.unsubscribes.sum() - daily.flushedUnsubscribes;
+            });
+        } finally {
+            flushLock.readLock().unlock();
+        }
+
+        long active;
+        if (subscriptionIndex.isReady()) {
+            active = subscriptionIndex.count(newsletterId);
+        } else {
+            try (Shards.Route route = shards.routeTo(newsletterId)) {
+                active = subscriptionRepository.countByNewsletter_NewsletterIdAndSubscribedTrue(newsletterId);
+            }
+        }
+
+        // walk back from today's active count, one day at a time
+        List<DailyStatsDTO> daily = new ArrayList<>();
+        long activeAtEnd = active;
+        for (LocalDate day = today; !day.isBefore(from); day = day.minusDays(1)) {
+            long[] count = counts.getOrDefault(day, new long[2]);
+            long activeAtStart = activeAtEnd - count[0] + count[1];
+            double churnRate = (activeAtStart > 0) ? (double) count[1] / activeAtStart : 0;
+
+            daily.add(new DailyStatsDTO(day, count[0], count[1], activeAtEnd, churnRate));
+            activeAtEnd = activeAtStart;
+        }
+
+        return new NewsletterStatsDTO(newsletterId, active, daily);
+    }
+
+    /**
+     * Counts of one newsletter and day. The flushed totals are only written by {@link #flush()}.
+     */
+    private static final class DailyCounters {
+        final LongAdder subscribes = new LongAdder();
+        final LongAdder unsubscribes = new LongAdder();
+        volatile long flushedSubscribes;
+        volatile long flushedUnsubscribes;
+    }
+}
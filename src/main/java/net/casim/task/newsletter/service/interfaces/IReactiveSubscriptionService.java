@@ -0,0 +1,86 @@
+package net.casim.task.newsletter.service.interfaces;
+
+import net.casim.task.newsletter.model.BulkSubscriptionResult;
+import net.casim.task.newsletter.model.ExportFormat;
+import net.casim.task.newsletter.model.ResponseFields;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.model.dto.NewsletterPageDTO;
+import net.casim.task.newsletter.model.dto.NewsletterStatsDTO;
+import net.casim.task.newsletter.model.dto.SubscriberPageDTO;
+import net.casim.task.newsletter.model.dto.UserDTO;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Non-blocking counterpart of {@link ISubscriptionService}. Where the blocking service throws
+ * {@link javassist.NotFoundException}, the returned publisher signals it as an error.
+ */
+public interface IReactiveSubscriptionService {
+    /**
+     * @return true if the subscription was created or re-activated, false if it was already active
+     */
+    Mono<Boolean> subscribe(SubscribeRequest subscribeRequest);
+
+    /**
+     * @return true if an active subscription was deactivated, false if there was none
+     */
+    Mono<Boolean> unsubscribe(SubscribeRequest subscribeRequest);
+
+    Flux<BulkSubscriptionResult> subscribeAll(List<SubscribeRequest> subscribeRequests);
+
+    Flux<BulkSubscriptionResult> unsubscribeAll(List<SubscribeRequest> subscribeRequests);
+
+    Mono<Boolean> checkSubscription(Long newsletterId, Long userId);
+
+    /**
+     * @see ISubscriptionService#checkSubscriptions
+     */
+    Mono<Map<Long, Boolean>> checkSubscriptions(Long userId, Collection<Long> newsletterIds);
+
+    /**
+     * @see ISubscriptionService#checkSubscribers
+     */
+    Mono<Map<Long, Boolean>> checkSubscribers(Long newsletterId, Collection<Long> userIds);
+
+    Flux<UserDTO> getSubscribersBeforeDate(Long newsletterId, String date, ResponseFields fields);
+
+    Flux<UserDTO> getSubscribersAfterDate(Long newsletterId, String date, ResponseFields fields);
+
+    Mono<SubscriberPageDTO> getSubscribersPage(Long newsletterId, String after, String before, String cursor, int size, ResponseFields fields);
+
+    /**
+     * @return the exported rows, without line terminators; CSV exports start with the header row
+     */
+    Flux<String> exportSubscribers(Long newsletterId, String since, ExportFormat format);
+
+    Flux<NewsletterDTO> getAllNewsletters(ResponseFields fields);
+
+    /**
+     * @param cursor the nextCursor of the previous page, or null for the first page
+     */
+    Mono<NewsletterPageDTO> getNewslettersPage(String cursor, int size, ResponseFields fields);
+
+    Mono<NewsletterDTO> getNewsletterWithSubscribers(Long newsletterId);
+
+    /**
+     * Strong entity tag of {@link #getAllNewsletters}, computed without building the list.
+     */
+    Mono<String> getAllNewslettersETag(ResponseFields fields);
+
+    /**
+     * Strong entity tag of {@link #getNewsletterWithSubscribers}, computed without building the newsletter.
+     */
+    Mono<String> getNewsletterETag(Long newsletterId);
+
+    /**
+     * @return active subscribers and the subscribes, unsubscribes and churn of the last {@code days} days
+     */
+    Mono<NewsletterStatsDTO> getNewsletterStats(Long newsletterId, int days);
+
+    Mono<UserDTO> getUser(Long userId, ResponseFields fields);
+}
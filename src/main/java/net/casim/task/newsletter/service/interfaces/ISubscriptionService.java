@@ -1,28 +1,87 @@
 package net.casim.task.newsletter.service.interfaces;
 
 import javassist.NotFoundException;
-import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.BulkSubscriptionResult;
+import net.casim.task.newsletter.model.ExportFormat;
+import net.casim.task.newsletter.model.ResponseFields;
 import net.casim.task.newsletter.model.SubscribeRequest;
-import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.model.dto.NewsletterPageDTO;
+import net.casim.task.newsletter.model.dto.NewsletterStatsDTO;
+import net.casim.task.newsletter.model.dto.SubscriberPageDTO;
 import net.casim.task.newsletter.model.dto.UserDTO;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface ISubscriptionService {
-    void subscribe(SubscribeRequest subscribeRequest) throws NotFoundException;
+    /**
+     * @return true if the subscription was created or re-activated, false if it was already active
+     */
+    boolean subscribe(SubscribeRequest subscribeRequest) throws NotFoundException;
 
-    void unsubscribe(SubscribeRequest subscribeRequest) throws NotFoundException;
+    /**
+     * @return true if an active subscription was deactivated, false if there was none
+     */
+    boolean unsubscribe(SubscribeRequest subscribeRequest) throws NotFoundException;
+
+    List<BulkSubscriptionResult> subscribeAll(List<SubscribeRequest> subscribeRequests);
+
+    List<BulkSubscriptionResult> unsubscribeAll(List<SubscribeRequest> subscribeRequests);
 
     boolean checkSubscription(Long newsletterId, Long userId);
 
-    List<UserDTO> getSubscribersBeforeDate(Long newsletterId, String date);
+    /**
+     * Batched {@link #checkSubscription} of one user against many newsletters.
+     *
+     * @return whether the user is subscribed, per newsletter id in request order
+     * @throws IllegalArgumentException if more than 1000 distinct ids are given
+     */
+    Map<Long, Boolean> checkSubscriptions(Long userId, Collection<Long> newsletterIds);
+
+    /**
+     * Batched {@link #checkSubscription} of many users against one newsletter.
+     *
+     * @return whether each user is subscribed, per user id in request order
+     * @throws IllegalArgumentException if more than 1000 distinct ids are given
+     */
+    Map<Long, Boolean> checkSubscribers(Long newsletterId, Collection<Long> userIds);
+
+    List<UserDTO> getSubscribersBeforeDate(Long newsletterId, String date, ResponseFields fields);
+
+    List<UserDTO> getSubscribersAfterDate(Long newsletterId, String date, ResponseFields fields);
+
+    SubscriberPageDTO getSubscribersPage(Long newsletterId, String after, String before, String cursor, int size, ResponseFields fields);
+
+    void exportSubscribers(Long newsletterId, String since, ExportFormat format, OutputStream outputStream) throws IOException;
+
+    List<NewsletterDTO> getAllNewsletters(ResponseFields fields);
+
+    /**
+     * @param cursor the nextCursor of the previous page, or null for the first page
+     */
+    NewsletterPageDTO getNewslettersPage(String cursor, int size, ResponseFields fields);
+
+    NewsletterDTO getNewsletterWithSubscribers(Long newsletterId) throws NotFoundException;
 
-    List<UserDTO> getSubscribersAfterDate(Long newsletterId, String date);
+    /**
+     * Strong entity tag of {@link #getAllNewsletters}, computed without building the list.
+     */
+    String getAllNewslettersETag(ResponseFields fields);
 
-    List<Newsletter> getAllNewsletters();
+    /**
+     * Strong entity tag of {@link #getNewsletterWithSubscribers}, computed without building the newsletter.
+     */
+    String getNewsletterETag(Long newsletterId) throws NotFoundException;
 
-    Newsletter getNewsletterWithSubscribers(Long newsletterId) throws NotFoundException;
+    /**
+     * @return active subscribers and the subscribes, unsubscribes and churn of the last {@code days} days
+     */
+    NewsletterStatsDTO getNewsletterStats(Long newsletterId, int days) throws NotFoundException;
 
-    User getUser(Long userId) throws NotFoundException;
+    UserDTO getUser(Long userId, ResponseFields fields) throws NotFoundException;
 }
 
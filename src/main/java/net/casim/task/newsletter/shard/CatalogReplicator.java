@@ -0,0 +1,161 @@
+package net.casim.task.newsletter.shard;
+
+import net.casim.task.newsletter.event.NewsletterChangedEvent;
+import net.casim.task.newsletter.event.UserChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a copy of the {@code users} and {@code newsletter} tables on every shard, so subscription queries can
+ * join them and the foreign keys of the {@code subscription} table hold.
+ * <p>
+ * The default shard has the copy the application writes to. Each committed user or newsletter change is copied to
+ * the other shards right after it; rows written around JPA, like seeded ones, are copied by {@link #replicateAll}.
+ */
+public class CatalogReplicator {
+    private static final Logger log = LoggerFactory.getLogger(CatalogReplicator.class);
+
+    private static final int PAGE_SIZE = 1000;
+
+    private enum Table {
+        USERS("users", "user_id"),
+        NEWSLETTER("newsletter", "newsletter_id");
+
+        private final String name;
+        private final String id;
+
+        Table(String name, String id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    private final Shards shards;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public CatalogReplicator(Shards shards, NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.shards = shards;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // runs after other transactions committed, while their resources are still bound
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        replicate(Table.USERS, List.of(event.getUserId()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNewsletterChanged(NewsletterChangedEvent event) {
+        replicate(Table.NEWSLETTER, List.of(event.getNewsletterId()));
+    }
+
+    /**
+     * Copies every user and newsletter of the default shard to the other shards.
+     *
+     * @return the number of rows copied to each shard
+     */
+    public long replicateAll() {
+        long copied = 0;
+        for (Table table : Table.values()) {
+            long after = 0;
+            List<Long> page;
+            do {
+                long from = after;
+                page = inTransaction(shards.getDefault(), status -> jdbcTemplate.queryForList(
+                        "select " + table.id + " from " + table.name + " where " + table.id + " > :after order by " + table.id +
+                                " fetch first " + PAGE_SIZE + " rows only",
+                        Map.of("after", from), Long.class));
+                if (!page.isEmpty()) {
+                    replicate(table, page);
+                    copied += page.size();
+                    after = page.get(page.size() - 1);
+                }
+            } while (page.size() == PAGE_SIZE);
+        }
+        return copied;
+    }
+
+    private void replicate(Table table, List<Long> ids) {
+        List<Map<String, Object>> rows = inTransaction(shards.getDefault(), status -> jdbcTemplate.queryForList(
+                "select * from " + table.name + " where " + table.id + " in (:ids)", Map.of("ids", ids)));
+        Set<Long> present = rows.stream()
+                .map(row -> ((Number) row.get(table.id)).longValue())
+                .collect(Collectors.toSet());
+        List<Long> deleted = ids.stream()
+                .filter(id -> !present.contains(id))
+                .collect(Collectors.toList());
+
+        for (String shard : shards.getNames().subList(1, shards.getNames().size())) {
+            if (!rows.isEmpty())
+                inTransaction(shard, status -> write(table, rows));
+            if (!deleted.isEmpty())
+                delete(shard, table, deleted);
+        }
+    }
+
+    private Void write(Table table, List<Map<String, Object>> rows) {
+        List<Long> ids = rows.stream()
+                .map(row -> ((Number) row.get(table.id)).longValue())
+                .collect(Collectors.toList());
+        Set<Long> existing = new HashSet<>(jdbcTemplate.queryForList(
+                "select " + table.id + " from " + table.name + " where " + table.id + " in (:ids)", Map.of("ids", ids), Long.class));
+
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        List<SqlParameterSource> updates = new ArrayList<>();
+        List<SqlParameterSource> inserts = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource(row);
+            if (existing.contains(((Number) row.get(table.id)).longValue()))
+                updates.add(parameters);
+            else
+                inserts.add(parameters);
+        }
+
+        if (!updates.isEmpty()) {
+            String assignments = columns.stream()
+                    .filter(column -> !column.equalsIgnoreCase(table.id))
+                    .map(column -> column + " = :" + column)
+                    .collect(Collectors.joining(", "));
+            jdbcTemplate.batchUpdate("update " + table.name + " set " + assignments + " where " + table.id + " = :" + table.id,
+                    updates.toArray(new SqlParameterSource[0]));
+        }
+        if (!inserts.isEmpty())
+            jdbcTemplate.batchUpdate(insertSql(table.name, columns), inserts.toArray(new SqlParameterSource[0]));
+        return null;
+    }
+
+    private void delete(String shard, Table table, List<Long> ids) {
+        try {
+            inTransaction(shard, status -> jdbcTemplate.update(
+                    "delete from " + table.name + " where " + table.id + " in (:ids)", Map.of("ids", ids)));
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Could not delete {} {} from shard {}, it still has subscriptions", table.name, ids, shard);
+        }
+    }
+
+    static String insertSql(String table, List<String> columns) {
+        return "insert into " + table + " (" + String.join(", ", columns) + ") values (" +
+                columns.stream().map(column -> ":" + column).collect(Collectors.joining(", ")) + ")";
+    }
+
+    private <T> T inTransaction(String shard, TransactionCallback<T> work) {
+        try (Shards.Route route = shards.route(shard)) {
+            return transactionTemplate.execute(work);
+        }
+    }
+}
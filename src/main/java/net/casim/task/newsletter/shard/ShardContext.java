@@ -0,0 +1,22 @@
+package net.casim.task.newsletter.shard;
+
+/**
+ * The shard the current thread's next connection is taken from; {@code null} for the default shard.
+ */
+final class ShardContext {
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    static String current() {
+        return CURRENT.get();
+    }
+
+    static void set(String shard) {
+        if (shard == null)
+            CURRENT.remove();
+        else
+            CURRENT.set(shard);
+    }
+}
@@ -0,0 +1,122 @@
+package net.casim.task.newsletter.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Moves subscription rows to the shard their newsletter belongs to, after a shard was added or the data was
+ * written to the default shard, as the seed data is. Runs on startup with {@code newsletter.sharding.rebalance}.
+ * <p>
+ * The catalog is copied to every shard first. Then each misplaced newsletter is moved in pages of
+ * {@value #PAGE_SIZE} rows, every page copied to the new shard before it is deleted from the old one, so an
+ * interrupted run can simply be repeated. A row whose user already subscribed again on the new shard is dropped,
+ * as the new row is more recent. Until a newsletter is moved its subscriber lists miss the rows still on the
+ * old shard; membership checks are answered from the index and are not affected.
+ */
+public class ShardRebalancer {
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    static final int PAGE_SIZE = 1000;
+
+    private final Shards shards;
+    private final CatalogReplicator catalogReplicator;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean rebalanceOnStartup;
+
+    public ShardRebalancer(Shards shards, CatalogReplicator catalogReplicator, NamedParameterJdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager, boolean rebalanceOnStartup) {
+        this.shards = shards;
+        this.catalogReplicator = catalogReplicator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rebalanceOnStartup = rebalanceOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (rebalanceOnStartup)
+            rebalance();
+    }
+
+    /**
+     * @return the number of subscription rows moved
+     */
+    public synchronized long rebalance() {
+        long started = System.nanoTime();
+        long copied = catalogReplicator.replicateAll();
+
+        long moved = 0;
+        int newsletters = 0;
+        for (String shard : shards.getNames()) {
+            List<Long> newsletterIds = inTransaction(shard, status -> jdbcTemplate.queryForList(
+                    "select distinct newsletter_id from subscription", Map.of(), Long.class));
+            for (Long newsletterId : newsletterIds) {
+                String owner = shards.shardOf(newsletterId);
+                if (!owner.equals(shard)) {
+                    moved += move(newsletterId, shard, owner);
+                    newsletters++;
+                }
+            }
+        }
+        log.info("Shards rebalanced: {} catalog rows copied, {} subscriptions of {} newsletters moved, in {} ms",
+                copied, moved, newsletters, (System.nanoTime() - started) / 1_000_000);
+        return moved;
+    }
+
+    private long move(Long newsletterId, String from, String to) {
+        long moved = 0;
+        List<Map<String, Object>> page;
+        do {
+            page = inTransaction(from, status -> jdbcTemplate.queryForList(
+                    "select * from subscription where newsletter_id = :newsletterId order by id fetch first " + PAGE_SIZE + " rows only",
+                    Map.of("newsletterId", newsletterId)));
+            if (page.isEmpty())
+                break;
+
+            List<Map<String, Object>> rows = page;
+            Map<String, Object> ids = Map.of("ids", rows.stream().map(row -> row.get("id")).collect(Collectors.toList()));
+            inTransaction(to, status -> copy(newsletterId, rows, ids));
+            inTransaction(from, status -> jdbcTemplate.update("delete from subscription where id in (:ids)", ids));
+            moved += rows.size();
+        } while (page.size() == PAGE_SIZE);
+
+        log.debug("Moved {} subscriptions of newsletter {} from shard {} to {}", moved, newsletterId, from, to);
+        return moved;
+    }
+
+    private Void copy(Long newsletterId, List<Map<String, Object>> rows, Map<String, Object> ids) {
+        // rows copied by an interrupted run
+        jdbcTemplate.update("delete from subscription where id in (:ids)", ids);
+
+        Set<Long> resubscribed = new HashSet<>(jdbcTemplate.queryForList(
+                "select user_id from subscription where newsletter_id = :newsletterId and user_id in (:userIds)",
+                Map.of("newsletterId", newsletterId,
+                        "userIds", rows.stream().map(row -> row.get("user_id")).collect(Collectors.toList())),
+                Long.class));
+        SqlParameterSource[] inserts = rows.stream()
+                .filter(row -> !resubscribed.contains(((Number) row.get("user_id")).longValue()))
+                .map(MapSqlParameterSource::new)
+                .toArray(SqlParameterSource[]::new);
+        if (inserts.length > 0)
+            jdbcTemplate.batchUpdate(CatalogReplicator.insertSql("subscription", new ArrayList<>(rows.get(0).keySet())), inserts);
+        return null;
+    }
+
+    private <T> T inTransaction(String shard, TransactionCallback<T> work) {
+        try (Shards.Route route = shards.route(shard)) {
+            return transactionTemplate.execute(work);
+        }
+    }
+}
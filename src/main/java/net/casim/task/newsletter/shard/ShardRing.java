@@ -0,0 +1,66 @@
+package net.casim.task.newsletter.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring placing each newsletter on one of the shards.
+ * <p>
+ * Every shard owns {@code virtualNodes} points on a 64-bit ring and a newsletter belongs to the shard owning the
+ * first point at or after its hash. Adding a shard only moves the newsletters that land on its new points, about
+ * {@code 1/N} of them, and removing one only moves its own.
+ */
+public class ShardRing {
+    private final List<String> shards;
+
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    public ShardRing(List<String> shards, int virtualNodes) {
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("At least one shard is required");
+        if (virtualNodes < 1)
+            throw new IllegalArgumentException("virtualNodes must be positive");
+
+        this.shards = List.copyOf(shards);
+        for (String shard : this.shards) {
+            for (int node = 0; node < virtualNodes; node++)
+                points.putIfAbsent(hash(shard + "#" + node), shard);
+        }
+    }
+
+    /**
+     * @return the shard names in configuration order; the first one is the default shard
+     */
+    public List<String> getShards() {
+        return shards;
+    }
+
+    public String shardOf(long newsletterId) {
+        Map.Entry<Long, String> point = points.ceilingEntry(mix(newsletterId));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    /**
+     * 64-bit FNV-1a, finished with {@link #mix} so that similar names spread over the whole ring.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The SplitMix64 finalizer.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,40 @@
+package net.casim.task.newsletter.shard;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Prepares the database of a shard other than the default one: its schema is migrated, and the sequences of the
+ * sharded tables are moved to a range of their own.
+ * <p>
+ * Hibernate's pooled generators hand out blocks of ids without knowing which shard the insert goes to, so a
+ * block taken from one shard's sequence may be used on another. Giving shard {@code n} the ids from
+ * {@code n * 2^40} on keeps every id unique across all shards, which also lets rows move between shards as they are.
+ */
+public final class ShardSchema {
+    static final long ID_RANGE = 1L << 40;
+
+    private static final List<String> SEQUENCES = List.of("subscription_seq", "subscription_outbox_seq");
+
+    private ShardSchema() {
+    }
+
+    public static void prepare(DataSource shard, int index, String... migrations) {
+        Flyway.configure()
+                .dataSource(shard)
+                .locations(migrations)
+                .load()
+                .migrate();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(shard);
+        long start = index * ID_RANGE;
+        for (String sequence : SEQUENCES) {
+            Long next = jdbcTemplate.queryForObject("select nextval('" + sequence + "')", Long.class);
+            if (next == null || next < start)
+                jdbcTemplate.execute("alter sequence " + sequence + " restart with " + (start + 1));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.casim.task.newsletter.shard;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out connections to the shard selected with {@link Shards#route}, or to the default shard.
+ * <p>
+ * Connections are only fetched when the first statement runs, so a transaction that began before the shard was
+ * selected still runs on it; from then on the transaction keeps its connection, whatever is selected later.
+ */
+public class ShardedDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+    private final Map<String, DataSource> shards;
+
+    /**
+     * @param shards the DataSource of each shard, the default one first
+     */
+    public ShardedDataSource(Map<String, DataSource> shards) {
+        this.shards = shards;
+
+        AbstractRoutingDataSource router = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return ShardContext.current();
+            }
+        };
+        router.setTargetDataSources(new HashMap<>(shards));
+        router.setDefaultTargetDataSource(shards.values().iterator().next());
+        router.setLenientFallback(false);
+        router.afterPropertiesSet();
+        setTargetDataSource(router);
+    }
+
+    /**
+     * @return the DataSource of each shard, the default one first
+     */
+    public Collection<DataSource> getShards() {
+        return shards.values();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource shard : shards.values()) {
+            if (shard instanceof AutoCloseable)
+                ((AutoCloseable) shard).close();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package net.casim.task.newsletter.shard;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Where subscription rows live. With sharding they are spread over several databases by newsletter, see
+ * {@link ShardRing}; without it there is a single shard and every method runs its work right away, in the
+ * caller's transaction.
+ * <p>
+ * Work on one newsletter runs inside {@link #routeTo}; a transaction begun in it, or before it without running a
+ * statement yet, runs on the newsletter's shard. Work that needs every shard, like reading a user's
+ * subscriptions, goes through {@link #onEveryShard} or {@link #onShardsOf}, which query the shards in parallel,
+ * each in a read-only transaction of its own, and gather the results.
+ */
+public class Shards implements AutoCloseable {
+    private final ShardRing ring;
+
+    private final TransactionTemplate shardTransaction;
+
+    private final ExecutorService executor;
+
+    private Shards(ShardRing ring, TransactionTemplate shardTransaction, ExecutorService executor) {
+        this.ring = ring;
+        this.shardTransaction = shardTransaction;
+        this.executor = executor;
+    }
+
+    /**
+     * A single database holding every subscription.
+     */
+    public static Shards single() {
+        return new Shards(new ShardRing(List.of("default"), 1), null, null);
+    }
+
+    public static Shards sharded(ShardRing ring, PlatformTransactionManager transactionManager) {
+        TransactionTemplate shardTransaction = new TransactionTemplate(transactionManager);
+        shardTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        shardTransaction.setReadOnly(true);
+
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2 * ring.getShards().size(), task -> {
+            Thread thread = new Thread(task, "shard-query-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new Shards(ring, shardTransaction, executor);
+    }
+
+    public boolean isSharded() {
+        return executor != null;
+    }
+
+    /**
+     * @return the shard names, the default shard first
+     */
+    public List<String> getNames() {
+        return ring.getShards();
+    }
+
+    public String getDefault() {
+        return ring.getShards().get(0);
+    }
+
+    /**
+     * @return the shard holding the newsletter's subscriptions, the default one for a {@code null} id
+     */
+    public String shardOf(Long newsletterId) {
+        return (newsletterId != null) ? ring.shardOf(newsletterId) : getDefault();
+    }
+
+    /**
+     * Selects the shard for the connections taken by the current thread until the route is closed.
+     */
+    public Route route(String shard) {
+        return new Route(shard);
+    }
+
+    public Route routeTo(Long newsletterId) {
+        return route(shardOf(newsletterId));
+    }
+
+    /**
+     * Runs {@code query} against every shard.
+     *
+     * @return the result of each shard, in {@link #getNames()} order
+     */
+    public <T> List<T> onEveryShard(Supplier<T> query) {
+        if (!isSharded())
+            return Collections.singletonList(query.get());
+
+        List<CompletableFuture<T>> results = new ArrayList<>();
+        for (String shard : getNames())
+            results.add(CompletableFuture.supplyAsync(() -> inTransaction(shard, status -> query.get()), executor));
+        return join(results);
+    }
+
+    /**
+     * Runs {@code query} once per shard holding some of the newsletters, with the ids of the newsletters it holds.
+     *
+     * @return the results of all shards, concatenated
+     */
+    public <T> List<T> onShardsOf(Collection<Long> newsletterIds, Function<List<Long>, List<T>> query) {
+        if (!isSharded())
+            return query.apply(new ArrayList<>(newsletterIds));
+
+        List<CompletableFuture<List<T>>> results = new ArrayList<>();
+        groupByShard(newsletterIds, Function.identity()).forEach((shard, ids) ->
+                results.add(CompletableFuture.supplyAsync(() -> inTransaction(shard, status -> query.apply(ids)), executor)));
+
+        List<T> gathered = new ArrayList<>();
+        join(results).forEach(gathered::addAll);
+        return gathered;
+    }
+
+    /**
+     * Splits {@code items} by the shard of their newsletter, keeping their order within each shard.
+     */
+    public <T> Map<String, List<T>> groupByShard(Collection<T> items, Function<T, Long> newsletterId) {
+        Map<String, List<T>> groups = new LinkedHashMap<>();
+        for (T item : items)
+            groups.computeIfAbsent(shardOf(newsletterId.apply(item)), shard -> new ArrayList<>()).add(item);
+        return groups;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    private <T> T inTransaction(String shard, TransactionCallback<T> work) {
+        try (Route route = route(shard)) {
+            return shardTransaction.execute(work);
+        }
+    }
+
+    private static <T> List<T> join(List<CompletableFuture<T>> results) {
+        try {
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+
+        List<T> joined = new ArrayList<>(results.size());
+        results.forEach(result -> joined.add(result.join()));
+        return joined;
+    }
+
+    /**
+     * A shard selection, restoring the previous one when closed.
+     */
+    public static final class Route implements AutoCloseable {
+        private final String previous;
+
+        private Route(String shard) {
+            this.previous = ShardContext.current();
+            ShardContext.set(shard);
+        }
+
+        @Override
+        public void close() {
+            ShardContext.set(previous);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package net.casim.task.newsletter.snapshot;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Members of each newsletter as of a snapshot. Every change written at or after the high-water mark may be missing.
+ */
+@Value
+public class IndexSnapshot {
+    LocalDateTime highWaterMark;
+    Map<Long, BitSet> memberships;
+}
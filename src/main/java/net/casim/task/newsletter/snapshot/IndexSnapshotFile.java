@@ -0,0 +1,186 @@
+package net.casim.task.newsletter.snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file holding one {@link IndexSnapshot}.
+ * <p>
+ * A header with the format and the high-water mark is followed by one entry per newsletter: its id, the number of
+ * 64-bit words in its member bitmap and the words. A trailer holds the number of entries and a CRC32 over
+ * everything before it. Snapshots are written to a temporary file, forced and moved over the previous one, so a
+ * crash leaves the previous snapshot in place. They are read back through memory-mapped windows of the file.
+ */
+public class IndexSnapshotFile {
+    private static final int MAGIC = 0x4E4C5358;
+    private static final int FORMAT = 1;
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int ENTRY_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int TRAILER_SIZE = 2 * Integer.BYTES;
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final Path path;
+
+    public IndexSnapshotFile(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Replaces the snapshot with the members {@code memberships} hands out, one newsletter at a time.
+     *
+     * @return the size of the new snapshot in bytes
+     */
+    public long write(LocalDateTime highWaterMark, Consumer<BiConsumer<Long, BitSet>> memberships) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        long size;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(FORMAT)
+                    .putLong(highWaterMark.toEpochSecond(ZoneOffset.UTC))
+                    .putInt(highWaterMark.getNano());
+            write(channel, crc, header);
+
+            int[] entries = {0};
+            memberships.accept((newsletterId, users) -> {
+                long[] words = users.toLongArray();
+                ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_SIZE + words.length * Long.BYTES)
+                        .putLong(newsletterId)
+                        .putInt(words.length);
+                entry.asLongBuffer().put(words);
+                entry.position(entry.limit());
+                try {
+                    write(channel, crc, entry);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not write the index snapshot " + temporary, e);
+                }
+                entries[0]++;
+            });
+
+            ByteBuffer count = ByteBuffer.allocate(Integer.BYTES).putInt(entries[0]);
+            write(channel, crc, count);
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, (int) crc.getValue()));
+            channel.force(true);
+            size = channel.size();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return size;
+    }
+
+    /**
+     * @return the snapshot, or nothing if there is none
+     * @throws IOException if the file cannot be read, is truncated or fails its checksum
+     */
+    public Optional<IndexSnapshot> read() throws IOException {
+        if (!Files.exists(path))
+            return Optional.empty();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedReader reader = new MappedReader(channel);
+            if (reader.size < HEADER_SIZE + TRAILER_SIZE)
+                throw new IOException("Index snapshot " + path + " is truncated");
+
+            ByteBuffer header = reader.take(HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT)
+                throw new IOException("Index snapshot " + path + " has an unknown format");
+            LocalDateTime highWaterMark = LocalDateTime.ofEpochSecond(header.getLong(), header.getInt(), ZoneOffset.UTC);
+
+            Map<Long, BitSet> memberships = new HashMap<>();
+            while (reader.position < reader.size - TRAILER_SIZE) {
+                ByteBuffer entry = reader.take(ENTRY_HEADER_SIZE);
+                long newsletterId = entry.getLong();
+                int words = entry.getInt();
+                if (words < 0 || (long) words * Long.BYTES > reader.size - TRAILER_SIZE - reader.position)
+                    throw new IOException("Index snapshot " + path + " is truncated");
+                memberships.put(newsletterId, BitSet.valueOf(reader.take(words * Long.BYTES).asLongBuffer()));
+            }
+
+            int entries = reader.take(Integer.BYTES).getInt();
+            int checksum = reader.trailer().getInt();
+            if (entries != memberships.size() || checksum != (int) reader.crc.getValue())
+                throw new IOException("Index snapshot " + path + " fails its checksum");
+            return Optional.of(new IndexSnapshot(highWaterMark, memberships));
+        }
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private static void write(FileChannel channel, CRC32 crc, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Reads the file front to back through read-only mappings of up to {@value #WINDOW_SIZE} bytes, checksumming
+     * what it hands out.
+     */
+    private static final class MappedReader {
+        private final FileChannel channel;
+        private final long size;
+        private final CRC32 crc = new CRC32();
+
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        ByteBuffer take(int length) throws IOException {
+            ByteBuffer slice = slice(length);
+            crc.update(slice.duplicate());
+            return slice;
+        }
+
+        ByteBuffer trailer() throws IOException {
+            return slice(Integer.BYTES);
+        }
+
+        private ByteBuffer slice(int length) throws IOException {
+            if (position + length > size)
+                throw new IOException("Unexpected end of the index snapshot");
+            if (window == null || position + length > windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.max(length, Math.min(WINDOW_SIZE, size - position)));
+            }
+            int offset = (int) (position - windowStart);
+            ByteBuffer slice = window.duplicate();
+            slice.position(offset).limit(offset + length);
+            position += length;
+            return slice.slice();
+        }
+    }
+}
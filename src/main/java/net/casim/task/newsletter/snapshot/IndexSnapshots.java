@@ -0,0 +1,181 @@
+package net.casim.task.newsletter.snapshot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.model.projection.MembershipChangeView;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import net.casim.task.newsletter.shard.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a snapshot of the {@link SubscriptionIndex} on disk, so a restart does not have to read every active
+ * subscription again.
+ * <p>
+ * A snapshot is written every {@code newsletter.snapshot.interval} when subscriptions changed since the last one,
+ * and once more on shutdown. Its high-water mark is the database time when it started, less
+ * {@code newsletter.snapshot.replay-overlap}. On startup, before the index would warm up, the snapshot is loaded
+ * and only the subscription rows with a {@code changed_at} at or after the mark are read and applied on top. The
+ * overlap covers transactions still open when the snapshot started and clock differences between the application
+ * and the database; a row applied twice is harmless, as it carries its current state.
+ * <p>
+ * A snapshot belongs to one database. It is discarded when the DataLoader seeds an empty one; delete it by hand
+ * before pointing the application at another.
+ */
+public class IndexSnapshots {
+    private static final Logger log = LoggerFactory.getLogger(IndexSnapshots.class);
+
+    private final IndexSnapshotFile file;
+    private final SubscriptionIndex subscriptionIndex;
+    private final SubscriptionRepository subscriptionRepository;
+    private final Shards shards;
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration replayOverlap;
+
+    private final Timer saveTimer;
+    private final Timer restoreTimer;
+
+    private final AtomicLong changes = new AtomicLong();
+
+    /**
+     * Value of {@link #changes} when the last snapshot started, -1 before the first one.
+     */
+    private long snapshottedChanges = -1;
+
+    public IndexSnapshots(IndexSnapshotFile file, SubscriptionIndex subscriptionIndex, SubscriptionRepository subscriptionRepository,
+                          Shards shards, JdbcTemplate jdbcTemplate, Duration replayOverlap, MeterRegistry meterRegistry) {
+        this.file = file;
+        this.subscriptionIndex = subscriptionIndex;
+        this.subscriptionRepository = subscriptionRepository;
+        this.shards = shards;
+        this.jdbcTemplate = jdbcTemplate;
+        this.replayOverlap = replayOverlap;
+
+        this.saveTimer = Timer.builder("subscription.index.snapshot")
+                .description("Time to write or restore a snapshot of the membership index")
+                .tag("operation", "save")
+                .register(meterRegistry);
+        this.restoreTimer = Timer.builder("subscription.index.snapshot")
+                .description("Time to write or restore a snapshot of the membership index")
+                .tag("operation", "restore")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Restores the index before it would warm up from the database. Does not return {@link #restore()}'s result, as
+     * a non-void listener would have it published as an event of its own.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @Transactional(readOnly = true)
+    public void onApplicationReady() {
+        restore();
+    }
+
+    /**
+     * Restores the index from the snapshot, if there is a readable one.
+     *
+     * @return false if the index still has to warm up from the database
+     */
+    @Transactional(readOnly = true)
+    public boolean restore() {
+        long started = System.nanoTime();
+        Optional<IndexSnapshot> snapshot;
+        try {
+            snapshot = file.read();
+        } catch (IOException e) {
+            log.warn("Ignoring the index snapshot: {}", e.getMessage());
+            return false;
+        }
+        if (snapshot.isEmpty())
+            return false;
+
+        // the rows changed since the snapshot of every shard
+        List<List<MembershipChangeView>> changed = shards.onEveryShard(() -> {
+            try (Stream<MembershipChangeView> rows = subscriptionRepository.streamMembershipsChangedSince(snapshot.get().getHighWaterMark())) {
+                return rows.collect(Collectors.toList());
+            }
+        });
+        long replayed = changed.stream().mapToLong(List::size).sum();
+        subscriptionIndex.restore(snapshot.get().getMemberships(), changed.stream().flatMap(List::stream));
+        long elapsed = System.nanoTime() - started;
+        restoreTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Subscription index restored from {}: {} newsletters, {} rows replayed since {}, in {} ms", file.getPath(),
+                snapshot.get().getMemberships().size(), replayed, snapshot.get().getHighWaterMark(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${newsletter.snapshot.interval:PT5M}", initialDelayString = "${newsletter.snapshot.interval:PT5M}")
+    public void saveIfChanged() {
+        if (changes.get() != snapshottedChanges)
+            save();
+    }
+
+    /**
+     * Writes a snapshot of the current index content; does nothing while the index is not ready.
+     *
+     * @return false if no snapshot was written
+     */
+    public synchronized boolean save() {
+        if (!subscriptionIndex.isReady())
+            return false;
+
+        long started = System.nanoTime();
+        long changesBefore = changes.get();
+        LocalDateTime highWaterMark = jdbcTemplate.queryForObject("select current_timestamp", Timestamp.class)
+                .toLocalDateTime()
+                .minus(replayOverlap);
+        try {
+            long size = file.write(highWaterMark, subscriptionIndex::forEachMembership);
+            snapshottedChanges = changesBefore;
+            long elapsed = System.nanoTime() - started;
+            saveTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            log.info("Subscription index snapshot written to {}: {} bytes in {} ms", file.getPath(), size,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed));
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not write the index snapshot to {}", file.getPath(), e);
+            return false;
+        }
+    }
+
+    public synchronized void discard() {
+        try {
+            file.delete();
+        } catch (IOException e) {
+            log.warn("Could not delete the index snapshot {}", file.getPath(), e);
+        }
+    }
+
+    @PreDestroy
+    public void saveOnShutdown() {
+        saveIfChanged();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubscriptionChanged(SubscriptionChangedEvent event) {
+        changes.incrementAndGet();
+    }
+}
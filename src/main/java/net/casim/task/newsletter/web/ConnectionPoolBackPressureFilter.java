@@ -0,0 +1,47 @@
+package net.casim.task.newsletter.web;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.function.IntSupplier;
+
+/**
+ * Sheds load with {@code 503 Service Unavailable} while more than {@code maxPendingConnections} threads are already
+ * waiting for a database connection, instead of letting further requests queue on the pool until they time out.
+ * Actuator endpoints are never shed.
+ */
+public class ConnectionPoolBackPressureFilter extends OncePerRequestFilter {
+    static final String RETRY_AFTER_SECONDS = "1";
+
+    private final IntSupplier pendingConnections;
+
+    private final int maxPendingConnections;
+
+    public ConnectionPoolBackPressureFilter(IntSupplier pendingConnections, int maxPendingConnections) {
+        this.pendingConnections = pendingConnections;
+        this.maxPendingConnections = maxPendingConnections;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (pendingConnections.getAsInt() >= maxPendingConnections) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Database connection pool is saturated");
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,75 @@
+package net.casim.task.newsletter.web;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the application's {@link RestController} handlers on a dedicated bounded executor instead of the servlet
+ * container thread, as if each of them returned a {@link WebAsyncTask}.
+ * <p>
+ * Arguments are resolved on the container thread; only the handler call itself, and the blocking service call
+ * inside it, moves to the executor. When all {@code maxInFlight} slots are taken the request is rejected with
+ * {@code 503} right away. Handlers that are already asynchronous (streamed responses) are left alone.
+ */
+public class OffloadingHandlerAdapter extends RequestMappingHandlerAdapter {
+    private final String basePackage;
+
+    private final AsyncTaskExecutor executor;
+
+    private final Semaphore inFlight;
+
+    public OffloadingHandlerAdapter(String basePackage, AsyncTaskExecutor executor, int maxInFlight) {
+        this.basePackage = basePackage;
+        this.executor = executor;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+        if (!offloads(handlerMethod))
+            return super.createInvocableHandlerMethod(handlerMethod);
+
+        return new ServletInvocableHandlerMethod(handlerMethod) {
+            @Override
+            public Object invokeForRequest(NativeWebRequest request, ModelAndViewContainer mavContainer, Object... providedArgs) throws Exception {
+                Object[] args = getMethodArgumentValues(request, mavContainer, providedArgs);
+                if (!inFlight.tryAcquire())
+                    throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many requests in flight");
+
+                Callable<Object> call = () -> {
+                    try {
+                        return doInvoke(args);
+                    } finally {
+                        inFlight.release();
+                    }
+                };
+                return new WebAsyncTask<>(null, executor, call);
+            }
+        };
+    }
+
+    private boolean offloads(HandlerMethod handlerMethod) {
+        if (!handlerMethod.getBeanType().getPackage().getName().startsWith(basePackage)
+                || !handlerMethod.getBeanType().isAnnotationPresent(RestController.class))
+            return false;
+
+        MethodParameter returnType = handlerMethod.getReturnType();
+        ResolvableType type = ResolvableType.forMethodParameter(returnType);
+        return !StreamingResponseBody.class.isAssignableFrom(type.resolve(Object.class))
+                && !StreamingResponseBody.class.isAssignableFrom(type.getGeneric(0).resolve(Object.class));
+    }
+}
@@ -0,0 +1,75 @@
+package net.casim.task.newsletter.web;
+
+import net.casim.task.newsletter.replica.ReadYourWrites;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Keeps a client on the primary database for {@code window} after it wrote, so it reads its own changes even when
+ * the replicas lag behind.
+ * <p>
+ * Every request that is not a GET, HEAD or OPTIONS runs against the primary and gets a cookie with the time its
+ * window ends; requests carrying the cookie read from the primary until then. The cookie keeps the client sticky
+ * across instances without any server-side session.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    public static final String COOKIE = "newsletter-primary-until";
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final Duration window;
+
+    public ReadYourWritesFilter(Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        boolean write = !SAFE_METHODS.contains(request.getMethod());
+        if (write && !isAsyncDispatch(request)) {
+            Cookie cookie = new Cookie(COOKIE, Long.toString(now + window.toMillis()));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, window.toSeconds()));
+            response.addCookie(cookie);
+        }
+
+        if (!write && primaryUntil(request) <= now) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        try (ReadYourWrites.Scope scope = ReadYourWrites.requirePrimary()) {
+            filterChain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Async dispatches run on the thread that resumes the request, so they are filtered again.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE);
+        if (cookie == null)
+            return 0;
+        try {
+            return Long.parseLong(cookie.getValue());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
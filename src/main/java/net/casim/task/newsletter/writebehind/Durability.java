@@ -0,0 +1,16 @@
+package net.casim.task.newsletter.writebehind;
+
+/**
+ * When an append to the {@link SubscriptionLog} counts as durable.
+ */
+public enum Durability {
+    /**
+     * Every append forces its segment to disk before it is acknowledged.
+     */
+    REQUEST,
+
+    /**
+     * Appends wait for the next group commit, which forces all appends made since the previous one together.
+     */
+    GROUP
+}
@@ -0,0 +1,456 @@
+package net.casim.task.newsletter.writebehind;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable append-only log of subscription changes, written to memory-mapped segment files of a fixed size.
+ * <p>
+ * Every record takes {@value #RECORD_SIZE} bytes and carries a CRC32, so a write torn by a crash is detected and
+ * ends recovery. The highest sequence up to which every record has been drained to the database is kept in a
+ * checkpoint file, which is replaced atomically and forced to disk before the segments entirely below it are
+ * deleted. Records drained after the last checkpoint are replayed after a crash, in sequence order.
+ * <p>
+ * {@link #append} only writes to the mapped segment. {@link #awaitDurable} then forces it to disk, either right
+ * away or in the next group commit, depending on the {@link Durability}.
+ */
+public class SubscriptionLog implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionLog.class);
+
+    static final int RECORD_SIZE = 40;
+
+    private static final int CHECKSUM_OFFSET = RECORD_SIZE - Integer.BYTES;
+
+    private static final String SEGMENT_PREFIX = "subscriptions-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "drained";
+
+    private final Path directory;
+    private final Durability durability;
+    private final long groupCommitNanos;
+    private final int segmentSize;
+
+    /**
+     * Full segments still holding undrained records, oldest first.
+     */
+    private final Deque<SealedSegment> sealed = new ArrayDeque<>();
+
+    private final NavigableSet<Long> undrained = new TreeSet<>();
+
+    private ActiveSegment current;
+    private long lastSequence;
+    private long drainedSequence;
+
+    private final Object groupCommit = new Object();
+    private long requestedSequence;
+    private long flushedSequence;
+    private Thread groupCommitter;
+
+    private final Object checkpointLock = new Object();
+
+    private volatile boolean open;
+
+    public SubscriptionLog(Path directory, Durability durability, Duration groupCommitInterval, long segmentSize) {
+        if (segmentSize < RECORD_SIZE || segmentSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Segment size must be between " + RECORD_SIZE + " bytes and 2GB");
+
+        this.directory = directory;
+        this.durability = durability;
+        this.groupCommitNanos = groupCommitInterval.toNanos();
+        this.segmentSize = (int) (segmentSize - segmentSize % RECORD_SIZE);
+    }
+
+    /**
+     * Recovers the segments left in the directory and starts a new one for appends.
+     *
+     * @return the records that were appended but not drained before the log was last closed, in sequence order
+     */
+    public synchronized List<SubscriptionLogRecord> open() throws IOException {
+        Files.createDirectories(directory);
+        drainedSequence = readCheckpoint();
+        lastSequence = drainedSequence;
+
+        List<SubscriptionLogRecord> recovered = new ArrayList<>();
+        for (Path path : segmentFiles()) {
+            long first = firstSequence(path);
+            long last = scan(path, first, record -> {
+                if (record.getSequence() > drainedSequence) {
+                    recovered.add(record);
+                    undrained.add(record.getSequence());
+                }
+            });
+
+            lastSequence = Math.max(lastSequence, last);
+            if (last < first || last <= drainedSequence)
+                Files.delete(path);
+            else
+                sealed.addLast(new SealedSegment(path, last));
+        }
+
+        current = ActiveSegment.create(segmentPath(lastSequence + 1), segmentSize);
+        requestedSequence = lastSequence;
+        flushedSequence = lastSequence;
+        open = true;
+
+        if (durability == Durability.GROUP) {
+            groupCommitter = new Thread(this::commitGroups, "subscription-log-group-commit");
+            groupCommitter.setDaemon(true);
+            groupCommitter.start();
+        }
+
+        return recovered;
+    }
+
+    /**
+     * Assigns the next sequence to the change and writes it to the current segment. The record is not durable
+     * until {@link #awaitDurable} returns.
+     */
+    public synchronized SubscriptionLogRecord append(Long userId, Long newsletterId, boolean subscribed, LocalDateTime createdAt) {
+        if (!open)
+            throw new IllegalStateException("Subscription log is closed");
+
+        if (!current.hasRoom())
+            roll();
+
+        SubscriptionLogRecord record = new SubscriptionLogRecord(lastSequence + 1, userId, newsletterId, subscribed, createdAt);
+        current.write(encode(record));
+        lastSequence = record.getSequence();
+        undrained.add(record.getSequence());
+        return record;
+    }
+
+    /**
+     * Blocks until the record is on disk.
+     */
+    public void awaitDurable(SubscriptionLogRecord record) {
+        long sequence = record.getSequence();
+        if (durability == Durability.REQUEST) {
+            ActiveSegment segment = activeSegmentOf(sequence);
+            if (segment != null)
+                segment.force();
+            return;
+        }
+
+        synchronized (groupCommit) {
+            if (requestedSequence < sequence) {
+                requestedSequence = sequence;
+                groupCommit.notifyAll();
+            }
+
+            while (flushedSequence < sequence) {
+                if (!open && groupCommitter == null)
+                    throw new IllegalStateException("Subscription log closed before the record was forced");
+
+                try {
+                    groupCommit.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the group commit", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the records as applied to the database, moves the checkpoint up to the highest sequence below which
+     * nothing is left undrained and deletes the segments behind it.
+     */
+    public void markDrained(Collection<SubscriptionLogRecord> records) throws IOException {
+        synchronized (checkpointLock) {
+            long checkpoint;
+            List<Path> obsolete = new ArrayList<>();
+            synchronized (this) {
+                records.forEach(record -> undrained.remove(record.getSequence()));
+                checkpoint = undrained.isEmpty() ? lastSequence : undrained.first() - 1;
+                if (checkpoint <= drainedSequence)
+                    return;
+
+                drainedSequence = checkpoint;
+                while (!sealed.isEmpty() && sealed.peekFirst().lastSequence <= checkpoint)
+                    obsolete.add(sealed.removeFirst().path);
+            }
+
+            writeCheckpoint(checkpoint);
+            for (Path path : obsolete)
+                Files.deleteIfExists(path);
+        }
+    }
+
+    public synchronized int undrainedCount() {
+        return undrained.size();
+    }
+
+    /**
+     * Forces whatever was appended and stops the group commit. Undrained records stay in the log for the next
+     * {@link #open}.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (groupCommit) {
+            if (!open)
+                return;
+
+            open = false;
+            groupCommit.notifyAll();
+        }
+
+        if (groupCommitter != null) {
+            try {
+                groupCommitter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            current.force();
+            current.close();
+        }
+
+        synchronized (groupCommit) {
+            flushedSequence = lastSequence;
+            groupCommitter = null;
+            groupCommit.notifyAll();
+        }
+    }
+
+    private void commitGroups() {
+        while (true) {
+            synchronized (groupCommit) {
+                while (open && requestedSequence <= flushedSequence) {
+                    try {
+                        groupCommit.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (!open)
+                    return;
+            }
+
+            // let the appends of concurrent requests join this group
+            LockSupport.parkNanos(groupCommitNanos);
+
+            ActiveSegment segment;
+            long sequence;
+            synchronized (this) {
+                segment = current;
+                sequence = lastSequence;
+            }
+
+            segment.force();
+
+            synchronized (groupCommit) {
+                flushedSequence = Math.max(flushedSequence, sequence);
+                groupCommit.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the segment the record was written to, or null if that segment is sealed and so already forced
+     */
+    private synchronized ActiveSegment activeSegmentOf(long sequence) {
+        return (sequence >= current.firstSequence) ? current : null;
+    }
+
+    private void roll() {
+        try {
+            current.force();
+            current.close();
+            sealed.addLast(new SealedSegment(current.path, lastSequence));
+            current = ActiveSegment.create(segmentPath(lastSequence + 1), segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start a new subscription log segment", e);
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (!Files.exists(checkpoint))
+            return 0;
+
+        return Long.parseLong(new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII).trim());
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(sequence).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+    }
+
+    /**
+     * Makes the rename of the checkpoint durable where the platform allows opening a directory.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Could not force {}", directory, e);
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(SubscriptionLog::firstSequence))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Reads the consecutive valid records of a segment, starting at its first sequence.
+     *
+     * @return the sequence of the last valid record, or {@code first - 1} if there is none
+     */
+    private static long scan(Path segment, long first, Consumer<SubscriptionLogRecord> consumer) throws IOException {
+        long expected = first;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] bytes = new byte[RECORD_SIZE];
+            while (buffer.remaining() >= RECORD_SIZE) {
+                buffer.get(bytes);
+                SubscriptionLogRecord record = decode(bytes);
+                if (record == null || record.getSequence() != expected)
+                    break;
+
+                consumer.accept(record);
+                expected++;
+            }
+        }
+
+        if (expected > first)
+            log.debug("Recovered records {} to {} from {}", first, expected - 1, segment);
+        return expected - 1;
+    }
+
+    private static byte[] encode(SubscriptionLogRecord record) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE)
+                .putLong(record.getSequence())
+                .putLong(record.getUserId())
+                .putLong(record.getNewsletterId())
+                .putLong(toEpochMicros(record.getCreatedAt()))
+                .put((byte) (record.isSubscribed() ? 1 : 0));
+        buffer.putInt(CHECKSUM_OFFSET, checksum(buffer.array()));
+        return buffer.array();
+    }
+
+    /**
+     * @return the record, or null for a never written or torn slot
+     */
+    private static SubscriptionLogRecord decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long sequence = buffer.getLong();
+        if (sequence == 0 || buffer.getInt(CHECKSUM_OFFSET) != checksum(bytes))
+            return null;
+
+        long userId = buffer.getLong();
+        long newsletterId = buffer.getLong();
+        LocalDateTime createdAt = fromEpochMicros(buffer.getLong());
+        boolean subscribed = buffer.get() == 1;
+        return new SubscriptionLogRecord(sequence, userId, newsletterId, subscribed, createdAt);
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, CHECKSUM_OFFSET);
+        return (int) crc.getValue();
+    }
+
+    private static long toEpochMicros(LocalDateTime dateTime) {
+        return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), dateTime);
+    }
+
+    private static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC).plus(micros, ChronoUnit.MICROS);
+    }
+
+    private static final class SealedSegment {
+        final Path path;
+        final long lastSequence;
+
+        SealedSegment(Path path, long lastSequence) {
+            this.path = path;
+            this.lastSequence = lastSequence;
+        }
+    }
+
+    /**
+     * The segment appends go to. Writes are guarded by the log's monitor; forcing may happen concurrently.
+     */
+    private static final class ActiveSegment {
+        final Path path;
+        final long firstSequence;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        private ActiveSegment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSequence = firstSequence(path);
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static ActiveSegment create(Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new ActiveSegment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        boolean hasRoom() {
+            return buffer.remaining() >= RECORD_SIZE;
+        }
+
+        void write(byte[] record) {
+            buffer.put(record);
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package net.casim.task.newsletter.writebehind;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * One subscription change as appended to the {@link SubscriptionLog}. Sequences start at 1 and increase by one
+ * per append.
+ */
+@Value
+public class SubscriptionLogRecord {
+    long sequence;
+    Long userId;
+    Long newsletterId;
+    boolean subscribed;
+    LocalDateTime createdAt;
+}
@@ -0,0 +1,237 @@
+package net.casim.task.newsletter.writebehind;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind mode of subscribe/unsubscribe calls, single and bulk.
+ * <p>
+ * A change is appended to the {@link SubscriptionLog} and acknowledged once it is durable there; a background
+ * thread drains it to the database in batches. Until then it is kept in an in-memory overlay that takes
+ * precedence over the {@link SubscriptionIndex}, so callers read their own writes. On start, records left
+ * undrained by a crash are replayed before anything else is accepted.
+ * <p>
+ * The current state of a subscription comes from the overlay or the index, so changes are only accepted once
+ * the index is ready; until then callers must write to the database themselves.
+ */
+public class SubscriptionWriteBehind implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionWriteBehind.class);
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final SubscriptionLog subscriptionLog;
+    private final WriteBehindBatchWriter batchWriter;
+    private final SubscriptionIndex subscriptionIndex;
+    private final int batchSize;
+
+    /**
+     * Latest undrained change per (userId, newsletterId).
+     */
+    private final ConcurrentMap<SubscribeRequest, SubscriptionLogRecord> pending = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<SubscriptionLogRecord> undrained = new LinkedBlockingQueue<>();
+
+    private volatile boolean running;
+
+    private Thread drainer;
+
+    public SubscriptionWriteBehind(SubscriptionLog subscriptionLog, WriteBehindBatchWriter batchWriter,
+                                   SubscriptionIndex subscriptionIndex, int batchSize, MeterRegistry meterRegistry) {
+        this.subscriptionLog = subscriptionLog;
+        this.batchWriter = batchWriter;
+        this.subscriptionIndex = subscriptionIndex;
+        this.batchSize = batchSize;
+
+        Gauge.builder("subscription.writebehind.backlog", undrained, BlockingQueue::size)
+                .description("Acknowledged subscription changes not yet written to the database")
+                .register(meterRegistry);
+    }
+
+    public boolean isAccepting() {
+        return running && subscriptionIndex.isReady();
+    }
+
+    /**
+     * @return true if the subscription is activated, false if it was already active
+     */
+    public boolean subscribe(Long userId, Long newsletterId) {
+        return change(userId, newsletterId, true);
+    }
+
+    /**
+     * @return true if the subscription is deactivated, false if it was not active
+     */
+    public boolean unsubscribe(Long userId, Long newsletterId) {
+        return change(userId, newsletterId, false);
+    }
+
+    /**
+     * @return whether the subscription is active as of its latest undrained change, or null if it has none
+     */
+    public Boolean pendingState(Long userId, Long newsletterId) {
+        SubscriptionLogRecord record = pending.get(new SubscribeRequest(userId, newsletterId));
+        return (record != null) ? record.isSubscribed() : null;
+    }
+
+    /**
+     * Applies the changes of a bulk call in order and waits for all of them to be durable at once.
+     *
+     * @return for each request, whether it changed the subscription
+     */
+    public List<Boolean> changeAll(List<SubscribeRequest> requests, boolean subscribed) {
+        List<Boolean> changed = new ArrayList<>(requests.size());
+        SubscriptionLogRecord last = null;
+        for (SubscribeRequest request : requests) {
+            boolean[] appended = new boolean[1];
+            SubscriptionLogRecord latest = append(request.getUserId(), request.getNewsletterId(), subscribed, appended);
+            changed.add(appended[0]);
+            if (latest != null && (last == null || latest.getSequence() > last.getSequence()))
+                last = latest;
+        }
+
+        // every record up to the last one is forced along with it
+        if (last != null)
+            subscriptionLog.awaitDurable(last);
+
+        return changed;
+    }
+
+    private boolean change(Long userId, Long newsletterId, boolean subscribed) {
+        boolean[] changed = new boolean[1];
+        SubscriptionLogRecord latest = append(userId, newsletterId, subscribed, changed);
+
+        // an answer based on an undrained change must not be given before that change is durable either
+        if (latest != null)
+            subscriptionLog.awaitDurable(latest);
+
+        return changed[0];
+    }
+
+    /**
+     * @return the latest undrained change of the pair, or null if it has none
+     */
+    private SubscriptionLogRecord append(Long userId, Long newsletterId, boolean subscribed, boolean[] changed) {
+        return pending.compute(new SubscribeRequest(userId, newsletterId), (pair, last) -> {
+            boolean active = (last != null) ? last.isSubscribed() : subscriptionIndex.contains(newsletterId, userId);
+            if (active == subscribed)
+                return last;
+
+            SubscriptionLogRecord record = subscriptionLog.append(userId, newsletterId, subscribed, LocalDateTime.now());
+            // queued while the pair is locked, so changes of one pair are drained in order
+            undrained.add(record);
+            changed[0] = true;
+            return record;
+        });
+    }
+
+    @Override
+    public void start() {
+        try {
+            List<SubscriptionLogRecord> recovered = subscriptionLog.open();
+            if (!recovered.isEmpty())
+                log.info("Replaying {} undrained subscription changes from the write-behind log", recovered.size());
+
+            for (int i = 0; i < recovered.size(); i += batchSize)
+                write(recovered.subList(i, Math.min(i + batchSize, recovered.size())));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not recover the write-behind log", e);
+        }
+
+        running = true;
+        drainer = new Thread(this::drain, "subscription-write-behind");
+        drainer.start();
+    }
+
+    /**
+     * Drains everything acknowledged so far, then closes the log.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            subscriptionLog.close();
+        } catch (IOException e) {
+            log.warn("Could not close the write-behind log", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts before and stops after the embedded web server.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 2;
+    }
+
+    private void drain() {
+        List<SubscriptionLogRecord> batch = new ArrayList<>(batchSize);
+        while (running || !undrained.isEmpty()) {
+            try {
+                SubscriptionLogRecord first = undrained.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+
+                batch.add(first);
+                undrained.drainTo(batch, batchSize - 1);
+                drainWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void drainWithRetry(List<SubscriptionLogRecord> batch) throws InterruptedException {
+        while (true) {
+            try {
+                write(batch);
+                return;
+            } catch (RuntimeException | IOException e) {
+                if (!running) {
+                    log.error("Could not drain {} subscription changes, they are replayed on the next start", batch.size(), e);
+                    return;
+                }
+
+                log.warn("Could not drain {} subscription changes, retrying", batch.size(), e);
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void write(List<SubscriptionLogRecord> batch) throws IOException {
+        batchWriter.apply(batch);
+        // the index has caught up by now: its listener runs when the batch commits
+        for (SubscriptionLogRecord record : batch)
+            pending.remove(new SubscribeRequest(record.getUserId(), record.getNewsletterId()), record);
+
+        subscriptionLog.markDrained(batch);
+    }
+}
@@ -0,0 +1,56 @@
+package net.casim.task.newsletter.writebehind;
+
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.shard.Shards;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Applies a batch of {@link SubscriptionLog} records to the {@code subscription} table in one transaction, or one
+ * per shard with sharding.
+ * <p>
+ * Records are applied in order and a record that no longer changes anything is skipped. A batch replayed after a
+ * crash is followed by the records appended after it, so the last change of each subscription still wins; that
+ * holds as long as every write goes through the log while write-behind mode accepts them, which is why bulk calls
+ * do too and the mode is not available in the reactive variant. {@link SubscriptionChangedEvent}s are only
+ * published for actual changes.
+ */
+public class WriteBehindBatchWriter {
+    private final SubscriptionRepository subscriptionRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Shards shards;
+    private final TransactionTemplate transactionTemplate;
+
+    public WriteBehindBatchWriter(SubscriptionRepository subscriptionRepository, ApplicationEventPublisher eventPublisher,
+                                  Shards shards, PlatformTransactionManager transactionManager) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.eventPublisher = eventPublisher;
+        this.shards = shards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void apply(List<SubscriptionLogRecord> records) {
+        shards.groupByShard(records, SubscriptionLogRecord::getNewsletterId).forEach((shard, group) -> {
+            try (Shards.Route route = shards.route(shard)) {
+                transactionTemplate.executeWithoutResult(status -> write(group));
+            }
+        });
+    }
+
+    private void write(List<SubscriptionLogRecord> records) {
+        for (SubscriptionLogRecord record : records) {
+            Long userId = record.getUserId();
+            Long newsletterId = record.getNewsletterId();
+            boolean changed = record.isSubscribed()
+                    ? subscriptionRepository.upsertSubscribed(userId, newsletterId, record.getCreatedAt())
+                    : subscriptionRepository.deactivate(userId, newsletterId) > 0;
+
+            if (changed)
+                eventPublisher.publishEvent(new SubscriptionChangedEvent(userId, newsletterId, record.isSubscribed()));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+create table newsletter
+(
+    newsletter_id    bigserial primary key,
+    title            varchar(255),
+    content          varchar(255),
+    publication_date varchar(255)
+);
+
+create table users
+(
+    user_id  bigserial primary key,
+    username varchar(255)
+);
+
+-- matches the pooled allocationSize of Subscription
+create sequence subscription_seq increment by 50;
+
+create table subscription
+(
+    id            bigint primary key,
+    subscribed    boolean not null,
+    newsletter_id bigint references newsletter (newsletter_id),
+    user_id       bigint references users (user_id),
+    created_at    timestamp,
+    constraint uk_subscription_user_newsletter unique (user_id, newsletter_id)
+);
+
+-- keyset pages of a newsletter's active subscribers by (created_at, id)
+create index idx_subscription_newsletter_active_created on subscription (newsletter_id, subscribed, created_at, id);
@@ -0,0 +1,8 @@
+create table newsletter_daily_stats
+(
+    newsletter_id bigint not null,
+    stats_day     date   not null,
+    subscribes    bigint not null,
+    unsubscribes  bigint not null,
+    primary key (newsletter_id, stats_day)
+);
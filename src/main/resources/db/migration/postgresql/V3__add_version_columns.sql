@@ -0,0 +1,6 @@
+-- optimistic-lock versions of Newsletter and Subscription, also used to derive response entity tags
+alter table newsletter
+    add column version bigint not null default 0;
+
+alter table subscription
+    add column version bigint not null default 0;
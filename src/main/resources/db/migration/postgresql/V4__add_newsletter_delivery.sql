@@ -0,0 +1,30 @@
+create table newsletter_delivery
+(
+    delivery_id       bigserial primary key,
+    newsletter_id     bigint       not null references newsletter (newsletter_id),
+    status            varchar(16)  not null,
+    snapshot_at       timestamp    not null,
+    cursor_created_at timestamp    not null,
+    cursor_id         bigint       not null,
+    delivered         bigint       not null,
+    started_at        timestamp    not null,
+    updated_at        timestamp    not null,
+    failure           varchar(255)
+);
+
+-- deliveries left running by a crash are resumed on start
+create index idx_newsletter_delivery_status on newsletter_delivery (status);
+
+-- batches sent ahead of their delivery's checkpoint
+create table newsletter_delivery_batch
+(
+    batch_id         bigserial primary key,
+    delivery_id      bigint    not null references newsletter_delivery (delivery_id),
+    first_created_at timestamp not null,
+    first_id         bigint    not null,
+    last_created_at  timestamp not null,
+    last_id          bigint    not null,
+    recipients       integer   not null
+);
+
+create index idx_newsletter_delivery_batch_delivery on newsletter_delivery_batch (delivery_id);
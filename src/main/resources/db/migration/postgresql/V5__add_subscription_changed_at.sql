@@ -0,0 +1,5 @@
+-- last write of each subscription row; index snapshots replay the rows changed since they were taken
+alter table subscription
+    add column changed_at timestamp;
+
+create index idx_subscription_changed_at on subscription (changed_at);
@@ -0,0 +1,16 @@
+-- subscribe/unsubscribe changes, written with the change and published in stream_position order by the relay
+create sequence subscription_outbox_seq increment by 50;
+
+create table subscription_outbox
+(
+    id              bigint primary key,
+    user_id         bigint    not null,
+    newsletter_id   bigint    not null,
+    subscribed      boolean   not null,
+    occurred_at     timestamp not null,
+    stream_position bigint,
+    constraint uk_subscription_outbox_position unique (stream_position)
+);
+
+-- the relay reads the unpublished changes, stream_position null, in id order
+create index idx_subscription_outbox_pending on subscription_outbox (stream_position, id);
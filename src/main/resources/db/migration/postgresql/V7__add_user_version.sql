@@ -0,0 +1,3 @@
+-- optimistic-lock version of User; it is part of the entity tags of the newsletters the user subscribed to
+alter table users
+    add column version bigint not null default 0;
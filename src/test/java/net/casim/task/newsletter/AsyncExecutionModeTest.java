@@ -0,0 +1,86 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "newsletter.web.execution-mode=async",
+        "newsletter.web.async.threads=2",
+        "newsletter.web.async.queue-capacity=10"
+})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class AsyncExecutionModeTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long newsletterId;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Offloaded", "Content", "2023-01-01", null)).getNewsletterId();
+        userId = userRepository.save(User.builder().username("offloaded").build()).getUserId();
+    }
+
+    @Test
+    void subscribe_ShouldRunOnBlockingCallExecutor() throws Exception {
+        String body = "{\"newsletterId\": " + newsletterId + ", \"userId\": " + userId + "}";
+
+        MvcResult created = mockMvc.perform(post("/subscriptions/subscribe").content(body).contentType("application/json"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(created))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.message").value("Subscription successful"));
+
+        MvcResult duplicate = mockMvc.perform(post("/subscriptions/subscribe").content(body).contentType("application/json"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(duplicate))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("User is already subscribed"));
+    }
+
+    @Test
+    void newsletter_ShouldBeRenderedAfterAsyncDispatch() throws Exception {
+        mockMvc.perform(post("/subscriptions/subscribe")
+                        .content("{\"newsletterId\": " + newsletterId + ", \"userId\": " + userId + "}")
+                        .contentType("application/json"))
+                .andReturn().getAsyncResult();
+
+        MvcResult result = mockMvc.perform(get("/subscriptions/newsletter/" + newsletterId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Offloaded"))
+                .andExpect(jsonPath("$.subscribedUsernames[0]").value("offloaded"));
+    }
+}
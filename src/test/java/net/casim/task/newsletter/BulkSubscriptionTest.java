@@ -0,0 +1,147 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.model.*;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // background writes in the middle of a request would show up in the statement count
+        "newsletter.stats.flush-interval=PT1H",
+        "newsletter.outbox.relay-interval=PT1H"
+})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class BulkSubscriptionTest {
+
+    private static final int USERS = 200;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Long newsletterId;
+
+    private List<Long> userIds;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Bulk", "Content", "2023-01-01", null)).getNewsletterId();
+        userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            userIds.add(userRepository.save(User.builder().username("bulk" + i).build()).getUserId());
+        }
+    }
+
+    @Test
+    void subscribeAll_ShouldReportPerItemOutcome() {
+        List<SubscribeRequest> requests = List.of(
+                new SubscribeRequest(userIds.get(0), newsletterId),
+                new SubscribeRequest(userIds.get(0), newsletterId),
+                new SubscribeRequest(Long.MAX_VALUE, newsletterId),
+                new SubscribeRequest(userIds.get(1), Long.MAX_VALUE));
+
+        List<BulkSubscriptionStatus> statuses = subscriptionService.subscribeAll(requests).stream()
+                .map(BulkSubscriptionResult::getStatus)
+                .collect(Collectors.toList());
+
+        Assertions.assertEquals(List.of(BulkSubscriptionStatus.SUBSCRIBED, BulkSubscriptionStatus.ALREADY_SUBSCRIBED,
+                BulkSubscriptionStatus.USER_NOT_FOUND, BulkSubscriptionStatus.NEWSLETTER_NOT_FOUND), statuses);
+        Assertions.assertTrue(subscriptionService.checkSubscription(newsletterId, userIds.get(0)));
+    }
+
+    @Test
+    void subscribeAll_ShouldReportPairsSubscribedConcurrently_AsAlreadySubscribed() throws Exception {
+        List<SubscribeRequest> requests = userIds.stream()
+                .map(userId -> new SubscribeRequest(userId, newsletterId))
+                .collect(Collectors.toList());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> single = executor.submit(() -> {
+                long subscribed = 0;
+                for (int i = requests.size() - 1; i >= 0; i--) {
+                    if (subscriptionService.subscribe(requests.get(i)))
+                        subscribed++;
+                }
+                return subscribed;
+            });
+            List<BulkSubscriptionResult> bulk = subscriptionService.subscribeAll(requests);
+
+            long bulkSubscribed = bulk.stream().filter(result -> result.getStatus() == BulkSubscriptionStatus.SUBSCRIBED).count();
+            Assertions.assertTrue(bulk.stream().allMatch(result -> result.getStatus() == BulkSubscriptionStatus.SUBSCRIBED
+                    || result.getStatus() == BulkSubscriptionStatus.ALREADY_SUBSCRIBED));
+            Assertions.assertEquals(USERS, bulkSubscribed + single.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void unsubscribeAll_ShouldOnlyTouchTheRequestedPairs() {
+        Long otherNewsletterId = newsletterRepository.save(new Newsletter(null, "Bulk other", "Content", "2023-01-01", null)).getNewsletterId();
+        subscriptionService.subscribeAll(List.of(
+                new SubscribeRequest(userIds.get(0), newsletterId), new SubscribeRequest(userIds.get(1), otherNewsletterId)));
+
+        List<BulkSubscriptionStatus> statuses = subscriptionService.unsubscribeAll(List.of(
+                        new SubscribeRequest(userIds.get(0), otherNewsletterId), new SubscribeRequest(userIds.get(1), newsletterId),
+                        new SubscribeRequest(userIds.get(0), newsletterId))).stream()
+                .map(BulkSubscriptionResult::getStatus)
+                .collect(Collectors.toList());
+
+        Assertions.assertEquals(List.of(BulkSubscriptionStatus.NOT_SUBSCRIBED, BulkSubscriptionStatus.NOT_SUBSCRIBED,
+                BulkSubscriptionStatus.UNSUBSCRIBED), statuses);
+        Assertions.assertFalse(subscriptionService.checkSubscription(newsletterId, userIds.get(0)));
+        Assertions.assertTrue(subscriptionService.checkSubscription(otherNewsletterId, userIds.get(1)));
+    }
+
+    @Test
+    void subscribeAll_ShouldBatchWrites() {
+        List<SubscribeRequest> requests = userIds.stream()
+                .map(userId -> new SubscribeRequest(userId, newsletterId))
+                .collect(Collectors.toList());
+
+        statistics.clear();
+        List<BulkSubscriptionResult> subscribed = subscriptionService.subscribeAll(requests);
+        long subscribeStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        List<BulkSubscriptionResult> unsubscribed = subscriptionService.unsubscribeAll(requests);
+        long unsubscribeStatements = statistics.getPrepareStatementCount();
+
+        Assertions.assertTrue(subscribed.stream().allMatch(result -> result.getStatus() == BulkSubscriptionStatus.SUBSCRIBED));
+        Assertions.assertTrue(unsubscribed.stream().allMatch(result -> result.getStatus() == BulkSubscriptionStatus.UNSUBSCRIBED));
+        Assertions.assertTrue(subscribeStatements < 20, "subscribe used " + subscribeStatements + " statements");
+        Assertions.assertTrue(unsubscribeStatements < 20, "unsubscribe used " + unsubscribeStatements + " statements");
+        Assertions.assertFalse(subscriptionService.checkSubscription(newsletterId, userIds.get(0)));
+    }
+}
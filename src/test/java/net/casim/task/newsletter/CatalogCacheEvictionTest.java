@@ -0,0 +1,83 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.event.NewsletterChangedEvent;
+import net.casim.task.newsletter.event.UserChangedEvent;
+import net.casim.task.newsletter.model.projection.NewsletterView;
+import net.casim.task.newsletter.model.projection.UserView;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.CatalogCache;
+import net.casim.task.newsletter.shard.Shards;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CatalogCacheEvictionTest {
+    @Mock
+    private NewsletterRepository newsletterRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private SubscriptionRepository subscriptionRepository;
+
+    private CatalogCache catalogCache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        catalogCache = new CatalogCache(newsletterRepository, userRepository, subscriptionRepository,
+                Shards.single(), new ConcurrentMapCacheManager());
+    }
+
+    @Test
+    void getUser_ShouldNotCacheAProfileLoaded_WhileTheUserChanged() {
+        UserView stale = mock(UserView.class);
+        when(userRepository.findViewByUserId(1L)).thenAnswer(invocation -> {
+            // the rename commits while the old row is on its way back
+            catalogCache.onUserChanged(new UserChangedEvent(1L, UserChangedEvent.Change.UPDATED));
+            return Optional.of(stale);
+        });
+
+        catalogCache.getUser(1L);
+        catalogCache.getUser(1L);
+
+        verify(userRepository, times(2)).findViewByUserId(1L);
+    }
+
+    @Test
+    void getAllNewsletters_ShouldNotCacheAListLoaded_WhileANewsletterChanged() {
+        NewsletterView stale = mock(NewsletterView.class);
+        when(newsletterRepository.findAllByOrderByNewsletterId()).thenAnswer(invocation -> {
+            catalogCache.onNewsletterChanged(new NewsletterChangedEvent(1L));
+            return List.of(stale);
+        });
+
+        catalogCache.getAllNewsletters();
+        catalogCache.getAllNewsletters();
+
+        verify(newsletterRepository, times(2)).findAllByOrderByNewsletterId();
+    }
+
+    @Test
+    void getUser_ShouldCacheTheProfile_WhenNothingChanged() {
+        when(userRepository.findViewByUserId(1L)).thenReturn(Optional.of(mock(UserView.class)));
+
+        catalogCache.getUser(1L);
+        catalogCache.getUser(1L);
+
+        verify(userRepository, times(1)).findViewByUserId(1L);
+    }
+}
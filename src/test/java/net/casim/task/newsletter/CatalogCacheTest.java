@@ -0,0 +1,114 @@
+package net.casim.task.newsletter;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.ResponseFields;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class CatalogCacheTest {
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Long newsletterId;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Cached", "Content", "2023-01-01", null)).getNewsletterId();
+        userId = userRepository.save(User.builder().username("cached").build()).getUserId();
+    }
+
+    @Test
+    void repeatedReads_ShouldBeServedFromCache() throws NotFoundException {
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        subscriptionService.getNewsletterWithSubscribers(newsletterId);
+        subscriptionService.getUser(userId, ResponseFields.ALL);
+
+        statistics.clear();
+        subscriptionService.getNewsletterWithSubscribers(newsletterId);
+        Assertions.assertEquals(0, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        subscriptionService.getUser(userId, ResponseFields.ALL);
+        // only the user's memberships are read, profile and newsletters come from the cache
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void subscriberList_ShouldBeEvicted_WhenSubscriptionChanges() throws NotFoundException {
+        Long otherUserId = userRepository.save(User.builder().username("late").build()).getUserId();
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        subscriptionService.getNewsletterWithSubscribers(newsletterId);
+
+        subscriptionService.subscribe(new SubscribeRequest(otherUserId, newsletterId));
+        NewsletterDTO newsletter = subscriptionService.getNewsletterWithSubscribers(newsletterId);
+
+        Assertions.assertTrue(newsletter.getSubscribedUsernames().contains("late"));
+    }
+
+    @Test
+    void newsletter_ShouldBeEvicted_WhenEntityIsUpdated() throws NotFoundException {
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        subscriptionService.getNewsletterWithSubscribers(newsletterId);
+
+        Newsletter newsletter = newsletterRepository.findById(newsletterId).orElseThrow(IllegalStateException::new);
+        newsletter.setTitle("Renamed");
+        newsletterRepository.save(newsletter);
+
+        Assertions.assertEquals("Renamed", subscriptionService.getNewsletterWithSubscribers(newsletterId).getTitle());
+    }
+
+    @Test
+    void subscriberList_ShouldOnlyBeEvicted_ForNewslettersOfARenamedUser() throws NotFoundException {
+        Long otherNewsletterId = newsletterRepository.save(new Newsletter(null, "Other", "Content", "2023-01-01", null)).getNewsletterId();
+        Long otherUserId = userRepository.save(User.builder().username("other").build()).getUserId();
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        subscriptionService.subscribe(new SubscribeRequest(otherUserId, otherNewsletterId));
+        subscriptionService.getNewsletterWithSubscribers(newsletterId);
+        subscriptionService.getNewsletterWithSubscribers(otherNewsletterId);
+
+        userRepository.save(User.builder().username("signup").build());
+        User user = userRepository.findById(userId).orElseThrow(IllegalStateException::new);
+        user.setUsername("renamed");
+        userRepository.save(user);
+
+        statistics.clear();
+        subscriptionService.getNewsletterWithSubscribers(otherNewsletterId);
+        Assertions.assertEquals(0, statistics.getPrepareStatementCount());
+        Assertions.assertEquals(List.of("renamed"), subscriptionService.getNewsletterWithSubscribers(newsletterId).getSubscribedUsernames());
+    }
+}
@@ -0,0 +1,66 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.service.CompressedBitmap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+class CompressedBitmapTest {
+
+    @Test
+    void set_ShouldKeepFarApartMembers_InAFewBytesEach() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+
+        Assertions.assertTrue(bitmap.set(3, true));
+        Assertions.assertTrue(bitmap.set(Integer.MAX_VALUE, true));
+        Assertions.assertFalse(bitmap.set(3, true));
+
+        Assertions.assertTrue(bitmap.get(3));
+        Assertions.assertTrue(bitmap.get(Integer.MAX_VALUE));
+        Assertions.assertFalse(bitmap.get(4));
+        Assertions.assertEquals(2, bitmap.cardinality());
+        Assertions.assertTrue(bitmap.sizeInBytes() < 256);
+
+        Assertions.assertTrue(bitmap.set(Integer.MAX_VALUE, false));
+        Assertions.assertFalse(bitmap.set(Integer.MAX_VALUE, false));
+        Assertions.assertEquals(1, bitmap.cardinality());
+    }
+
+    @Test
+    void set_ShouldSwitchAFullChunkToABitmap_AndBack() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value = 0; value < 10_000; value++)
+            bitmap.set(value * 2, true);
+        Assertions.assertEquals(10_000, bitmap.cardinality());
+        Assertions.assertTrue(bitmap.get(19_998));
+        Assertions.assertFalse(bitmap.get(19_999));
+
+        for (int value = 100; value < 10_000; value++)
+            bitmap.set(value * 2, false);
+        Assertions.assertEquals(100, bitmap.cardinality());
+        Assertions.assertTrue(bitmap.get(198));
+        Assertions.assertFalse(bitmap.get(200));
+        Assertions.assertTrue(bitmap.sizeInBytes() < 1024);
+    }
+
+    @Test
+    void toBitSet_ShouldRoundTrip_AndOrShouldUnite() {
+        BitSet bits = new BitSet();
+        bits.set(1);
+        bits.set(70_000);
+        bits.set(1_000_000);
+        CompressedBitmap bitmap = CompressedBitmap.of(bits);
+        Assertions.assertEquals(bits, bitmap.toBitSet());
+
+        CompressedBitmap other = new CompressedBitmap();
+        other.set(2, true);
+        other.set(70_000, true);
+        bitmap.or(other);
+
+        BitSet united = (BitSet) bits.clone();
+        united.set(2);
+        Assertions.assertEquals(united, bitmap.toBitSet());
+        Assertions.assertEquals(4, bitmap.cardinality());
+    }
+}
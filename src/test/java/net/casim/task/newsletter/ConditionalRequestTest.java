@@ -0,0 +1,150 @@
+package net.casim.task.newsletter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Goes through the embedded server, so the ETags are checked against real entity versions and compression
+ * is applied by Tomcat.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase
+class ConditionalRequestTest {
+    private static final int SUBSCRIBERS = 200;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private Long newsletterId;
+
+    private Long lateUserId;
+
+    @BeforeEach
+    void setUp() {
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Polled", "Content", "2023-01-01", null)).getNewsletterId();
+        List<SubscribeRequest> requests = new ArrayList<>();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            Long userId = userRepository.save(User.builder().username("conditional-request-subscriber-" + i).build()).getUserId();
+            requests.add(new SubscribeRequest(userId, newsletterId));
+        }
+        lateUserId = userRepository.save(User.builder().username("late").build()).getUserId();
+        subscriptionService.subscribeAll(requests);
+    }
+
+    @Test
+    void newsletter_ShouldBeNotModified_UntilTheNewsletterOrItsSubscribersChange() throws Exception {
+        String path = "/subscriptions/newsletter/" + newsletterId;
+        HttpResponse<byte[]> first = get(path, null, false);
+        String eTag = first.headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+        Assertions.assertEquals(HttpStatus.OK.value(), first.statusCode());
+
+        HttpResponse<byte[]> unchanged = get(path, eTag, false);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED.value(), unchanged.statusCode());
+        Assertions.assertEquals(0, unchanged.body().length);
+
+        subscriptionService.subscribe(new SubscribeRequest(lateUserId, newsletterId));
+        HttpResponse<byte[]> subscribed = get(path, eTag, false);
+        Assertions.assertEquals(HttpStatus.OK.value(), subscribed.statusCode());
+        String subscribedETag = subscribed.headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+        Assertions.assertNotEquals(eTag, subscribedETag);
+
+        Newsletter newsletter = newsletterRepository.findById(newsletterId).orElseThrow();
+        newsletter.setTitle("Renamed");
+        newsletterRepository.save(newsletter);
+        Assertions.assertEquals(HttpStatus.OK.value(), get(path, subscribedETag, false).statusCode());
+    }
+
+    @Test
+    void newsletter_ShouldChangeItsTag_WhenASubscriberIsRenamed_AndBeNotFound_OnceItHasNoSubscribers() throws Exception {
+        Long quietId = newsletterRepository.save(new Newsletter(null, "Quiet", "Content", "2023-01-01", null)).getNewsletterId();
+        subscriptionService.subscribe(new SubscribeRequest(lateUserId, quietId));
+        String path = "/subscriptions/newsletter/" + quietId;
+        String eTag = get(path, null, false).headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+
+        User late = userRepository.findById(lateUserId).orElseThrow();
+        late.setUsername("renamed");
+        userRepository.save(late);
+        HttpResponse<byte[]> renamed = get(path, eTag, false);
+        Assertions.assertEquals(HttpStatus.OK.value(), renamed.statusCode());
+        Assertions.assertEquals("renamed", objectMapper.readTree(renamed.body()).get("subscribedUsernames").get(0).asText());
+        String renamedETag = renamed.headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+
+        subscriptionService.unsubscribe(new SubscribeRequest(lateUserId, quietId));
+        Assertions.assertEquals(HttpStatus.NOT_FOUND.value(), get(path, renamedETag, false).statusCode());
+    }
+
+    @Test
+    void newsletters_ShouldOnlyChangeTheirTag_WhenSelectedFieldsChange() throws Exception {
+        String titles = "/subscriptions/newsletters?fields=title";
+        String full = "/subscriptions/newsletters";
+        String titlesETag = get(titles, null, false).headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+        String fullETag = get(full, null, false).headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+        Assertions.assertNotEquals(titlesETag, fullETag);
+
+        subscriptionService.subscribe(new SubscribeRequest(lateUserId, newsletterId));
+
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED.value(), get(titles, titlesETag, false).statusCode());
+        Assertions.assertEquals(HttpStatus.OK.value(), get(full, fullETag, false).statusCode());
+    }
+
+    @Test
+    void largeResponses_ShouldBeGzipped_AndKeepTheirTag() throws Exception {
+        HttpResponse<byte[]> response = get("/subscriptions/newsletter/" + newsletterId, null, true);
+
+        Assertions.assertEquals("gzip", response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null));
+        Assertions.assertTrue(response.headers().firstValue(HttpHeaders.ETAG).isPresent());
+        try (GZIPInputStream body = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            JsonNode newsletter = objectMapper.readTree(body);
+            Assertions.assertEquals(SUBSCRIBERS, newsletter.get("subscribedUsernames").size());
+        }
+    }
+
+    private HttpResponse<byte[]> get(String path, String ifNoneMatch, boolean gzip) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET();
+        if (ifNoneMatch != null)
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        if (gzip)
+            request.header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
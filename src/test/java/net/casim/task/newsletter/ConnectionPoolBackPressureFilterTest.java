@@ -0,0 +1,51 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.web.ConnectionPoolBackPressureFilter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ConnectionPoolBackPressureFilterTest {
+
+    private final AtomicInteger pendingConnections = new AtomicInteger();
+
+    private final ConnectionPoolBackPressureFilter filter = new ConnectionPoolBackPressureFilter(pendingConnections::get, 4);
+
+    @Test
+    void request_ShouldPass_WhileConnectionsAreAvailable() throws Exception {
+        pendingConnections.set(3);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/subscriptions/newsletters"), new MockHttpServletResponse(), chain);
+
+        Assertions.assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void request_ShouldBeShed_WhenPoolIsSaturated() throws Exception {
+        pendingConnections.set(4);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/subscriptions/newsletters"), response, chain);
+
+        Assertions.assertNull(chain.getRequest());
+        Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        Assertions.assertEquals("1", response.getHeader("Retry-After"));
+    }
+
+    @Test
+    void actuator_ShouldNeverBeShed() throws Exception {
+        pendingConnections.set(100);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), new MockHttpServletResponse(), chain);
+
+        Assertions.assertNotNull(chain.getRequest());
+    }
+}
@@ -0,0 +1,135 @@
+package net.casim.task.newsletter;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import net.casim.task.newsletter.service.SubscriptionService;
+import net.casim.task.newsletter.snapshot.IndexSnapshots;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@SpringBootTest(properties = {
+        "newsletter.snapshot.enabled=true",
+        "newsletter.snapshot.directory=" + IndexSnapshotTest.DIRECTORY
+})
+@AutoConfigureTestDatabase
+@Import(IndexSnapshotTest.BooleanEventRecorderConfig.class)
+class IndexSnapshotTest {
+    static final String DIRECTORY = "target/test-snapshots";
+
+    private static final Path SNAPSHOT = Path.of(DIRECTORY, "subscription-index.snapshot");
+
+    @Autowired
+    private IndexSnapshots indexSnapshots;
+
+    @Autowired
+    private SubscriptionIndex subscriptionIndex;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BooleanEventRecorder booleanEvents;
+
+    private Long newsletterId;
+
+    @BeforeEach
+    void setUp() {
+        indexSnapshots.discard();
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Snapshotted", "Content", "2023-01-01", null)).getNewsletterId();
+    }
+
+    @Test
+    void restore_ShouldLoadTheSnapshot_AndReplayOnlyRowsChangedSinceIt() throws NotFoundException {
+        Long unsubscribedLater = subscribedUser("snapshot-a");
+        Long changedBehindTheIndex = subscribedUser("snapshot-b");
+        Assertions.assertTrue(indexSnapshots.save());
+        Assertions.assertTrue(Files.exists(SNAPSHOT));
+
+        Long subscribedLater = subscribedUser("snapshot-c");
+        subscriptionService.unsubscribe(new SubscribeRequest(unsubscribedLater, newsletterId));
+        // an old change the index never saw: it is older than the snapshot, so it must not be read back
+        jdbcTemplate.update("update subscription set subscribed = false, changed_at = timestamp '2000-01-01 00:00:00' " +
+                "where user_id = ? and newsletter_id = ?", changedBehindTheIndex, newsletterId);
+
+        Assertions.assertTrue(indexSnapshots.restore());
+
+        Assertions.assertTrue(subscriptionIndex.isReady());
+        Assertions.assertFalse(subscriptionIndex.contains(newsletterId, unsubscribedLater));
+        Assertions.assertTrue(subscriptionIndex.contains(newsletterId, changedBehindTheIndex));
+        Assertions.assertTrue(subscriptionIndex.contains(newsletterId, subscribedLater));
+        Assertions.assertEquals(2, subscriptionIndex.count(newsletterId));
+
+        subscriptionIndex.warmUp();
+        Assertions.assertEquals(1, subscriptionIndex.count(newsletterId));
+    }
+
+    @Test
+    void startup_ShouldNotPublishTheRestoreResult() {
+        Assertions.assertEquals(List.of(), booleanEvents.payloads);
+    }
+
+    @Test
+    void restore_ShouldLeaveTheIndexAlone_WhenTheSnapshotIsMissingOrCorrupt() throws Exception {
+        Long userId = subscribedUser("snapshot-d");
+        Assertions.assertFalse(indexSnapshots.restore());
+
+        Assertions.assertTrue(indexSnapshots.save());
+        byte[] bytes = Files.readAllBytes(SNAPSHOT);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(SNAPSHOT, bytes);
+
+        Assertions.assertFalse(indexSnapshots.restore());
+        Assertions.assertTrue(subscriptionIndex.contains(newsletterId, userId));
+    }
+
+    private Long subscribedUser(String username) throws NotFoundException {
+        Long userId = userRepository.save(User.builder().username(username).build()).getUserId();
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        return userId;
+    }
+
+    static class BooleanEventRecorder {
+        final List<Boolean> payloads = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        void on(Boolean payload) {
+            payloads.add(payload);
+        }
+    }
+
+    @TestConfiguration
+    static class BooleanEventRecorderConfig {
+        @Bean
+        BooleanEventRecorder booleanEventRecorder() {
+            return new BooleanEventRecorder();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.model.dto.SubscriptionChangeDTO;
+import net.casim.task.newsletter.outbox.LogFileSubscriptionChangeSink;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+class LogFileSubscriptionChangeSinkTest {
+    private static final LocalDateTime OCCURRED_AT = LocalDateTime.of(2024, 5, 1, 12, 30);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void publish_ShouldRotateTheFile_AndKeepOnlyMaxFilesRotatedOnes() throws IOException {
+        LogFileSubscriptionChangeSink sink = new LogFileSubscriptionChangeSink(directory, 1, 2);
+
+        for (long position = 1; position <= 4; position++)
+            sink.publish(List.of(new SubscriptionChangeDTO(position, position, 1L, 10L, true, OCCURRED_AT)));
+
+        Assertions.assertEquals(List.of("4,4,1,10,true,2024-05-01T12:30"), Files.readAllLines(sink.file()));
+        Assertions.assertEquals(List.of("3,3,1,10,true,2024-05-01T12:30"), Files.readAllLines(directory.resolve("subscription-changes.log.1")));
+        Assertions.assertEquals(List.of("2,2,1,10,true,2024-05-01T12:30"), Files.readAllLines(directory.resolve("subscription-changes.log.2")));
+        Assertions.assertFalse(Files.exists(directory.resolve("subscription-changes.log.3")));
+    }
+}
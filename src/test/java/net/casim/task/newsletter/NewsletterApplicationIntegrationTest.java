@@ -2,11 +2,12 @@ package net.casim.task.newsletter;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import javassist.NotFoundException;
 import net.casim.task.newsletter.controller.SubscriptionController;
-import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.BulkSubscriptionResult;
+import net.casim.task.newsletter.model.BulkSubscriptionStatus;
+import net.casim.task.newsletter.model.ResponseFields;
 import net.casim.task.newsletter.model.SubscribeRequest;
-import net.casim.task.newsletter.model.Subscription;
-import net.casim.task.newsletter.model.User;
 import net.casim.task.newsletter.model.dto.NewsletterDTO;
 import net.casim.task.newsletter.model.dto.UserDTO;
 import net.casim.task.newsletter.service.SubscriptionService;
@@ -15,6 +16,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
@@ -22,15 +24,15 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
-import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(SubscriptionController.class)
@@ -48,8 +50,7 @@ class NewsletterApplicationIntegrationTest {
     @Test
     void subscribe_ShouldReturnBadRequest_WhenUserIsAlreadySubscribed() throws Exception {
         SubscribeRequest subscribeRequest = new SubscribeRequest(1L, 1L);
-        when(subscriptionService.checkSubscription(subscribeRequest.getNewsletterId(), subscribeRequest.getUserId()))
-                .thenReturn(true);
+        when(subscriptionService.subscribe(subscribeRequest)).thenReturn(false);
 
         mockMvc.perform(MockMvcRequestBuilders.post("/subscriptions/subscribe")
                         .content("{\"newsletterId\": 1, \"userId\": 1}")
@@ -61,8 +62,7 @@ class NewsletterApplicationIntegrationTest {
     @Test
     void unsubscribe_ShouldReturnBadRequest_WhenUserIsNotSubscribed() throws Exception {
         SubscribeRequest subscribeRequest = new SubscribeRequest(1L, 1L);
-        when(subscriptionService.checkSubscription(subscribeRequest.getNewsletterId(), subscribeRequest.getUserId()))
-                .thenReturn(false);
+        when(subscriptionService.unsubscribe(subscribeRequest)).thenReturn(false);
 
         mockMvc.perform(MockMvcRequestBuilders.post("/subscriptions/unsubscribe")
                         .content("{\"newsletterId\": 1, \"userId\": 1}")
@@ -71,6 +71,22 @@ class NewsletterApplicationIntegrationTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("User is not subscribed"));
     }
 
+    @Test
+    void subscribeAll_ShouldReturnPerItemResults() throws Exception {
+        List<SubscribeRequest> subscribeRequests = List.of(new SubscribeRequest(1L, 1L), new SubscribeRequest(2L, 1L));
+        List<BulkSubscriptionResult> results = List.of(
+                new BulkSubscriptionResult(1L, 1L, BulkSubscriptionStatus.SUBSCRIBED),
+                new BulkSubscriptionResult(2L, 1L, BulkSubscriptionStatus.USER_NOT_FOUND));
+        when(subscriptionService.subscribeAll(subscribeRequests)).thenReturn(results);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/subscriptions/bulk/subscribe")
+                        .content(objectMapper.writeValueAsString(subscribeRequests))
+                        .contentType("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value("SUBSCRIBED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].status").value("USER_NOT_FOUND"));
+    }
+
     @Test
     void checkSubscription_ShouldReturnSubscriptionStatus() throws Exception {
         Long userId = 1L;
@@ -96,7 +112,7 @@ class NewsletterApplicationIntegrationTest {
         String date = "2023-01-01";
         List<UserDTO> subscribers = List.of(new UserDTO(1L, "user1", Collections.emptyList()));
 
-        when(subscriptionService.getSubscribersBeforeDate(newsletterId, date)).thenReturn(subscribers);
+        when(subscriptionService.getSubscribersBeforeDate(newsletterId, date, ResponseFields.ALL)).thenReturn(subscribers);
 
         MvcResult result = mockMvc.perform(get("/subscriptions/subscribersBeforeDate")
                         .param("newsletterId", String.valueOf(newsletterId))
@@ -118,7 +134,7 @@ class NewsletterApplicationIntegrationTest {
         String date = "2023-01-01";
         List<UserDTO> subscribers = List.of(new UserDTO(1L, "user1", Collections.emptyList()));
 
-        when(subscriptionService.getSubscribersAfterDate(newsletterId, date)).thenReturn(subscribers);
+        when(subscriptionService.getSubscribersAfterDate(newsletterId, date, ResponseFields.ALL)).thenReturn(subscribers);
 
         MvcResult result = mockMvc.perform(get("/subscriptions/subscribersAfterDate")
                         .param("newsletterId", String.valueOf(newsletterId))
@@ -135,13 +151,13 @@ class NewsletterApplicationIntegrationTest {
 
     @Test
     void getAllNewsletters_ShouldReturnAllNewsletters() throws Exception {
-        List<Newsletter> newsletters = Arrays.asList(
-                new Newsletter(1L, "Newsletter1", "Content1", "2023-01-01", Collections.emptyList()),
-                new Newsletter(2L, "Newsletter2", "Content2", "2023-01-02", Collections.emptyList())
+        List<NewsletterDTO> newsletterDTOs = Arrays.asList(
+                new NewsletterDTO(1L, "Newsletter1", "Content1", "2023-01-01", Collections.emptyList()),
+                new NewsletterDTO(2L, "Newsletter2", "Content2", "2023-01-02", Collections.emptyList())
         );
-        List<NewsletterDTO> newsletterDTOs = newsletters.stream().map(Newsletter::toDTO).collect(Collectors.toList());
 
-        when(subscriptionService.getAllNewsletters()).thenReturn(newsletters);
+        when(subscriptionService.getAllNewslettersETag(ResponseFields.ALL)).thenReturn("\"1\"");
+        when(subscriptionService.getAllNewsletters(ResponseFields.ALL)).thenReturn(newsletterDTOs);
 
         MvcResult result = mockMvc.perform(get("/subscriptions/newsletters")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -157,27 +173,52 @@ class NewsletterApplicationIntegrationTest {
     @Test
     void getNewsletterWithSubscribers_ShouldReturnNewsletter() throws Exception {
         Long newsletterId = 1L;
-        Newsletter newsletter = new Newsletter(1L, "Newsletter", "Content", "2023-01-01", Collections.emptyList());
+        NewsletterDTO newsletter = new NewsletterDTO(1L, "Newsletter", "Content", "2023-01-01", List.of("user1"));
 
+        when(subscriptionService.getNewsletterETag(newsletterId)).thenReturn("\"1\"");
         when(subscriptionService.getNewsletterWithSubscribers(newsletterId)).thenReturn(newsletter);
 
         MvcResult result = mockMvc.perform(get("/subscriptions/newsletter/{newsletterId}", newsletterId)
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
                 .andReturn();
 
         NewsletterDTO response = objectMapper.readValue(result.getResponse().getContentAsString(), NewsletterDTO.class);
-        Assertions.assertEquals(newsletter.toDTO(), response);
+        Assertions.assertEquals(newsletter, response);
+    }
+
+    @Test
+    void getNewsletterWithSubscribers_ShouldReturnNotModified_WhenETagMatches() throws Exception {
+        Long newsletterId = 1L;
+        when(subscriptionService.getNewsletterETag(newsletterId)).thenReturn("\"1\"");
+        when(subscriptionService.getNewsletterWithSubscribers(newsletterId))
+                .thenReturn(new NewsletterDTO(1L, "Newsletter", "Content", "2023-01-01", List.of("user1")));
+
+        mockMvc.perform(get("/subscriptions/newsletter/{newsletterId}", newsletterId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void getNewsletterWithSubscribers_ShouldReturnNotFound_EvenWhenETagMatches() throws Exception {
+        Long newsletterId = 1L;
+        when(subscriptionService.getNewsletterETag(newsletterId)).thenReturn("\"1\"");
+        when(subscriptionService.getNewsletterWithSubscribers(newsletterId)).thenThrow(new NotFoundException("Newsletter not found"));
+
+        mockMvc.perform(get("/subscriptions/newsletter/{newsletterId}", newsletterId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                .andExpect(status().isNotFound());
     }
 
     @Test
     void getUser_ShouldReturnUser() throws Exception {
         Long userId = 1L;
-        User user = new User(1L, "user1", Collections.emptySet());
-        Subscription subscription = new Subscription(1L, true,
-                new Newsletter(1L, "Newsletter", "Content", "2023-01-01", Collections.emptyList()), user, LocalDateTime.now());
+        UserDTO user = new UserDTO(userId, "user1", Collections.emptyList());
 
-        when(subscriptionService.getUser(userId)).thenReturn(subscription.getUser());
+        when(subscriptionService.getUser(userId, ResponseFields.ALL)).thenReturn(user);
 
         MvcResult result = mockMvc.perform(get("/subscriptions/user/{userId}", userId)
                         .contentType(MediaType.APPLICATION_JSON))
@@ -14,10 +14,10 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static org.mockito.Mockito.*;
 
@@ -37,27 +37,25 @@ class NewsletterApplicationTest {
     @Test
     void subscribe_ShouldReturnBadRequest_WhenUserIsAlreadySubscribed() throws NotFoundException {
         SubscribeRequest subscribeRequest = new SubscribeRequest(1L, 1L);
-        when(subscriptionService.checkSubscription(subscribeRequest.getNewsletterId(), subscribeRequest.getUserId()))
-                .thenReturn(true);
+        when(subscriptionService.subscribe(subscribeRequest)).thenReturn(false);
 
         ResponseEntity<SubscriptionResponse> responseEntity = subscriptionController.subscribe(subscribeRequest);
 
         Assertions.assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
         Assertions.assertEquals("User is already subscribed", Objects.requireNonNull(responseEntity.getBody()).getMessage());
-        verify(subscriptionService, never()).subscribe(subscribeRequest);
+        verify(subscriptionService, never()).checkSubscription(subscribeRequest.getNewsletterId(), subscribeRequest.getUserId());
     }
 
     @Test
     void unsubscribe_ShouldReturnBadRequest_WhenUserIsNotSubscribed() throws NotFoundException {
         SubscribeRequest subscribeRequest = new SubscribeRequest(1L, 1L);
-        when(subscriptionService.checkSubscription(subscribeRequest.getNewsletterId(), subscribeRequest.getUserId()))
-                .thenReturn(false);
+        when(subscriptionService.unsubscribe(subscribeRequest)).thenReturn(false);
 
         ResponseEntity<SubscriptionResponse> responseEntity = subscriptionController.unsubscribe(subscribeRequest);
 
         Assertions.assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
         Assertions.assertEquals("User is not subscribed", Objects.requireNonNull(responseEntity.getBody()).getMessage());
-        verify(subscriptionService, never()).unsubscribe(subscribeRequest);
+        verify(subscriptionService, never()).checkSubscription(subscribeRequest.getNewsletterId(), subscribeRequest.getUserId());
     }
 
     @Test
@@ -89,9 +87,9 @@ class NewsletterApplicationTest {
         Long newsletterId = 1L;
         String date = "2023-01-01";
         List<UserDTO> subscribers = Arrays.asList(new UserDTO(1L, "user1", null), new UserDTO(2L, "user2", null));
-        when(subscriptionService.getSubscribersBeforeDate(newsletterId, date)).thenReturn(subscribers);
+        when(subscriptionService.getSubscribersBeforeDate(newsletterId, date, ResponseFields.ALL)).thenReturn(subscribers);
 
-        ResponseEntity<List<UserDTO>> responseEntity = subscriptionController.getSubscribersBeforeDate(newsletterId, date);
+        ResponseEntity<List<UserDTO>> responseEntity = subscriptionController.getSubscribersBeforeDate(newsletterId, date, null, null, null);
 
         Assertions.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
         Assertions.assertEquals(subscribers, responseEntity.getBody());
@@ -102,9 +100,9 @@ class NewsletterApplicationTest {
         Long newsletterId = 1L;
         String date = "2023-01-01";
         List<UserDTO> subscribers = Arrays.asList(new UserDTO(1L, "user1", null), new UserDTO(2L, "user2", null));
-        when(subscriptionService.getSubscribersAfterDate(newsletterId, date)).thenReturn(subscribers);
+        when(subscriptionService.getSubscribersAfterDate(newsletterId, date, ResponseFields.ALL)).thenReturn(subscribers);
 
-        ResponseEntity<List<UserDTO>> responseEntity = subscriptionController.getSubscribersAfterDate(newsletterId, date);
+        ResponseEntity<List<UserDTO>> responseEntity = subscriptionController.getSubscribersAfterDate(newsletterId, date, null, null, null);
 
         Assertions.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
         Assertions.assertEquals(subscribers, responseEntity.getBody());
@@ -112,39 +110,43 @@ class NewsletterApplicationTest {
 
     @Test
     void getAllNewsletters_ShouldReturnNewsletters() {
-        List<Newsletter> newsletters = Arrays.asList(
-                new Newsletter(1L, "Newsletter 1", "Content 1", "2023-01-01",new ArrayList<>()),
-                new Newsletter(2L, "Newsletter 2", "Content 2", "2023-01-02",new ArrayList<>())
+        List<NewsletterDTO> newsletters = Arrays.asList(
+                new NewsletterDTO(1L, "Newsletter 1", "Content 1", "2023-01-01", new ArrayList<>()),
+                new NewsletterDTO(2L, "Newsletter 2", "Content 2", "2023-01-02", new ArrayList<>())
         );
-        when(subscriptionService.getAllNewsletters()).thenReturn(newsletters);
+        when(subscriptionService.getAllNewslettersETag(ResponseFields.ALL)).thenReturn("\"1\"");
+        when(subscriptionService.getAllNewsletters(ResponseFields.ALL)).thenReturn(newsletters);
 
-        ResponseEntity<List<NewsletterDTO>> responseEntity = subscriptionController.getAllNewsletters();
+        ResponseEntity<List<NewsletterDTO>> responseEntity = subscriptionController.getAllNewsletters(null, null, null,
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/subscriptions/newsletters")));
 
         Assertions.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
-        Assertions.assertEquals(newsletters.stream().map(Newsletter::toDTO).collect(Collectors.toList()), responseEntity.getBody());
+        Assertions.assertEquals("\"1\"", responseEntity.getHeaders().getETag());
+        Assertions.assertEquals(newsletters, responseEntity.getBody());
 
     }
 
     @Test
     void getNewsletterWithSubscribers_ShouldReturnNewsletter() throws NotFoundException {
         Long newsletterId = 1L;
-        Newsletter newsletter = new Newsletter(1L, "Newsletter 1", "Content 1", "2023-01-01",new ArrayList<>());
+        NewsletterDTO newsletter = new NewsletterDTO(1L, "Newsletter 1", "Content 1", "2023-01-01", List.of("user1"));
+        when(subscriptionService.getNewsletterETag(newsletterId)).thenReturn("\"1\"");
         when(subscriptionService.getNewsletterWithSubscribers(newsletterId)).thenReturn(newsletter);
 
-        ResponseEntity<NewsletterDTO> responseEntity = subscriptionController.getNewsletterWithSubscribers(newsletterId);
+        ResponseEntity<NewsletterDTO> responseEntity = subscriptionController.getNewsletterWithSubscribers(newsletterId,
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/subscriptions/newsletter/1")));
 
         Assertions.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
-        Assertions.assertEquals(newsletter.toDTO(), responseEntity.getBody());
+        Assertions.assertEquals(newsletter, responseEntity.getBody());
     }
 
     @Test
     void getUser_ShouldReturnUser() throws NotFoundException {
         Long userId = 1L;
-        Subscription subscription = new Subscription(1L, true, new Newsletter(1L, "Newsletter", "Content", "2023-01-01", Collections.emptyList()),
-                new User(1L, "user1", new HashSet<>()), LocalDateTime.now());
-        when(subscriptionService.getUser(userId)).thenReturn(subscription.getUser());
+        UserDTO user = new UserDTO(userId, "user1", Collections.emptyList());
+        when(subscriptionService.getUser(userId, ResponseFields.ALL)).thenReturn(user);
 
-        ResponseEntity<UserDTO> responseEntity = subscriptionController.getUser(userId);
+        ResponseEntity<UserDTO> responseEntity = subscriptionController.getUser(userId, null);
 
         Assertions.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
 
@@ -0,0 +1,165 @@
+package net.casim.task.newsletter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import javassist.NotFoundException;
+import net.casim.task.newsletter.delivery.DeliveryPipeline;
+import net.casim.task.newsletter.delivery.NewsletterSender;
+import net.casim.task.newsletter.model.DeliveryStatus;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.DeliveryDTO;
+import net.casim.task.newsletter.model.projection.SubscriberView;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SpringBootTest(properties = {
+        "newsletter.delivery.batch-size=7",
+        "newsletter.delivery.workers=4",
+        "newsletter.delivery.max-attempts=2",
+        "newsletter.delivery.retry-delay=1ms"
+})
+@AutoConfigureTestDatabase
+@Import(NewsletterDeliveryTest.RecordingSenderConfig.class)
+class NewsletterDeliveryTest {
+    private static final int SUBSCRIBERS = 100;
+
+    @Autowired
+    private DeliveryPipeline deliveryPipeline;
+
+    @Autowired
+    private RecordingSender sender;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Long newsletterId;
+
+    private final List<Long> subscriberIds = new ArrayList<>();
+
+    private Long unsubscribedId;
+
+    @BeforeEach
+    void setUp() throws NotFoundException {
+        sender.received.clear();
+        sender.failingUserIds.clear();
+        subscriberIds.clear();
+
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Delivered", "Content", "2023-01-01", null)).getNewsletterId();
+        List<SubscribeRequest> requests = new ArrayList<>();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            Long userId = userRepository.save(User.builder().username("delivery-recipient-" + i).build()).getUserId();
+            requests.add(new SubscribeRequest(userId, newsletterId));
+            subscriberIds.add(userId);
+        }
+        subscriptionService.subscribeAll(requests);
+
+        unsubscribedId = userRepository.save(User.builder().username("delivery-unsubscribed").build()).getUserId();
+        subscriptionService.subscribe(new SubscribeRequest(unsubscribedId, newsletterId));
+        subscriptionService.unsubscribe(new SubscribeRequest(unsubscribedId, newsletterId));
+    }
+
+    @Test
+    void deliver_ShouldSendToEveryActiveSubscriberOnce() throws Exception {
+        double recipientsBefore = meterRegistry.get("newsletter.delivery.recipients").counter().count();
+
+        DeliveryDTO delivery = awaitFinished(deliveryPipeline.deliver(newsletterId).getDeliveryId());
+
+        Assertions.assertEquals(DeliveryStatus.COMPLETED, delivery.getStatus());
+        Assertions.assertEquals(SUBSCRIBERS, delivery.getDelivered());
+        assertReceivedOnce(delivery.getDeliveryId());
+        Assertions.assertEquals(SUBSCRIBERS, meterRegistry.get("newsletter.delivery.recipients").counter().count() - recipientsBefore);
+        Assertions.assertEquals(0, meterRegistry.get("newsletter.delivery.queue").tag("stage", "checkpoint").gauge().value());
+    }
+
+    @Test
+    void resume_ShouldContinueAFailedDelivery_WithoutSendingCompletedBatchesAgain() throws Exception {
+        sender.failingUserIds.add(subscriberIds.get(SUBSCRIBERS / 3));
+
+        DeliveryDTO failed = awaitFinished(deliveryPipeline.deliver(newsletterId).getDeliveryId());
+        Assertions.assertEquals(DeliveryStatus.FAILED, failed.getStatus());
+        Assertions.assertNotNull(failed.getFailure());
+        Assertions.assertTrue(failed.getDelivered() < SUBSCRIBERS);
+
+        sender.failingUserIds.clear();
+        deliveryPipeline.resume(failed.getDeliveryId());
+        DeliveryDTO resumed = awaitFinished(failed.getDeliveryId());
+
+        Assertions.assertEquals(DeliveryStatus.COMPLETED, resumed.getStatus());
+        Assertions.assertNull(resumed.getFailure());
+        Assertions.assertEquals(SUBSCRIBERS, resumed.getDelivered());
+        assertReceivedOnce(failed.getDeliveryId());
+    }
+
+    @Test
+    void deliver_ShouldRejectUnknownNewsletters() {
+        Assertions.assertThrows(NotFoundException.class, () -> deliveryPipeline.deliver(-1L));
+    }
+
+    private void assertReceivedOnce(Long deliveryId) {
+        Map<Long, AtomicInteger> received = sender.received.getOrDefault(deliveryId, new ConcurrentHashMap<>());
+        Assertions.assertEquals(new HashSet<>(subscriberIds), received.keySet());
+        received.forEach((userId, count) -> Assertions.assertEquals(1, count.get(), "deliveries to user " + userId));
+    }
+
+    private DeliveryDTO awaitFinished(Long deliveryId) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        DeliveryDTO delivery = deliveryPipeline.getDelivery(deliveryId);
+        while (delivery.getStatus() == DeliveryStatus.RUNNING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            delivery = deliveryPipeline.getDelivery(deliveryId);
+        }
+        return delivery;
+    }
+
+    static class RecordingSender implements NewsletterSender {
+        final ConcurrentMap<Long, ConcurrentMap<Long, AtomicInteger>> received = new ConcurrentHashMap<>();
+
+        final Set<Long> failingUserIds = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void send(Long deliveryId, Newsletter newsletter, List<SubscriberView> recipients) {
+            if (recipients.stream().anyMatch(recipient -> failingUserIds.contains(recipient.getUserId())))
+                throw new IllegalStateException("Recipient rejected");
+
+            for (SubscriberView recipient : recipients)
+                received.computeIfAbsent(deliveryId, id -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(recipient.getUserId(), id -> new AtomicInteger())
+                        .incrementAndGet();
+        }
+    }
+
+    @TestConfiguration
+    static class RecordingSenderConfig {
+        @Bean
+        @Primary
+        RecordingSender recordingSender() {
+            return new RecordingSender();
+        }
+    }
+}
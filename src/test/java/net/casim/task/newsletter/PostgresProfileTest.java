@@ -0,0 +1,41 @@
+package net.casim.task.newsletter;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs against a local PostgreSQL instance when {@code POSTGRES_URL} (and optionally {@code POSTGRES_USER} /
+ * {@code POSTGRES_PASSWORD}) point to an empty database.
+ */
+@SpringBootTest
+@ActiveProfiles("postgres")
+@EnabledIfEnvironmentVariable(named = "POSTGRES_URL", matches = ".+")
+class PostgresProfileTest {
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void subscribe_ShouldRoundTrip() throws NotFoundException {
+        Long userId = jdbcTemplate.queryForObject("select min(user_id) from users", Long.class);
+        Long newsletterId = jdbcTemplate.queryForObject("select min(newsletter_id) from newsletter", Long.class);
+
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        NewsletterDTO newsletter = subscriptionService.getNewsletterWithSubscribers(newsletterId);
+
+        Assertions.assertFalse(newsletter.getSubscribedUsernames().isEmpty());
+        Assertions.assertTrue(subscriptionService.checkSubscription(newsletterId, userId));
+    }
+}
@@ -0,0 +1,45 @@
+package net.casim.task.newsletter;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Applies the PostgreSQL migrations to H2 in PostgreSQL mode and lets Hibernate validate the entities against them.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pgschema;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE",
+        "spring.flyway.enabled=true",
+        "spring.flyway.locations=classpath:db/migration/postgresql",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+class PostgresSchemaMigrationTest {
+
+    @Autowired
+    private Flyway flyway;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void migrations_ShouldMatchEntityMappings() {
+        Assertions.assertEquals("7", flyway.info().current().getVersion().getVersion());
+    }
+
+    @Test
+    void subscription_ShouldBeUniquePerUserAndNewsletter() {
+        Long userId = jdbcTemplate.queryForObject("select min(user_id) from users", Long.class);
+        Long newsletterId = jdbcTemplate.queryForObject("select min(newsletter_id) from newsletter", Long.class);
+        String insert = "insert into subscription (id, subscribed, newsletter_id, user_id, created_at) "
+                + "values (nextval('subscription_seq'), true, ?, ?, current_timestamp)";
+
+        jdbcTemplate.update(insert, newsletterId, userId);
+
+        Assertions.assertThrows(DataIntegrityViolationException.class,
+                () -> jdbcTemplate.update(insert, newsletterId, userId));
+    }
+}
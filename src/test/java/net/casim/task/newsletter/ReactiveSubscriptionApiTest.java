@@ -0,0 +1,185 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.UserDTO;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.ReactiveSubscriptionService;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Objects;
+
+@SpringBootTest(properties = {"spring.main.web-application-type=reactive",
+        "spring.datasource.url=jdbc:h2:mem:reactive", "spring.r2dbc.url=r2dbc:h2:mem:///reactive"})
+@ActiveProfiles("reactive")
+@AutoConfigureWebTestClient
+class ReactiveSubscriptionApiTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ReactiveSubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionIndex subscriptionIndex;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void subscribeAndUnsubscribe_ShouldUpdateDatabaseAndIndex() {
+        Long newsletterId = newsletterRepository.save(new Newsletter(null, "Reactive", "Content", "2023-01-01", null)).getNewsletterId();
+        Long userId = userRepository.save(User.builder().username("reactive-user").build()).getUserId();
+        String pair = "{\"newsletterId\": " + newsletterId + ", \"userId\": " + userId + "}";
+
+        webTestClient.post().uri("/subscriptions/subscribe").contentType(MediaType.APPLICATION_JSON).bodyValue(pair)
+                .exchange()
+                .expectStatus().isCreated();
+        webTestClient.post().uri("/subscriptions/subscribe").contentType(MediaType.APPLICATION_JSON).bodyValue(pair)
+                .exchange()
+                .expectStatus().isBadRequest();
+        Assertions.assertTrue(subscriptionIndex.contains(newsletterId, userId));
+
+        UserDTO user = webTestClient.get().uri("/subscriptions/user/{userId}", userId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDTO.class).returnResult().getResponseBody();
+        Assertions.assertEquals(List.of("reactive-user"), user.getSubscribedNewsletters().get(0).getSubscribedUsernames());
+
+        webTestClient.post().uri("/subscriptions/unsubscribe").contentType(MediaType.APPLICATION_JSON).bodyValue(pair)
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.get().uri("/subscriptions/checkSubscription?newsletterId={n}&userId={u}", newsletterId, userId)
+                .exchange()
+                .expectBody(Boolean.class).isEqualTo(false);
+        webTestClient.get().uri("/subscriptions/newsletter/{newsletterId}", newsletterId)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void subscribe_ShouldReturnNotFound_WhenUserDoesNotExist() {
+        Long newsletterId = newsletterRepository.save(new Newsletter(null, "Orphan", "Content", "2023-01-01", null)).getNewsletterId();
+
+        webTestClient.post().uri("/subscriptions/subscribe").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"newsletterId\": " + newsletterId + ", \"userId\": 999999}")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$.message").isEqualTo("Subscription failed: User not found");
+    }
+
+    @Test
+    void concurrentSubscribes_ShouldSucceedOncePerPair() {
+        Long newsletterId = newsletterRepository.save(new Newsletter(null, "Contended", "Content", "2023-01-01", null)).getNewsletterId();
+        Long userId = userRepository.save(User.builder().username("reactive-contender").build()).getUserId();
+
+        List<Boolean> outcomes = Flux.range(0, 8)
+                .flatMap(i -> subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId)))
+                .collectList()
+                .block();
+
+        Assertions.assertEquals(1, outcomes.stream().filter(Boolean::booleanValue).count());
+    }
+
+    @Test
+    void subscriberListsAndExport_ShouldStreamEveryActiveSubscriber() {
+        Long newsletterId = newsletterRepository.save(new Newsletter(null, "Streamed", "Content", "2023-01-01", null)).getNewsletterId();
+        for (int i = 0; i < 3; i++) {
+            Long userId = userRepository.save(User.builder().username("streamed" + i).build()).getUserId();
+            subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId)).block();
+        }
+
+        List<UserDTO> subscribers = webTestClient.get()
+                .uri("/subscriptions/subscribersAfterDate?newsletterId={n}&date=2020-01-01T00:00:00", newsletterId)
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(UserDTO.class).getResponseBody()
+                .collectList()
+                .block();
+        Assertions.assertEquals(3, subscribers.size());
+
+        String csv = webTestClient.get()
+                .uri("/subscriptions/newsletter/{n}/subscribers/export?format=csv", newsletterId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+        String[] lines = Objects.requireNonNull(csv).split("\n");
+        Assertions.assertEquals("userId,username,subscribedAt,cursor", lines[0]);
+        Assertions.assertEquals(4, lines.length);
+    }
+
+    @Test
+    void pages_ShouldRejectMalformedCursorsAndDates() {
+        webTestClient.get().uri("/subscriptions/subscribers?newsletterId=1&cursor=2023-01-01T00:00:00_x")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri("/subscriptions/subscribers?newsletterId=1&after=yesterday")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri("/subscriptions/subscribersAfterDate?newsletterId=1&date=yesterday")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri("/subscriptions/newsletters?cursor=-1")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void export_ShouldRejectUnknownFormats() {
+        webTestClient.get().uri("/subscriptions/newsletter/1/subscribers/export?format=xml")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void conditionalGets_ShouldBeNotModified_UntilSubscribersChange() {
+        Long newsletterId = newsletterRepository.save(new Newsletter(null, "Conditional", "Content", "2023-01-01", null)).getNewsletterId();
+        Long stayingUserId = userRepository.save(User.builder().username("reactive-staying").build()).getUserId();
+        Long leavingUserId = userRepository.save(User.builder().username("reactive-leaving").build()).getUserId();
+        subscriptionService.subscribe(new SubscribeRequest(stayingUserId, newsletterId)).block();
+        subscriptionService.subscribe(new SubscribeRequest(leavingUserId, newsletterId)).block();
+
+        String eTag = webTestClient.get().uri("/subscriptions/newsletter/{newsletterId}", newsletterId)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class).getResponseHeaders().getETag();
+        String listETag = webTestClient.get().uri("/subscriptions/newsletters")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class).getResponseHeaders().getETag();
+        webTestClient.get().uri("/subscriptions/newsletter/{newsletterId}", newsletterId).ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isNotModified();
+        webTestClient.get().uri("/subscriptions/newsletters").ifNoneMatch(listETag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        subscriptionService.unsubscribe(new SubscribeRequest(leavingUserId, newsletterId)).block();
+
+        webTestClient.get().uri("/subscriptions/newsletter/{newsletterId}", newsletterId).ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value(HttpHeaders.ETAG, changed -> Assertions.assertNotEquals(eTag, changed));
+        webTestClient.get().uri("/subscriptions/newsletters").ifNoneMatch(listETag)
+                .exchange()
+                .expectStatus().isOk();
+    }
+}
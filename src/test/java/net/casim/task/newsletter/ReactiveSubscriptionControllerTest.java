@@ -0,0 +1,195 @@
+package net.casim.task.newsletter;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.controller.ReactiveSubscriptionController;
+import net.casim.task.newsletter.model.BulkSubscriptionResult;
+import net.casim.task.newsletter.model.BulkSubscriptionStatus;
+import net.casim.task.newsletter.model.ResponseFields;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.model.dto.UserDTO;
+import net.casim.task.newsletter.service.ReactiveSubscriptionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(ReactiveSubscriptionController.class)
+@ActiveProfiles("reactive")
+class ReactiveSubscriptionControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveSubscriptionService subscriptionService;
+
+    @Test
+    void subscribe_ShouldReturnBadRequest_WhenUserIsAlreadySubscribed() {
+        when(subscriptionService.subscribe(new SubscribeRequest(1L, 1L))).thenReturn(Mono.just(false));
+
+        webTestClient.post().uri("/subscriptions/subscribe")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"newsletterId\": 1, \"userId\": 1}")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.message").isEqualTo("User is already subscribed");
+    }
+
+    @Test
+    void subscribe_ShouldReturnNotFound_WhenUserDoesNotExist() {
+        when(subscriptionService.subscribe(new SubscribeRequest(1L, 1L))).thenReturn(Mono.error(new NotFoundException("User not found")));
+
+        webTestClient.post().uri("/subscriptions/subscribe")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"newsletterId\": 1, \"userId\": 1}")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$.message").isEqualTo("Subscription failed: User not found");
+    }
+
+    @Test
+    void unsubscribe_ShouldReturnBadRequest_WhenUserIsNotSubscribed() {
+        when(subscriptionService.unsubscribe(new SubscribeRequest(1L, 1L))).thenReturn(Mono.just(false));
+
+        webTestClient.post().uri("/subscriptions/unsubscribe")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"newsletterId\": 1, \"userId\": 1}")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.message").isEqualTo("User is not subscribed");
+    }
+
+    @Test
+    void subscribeAll_ShouldReturnPerItemResults() {
+        List<SubscribeRequest> subscribeRequests = List.of(new SubscribeRequest(1L, 1L), new SubscribeRequest(2L, 1L));
+        when(subscriptionService.subscribeAll(subscribeRequests)).thenReturn(Flux.just(
+                new BulkSubscriptionResult(1L, 1L, BulkSubscriptionStatus.SUBSCRIBED),
+                new BulkSubscriptionResult(2L, 1L, BulkSubscriptionStatus.USER_NOT_FOUND)));
+
+        webTestClient.post().uri("/subscriptions/bulk/subscribe")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(subscribeRequests)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].status").isEqualTo("SUBSCRIBED")
+                .jsonPath("$[1].status").isEqualTo("USER_NOT_FOUND");
+    }
+
+    @Test
+    void checkSubscription_ShouldReturnSubscriptionStatus() {
+        when(subscriptionService.checkSubscription(1L, 1L)).thenReturn(Mono.just(true));
+
+        webTestClient.get().uri("/subscriptions/checkSubscription?newsletterId=1&userId=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(true);
+    }
+
+    @Test
+    void checkSubscriptions_ShouldReturnMembershipPerNewsletter() {
+        Map<Long, Boolean> memberships = new LinkedHashMap<>();
+        memberships.put(1L, true);
+        memberships.put(2L, false);
+        when(subscriptionService.checkSubscriptions(1L, List.of(1L, 2L))).thenReturn(Mono.just(memberships));
+
+        webTestClient.get().uri("/subscriptions/user/1/checkSubscriptions?newsletterIds=1,2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.1").isEqualTo(true)
+                .jsonPath("$.2").isEqualTo(false);
+    }
+
+    @Test
+    void getSubscribersAfterDate_ShouldReturnSubscribers() {
+        List<UserDTO> subscribers = List.of(new UserDTO(1L, "user1", Collections.emptyList()),
+                new UserDTO(2L, "user2", Collections.emptyList()));
+        when(subscriptionService.getSubscribersAfterDate(1L, "2023-01-01T00:00:00", ResponseFields.ALL)).thenReturn(Flux.fromIterable(subscribers));
+
+        webTestClient.get().uri("/subscriptions/subscribersAfterDate?newsletterId=1&date=2023-01-01T00:00:00")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(UserDTO.class).isEqualTo(subscribers);
+    }
+
+    @Test
+    void getSubscribersBeforeDate_ShouldStreamOneSubscriberPerLine() {
+        when(subscriptionService.getSubscribersBeforeDate(1L, "2023-01-01T00:00:00", ResponseFields.ALL)).thenReturn(Flux.just(
+                new UserDTO(1L, "user1", Collections.emptyList()),
+                new UserDTO(2L, "user2", Collections.emptyList())));
+
+        String body = webTestClient.get().uri("/subscriptions/subscribersBeforeDate?newsletterId=1&date=2023-01-01T00:00:00")
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        Assertions.assertEquals(2, body.trim().split("\n").length);
+    }
+
+    @Test
+    void getAllNewsletters_ShouldReturnAllNewsletters() {
+        List<NewsletterDTO> newsletterDTOs = List.of(
+                new NewsletterDTO(1L, "Newsletter1", "Content1", "2023-01-01", Collections.emptyList()),
+                new NewsletterDTO(2L, "Newsletter2", "Content2", "2023-01-02", Collections.emptyList()));
+        when(subscriptionService.getAllNewslettersETag(ResponseFields.ALL)).thenReturn(Mono.just("\"1\""));
+        when(subscriptionService.getAllNewsletters(ResponseFields.ALL)).thenReturn(Flux.fromIterable(newsletterDTOs));
+
+        webTestClient.get().uri("/subscriptions/newsletters")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(NewsletterDTO.class).isEqualTo(newsletterDTOs);
+    }
+
+    @Test
+    void getNewsletterWithSubscribers_ShouldReturnNotFound_WhenNewsletterHasNoSubscribers() {
+        when(subscriptionService.getNewsletterETag(1L)).thenReturn(Mono.just("\"1\""));
+        when(subscriptionService.getNewsletterWithSubscribers(1L))
+                .thenReturn(Mono.error(new NotFoundException("Newsletter not found or no subscribers")));
+
+        webTestClient.get().uri("/subscriptions/newsletter/{newsletterId}", 1L)
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.get().uri("/subscriptions/newsletter/{newsletterId}", 1L)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1\"")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void getUser_ShouldReturnUser() {
+        UserDTO user = new UserDTO(1L, "user1", Collections.emptyList());
+        when(subscriptionService.getUser(1L, ResponseFields.ALL)).thenReturn(Mono.just(user));
+
+        webTestClient.get().uri("/subscriptions/user/{userId}", 1L)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDTO.class).isEqualTo(user);
+    }
+
+    @Test
+    void pages_ShouldRejectSizesBelowOne() {
+        webTestClient.get().uri("/subscriptions/newsletters?size=0")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri("/subscriptions/subscribers?newsletterId=1&size=-1")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
@@ -0,0 +1,139 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.ResponseFields;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.replica.ReplicaPool;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import net.casim.task.newsletter.web.ConnectionPoolBackPressureFilter;
+import net.casim.task.newsletter.web.ReadYourWritesFilter;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.servlet.http.Cookie;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Two H2 databases, a primary with the Hibernate schema and a replica migrated before the application starts. Nothing
+ * replicates between them, so where a read went shows in what it finds.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica-primary;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.hikari.connection-timeout=1000",
+        "newsletter.replicas.enabled=true",
+        "newsletter.replicas.names=r1",
+        "newsletter.replicas.datasources.r1.url=" + ReplicaRoutingTest.REPLICA_URL + ";IFEXISTS=TRUE",
+        "newsletter.replicas.health-check-interval=PT1H",
+        "newsletter.replicas.read-your-writes-window=PT1M"
+})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ReplicaRoutingTest {
+    static final String REPLICA_URL = "jdbc:h2:mem:replica-r1;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", "password"));
+
+    @Autowired
+    private ReplicaPool replicaPool;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FilterRegistrationBean<ConnectionPoolBackPressureFilter> connectionPoolBackPressureFilter;
+
+    @BeforeAll
+    static void createReplica() {
+        Flyway.configure()
+                .dataSource(REPLICA_URL, "sa", "password")
+                .locations("classpath:db/migration/postgresql")
+                .load()
+                .migrate();
+    }
+
+    @Test
+    void readOnlyTransactions_ShouldGoToAHealthyReplica_AndFallBackToThePrimary() {
+        Long onPrimary = newsletterRepository.save(new Newsletter(null, "Written to the primary", "Content", "2023-01-01", null)).getNewsletterId();
+        replica.update("insert into newsletter (newsletter_id, title, content, publication_date) values (?, 'Only on the replica', 'Content', '2023-01-01')",
+                onPrimary + 1000);
+
+        Assertions.assertEquals(List.of("Only on the replica"), titles());
+
+        replica.execute("shutdown");
+        replicaPool.checkHealth();
+        Assertions.assertNull(replicaPool.next());
+        Assertions.assertTrue(titles().contains("Written to the primary"));
+
+        createReplica();
+        replicaPool.checkHealth();
+        Assertions.assertNotNull(replicaPool.next());
+        Assertions.assertTrue(titles().isEmpty());
+    }
+
+    @Test
+    void connectionPoolBackPressure_ShouldStayEnabled_BehindTheReplicaRouting() {
+        Assertions.assertTrue(connectionPoolBackPressureFilter.isEnabled());
+    }
+
+    @Test
+    void aClientThatWrote_ShouldReadItsWritesFromThePrimary() throws Exception {
+        Long userId = userRepository.save(User.builder().username("reads-own-writes").build()).getUserId();
+        Long newsletterId = newsletterRepository.save(new Newsletter(null, "Sticky", "Content", "2023-01-01", null)).getNewsletterId();
+
+        Cookie sticky = mockMvc.perform(post("/subscriptions/subscribe")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\":" + userId + ",\"newsletterId\":" + newsletterId + "}"))
+                .andExpect(status().isCreated())
+                .andExpect(cookie().exists(ReadYourWritesFilter.COOKIE))
+                .andReturn().getResponse().getCookie(ReadYourWritesFilter.COOKIE);
+
+        mockMvc.perform(get("/subscriptions/subscribersAfterDate")
+                        .param("newsletterId", newsletterId.toString())
+                        .param("date", "2000-01-01T00:00:00")
+                        .cookie(sticky))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].userId").value(userId));
+        mockMvc.perform(get("/subscriptions/subscribersAfterDate")
+                        .param("newsletterId", newsletterId.toString())
+                        .param("date", "2000-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    private List<String> titles() {
+        return subscriptionService.getNewslettersPage(null, 100, ResponseFields.ALL).getNewsletters().stream()
+                .map(NewsletterDTO::getTitle)
+                .filter(title -> title.contains("replica") || title.contains("primary"))
+                .collect(Collectors.toList());
+    }
+}
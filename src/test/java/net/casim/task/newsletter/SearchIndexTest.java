@@ -0,0 +1,93 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.SearchHitDTO;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.search.SearchIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "newsletter.search.rebuild-page-size=2")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class SearchIndexTest {
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void searchNewsletters_ShouldMatchEveryWord_AndFollowUpdatesAndDeletes() {
+        Newsletter gardening = newsletterRepository.save(new Newsletter(null, "Zephyr Gardening", "Roses and tulips", "2023-01-01", null));
+        Newsletter cooking = newsletterRepository.save(new Newsletter(null, "Zephyr Cooking", "Tulip bulbs are edible", "2023-01-01", null));
+
+        Assertions.assertEquals(List.of(gardening.getNewsletterId(), cooking.getNewsletterId()), ids(searchIndex.searchNewsletters("zephyr", false, 10)));
+        Assertions.assertEquals(List.of(gardening.getNewsletterId()), ids(searchIndex.searchNewsletters("Zephyr ROSES", false, 10)));
+        Assertions.assertEquals("Zephyr Gardening", searchIndex.searchNewsletters("roses", false, 10).get(0).getLabel());
+        Assertions.assertEquals(List.of(cooking.getNewsletterId(), gardening.getNewsletterId()), ids(searchIndex.searchNewsletters("zephyr tul", true, 10)));
+        Assertions.assertEquals(1, searchIndex.searchNewsletters("zephyr", false, 1).size());
+
+        gardening.setContent("Ferns only");
+        newsletterRepository.save(gardening);
+        Assertions.assertTrue(searchIndex.searchNewsletters("roses", false, 10).isEmpty());
+        Assertions.assertEquals(List.of(gardening.getNewsletterId()), ids(searchIndex.searchNewsletters("zephyr fern", true, 10)));
+
+        newsletterRepository.delete(cooking);
+        Assertions.assertTrue(searchIndex.searchNewsletters("zephyr cooking", false, 10).isEmpty());
+    }
+
+    @Test
+    void rebuild_ShouldReadEveryPageOfUsers() {
+        List<Long> userIds = List.of(
+                userRepository.save(User.builder().username("quillon.alpha").build()).getUserId(),
+                userRepository.save(User.builder().username("quillon.beta").build()).getUserId(),
+                userRepository.save(User.builder().username("quillon.gamma").build()).getUserId());
+
+        searchIndex.rebuild();
+
+        Assertions.assertTrue(searchIndex.isReady());
+        Assertions.assertEquals(userIds, ids(searchIndex.searchUsers("quillon", false, 10)));
+        Assertions.assertEquals(List.of(userIds.get(1)), ids(searchIndex.searchUsers("quillon.be", true, 10)));
+    }
+
+    @Test
+    void searchEndpoints_ShouldCompletePrefixes_AndRejectLargeLimits() throws Exception {
+        Long userId = userRepository.save(User.builder().username("marrowind").build()).getUserId();
+
+        mockMvc.perform(get("/search/users").param("q", "marrow"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(userId))
+                .andExpect(jsonPath("$[0].label").value("marrowind"));
+        mockMvc.perform(get("/search/users").param("q", "marrow").param("prefix", "false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/search/newsletters").param("q", "marrow").param("limit", "101"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static List<Long> ids(List<SearchHitDTO> hits) {
+        return hits.stream().map(SearchHitDTO::getId).collect(Collectors.toList());
+    }
+}
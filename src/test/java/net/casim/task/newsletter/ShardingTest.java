@@ -0,0 +1,144 @@
+package net.casim.task.newsletter;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.BulkSubscriptionResult;
+import net.casim.task.newsletter.model.BulkSubscriptionStatus;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.ResponseFields;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.NewsletterDTO;
+import net.casim.task.newsletter.model.dto.UserDTO;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import net.casim.task.newsletter.shard.ShardRebalancer;
+import net.casim.task.newsletter.shard.Shards;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Three H2 databases as shards: the default one with the Hibernate schema, the others migrated on startup.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shard-a;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "newsletter.sharding.enabled=true",
+        "newsletter.sharding.shards=a,b,c",
+        "newsletter.sharding.datasources.b.url=jdbc:h2:mem:shard-b;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "newsletter.sharding.datasources.c.url=jdbc:h2:mem:shard-c;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ShardingTest {
+
+    @Autowired
+    private Shards shards;
+
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * One newsletter placed on each shard.
+     */
+    private Map<String, Long> newsletterByShard;
+
+    @BeforeEach
+    void setUp() {
+        newsletterByShard = new HashMap<>();
+        while (newsletterByShard.size() < shards.getNames().size()) {
+            Long newsletterId = newsletterRepository.save(new Newsletter(null, "Sharded", "Content", "2023-01-01", null)).getNewsletterId();
+            newsletterByShard.putIfAbsent(shards.shardOf(newsletterId), newsletterId);
+        }
+    }
+
+    @Test
+    void subscribe_ShouldWriteToTheNewslettersShard_AndUserReadsShouldGatherEveryShard() throws NotFoundException {
+        Long userId = userRepository.save(User.builder().username("sharded-reader").build()).getUserId();
+        for (Long newsletterId : newsletterByShard.values())
+            Assertions.assertTrue(subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId)));
+
+        for (String shard : shards.getNames()) {
+            Assertions.assertEquals(1, count(shard, "select count(*) from users where user_id = ?", userId));
+            Assertions.assertEquals(1, count(shard, "select count(*) from subscription where user_id = ?", userId));
+            Assertions.assertEquals(1, count(shard, "select count(*) from subscription where user_id = ? and newsletter_id = ?",
+                    userId, newsletterByShard.get(shard)));
+        }
+
+        UserDTO user = subscriptionService.getUser(userId, ResponseFields.ALL);
+        Assertions.assertEquals(newsletterByShard.values().stream().sorted().collect(Collectors.toList()),
+                user.getSubscribedNewsletters().stream().map(NewsletterDTO::getNewsletterId).sorted().collect(Collectors.toList()));
+        Assertions.assertEquals(List.of("sharded-reader"),
+                subscriptionService.getNewsletterWithSubscribers(newsletterByShard.get("c")).getSubscribedUsernames());
+    }
+
+    @Test
+    void subscribeAll_ShouldKeepTheRequestOrder_AcrossShards() {
+        Long userId = userRepository.save(User.builder().username("sharded-bulk").build()).getUserId();
+        List<SubscribeRequest> requests = List.of(
+                new SubscribeRequest(userId, newsletterByShard.get("c")),
+                new SubscribeRequest(userId, newsletterByShard.get("a")),
+                new SubscribeRequest(userId, newsletterByShard.get("b")),
+                new SubscribeRequest(userId, newsletterByShard.get("c")));
+
+        List<BulkSubscriptionResult> results = subscriptionService.subscribeAll(requests);
+
+        Assertions.assertEquals(requests.stream().map(SubscribeRequest::getNewsletterId).collect(Collectors.toList()),
+                results.stream().map(BulkSubscriptionResult::getNewsletterId).collect(Collectors.toList()));
+        Assertions.assertEquals(List.of(BulkSubscriptionStatus.SUBSCRIBED, BulkSubscriptionStatus.SUBSCRIBED,
+                        BulkSubscriptionStatus.SUBSCRIBED, BulkSubscriptionStatus.ALREADY_SUBSCRIBED),
+                results.stream().map(BulkSubscriptionResult::getStatus).collect(Collectors.toList()));
+        Assertions.assertEquals(1, count("c", "select count(*) from subscription where user_id = ?", userId));
+    }
+
+    @Test
+    void rebalance_ShouldMoveMisplacedSubscriptions_AndKeepNewerOnes() {
+        Long newsletterId = newsletterByShard.get("b");
+        List<Long> userIds = List.of(
+                userRepository.save(User.builder().username("moved-1").build()).getUserId(),
+                userRepository.save(User.builder().username("moved-2").build()).getUserId(),
+                userRepository.save(User.builder().username("resubscribed").build()).getUserId());
+        // written to the default shard, as the seed data is
+        for (Long userId : userIds) {
+            jdbcTemplate.update("insert into subscription (id, subscribed, newsletter_id, user_id, created_at, version) " +
+                    "values (nextval('subscription_seq'), true, ?, ?, current_timestamp, 0)", newsletterId, userId);
+        }
+        try (Shards.Route route = shards.route("b")) {
+            jdbcTemplate.update("insert into subscription (id, subscribed, newsletter_id, user_id, created_at, version) " +
+                    "values (nextval('subscription_seq'), false, ?, ?, current_timestamp, 0)", newsletterId, userIds.get(2));
+        }
+
+        Assertions.assertEquals(3, shardRebalancer.rebalance());
+
+        Assertions.assertEquals(0, count("a", "select count(*) from subscription where newsletter_id = ?", newsletterId));
+        Assertions.assertEquals(3, count("b", "select count(*) from subscription where newsletter_id = ?", newsletterId));
+        Assertions.assertEquals(2, count("b", "select count(*) from subscription where newsletter_id = ? and subscribed = true", newsletterId));
+        Assertions.assertEquals(0, shardRebalancer.rebalance());
+    }
+
+    private long count(String shard, String sql, Object... arguments) {
+        try (Shards.Route route = shards.route(shard)) {
+            return jdbcTemplate.queryForObject(sql, Long.class, arguments);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package net.casim.task.newsletter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import javassist.NotFoundException;
+import net.casim.task.newsletter.controller.SubscriptionController;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // background writes in the middle of a request would show up in the statement count
+        "newsletter.stats.flush-interval=PT1H",
+        "newsletter.outbox.relay-interval=PT1H"
+})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class SparseFieldsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private final List<Long> newsletterIds = new ArrayList<>();
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() throws NotFoundException {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        newsletterIds.clear();
+        userId = userRepository.save(User.builder().username("sparse").build()).getUserId();
+        for (int i = 0; i < 3; i++) {
+            Long newsletterId = newsletterRepository.save(new Newsletter(null, "Sparse " + i, "Content " + i, "2023-01-01", null)).getNewsletterId();
+            subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+            newsletterIds.add(newsletterId);
+        }
+    }
+
+    @Test
+    void newslettersPage_ShouldOnlyReadRequestedFields_AndLinkTheNextPage() throws Exception {
+        String cursor = String.valueOf(newsletterIds.get(0) - 1);
+
+        statistics.clear();
+        MvcResult result = mockMvc.perform(get("/subscriptions/newsletters")
+                        .param("cursor", cursor).param("size", "2").param("fields", "title"))
+                .andExpect(status().isOk())
+                .andReturn();
+        // one keyset query for the titles, no content column and no subscriber lookup
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+
+        JsonNode page = objectMapper.readTree(result.getResponse().getContentAsString());
+        Assertions.assertEquals(2, page.size());
+        Assertions.assertEquals("Sparse 0", page.get(0).get("title").asText());
+        Assertions.assertFalse(page.get(0).has("content"));
+        Assertions.assertFalse(page.get(0).has("subscribedUsernames"));
+
+        String nextCursor = result.getResponse().getHeader(SubscriptionController.NEXT_CURSOR_HEADER);
+        Assertions.assertEquals(String.valueOf(newsletterIds.get(1)), nextCursor);
+
+        JsonNode next = objectMapper.readTree(mockMvc.perform(get("/subscriptions/newsletters")
+                        .param("cursor", nextCursor).param("size", "1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        Assertions.assertEquals("Sparse 2", next.get(0).get("title").asText());
+        Assertions.assertEquals("Content 2", next.get(0).get("content").asText());
+        Assertions.assertEquals("sparse", next.get(0).get("subscribedUsernames").get(0).asText());
+    }
+
+    @Test
+    void pages_ShouldRejectSizesBelowOne_AndCapLargeOnes() throws Exception {
+        for (String size : new String[]{"0", "-1"}) {
+            mockMvc.perform(get("/subscriptions/newsletters").param("size", size))
+                    .andExpect(status().isBadRequest());
+            mockMvc.perform(get("/subscriptions/subscribers").param("newsletterId", newsletterIds.get(0).toString()).param("size", size))
+                    .andExpect(status().isBadRequest());
+        }
+
+        newsletterRepository.saveAll(IntStream.range(0, 1000)
+                .mapToObj(i -> new Newsletter(null, "Capped " + i, "Content", "2023-01-01", null))
+                .collect(Collectors.toList()));
+        JsonNode page = objectMapper.readTree(mockMvc.perform(get("/subscriptions/newsletters")
+                        .param("size", "1000000").param("fields", "title"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(SubscriptionController.NEXT_CURSOR_HEADER))
+                .andReturn().getResponse().getContentAsString());
+        Assertions.assertEquals(1000, page.size());
+    }
+
+    @Test
+    void pages_ShouldRejectMalformedCursorsAndDates() throws Exception {
+        String newsletterId = newsletterIds.get(0).toString();
+        for (String cursor : new String[]{"bad", "2023-01-01T00:00:00_x", "yesterday_1"})
+            mockMvc.perform(get("/subscriptions/subscribers").param("newsletterId", newsletterId).param("cursor", cursor))
+                    .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/subscriptions/subscribers").param("newsletterId", newsletterId).param("after", "yesterday"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/subscriptions/subscribers").param("newsletterId", newsletterId).param("before", "2023-13-01T00:00:00"))
+                .andExpect(status().isBadRequest());
+        for (String cursor : new String[]{"bad", "-1"})
+            mockMvc.perform(get("/subscriptions/newsletters").param("cursor", cursor))
+                    .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/subscriptions/subscribersBeforeDate").param("newsletterId", newsletterId).param("date", "yesterday"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void user_ShouldLeaveOutSubscribedNewsletters_WhenNotSelected() throws Exception {
+        JsonNode user = objectMapper.readTree(mockMvc.perform(get("/subscriptions/user/{userId}", userId).param("fields", ""))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+
+        Assertions.assertEquals("sparse", user.get("username").asText());
+        Assertions.assertFalse(user.has("subscribedNewsletters"));
+
+        JsonNode full = objectMapper.readTree(mockMvc.perform(get("/subscriptions/user/{userId}", userId))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        Assertions.assertEquals(3, full.get("subscribedNewsletters").size());
+    }
+}
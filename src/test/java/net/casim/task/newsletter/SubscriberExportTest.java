@@ -0,0 +1,110 @@
+package net.casim.task.newsletter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class SubscriberExportTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long newsletterId;
+
+    @BeforeEach
+    void setUp() {
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Export", "Content", "2023-01-01", null)).getNewsletterId();
+        List<SubscribeRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Long userId = userRepository.save(User.builder().username("export," + i).build()).getUserId();
+            requests.add(new SubscribeRequest(userId, newsletterId));
+        }
+        subscriptionService.subscribeAll(requests);
+    }
+
+    @Test
+    void exportNdjson_ShouldStreamEverySubscriber_AndResumeFromCursor() throws Exception {
+        List<JsonNode> rows = export("ndjson", null).stream()
+                .map(this::readTree)
+                .collect(Collectors.toList());
+
+        Assertions.assertEquals(3, rows.size());
+        Assertions.assertEquals("export,0", rows.get(0).get("username").asText());
+
+        List<String> resumed = export("ndjson", rows.get(0).get("cursor").asText());
+        Assertions.assertEquals(2, resumed.size());
+        Assertions.assertEquals("export,1", readTree(resumed.get(0)).get("username").asText());
+    }
+
+    @Test
+    void exportCsv_ShouldWriteHeaderAndQuoteValues() throws Exception {
+        List<String> lines = export("csv", null);
+
+        Assertions.assertEquals(4, lines.size());
+        Assertions.assertEquals("userId,username,subscribedAt,cursor", lines.get(0));
+        Assertions.assertTrue(lines.get(1).contains(",\"export,0\","));
+    }
+
+    @Test
+    void export_ShouldRejectUnknownFormats() throws Exception {
+        mockMvc.perform(get("/subscriptions/newsletter/{newsletterId}/subscribers/export", newsletterId).param("format", "xml"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("format must be one of ndjson, csv"));
+    }
+
+    private List<String> export(String format, String since) throws Exception {
+        MvcResult result = mockMvc.perform(get("/subscriptions/newsletter/{newsletterId}/subscribers/export", newsletterId)
+                        .param("format", format)
+                        .param("since", since))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult();
+
+        return result.getResponse().getContentAsString().lines().collect(Collectors.toList());
+    }
+
+    private JsonNode readTree(String line) {
+        try {
+            return objectMapper.readTree(line);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package net.casim.task.newsletter;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.SubscriptionChangeDTO;
+import net.casim.task.newsletter.model.dto.SubscriptionChangePageDTO;
+import net.casim.task.newsletter.outbox.OutboxRelay;
+import net.casim.task.newsletter.outbox.SubscriptionChangeFeed;
+import net.casim.task.newsletter.outbox.SubscriptionChangeSink;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "newsletter.outbox.relay-interval=PT1H")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@Import(SubscriptionChangeFeedTest.RecordingSinkConfig.class)
+class SubscriptionChangeFeedTest {
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private SubscriptionChangeFeed changeFeed;
+
+    @Autowired
+    private RecordingSink sink;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private Long newsletterId;
+
+    private long lastPosition;
+
+    @BeforeEach
+    void setUp() {
+        outboxRelay.relay();
+        sink.published.clear();
+        sink.failing = false;
+        lastPosition = changeFeed.read(0, SubscriptionChangeFeed.MAX_LIMIT).getNextAfter();
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Streamed", "Content", "2023-01-01", null)).getNewsletterId();
+    }
+
+    @Test
+    void relay_ShouldPublishChangesInOrder_WithConsecutivePositions() throws NotFoundException {
+        Long first = user("stream-a");
+        Long second = user("stream-b");
+        subscriptionService.subscribe(new SubscribeRequest(first, newsletterId));
+        subscriptionService.subscribe(new SubscribeRequest(second, newsletterId));
+        subscriptionService.subscribe(new SubscribeRequest(second, newsletterId));
+        subscriptionService.unsubscribe(new SubscribeRequest(first, newsletterId));
+
+        Assertions.assertEquals(3, outboxRelay.relayBatch());
+
+        Assertions.assertEquals(List.of(lastPosition + 1, lastPosition + 2, lastPosition + 3), positions(sink.published));
+        Assertions.assertEquals(List.of(first, second, first),
+                sink.published.stream().map(SubscriptionChangeDTO::getUserId).collect(Collectors.toList()));
+        Assertions.assertEquals(List.of(true, true, false),
+                sink.published.stream().map(SubscriptionChangeDTO::isSubscribed).collect(Collectors.toList()));
+
+        SubscriptionChangePageDTO page = changeFeed.read(lastPosition + 1, 10);
+        Assertions.assertEquals(List.of(lastPosition + 2, lastPosition + 3), positions(page.getChanges()));
+        Assertions.assertEquals(lastPosition + 3, page.getNextAfter());
+        Assertions.assertEquals(0, outboxRelay.relayBatch());
+    }
+
+    @Test
+    void outbox_ShouldRollBackWithTheSubscription() throws NotFoundException {
+        Long userId = user("stream-rolled-back");
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+            } catch (NotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+            status.setRollbackOnly();
+        });
+
+        Assertions.assertEquals(0, outboxRelay.relayBatch());
+        Assertions.assertTrue(sink.published.isEmpty());
+    }
+
+    @Test
+    void relay_ShouldRetryABatchTheSinkRejected() throws NotFoundException {
+        Long userId = user("stream-retried");
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+
+        sink.failing = true;
+        outboxRelay.relay();
+        Assertions.assertTrue(changeFeed.read(lastPosition, 10).getChanges().isEmpty());
+
+        sink.failing = false;
+        outboxRelay.relay();
+        Assertions.assertEquals(List.of(lastPosition + 1), positions(sink.published));
+        Assertions.assertEquals(userId, changeFeed.read(lastPosition, 10).getChanges().get(0).getUserId());
+    }
+
+    @Test
+    void poll_ShouldWaitForTheNextChange() throws Exception {
+        CompletableFuture<SubscriptionChangePageDTO> waiting = changeFeed.poll(lastPosition, 10, Duration.ofSeconds(10));
+        Assertions.assertFalse(waiting.isDone());
+
+        Long userId = user("stream-awaited");
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        outboxRelay.relayBatch();
+
+        SubscriptionChangePageDTO page = waiting.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(List.of(lastPosition + 1), positions(page.getChanges()));
+        Assertions.assertEquals(lastPosition + 1, page.getNextAfter());
+
+        SubscriptionChangePageDTO timedOut = changeFeed.poll(page.getNextAfter(), 10, Duration.ofMillis(50)).get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(timedOut.getChanges().isEmpty());
+        Assertions.assertEquals(page.getNextAfter(), timedOut.getNextAfter());
+    }
+
+    @Test
+    void changesEndpoint_ShouldRejectLargeLimitsAndWaits() throws Exception {
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/subscriptions/changes").param("limit", "1001")).andReturn()))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/subscriptions/changes").param("wait", "31")).andReturn()))
+                .andExpect(status().isBadRequest());
+    }
+
+    private Long user(String username) {
+        return userRepository.save(User.builder().username(username).build()).getUserId();
+    }
+
+    private static List<Long> positions(List<SubscriptionChangeDTO> changes) {
+        return changes.stream().map(SubscriptionChangeDTO::getPosition).collect(Collectors.toList());
+    }
+
+    static class RecordingSink implements SubscriptionChangeSink {
+        final List<SubscriptionChangeDTO> published = new CopyOnWriteArrayList<>();
+        volatile boolean failing;
+
+        @Override
+        public void publish(List<SubscriptionChangeDTO> changes) {
+            if (failing)
+                throw new IllegalStateException("Broker unavailable");
+            published.addAll(changes);
+        }
+    }
+
+    @TestConfiguration
+    static class RecordingSinkConfig {
+        @Bean
+        @Primary
+        RecordingSink recordingSink() {
+            return new RecordingSink();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package net.casim.task.newsletter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import javassist.NotFoundException;
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // background writes in the middle of a request would show up in the statement count
+        "newsletter.stats.flush-interval=PT1H",
+        "newsletter.outbox.relay-interval=PT1H"
+})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class SubscriptionIndexTest {
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionIndex subscriptionIndex;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private Statistics statistics;
+
+    private Long newsletterId;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Indexed", "Content", "2023-01-01", null)).getNewsletterId();
+        userId = userRepository.save(User.builder().username("indexed").build()).getUserId();
+    }
+
+    @Test
+    void checkSubscription_ShouldBeAnsweredWithoutDatabase_AfterSubscribeAndUnsubscribe() throws NotFoundException {
+        Assertions.assertTrue(subscriptionIndex.isReady());
+
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        statistics.clear();
+        Assertions.assertTrue(subscriptionService.checkSubscription(newsletterId, userId));
+        Assertions.assertEquals(0, statistics.getPrepareStatementCount());
+
+        subscriptionService.unsubscribe(new SubscribeRequest(userId, newsletterId));
+        statistics.clear();
+        Assertions.assertFalse(subscriptionService.checkSubscription(newsletterId, userId));
+        Assertions.assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void reconcile_ShouldUndoAChangeWhoseEventArrivedOutOfOrder() throws NotFoundException {
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        subscriptionService.unsubscribe(new SubscribeRequest(userId, newsletterId));
+        // the subscribe's event delivered after the unsubscribe's
+        subscriptionIndex.onSubscriptionChanged(new SubscriptionChangedEvent(userId, newsletterId, true));
+        Assertions.assertTrue(subscriptionIndex.contains(newsletterId, userId));
+
+        subscriptionIndex.reconcile();
+
+        Assertions.assertFalse(subscriptionIndex.contains(newsletterId, userId));
+        Assertions.assertEquals(0, subscriptionIndex.count(newsletterId));
+    }
+
+    @Test
+    void subscribe_ShouldLeaveIndexUnchanged_WhenNewsletterIsMissing() {
+        Assertions.assertThrows(NotFoundException.class,
+                () -> subscriptionService.subscribe(new SubscribeRequest(userId, Long.MAX_VALUE)));
+
+        Assertions.assertFalse(subscriptionService.checkSubscription(Long.MAX_VALUE, userId));
+    }
+
+    @Test
+    void checkSubscription_ShouldBeFalse_ForUserIdsOutsideTheIndex() throws Exception {
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+
+        for (long outside : new long[]{-1, Integer.MAX_VALUE + 1L}) {
+            mockMvc.perform(get("/subscriptions/checkSubscription")
+                            .param("newsletterId", newsletterId.toString())
+                            .param("userId", String.valueOf(outside)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$").value(false));
+        }
+        Assertions.assertTrue(subscriptionIndex.isReady());
+    }
+
+    @Test
+    void indexMetrics_ShouldReportSizeAndFootprint() throws NotFoundException {
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+
+        Assertions.assertTrue(meterRegistry.get("subscription.index.memberships").gauge().value() >= 1);
+        Assertions.assertTrue(meterRegistry.get("subscription.index.memory").gauge().value() > 0);
+    }
+
+    @Test
+    void checkSubscriptions_ShouldAnswerEveryNewsletterWithoutDatabase_InRequestOrder() throws Exception {
+        Long unsubscribedId = newsletterRepository.save(new Newsletter(null, "Unsubscribed", "Content", "2023-01-01", null)).getNewsletterId();
+        Long otherUserId = userRepository.save(User.builder().username("indexed-other").build()).getUserId();
+        subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        subscriptionService.subscribe(new SubscribeRequest(userId, unsubscribedId));
+        subscriptionService.unsubscribe(new SubscribeRequest(userId, unsubscribedId));
+        subscriptionService.subscribe(new SubscribeRequest(otherUserId, newsletterId));
+
+        statistics.clear();
+        Map<Long, Boolean> newsletters = subscriptionService.checkSubscriptions(userId, List.of(unsubscribedId, newsletterId, Long.MAX_VALUE, newsletterId));
+        Map<Long, Boolean> users = subscriptionService.checkSubscribers(newsletterId, List.of(otherUserId, userId, Long.MAX_VALUE));
+        Assertions.assertEquals(0, statistics.getPrepareStatementCount());
+
+        Assertions.assertEquals(List.of(unsubscribedId, newsletterId, Long.MAX_VALUE), List.copyOf(newsletters.keySet()));
+        Assertions.assertEquals(List.of(false, true, false), List.copyOf(newsletters.values()));
+        Assertions.assertEquals(Map.of(otherUserId, true, userId, true, Long.MAX_VALUE, false), users);
+
+        mockMvc.perform(get("/subscriptions/user/{userId}/checkSubscriptions", userId)
+                        .param("newsletterIds", unsubscribedId + "," + newsletterId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['" + unsubscribedId + "']").value(false))
+                .andExpect(jsonPath("$['" + newsletterId + "']").value(true));
+    }
+
+    @Test
+    void checkSubscribers_ShouldRejectTooManyOrNegativeIds() throws Exception {
+        String userIds = LongStream.rangeClosed(1, 1001).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+        mockMvc.perform(get("/subscriptions/newsletter/{newsletterId}/checkSubscribers", newsletterId).param("userIds", userIds))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/subscriptions/newsletter/{newsletterId}/checkSubscribers", newsletterId).param("userIds", userId + ",-1"))
+                .andExpect(status().isBadRequest());
+    }
+}
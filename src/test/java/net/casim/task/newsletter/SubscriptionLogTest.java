@@ -0,0 +1,101 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.writebehind.Durability;
+import net.casim.task.newsletter.writebehind.SubscriptionLog;
+import net.casim.task.newsletter.writebehind.SubscriptionLogRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class SubscriptionLogTest {
+    private static final int RECORD_SIZE = 40;
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123456000);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void open_ShouldRecoverUndrainedRecords_AfterReopen() throws IOException {
+        SubscriptionLog log = newLog(Durability.GROUP, 1024);
+        Assertions.assertTrue(log.open().isEmpty());
+
+        SubscriptionLogRecord first = log.append(1L, 10L, true, CREATED_AT);
+        SubscriptionLogRecord second = log.append(2L, 10L, false, CREATED_AT);
+        log.awaitDurable(second);
+        log.close();
+
+        List<SubscriptionLogRecord> recovered = newLog(Durability.GROUP, 1024).open();
+
+        Assertions.assertEquals(List.of(first, second), recovered);
+        Assertions.assertEquals(1, first.getSequence());
+        Assertions.assertEquals(2, second.getSequence());
+    }
+
+    @Test
+    void markDrained_ShouldOnlyAdvancePastContiguousRecords_AndDeleteDrainedSegments() throws IOException {
+        SubscriptionLog log = newLog(Durability.REQUEST, 2 * RECORD_SIZE);
+        log.open();
+        SubscriptionLogRecord first = log.append(1L, 10L, true, CREATED_AT);
+        SubscriptionLogRecord second = log.append(2L, 10L, true, CREATED_AT);
+        SubscriptionLogRecord third = log.append(3L, 10L, true, CREATED_AT);
+        log.awaitDurable(third);
+        Assertions.assertEquals(2, segments().size());
+
+        // the second and third record are drained before the first one
+        log.markDrained(List.of(second, third));
+        Assertions.assertEquals(2, segments().size());
+        log.markDrained(List.of(first));
+        Assertions.assertEquals(1, segments().size());
+        Assertions.assertEquals(0, log.undrainedCount());
+
+        SubscriptionLogRecord fourth = log.append(4L, 10L, false, CREATED_AT);
+        log.close();
+
+        SubscriptionLog reopened = newLog(Durability.REQUEST, 2 * RECORD_SIZE);
+        Assertions.assertEquals(List.of(fourth), reopened.open());
+        Assertions.assertEquals(5, reopened.append(5L, 10L, true, CREATED_AT).getSequence());
+        reopened.close();
+    }
+
+    @Test
+    void open_ShouldStopAtTornRecord() throws IOException {
+        SubscriptionLog log = newLog(Durability.REQUEST, 1024);
+        log.open();
+        SubscriptionLogRecord first = log.append(1L, 10L, true, CREATED_AT);
+        log.append(2L, 10L, true, CREATED_AT);
+        log.close();
+
+        try (RandomAccessFile segment = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+            segment.seek(RECORD_SIZE + 8);
+            segment.write(0x7f);
+        }
+
+        SubscriptionLog reopened = newLog(Durability.REQUEST, 1024);
+        Assertions.assertEquals(List.of(first), reopened.open());
+        Assertions.assertEquals(2, reopened.append(2L, 10L, true, CREATED_AT).getSequence());
+        reopened.close();
+    }
+
+    private SubscriptionLog newLog(Durability durability, long segmentSize) {
+        return new SubscriptionLog(directory, durability, Duration.ofMillis(1), segmentSize);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.casim.task.newsletter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class SubscriptionMetricsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void subscribe_ShouldRecordOutcomesTimersAndStatementCounts() throws Exception {
+        Long newsletterId = newsletterRepository.save(new Newsletter(null, "Measured", "Content", "2023-01-01", null)).getNewsletterId();
+        Long userId = userRepository.save(User.builder().username("measured").build()).getUserId();
+        String body = "{\"newsletterId\": " + newsletterId + ", \"userId\": " + userId + "}";
+        double created = outcome("subscribe", "created");
+        double alreadySubscribed = outcome("subscribe", "already_subscribed");
+        double notFound = outcome("subscribe", "not_found");
+        long serviceCalls = meterRegistry.find("subscription.service").tag("method", "subscribe").tag("exception", "none").timers().stream()
+                .mapToLong(Timer::count).sum();
+
+        mockMvc.perform(post("/subscriptions/subscribe").content(body).contentType("application/json"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/subscriptions/subscribe").content(body).contentType("application/json"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/subscriptions/subscribe").content("{\"newsletterId\": " + Long.MAX_VALUE + ", \"userId\": " + userId + "}")
+                        .contentType("application/json"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/subscriptions/newsletter/" + newsletterId)).andExpect(status().isOk());
+
+        Assertions.assertEquals(created + 1, outcome("subscribe", "created"));
+        Assertions.assertEquals(alreadySubscribed + 1, outcome("subscribe", "already_subscribed"));
+        Assertions.assertEquals(notFound + 1, outcome("subscribe", "not_found"));
+
+        Assertions.assertEquals(2, meterRegistry.get("subscription.service").tag("method", "subscribe").tag("exception", "none").timer().count()
+                - serviceCalls);
+        Assertions.assertNotNull(meterRegistry.find("subscription.service").tag("method", "subscribe").tag("exception", "NotFoundException").timer());
+        Assertions.assertTrue(meterRegistry.get("subscription.repository").tag("repository", "SubscriptionRepository")
+                .tag("method", "upsertSubscribed").timer().count() >= 2);
+        Assertions.assertTrue(meterRegistry.get("http.server.requests.sql.statements")
+                .tag("uri", "/subscriptions/subscribe").summary().totalAmount() > 0);
+        Assertions.assertTrue(meterRegistry.get("http.server.requests.sql.statements")
+                .tag("uri", "/subscriptions/newsletter/{newsletterId}").summary().count() >= 1);
+
+        Assertions.assertNotNull(meterRegistry.find("hibernate.statements").functionCounter());
+    }
+
+    private double outcome(String operation, String outcome) {
+        return meterRegistry.get("subscription.outcome").tag("operation", operation).tag("outcome", outcome).counter().count();
+    }
+}
@@ -0,0 +1,130 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.Subscription;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.service.SubscriptionStats;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class SubscriptionQueryCountTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private SubscriptionStats subscriptionStats;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    private Long newsletterId;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        // counts left by other tests sharing the context would otherwise be flushed in the middle of a measurement
+        subscriptionStats.flush();
+    }
+
+    @Test
+    void queryCount_ShouldStayConstant_WhenSubscribersGrow() throws Exception {
+        seed(3, 5);
+        Map<String, Long> small = countQueriesPerEndpoint();
+
+        seed(6, 30);
+        Map<String, Long> large = countQueriesPerEndpoint();
+
+        Assertions.assertEquals(small, large);
+    }
+
+    /**
+     * Adds newsletters and users and subscribes every user to every newsletter.
+     */
+    private void seed(int newsletters, int users) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < newsletters; i++) {
+                entityManager.persist(new Newsletter(null, "Newsletter", "Content", "2023-01-01", null));
+            }
+            for (int i = 0; i < users; i++) {
+                entityManager.persist(User.builder().username("user" + i).build());
+            }
+            entityManager.flush();
+
+            List<Newsletter> allNewsletters = entityManager.createQuery("select n from Newsletter n", Newsletter.class).getResultList();
+            List<User> allUsers = entityManager.createQuery("select u from User u", User.class).getResultList();
+            entityManager.createQuery("delete from Subscription").executeUpdate();
+            for (Newsletter newsletter : allNewsletters) {
+                for (User user : allUsers) {
+                    entityManager.persist(Subscription.builder()
+                            .newsletter(newsletter)
+                            .user(user)
+                            .subscribed(true)
+                            .createdAt(LocalDateTime.of(2023, 1, 1, 0, 0))
+                            .build());
+                }
+            }
+
+            newsletterId = allNewsletters.get(0).getNewsletterId();
+            userId = allUsers.get(0).getUserId();
+        });
+    }
+
+    private Map<String, Long> countQueriesPerEndpoint() throws Exception {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        count(counts, "/subscriptions/subscribersBeforeDate?newsletterId=" + newsletterId + "&date=2024-01-01T00:00:00");
+        count(counts, "/subscriptions/subscribersAfterDate?newsletterId=" + newsletterId + "&date=2022-01-01T00:00:00");
+        count(counts, "/subscriptions/subscribers?newsletterId=" + newsletterId + "&size=1000");
+        count(counts, "/subscriptions/newsletters");
+        count(counts, "/subscriptions/newsletter/" + newsletterId);
+        count(counts, "/subscriptions/user/" + userId);
+        return counts;
+    }
+
+    /**
+     * Measures each endpoint with cold caches, so the counts reflect the queries a cache miss costs.
+     */
+    private void count(Map<String, Long> counts, String uri) throws Exception {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        statistics.clear();
+        mockMvc.perform(get(uri)).andExpect(status().isOk());
+        counts.put(uri.split("\\?")[0].replaceAll("/[0-9]+$", "/{id}"), statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,116 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.Subscription;
+import net.casim.task.newsletter.model.SubscriptionCursor;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.projection.SubscriberView;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@DataJpaTest
+class SubscriptionRepositoryTest {
+
+    private static final LocalDateTime BASE_DATE = LocalDateTime.of(2023, 1, 1, 0, 0);
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Newsletter newsletter;
+
+    private Newsletter other;
+
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        newsletter = newsletterRepository.save(new Newsletter(null, "Newsletter", "Content", "2023-01-01", null));
+        other = newsletterRepository.save(new Newsletter(null, "Other", "Content", "2023-01-01", null));
+
+        for (int i = 0; i < 10; i++) {
+            User user = userRepository.save(User.builder().username("user" + i).build());
+            userIds.add(user.getUserId());
+            subscriptionRepository.save(Subscription.builder()
+                    .user(user)
+                    .newsletter(newsletter)
+                    .subscribed(i != 9)
+                    .createdAt(BASE_DATE.plusDays(i))
+                    .build());
+            subscriptionRepository.save(Subscription.builder()
+                    .user(user)
+                    .newsletter(other)
+                    .subscribed(true)
+                    .createdAt(BASE_DATE.plusDays(i))
+                    .build());
+        }
+    }
+
+    @Test
+    void findBeforeDate_ShouldReturnOnlyActiveSubscriptionsOfNewsletter() {
+        List<SubscriberView> subscriptions = subscriptionRepository
+                .findActiveSubscribersBefore(newsletter.getNewsletterId(), BASE_DATE.plusDays(3));
+
+        Assertions.assertEquals(List.of("user0", "user1", "user2"), usernames(subscriptions));
+    }
+
+    @Test
+    void findAfterDate_ShouldSkipInactiveSubscriptions() {
+        List<SubscriberView> subscriptions = subscriptionRepository
+                .findActiveSubscribersAfter(newsletter.getNewsletterId(), BASE_DATE.plusDays(6));
+
+        Assertions.assertEquals(List.of("user7", "user8"), usernames(subscriptions));
+    }
+
+    @Test
+    void findActivePageAfter_ShouldWalkAllActiveSubscriptionsInOrder() {
+        List<String> visited = new ArrayList<>();
+        SubscriptionCursor cursor = SubscriptionCursor.first();
+
+        while (true) {
+            List<SubscriberView> page = subscriptionRepository.findActivePageAfter(newsletter.getNewsletterId(),
+                    cursor.getCreatedAt(), cursor.getId(), SubscriptionCursor.MAX_DATE, PageRequest.of(0, 4));
+            visited.addAll(usernames(page));
+            if (page.size() < 4)
+                break;
+            cursor = SubscriptionCursor.parse(SubscriptionCursor.of(page.get(page.size() - 1)).encode());
+        }
+
+        Assertions.assertEquals(List.of("user0", "user1", "user2", "user3", "user4", "user5", "user6", "user7", "user8"), visited);
+    }
+
+    @Test
+    void findActiveMembershipIds_ShouldOnlyReturnTheActiveOnesAmongTheGivenIds() {
+        Long inactiveUserId = userIds.get(9);
+        List<Long> newsletterIds = List.of(newsletter.getNewsletterId(), other.getNewsletterId(), Long.MAX_VALUE);
+
+        Assertions.assertEquals(List.of(other.getNewsletterId()),
+                subscriptionRepository.findActiveNewsletterIds(inactiveUserId, newsletterIds));
+        Assertions.assertEquals(Set.of(userIds.get(0), userIds.get(8)), Set.copyOf(subscriptionRepository
+                .findActiveUserIds(newsletter.getNewsletterId(), List.of(userIds.get(0), userIds.get(8), inactiveUserId))));
+    }
+
+    private List<String> usernames(List<SubscriberView> subscriptions) {
+        return subscriptions.stream()
+                .map(SubscriberView::getUsername)
+                .collect(Collectors.toList());
+    }
+}
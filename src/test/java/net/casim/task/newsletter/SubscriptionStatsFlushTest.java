@@ -0,0 +1,56 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.event.SubscriptionChangedEvent;
+import net.casim.task.newsletter.repository.NewsletterDailyStatsRepository;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import net.casim.task.newsletter.service.SubscriptionStats;
+import net.casim.task.newsletter.shard.Shards;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.LocalDate;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SubscriptionStatsFlushTest {
+    @Mock
+    private SubscriptionIndex subscriptionIndex;
+
+    @Mock
+    private SubscriptionRepository subscriptionRepository;
+
+    @Mock
+    private NewsletterDailyStatsRepository dailyStatsRepository;
+
+    private SubscriptionStats subscriptionStats;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        subscriptionStats = new SubscriptionStats(subscriptionIndex, subscriptionRepository, dailyStatsRepository, Shards.single());
+    }
+
+    @Test
+    void flush_ShouldWriteTheOtherRows_AndRetryTheFailedOne() {
+        LocalDate today = LocalDate.now();
+        subscriptionStats.onSubscriptionChanged(new SubscriptionChangedEvent(1L, 1L, true));
+        subscriptionStats.onSubscriptionChanged(new SubscriptionChangedEvent(1L, 2L, true));
+        when(dailyStatsRepository.addCounts(1L, today, 1, 0))
+                .thenThrow(new QueryTimeoutException("timed out"))
+                .thenReturn(1);
+        when(dailyStatsRepository.addCounts(2L, today, 1, 0)).thenReturn(1);
+
+        subscriptionStats.flush();
+        verify(dailyStatsRepository).addCounts(2L, today, 1, 0);
+
+        subscriptionStats.flushOnShutdown();
+        verify(dailyStatsRepository, times(2)).addCounts(1L, today, 1, 0);
+        verify(dailyStatsRepository, times(1)).addCounts(2L, today, 1, 0);
+    }
+}
@@ -0,0 +1,119 @@
+package net.casim.task.newsletter;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.NewsletterDailyStats;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.model.dto.DailyStatsDTO;
+import net.casim.task.newsletter.model.dto.NewsletterStatsDTO;
+import net.casim.task.newsletter.repository.NewsletterDailyStatsRepository;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import net.casim.task.newsletter.service.SubscriptionStats;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class SubscriptionStatsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionStats subscriptionStats;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private NewsletterDailyStatsRepository dailyStatsRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Long newsletterId;
+
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Counted", "Content", "2023-01-01", null)).getNewsletterId();
+        for (int i = 0; i < 3; i++)
+            userIds.add(userRepository.save(User.builder().username("counted" + i).build()).getUserId());
+    }
+
+    @Test
+    void stats_ShouldCountChanges_BeforeAndAfterFlush() throws NotFoundException {
+        for (Long userId : userIds)
+            subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId));
+        subscriptionService.unsubscribe(new SubscribeRequest(userIds.get(0), newsletterId));
+        // no change, not counted
+        subscriptionService.unsubscribe(new SubscribeRequest(userIds.get(0), newsletterId));
+
+        assertToday(subscriptionService.getNewsletterStats(newsletterId, 7));
+
+        subscriptionStats.flush();
+        NewsletterDailyStats row = dailyStatsRepository.findById(new NewsletterDailyStats.Key(newsletterId, LocalDate.now())).orElseThrow();
+        Assertions.assertEquals(3, row.getSubscribes());
+        Assertions.assertEquals(1, row.getUnsubscribes());
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        NewsletterStatsDTO stats = subscriptionService.getNewsletterStats(newsletterId, 7);
+        assertToday(stats);
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+        Assertions.assertEquals(7, stats.getDays().size());
+        Assertions.assertEquals(LocalDate.now().minusDays(1), stats.getDays().get(1).getDay());
+        Assertions.assertEquals(0, stats.getDays().get(1).getActiveSubscribers());
+    }
+
+    @Test
+    void statsEndpoint_ShouldReturnNotFound_WhenNewsletterDoesNotExist() throws Exception {
+        mockMvc.perform(get("/subscriptions/newsletter/{newsletterId}/stats", Long.MAX_VALUE))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/subscriptions/newsletter/{newsletterId}/stats", newsletterId).param("days", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.activeSubscribers").value(0))
+                .andExpect(jsonPath("$.days.length()").value(1));
+    }
+
+    private void assertToday(NewsletterStatsDTO stats) {
+        Assertions.assertEquals(2, stats.getActiveSubscribers());
+
+        DailyStatsDTO today = stats.getDays().get(0);
+        Assertions.assertEquals(LocalDate.now(), today.getDay());
+        Assertions.assertEquals(3, today.getSubscribes());
+        Assertions.assertEquals(1, today.getUnsubscribes());
+        Assertions.assertEquals(2, today.getActiveSubscribers());
+        // nobody was subscribed at the start of the day, so there is nothing to churn from
+        Assertions.assertEquals(0.0, today.getChurnRate());
+    }
+}
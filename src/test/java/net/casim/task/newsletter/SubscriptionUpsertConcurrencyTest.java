@@ -0,0 +1,92 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class SubscriptionUpsertConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    private static final int USERS = 20;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void concurrentSubscribes_ShouldCreateOneRowAndOneSuccessPerPair() throws Exception {
+        Long newsletterId = newsletterRepository.save(new Newsletter(null, "Contended", "Content", "2023-01-01", null)).getNewsletterId();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            userIds.add(userRepository.save(User.builder().username("contender" + i).build()).getUserId());
+        }
+
+        ConcurrentMap<Long, AtomicInteger> successes = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (Long userId : userIds) {
+                    if (subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId)))
+                        successes.computeIfAbsent(userId, id -> new AtomicInteger()).incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        for (Long userId : userIds) {
+            Assertions.assertEquals(1, successes.get(userId).get());
+            Assertions.assertEquals(1, jdbcTemplate.queryForObject(
+                    "select count(*) from subscription where user_id = ? and newsletter_id = ?", Integer.class, userId, newsletterId));
+            Assertions.assertTrue(subscriptionService.checkSubscription(newsletterId, userId));
+        }
+    }
+
+    @Test
+    void subscribeAndUnsubscribe_ShouldReportStateChangesOnly() throws Exception {
+        Long newsletterId = newsletterRepository.save(new Newsletter(null, "Toggled", "Content", "2023-01-01", null)).getNewsletterId();
+        Long userId = userRepository.save(User.builder().username("toggler").build()).getUserId();
+        SubscribeRequest request = new SubscribeRequest(userId, newsletterId);
+
+        Assertions.assertFalse(subscriptionService.unsubscribe(request));
+        Assertions.assertTrue(subscriptionService.subscribe(request));
+        Assertions.assertFalse(subscriptionService.subscribe(request));
+        Assertions.assertTrue(subscriptionService.unsubscribe(request));
+        Assertions.assertFalse(subscriptionService.unsubscribe(request));
+        Assertions.assertTrue(subscriptionService.subscribe(request));
+    }
+}
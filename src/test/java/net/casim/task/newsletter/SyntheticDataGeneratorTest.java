@@ -0,0 +1,86 @@
+package net.casim.task.newsletter;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.seed.SeedResult;
+import net.casim.task.newsletter.seed.SeedSpec;
+import net.casim.task.newsletter.seed.SyntheticDataGenerator;
+import net.casim.task.newsletter.service.SubscriptionIndex;
+import net.casim.task.newsletter.service.SubscriptionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+class SyntheticDataGeneratorTest {
+    private static final LocalDateTime FROM = LocalDateTime.of(2021, 6, 1, 0, 0);
+
+    @Autowired
+    private SyntheticDataGenerator generator;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SubscriptionIndex subscriptionIndex;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Test
+    void generate_ShouldLoadSkewedDistinctSubscriptions_InsideTheSpread() throws NotFoundException {
+        SeedResult seeded = generator.generate(SeedSpec.builder()
+                .users(1_000)
+                .newsletters(20)
+                .subscriptions(3_500)
+                .zipfExponent(1.0)
+                .from(FROM)
+                .spread(Duration.ofDays(30))
+                .threads(4)
+                .batchSize(500)
+                .build());
+
+        Assertions.assertEquals(1_000, seeded.getUserIds().length);
+        Assertions.assertEquals(20, seeded.getNewsletterIds().length);
+        String range = " from subscription where id >= " + seeded.getFirstSubscriptionId();
+        Assertions.assertEquals(3_500, jdbcTemplate.queryForObject("select count(*)" + range, Long.class));
+        Assertions.assertEquals(3_500, jdbcTemplate.queryForObject("select count(distinct (user_id, newsletter_id))" + range, Long.class));
+        Assertions.assertEquals(4, jdbcTemplate.queryForObject("select max(subscriptions) from (select count(*) subscriptions"
+                + range + " group by user_id) per_user", Long.class));
+
+        Timestamp first = jdbcTemplate.queryForObject("select min(created_at)" + range, Timestamp.class);
+        Timestamp last = jdbcTemplate.queryForObject("select max(created_at)" + range, Timestamp.class);
+        Assertions.assertFalse(first.toLocalDateTime().isBefore(FROM));
+        Assertions.assertTrue(last.toLocalDateTime().isBefore(FROM.plusDays(30)));
+
+        long mostPopular = subscribers(seeded.getNewsletterIds()[0]);
+        long leastPopular = subscribers(seeded.getNewsletterIds()[19]);
+        Assertions.assertTrue(mostPopular > 3 * leastPopular, mostPopular + " vs " + leastPopular);
+
+        // the sequence has moved past the seeded ids, so new subscriptions do not collide with them
+        subscriptionIndex.warmUp();
+        long userId = seeded.getUserIds()[0];
+        Long newsletterId = jdbcTemplate.queryForObject("select min(newsletter_id) from newsletter where newsletter_id >= ? and newsletter_id not in "
+                + "(select newsletter_id from subscription where user_id = ?)", Long.class, seeded.getNewsletterIds()[0], userId);
+        Assertions.assertTrue(subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId)));
+        Assertions.assertTrue(subscriptionService.checkSubscription(newsletterId, userId));
+    }
+
+    @Test
+    void generate_ShouldRejectMoreSubscriptionsThanDistinctPairs() {
+        SeedSpec spec = SeedSpec.builder().users(2).newsletters(3).subscriptions(7).build();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> generator.generate(spec));
+    }
+
+    private long subscribers(long newsletterId) {
+        return jdbcTemplate.queryForObject("select count(*) from subscription where newsletter_id = ?", Long.class, newsletterId);
+    }
+}
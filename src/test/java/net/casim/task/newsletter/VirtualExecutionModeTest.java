@@ -0,0 +1,35 @@
+package net.casim.task.newsletter;
+
+import net.casim.task.newsletter.config.WebExecutionConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+
+class VirtualExecutionModeTest {
+
+    private final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+            .withUserConfiguration(WebExecutionConfig.class)
+            .withBean(DataSource.class, () -> new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build())
+            .withPropertyValues("newsletter.web.execution-mode=virtual");
+
+    @Test
+    void virtualMode_ShouldCustomizeTomcat_OrFailFastWithoutVirtualThreads() {
+        boolean virtualThreadsAvailable = Runtime.version().feature() >= 21;
+
+        contextRunner.run(context -> {
+            if (virtualThreadsAvailable) {
+                Assertions.assertNotNull(context.getBean(TomcatProtocolHandlerCustomizer.class));
+            } else {
+                Throwable failure = context.getStartupFailure();
+                while (failure != null && !(failure instanceof IllegalStateException && failure.getMessage().contains("virtual threads")))
+                    failure = failure.getCause();
+                Assertions.assertNotNull(failure);
+            }
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package net.casim.task.newsletter;
+
+import javassist.NotFoundException;
+import net.casim.task.newsletter.model.BulkSubscriptionResult;
+import net.casim.task.newsletter.model.BulkSubscriptionStatus;
+import net.casim.task.newsletter.model.Newsletter;
+import net.casim.task.newsletter.model.SubscribeRequest;
+import net.casim.task.newsletter.model.User;
+import net.casim.task.newsletter.repository.NewsletterRepository;
+import net.casim.task.newsletter.repository.SubscriptionRepository;
+import net.casim.task.newsletter.repository.UserRepository;
+import net.casim.task.newsletter.service.SubscriptionService;
+import net.casim.task.newsletter.writebehind.SubscriptionLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "newsletter.write-behind.enabled=true",
+        "newsletter.write-behind.durability=group"})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class WriteBehindModeTest {
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private NewsletterRepository newsletterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SubscriptionLog subscriptionLog;
+
+    private Long newsletterId;
+
+    private Long userId;
+
+    @DynamicPropertySource
+    static void writeBehindDirectory(DynamicPropertyRegistry registry) throws IOException {
+        Path directory = Files.createTempDirectory("write-behind");
+        registry.add("newsletter.write-behind.directory", directory::toString);
+    }
+
+    @BeforeEach
+    void setUp() {
+        newsletterId = newsletterRepository.save(new Newsletter(null, "Write-behind", "Content", "2023-01-01", null)).getNewsletterId();
+        userId = userRepository.save(User.builder().username("write-behind").build()).getUserId();
+    }
+
+    @Test
+    void subscribeAndUnsubscribe_ShouldBeAcknowledgedAndVisible_BeforeTheyAreDrained() throws Exception {
+        Assertions.assertTrue(subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId)));
+        Assertions.assertFalse(subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId)));
+        Assertions.assertTrue(subscriptionService.checkSubscription(newsletterId, userId));
+
+        awaitDrained();
+        Assertions.assertTrue(subscriptionRepository.existsByUser_UserIdAndNewsletter_NewsletterIdAndSubscribedTrue(userId, newsletterId));
+        Assertions.assertTrue(subscriptionService.checkSubscription(newsletterId, userId));
+
+        Assertions.assertTrue(subscriptionService.unsubscribe(new SubscribeRequest(userId, newsletterId)));
+        Assertions.assertFalse(subscriptionService.unsubscribe(new SubscribeRequest(userId, newsletterId)));
+        Assertions.assertFalse(subscriptionService.checkSubscription(newsletterId, userId));
+
+        awaitDrained();
+        Assertions.assertFalse(subscriptionRepository.existsByUser_UserIdAndNewsletter_NewsletterIdAndSubscribedTrue(userId, newsletterId));
+    }
+
+    @Test
+    void subscribe_ShouldStillValidateUserAndNewsletter() {
+        Assertions.assertThrows(NotFoundException.class,
+                () -> subscriptionService.subscribe(new SubscribeRequest(userId, Long.MAX_VALUE)));
+        Assertions.assertEquals(0, subscriptionLog.undrainedCount());
+    }
+
+    @Test
+    void bulkCalls_ShouldGoThroughTheLog_InOrderWithSingleCalls() throws Exception {
+        Assertions.assertTrue(subscriptionService.subscribe(new SubscribeRequest(userId, newsletterId)));
+
+        List<BulkSubscriptionResult> unsubscribed = subscriptionService.unsubscribeAll(List.of(
+                new SubscribeRequest(userId, newsletterId), new SubscribeRequest(userId, newsletterId)));
+        Assertions.assertEquals(List.of(BulkSubscriptionStatus.UNSUBSCRIBED, BulkSubscriptionStatus.NOT_SUBSCRIBED),
+                unsubscribed.stream().map(BulkSubscriptionResult::getStatus).collect(Collectors.toList()));
+        Assertions.assertFalse(subscriptionService.checkSubscription(newsletterId, userId));
+
+        List<BulkSubscriptionResult> subscribed = subscriptionService.subscribeAll(List.of(
+                new SubscribeRequest(Long.MAX_VALUE, newsletterId), new SubscribeRequest(userId, Long.MAX_VALUE),
+                new SubscribeRequest(userId, newsletterId)));
+        Assertions.assertEquals(List.of(BulkSubscriptionStatus.USER_NOT_FOUND, BulkSubscriptionStatus.NEWSLETTER_NOT_FOUND,
+                        BulkSubscriptionStatus.SUBSCRIBED),
+                subscribed.stream().map(BulkSubscriptionResult::getStatus).collect(Collectors.toList()));
+
+        awaitDrained();
+        Assertions.assertTrue(subscriptionRepository.existsByUser_UserIdAndNewsletter_NewsletterIdAndSubscribedTrue(userId, newsletterId));
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        for (int i = 0; i < 100 && subscriptionLog.undrainedCount() > 0; i++)
+            Thread.sleep(50);
+
+        Assertions.assertEquals(0, subscriptionLog.undrainedCount());
+    }
+}